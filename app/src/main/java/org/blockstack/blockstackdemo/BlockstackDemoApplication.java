@@ -0,0 +1,26 @@
+package org.blockstack.blockstackdemo;
+
+import android.app.Application;
+
+import org.blockstack.client.Blockstack;
+import org.blockstack.client.ProfileCache;
+
+/**
+ * Holds the one Blockstack client shared by every screen, so they all reuse its connections,
+ * caches and threads. It lives as long as the process, so it is never closed.
+ */
+public class BlockstackDemoApplication extends Application {
+    private Blockstack client;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        client = new Blockstack.Builder("YOUR_APP_ID", "YOUR_APP_SECRET")
+                .profileCache(new ProfileCache())
+                .build();
+    }
+
+    public Blockstack getClient() {
+        return client;
+    }
+}
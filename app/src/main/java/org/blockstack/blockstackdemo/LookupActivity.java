@@ -6,36 +6,42 @@ import android.os.AsyncTask;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.text.Editable;
 import android.text.TextUtils;
 import android.text.TextWatcher;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.inputmethod.InputMethodManager;
-import android.widget.AdapterView;
-import android.widget.ArrayAdapter;
 import android.widget.EditText;
 import android.widget.ImageButton;
-import android.widget.ListView;
 import android.widget.Toast;
 
 import org.blockstack.client.Blockstack;
-import org.json.JSONException;
+import org.blockstack.client.User;
+import org.blockstack.client.UserHandler;
 import org.json.JSONObject;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
-public class LookupActivity extends AppCompatActivity implements TextWatcher {
+public class LookupActivity extends AppCompatActivity implements TextWatcher,
+        UserListAdapter.OnUserClickListener {
     private static final String TAG = LookupActivity.class.getSimpleName();
+    private static final int BATCH_SIZE = 20;
 
     EditText usersEditText;
     ImageButton searchButton;
-    ListView listView;
-    HashMap<String, String> data = new HashMap<>();
+    RecyclerView recyclerView;
+    UserListAdapter adapter;
+    Blockstack client;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        client = ((BlockstackDemoApplication) getApplication()).getClient();
         setContentView(R.layout.activity_lookup);
         setupUI();
     }
@@ -69,7 +75,10 @@ public class LookupActivity extends AppCompatActivity implements TextWatcher {
             }
         });
 
-        listView = (ListView) findViewById(R.id.userListView);
+        adapter = new UserListAdapter(this);
+        recyclerView = (RecyclerView) findViewById(R.id.userRecyclerView);
+        recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        recyclerView.setAdapter(adapter);
     }
 
     private void dismissKeyboard() {
@@ -85,6 +94,13 @@ public class LookupActivity extends AppCompatActivity implements TextWatcher {
     }
     // endregion
 
+    // region User click listener
+    @Override
+    public void onUserClick(@NonNull String username) {
+        new ProfileTask().executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, username);
+    }
+    // endregion
+
     // region Text watcher
     @Override
     public void beforeTextChanged(CharSequence charSequence, int i, int i1, int i2) {}
@@ -105,11 +121,10 @@ public class LookupActivity extends AppCompatActivity implements TextWatcher {
     // endregion
 
     // region Lookup task
-    private class LookupTask extends AsyncTask<String[], Void, String> {
-        Blockstack client = new Blockstack("YOUR_APP_ID", "YOUR_APP_SECRET");
+    private class LookupTask extends AsyncTask<String[], List<UserListAdapter.Row>, Boolean> {
         Context context;
         ProgressDialog dialog;
-        String[] users;
+        int found;
 
         public LookupTask(Context context) {
             this.context = context;
@@ -127,63 +142,103 @@ public class LookupActivity extends AppCompatActivity implements TextWatcher {
             dialog.setMessage("Looking up users...");
             dialog.show();
 
-            data.clear();
+            adapter.clear();
         }
 
         @Override
-        protected String doInBackground(String[]... params) {
-            users = TextUtils.join(",", params[0]).replaceAll(" ", "").split(",");
-            return client.lookupUsers(users);
-        }
+        @SuppressWarnings("unchecked")
+        protected Boolean doInBackground(String[]... params) {
+            String[] users = TextUtils.join(",", params[0]).replaceAll(" ", "").split(",");
+            final List<UserListAdapter.Row> batch = new ArrayList<>();
+
+            // Users are handed over as they are decoded, a batch at a time, so the first rows
+            // show up before the whole response has arrived.
+            boolean completed = client.lookupUsers(users, new UserHandler() {
+                @Override
+                public void onUser(@NonNull String username, @NonNull JSONObject user) {
+                    if (user.has("error")) {
+                        return;
+                    }
 
-        @Override
-        protected void onPostExecute(String response) {
-            if (response != null) {
-                try {
-                    JSONObject json = new JSONObject(response);
+                    batch.add(new UserListAdapter.Row(username, displayName(user)));
 
-                    for (String user: users) {
-                        JSONObject jsonUser = json.getJSONObject(user);
+                    if (batch.size() == BATCH_SIZE) {
+                        publishProgress(new ArrayList<>(batch));
+                        batch.clear();
+                    }
+                }
+            });
 
-                        if (jsonUser.has("error")) {
-                            continue;
-                        }
+            if (!batch.isEmpty()) {
+                publishProgress(batch);
+            }
 
-                        data.put(user, jsonUser.toString());
-                    }
+            return completed;
+        }
 
-                    if (data.keySet().toArray().length > 0) {
-                        String[] keys = data.keySet().toArray(new String[data.keySet().size()]);
-
-                        ArrayAdapter<String> adapter = new ArrayAdapter<>(context,
-                                android.R.layout.simple_list_item_1, keys);
-                        listView.setAdapter(adapter);
-                        listView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
-                            @Override
-                            public void onItemClick(AdapterView<?> adapterView, View view, int i,
-                                                    long l) {
-                                String username = adapterView.getItemAtPosition(i).toString();
-                                Toast.makeText(LookupActivity.this, data.get(username),
-                                        Toast.LENGTH_LONG).show();
-
-                            }
-                        });
-                    } else {
-                        Toast.makeText(LookupActivity.this, "No users matching " + "\""
-                                + usersEditText.getText() + "\" were found.", Toast.LENGTH_LONG).show();
-                    }
-                } catch (JSONException e) {
-                    e.printStackTrace();
-                }
-            } else {
+        @Override
+        protected void onProgressUpdate(List<UserListAdapter.Row>... batches) {
+            dialog.dismiss();
+
+            for (List<UserListAdapter.Row> batch : batches) {
+                found += batch.size();
+                adapter.upsert(batch);
+            }
+        }
+
+        @Override
+        protected void onPostExecute(Boolean completed) {
+            if (!completed) {
                 Toast.makeText(LookupActivity.this, "There was error executing your request...",
                         Toast.LENGTH_LONG).show();
+            } else if (found == 0) {
+                Toast.makeText(LookupActivity.this, "No users matching " + "\""
+                        + usersEditText.getText() + "\" were found.", Toast.LENGTH_LONG).show();
             }
 
             searchButton.setAlpha(1.0f);
             searchButton.setEnabled(true);
 
-            dialog.cancel();
+            dialog.dismiss();
+        }
+    }
+
+    /**
+     * Reads a user's display name, either a plain string or a <code>"formatted"</code> entry.
+     */
+    private static String displayName(@NonNull JSONObject user) {
+        JSONObject profile = user.optJSONObject("profile");
+
+        if (profile == null) {
+            return null;
+        }
+
+        JSONObject name = profile.optJSONObject("name");
+        return name != null ? name.optString("formatted", null) : profile.optString("name", null);
+    }
+    // endregion
+
+    // region Profile task
+    /**
+     * Loads one user's profile when it is clicked. The lookup filled the client's profile
+     * cache, so this normally does not touch the network.
+     */
+    private class ProfileTask extends AsyncTask<String, Void, User> {
+        @Override
+        protected User doInBackground(String... params) {
+            Map<String, User> users = client.lookupUserProfiles(params);
+            return users != null ? users.get(params[0]) : null;
+        }
+
+        @Override
+        protected void onPostExecute(User user) {
+            if (user == null || !user.isFound()) {
+                Toast.makeText(LookupActivity.this, "There was error executing your request...",
+                        Toast.LENGTH_LONG).show();
+                return;
+            }
+
+            ProfileDialog.show(LookupActivity.this, user);
         }
     }
     // endregion
@@ -20,6 +20,9 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
 
         Button lookupButton = (Button) findViewById(R.id.lookupButton);
         lookupButton.setOnClickListener(this);
+
+        Button searchButton = (Button) findViewById(R.id.searchButton);
+        searchButton.setOnClickListener(this);
     }
 
     private void startLookupActivity() {
@@ -27,6 +30,11 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         startActivity(intent);
     }
 
+    private void startSearchActivity() {
+        Intent intent = new Intent(this, SearchActivity.class);
+        startActivity(intent);
+    }
+
     // region On click listener
     @Override
     public void onClick(View view) {
@@ -36,6 +44,9 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
             case R.id.lookupButton:
                 startLookupActivity();
                 break;
+            case R.id.searchButton:
+                startSearchActivity();
+                break;
             default:
                 break;
         }
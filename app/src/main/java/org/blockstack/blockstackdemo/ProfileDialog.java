@@ -0,0 +1,45 @@
+package org.blockstack.blockstackdemo;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.v7.app.AlertDialog;
+import android.text.TextUtils;
+
+import org.blockstack.client.Profile;
+import org.blockstack.client.User;
+
+/**
+ * Shows the details of a user that was clicked in a list.
+ */
+final class ProfileDialog {
+    private ProfileDialog() {}
+
+    static void show(@NonNull Context context, @NonNull User user) {
+        Profile profile = user.getProfile();
+        StringBuilder details = new StringBuilder();
+
+        if (profile != null) {
+            append(details, profile.getName());
+            append(details, profile.getBio());
+            append(details, profile.getWebsite());
+        }
+
+        append(details, user.getOwnerAddress());
+
+        new AlertDialog.Builder(context)
+                .setTitle(user.getUsername())
+                .setMessage(details)
+                .setPositiveButton(android.R.string.ok, null)
+                .show();
+    }
+
+    private static void append(StringBuilder details, String detail) {
+        if (!TextUtils.isEmpty(detail)) {
+            if (details.length() > 0) {
+                details.append("\n\n");
+            }
+
+            details.append(detail);
+        }
+    }
+}
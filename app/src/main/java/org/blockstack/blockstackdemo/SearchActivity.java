@@ -0,0 +1,168 @@
+package org.blockstack.blockstackdemo;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.view.MenuItem;
+import android.widget.EditText;
+import android.widget.Toast;
+
+import org.blockstack.client.AsyncBlockstack;
+import org.blockstack.client.Blockstack;
+import org.blockstack.client.Callback;
+import org.blockstack.client.Profile;
+import org.blockstack.client.SearchEngine;
+import org.blockstack.client.SearchResult;
+import org.blockstack.client.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+public class SearchActivity extends AppCompatActivity implements TextWatcher,
+        SearchEngine.Listener, UserListAdapter.OnUserClickListener {
+    private static final String TAG = SearchActivity.class.getSimpleName();
+
+    EditText queryEditText;
+    RecyclerView recyclerView;
+    UserListAdapter adapter;
+    Blockstack client;
+    AsyncBlockstack asyncClient;
+    SearchEngine searchEngine;
+    Executor mainThreadExecutor = new MainThreadExecutor();
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_search);
+
+        client = ((BlockstackDemoApplication) getApplication()).getClient();
+        // Shared with the rest of the app, so it is not shut down with this activity.
+        asyncClient = client.async();
+        searchEngine = new SearchEngine(asyncClient, this, mainThreadExecutor);
+
+        setupUI();
+    }
+
+    @Override
+    protected void onDestroy() {
+        searchEngine.shutdown();
+        super.onDestroy();
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        int id = item.getItemId();
+
+        if (id == android.R.id.home) {
+            finish();
+        }
+
+        return super.onOptionsItemSelected(item);
+    }
+
+    private void setupUI() {
+        if (getSupportActionBar() != null) {
+            getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+        }
+
+        queryEditText = (EditText) findViewById(R.id.queryEditText);
+        queryEditText.addTextChangedListener(this);
+
+        adapter = new UserListAdapter(this);
+        recyclerView = (RecyclerView) findViewById(R.id.resultRecyclerView);
+        recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        recyclerView.setAdapter(adapter);
+    }
+
+    // region Text watcher
+    @Override
+    public void beforeTextChanged(CharSequence charSequence, int i, int i1, int i2) {}
+
+    @Override
+    public void onTextChanged(CharSequence charSequence, int i, int i1, int i2) {}
+
+    @Override
+    public void afterTextChanged(Editable editable) {
+        searchEngine.onQueryChanged(editable.toString());
+    }
+    // endregion
+
+    // region Search engine listener
+    @Override
+    public void onResults(@NonNull String query, @NonNull SearchResult result) {
+        List<UserListAdapter.Row> rows = new ArrayList<>(result.size());
+
+        for (User user : result.getUsers()) {
+            Profile profile = user.getProfile();
+            rows.add(new UserListAdapter.Row(user.getUsername(),
+                    profile != null ? profile.getName() : null));
+        }
+
+        // Typing one more letter usually keeps most results, so only the difference is redrawn.
+        adapter.replace(rows);
+    }
+
+    @Override
+    public void onError(@NonNull String query, @NonNull Throwable error) {
+        Toast.makeText(this, "There was error executing your request...",
+                Toast.LENGTH_LONG).show();
+    }
+    // endregion
+
+    // region User click listener
+    @Override
+    public void onUserClick(@NonNull final String username) {
+        // Only the rows are kept; the details are looked up again, from the profile cache when
+        // the user was seen recently.
+        asyncClient.submit(new Callable<User>() {
+            @Override
+            public User call() {
+                Map<String, User> users = client.lookupUserProfiles(new String[] {username});
+                return users != null ? users.get(username) : null;
+            }
+        }, new Callback<User>() {
+            @Override
+            public void onSuccess(final User user) {
+                mainThreadExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (user != null && user.isFound()) {
+                            ProfileDialog.show(SearchActivity.this, user);
+                        } else {
+                            onFailure(new IllegalStateException("Not found: " + username));
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void onFailure(final Throwable error) {
+                mainThreadExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        onError(username, error);
+                    }
+                });
+            }
+        });
+    }
+    // endregion
+
+    private static class MainThreadExecutor implements Executor {
+        private final Handler handler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(@NonNull Runnable runnable) {
+            handler.post(runnable);
+        }
+    }
+}
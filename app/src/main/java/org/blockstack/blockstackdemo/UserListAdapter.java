@@ -0,0 +1,209 @@
+package org.blockstack.blockstackdemo;
+
+import android.support.annotation.NonNull;
+import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A recycled list of users. Each row only keeps a username and a display name; the full
+ * profile is looked up again, from the client's cache, when a row is clicked.
+ * <p>
+ * Rows are keyed by username and every update is applied incrementally: only the rows that
+ * were inserted, removed or changed are rebound, so results can keep arriving in batches
+ * while the list scrolls.
+ */
+class UserListAdapter extends RecyclerView.Adapter<UserListAdapter.ViewHolder> {
+    interface OnUserClickListener {
+        void onUserClick(@NonNull String username);
+    }
+
+    private final List<Row> rows = new ArrayList<>();
+    private final Map<String, Integer> positions = new HashMap<>();
+    private final OnUserClickListener listener;
+
+    UserListAdapter(@NonNull OnUserClickListener listener) {
+        this.listener = listener;
+    }
+
+    // region Updates
+    /**
+     * Adds new users at the end and updates the rows of users already shown.
+     */
+    void upsert(@NonNull List<Row> batch) {
+        int start = rows.size();
+
+        for (Row row : batch) {
+            Integer position = positions.get(row.username);
+
+            if (position == null) {
+                positions.put(row.username, rows.size());
+                rows.add(row);
+            } else if (!rows.get(position).equals(row)) {
+                rows.set(position, row);
+
+                if (position < start) {
+                    notifyItemChanged(position);
+                }
+            }
+        }
+
+        if (rows.size() > start) {
+            notifyItemRangeInserted(start, rows.size() - start);
+        }
+    }
+
+    /**
+     * Replaces every row. Rows shared by the start and the end of both lists are kept, so a
+     * refined search only rebinds the part of the list that actually changed.
+     */
+    void replace(@NonNull List<Row> next) {
+        int oldSize = rows.size();
+        int newSize = next.size();
+        int prefix = 0;
+
+        while (prefix < oldSize && prefix < newSize
+                && rows.get(prefix).username.equals(next.get(prefix).username)) {
+            prefix++;
+        }
+
+        int suffix = 0;
+
+        while (suffix < oldSize - prefix && suffix < newSize - prefix
+                && rows.get(oldSize - 1 - suffix).username
+                        .equals(next.get(newSize - 1 - suffix).username)) {
+            suffix++;
+        }
+
+        List<Row> previous = new ArrayList<>(rows);
+        rows.clear();
+        rows.addAll(next);
+        reindex();
+
+        for (int i = 0; i < prefix; i++) {
+            if (!previous.get(i).equals(next.get(i))) {
+                notifyItemChanged(i);
+            }
+        }
+
+        int removed = oldSize - prefix - suffix;
+        int inserted = newSize - prefix - suffix;
+        int changed = Math.min(removed, inserted);
+
+        if (changed > 0) {
+            notifyItemRangeChanged(prefix, changed);
+        }
+
+        if (removed > changed) {
+            notifyItemRangeRemoved(prefix + changed, removed - changed);
+        } else if (inserted > changed) {
+            notifyItemRangeInserted(prefix + changed, inserted - changed);
+        }
+
+        // Sent last: each notification is applied to the list as the ones before left it, so
+        // only now are the suffix rows at their new positions.
+        for (int i = 0; i < suffix; i++) {
+            int oldPosition = oldSize - 1 - i;
+            int newPosition = newSize - 1 - i;
+
+            if (!previous.get(oldPosition).equals(next.get(newPosition))) {
+                notifyItemChanged(newPosition);
+            }
+        }
+    }
+
+    void clear() {
+        int size = rows.size();
+        rows.clear();
+        positions.clear();
+        notifyItemRangeRemoved(0, size);
+    }
+
+    private void reindex() {
+        positions.clear();
+
+        for (int i = 0; i < rows.size(); i++) {
+            positions.put(rows.get(i).username, i);
+        }
+    }
+    // endregion
+
+    // region Adapter
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.item_user, parent, false);
+        return new ViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        Row row = rows.get(position);
+        holder.username = row.username;
+        holder.usernameTextView.setText(row.username);
+        holder.nameTextView.setText(row.name);
+        holder.nameTextView.setVisibility(TextUtils.isEmpty(row.name) ? View.GONE : View.VISIBLE);
+    }
+
+    @Override
+    public int getItemCount() {
+        return rows.size();
+    }
+    // endregion
+
+    /**
+     * One user as shown in the list.
+     */
+    static final class Row {
+        final String username;
+        final String name;
+
+        Row(@NonNull String username, String name) {
+            this.username = username;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Row)) {
+                return false;
+            }
+
+            Row row = (Row) o;
+            return username.equals(row.username) && TextUtils.equals(name, row.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return username.hashCode();
+        }
+    }
+
+    class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+        final TextView usernameTextView;
+        final TextView nameTextView;
+        String username;
+
+        ViewHolder(View itemView) {
+            super(itemView);
+            usernameTextView = (TextView) itemView.findViewById(R.id.usernameTextView);
+            nameTextView = (TextView) itemView.findViewById(R.id.nameTextView);
+            itemView.setOnClickListener(this);
+        }
+
+        @Override
+        public void onClick(View view) {
+            if (username != null) {
+                listener.onUserClick(username);
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Answers every request from memory with the same body, so benchmarks measure the client
+ * without the network. Request bodies are written to a stream discarding them, as a transport
+ * would write them to the socket.
+ */
+final class CannedTransport implements Transport {
+    private static final Map<String, List<String>> NO_HEADERS = Collections.emptyMap();
+    private static final OutputStream DISCARD = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) {
+        }
+    };
+
+    private final byte[] body;
+
+    CannedTransport(@NonNull String body) {
+        this.body = body.getBytes(Charset.forName("UTF-8"));
+    }
+
+    @Override
+    public Response execute(@NonNull Request request) throws IOException {
+        if (request.getRequestBody() != null) {
+            request.getRequestBody().writeTo(DISCARD);
+        }
+
+        return new Response(200, NO_HEADERS, new ByteArrayInputStream(body), null);
+    }
+
+    @Override
+    public void shutdown() {
+    }
+}
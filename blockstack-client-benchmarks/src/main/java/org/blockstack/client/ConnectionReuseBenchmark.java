@@ -0,0 +1,109 @@
+package org.blockstack.client;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares sequential lookup latency between the pooled keep-alive transport and the original
+ * connect-per-call behaviour, against an embedded local server over plain HTTP. The server is
+ * local, so the difference is the cost of opening a connection; TLS handshakes, which session
+ * resumption shortens, would widen it further against a real server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConnectionReuseBenchmark {
+    private static final String[] USERNAMES = Fixtures.usernames(1);
+
+    private ReplayServer server;
+    private Blockstack pooled;
+    private Blockstack connectPerCall;
+
+    @Setup
+    public void setUp() throws IOException {
+        server = new ReplayServer();
+        server.record("GET", "/v1/users/*", 200, Fixtures.lookupResponse(USERNAMES));
+        server.record("GET", "/v1/search*", 200, Fixtures.searchResponse(1));
+        server.record("POST", "/v1/*", 200, "{\"status\": \"success\"}");
+        server.start();
+        Endpoints endpoints = new Endpoints(server.getBaseUrl());
+        pooled = new Blockstack("id", "secret", new HttpURLConnectionTransport(), endpoints);
+        connectPerCall = new Blockstack("id", "secret", new ConnectPerCallTransport(),
+                endpoints);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pooled.close();
+        connectPerCall.close();
+        server.stop();
+    }
+
+    @Benchmark
+    public String pooledKeepAlive() {
+        return pooled.lookupUsers(USERNAMES);
+    }
+
+    @Benchmark
+    public String connectPerCall() {
+        return connectPerCall.lookupUsers(USERNAMES);
+    }
+
+    /**
+     * Reproduces the original client behaviour: a fresh connection per call, torn down with
+     * <code>disconnect()</code>.
+     */
+    private static class ConnectPerCallTransport implements Transport {
+        @Override
+        public Response execute(Request request) throws IOException {
+            final HttpURLConnection urlConnection =
+                    (HttpURLConnection) new URL(request.getUrl()).openConnection();
+            urlConnection.setRequestMethod(request.getMethod());
+
+            if (request.getBody() != null) {
+                urlConnection.setDoOutput(true);
+                OutputStream outputStream = urlConnection.getOutputStream();
+                outputStream.write(request.getBody());
+                outputStream.close();
+            }
+
+            int statusCode = urlConnection.getResponseCode();
+            InputStream body = urlConnection.getInputStream();
+            Map<String, List<String>> headers = Collections.emptyMap();
+
+            return new Response(statusCode, headers, body, new Closeable() {
+                @Override
+                public void close() {
+                    urlConnection.disconnect();
+                }
+            });
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+}
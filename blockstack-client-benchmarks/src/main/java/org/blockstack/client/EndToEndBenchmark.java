@@ -0,0 +1,77 @@
+package org.blockstack.client;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures whole client calls over HTTP against an embedded local server, through the same
+ * default transport stack apps use. Sampling reports latency percentiles, not just the mean.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndToEndBenchmark {
+    private static final String[] USERNAMES = Fixtures.usernames(10);
+
+    private ReplayServer server;
+    private Blockstack blockstack;
+
+    @Setup
+    public void setUp() throws IOException {
+        server = new ReplayServer();
+        server.record("GET", "/v1/users/*", 200, Fixtures.lookupResponse(USERNAMES));
+        server.record("GET", "/v1/search*", 200, Fixtures.searchResponse(20));
+        server.record("POST", "/v1/*", 200, "{\"status\": \"success\"}");
+        server.start();
+        blockstack = new Blockstack("id", "secret", new Endpoints(server.getBaseUrl()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Benchmark
+    public String lookupUsers() {
+        return blockstack.lookupUsers(USERNAMES);
+    }
+
+    @Benchmark
+    public Map<String, User> lookupUserProfiles() {
+        return blockstack.lookupUserProfiles(USERNAMES);
+    }
+
+    @Benchmark
+    public SearchResult searchUserProfiles() {
+        return blockstack.searchUserProfiles("user");
+    }
+
+    @Benchmark
+    public String registerUser() {
+        return blockstack.registerUser("user0", "1LFS37yRSibwbf8CnXeCn5t1G7zDvTQ9YM",
+                Fixtures.profileData());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String lookupUsersConcurrently() {
+        return blockstack.lookupUsers(USERNAMES);
+    }
+}
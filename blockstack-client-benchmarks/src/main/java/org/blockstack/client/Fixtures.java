@@ -0,0 +1,84 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Request and response payloads shaped like the blockstack-server's.
+ */
+final class Fixtures {
+    private Fixtures() {
+    }
+
+    static String[] usernames(int count) {
+        String[] usernames = new String[count];
+
+        for (int i = 0; i < count; i++) {
+            usernames[i] = "user" + i;
+        }
+
+        return usernames;
+    }
+
+    /**
+     * @return a <code>/users/</code> response with a typical profile for every username.
+     */
+    static String lookupResponse(@NonNull String[] usernames) {
+        StringBuilder json = new StringBuilder("{");
+
+        for (int i = 0; i < usernames.length; i++) {
+            if (i > 0) {
+                json.append(", ");
+            }
+
+            json.append('"').append(usernames[i]).append("\": ").append(user(i));
+        }
+
+        return json.append('}').toString();
+    }
+
+    /**
+     * @return a <code>/search</code> response with the given number of results.
+     */
+    static String searchResponse(int results) {
+        StringBuilder json = new StringBuilder("{\"results\": [");
+
+        for (int i = 0; i < results; i++) {
+            if (i > 0) {
+                json.append(", ");
+            }
+
+            json.append("{\"username\": \"user").append(i).append("\", \"profile\": ")
+                    .append(profile(i)).append('}');
+        }
+
+        return json.append("]}").toString();
+    }
+
+    static JSONObject profileData() {
+        try {
+            return new JSONObject(profile(0));
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String user(int index) {
+        return "{\"profile\": " + profile(index) + ", \"verifications\": [{\"identifier\": "
+                + "\"user" + index + "\", \"proof_url\": \"https://twitter.com/user" + index
+                + "/status/742800838373302272\", \"service\": \"twitter\", \"valid\": true}]}";
+    }
+
+    private static String profile(int index) {
+        return "{\"name\": {\"formatted\": \"User Number " + index + "\"}, "
+                + "\"bio\": \"Building decentralized apps on Blockstack \\u2014 #" + index + "\", "
+                + "\"avatar\": {\"url\": \"https://s3.amazonaws.com/avatars/user" + index
+                + ".jpg\"}, \"location\": {\"formatted\": \"New York, NY\"}, "
+                + "\"bitcoin\": {\"address\": \"1LFS37yRSibwbf8CnXeCn5t1G7zDvTQ9YM\"}, "
+                + "\"twitter\": {\"username\": \"user" + index + "\", \"proof\": {\"url\": "
+                + "\"https://twitter.com/user" + index + "/status/742800838373302272\"}}, "
+                + "\"v\": \"0.2\"}";
+    }
+}
@@ -0,0 +1,64 @@
+package org.blockstack.client;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load tests the client offline: drives lookups and searches through the default transport
+ * stack against a {@link ReplayServer} with injected latency and failures, and prints a
+ * {@link LoadReport} per operation.
+ * <p>
+ * Arguments: callers, calls per second, seconds, server latency in milliseconds and error
+ * rate, e.g. <code>8 500 30 20 0.01</code>.
+ */
+public final class LoadTest {
+    private static final String[] USERNAMES = Fixtures.usernames(10);
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int callers = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        double rate = args.length > 1 ? Double.parseDouble(args[1]) : 500;
+        long seconds = args.length > 2 ? Long.parseLong(args[2]) : 10;
+        long latencyMillis = args.length > 3 ? Long.parseLong(args[3]) : 20;
+        double errorRate = args.length > 4 ? Double.parseDouble(args[4]) : 0.01;
+
+        ReplayServer server = new ReplayServer();
+        server.record("GET", "/v1/users/*", 200, Fixtures.lookupResponse(USERNAMES));
+        server.record("GET", "/v1/search*", 200, Fixtures.searchResponse(20));
+        server.setLatency(latencyMillis, latencyMillis / 2);
+        server.setErrorRate(errorRate, 503);
+        server.setSeed(1);
+        server.start();
+
+        // Every caller looks up the same users: coalesced, most calls would not reach the
+        // server at all and only measure the wait for another caller's request.
+        final Blockstack blockstack = new Blockstack.Builder("load-test", "secret")
+                .endpoints(new Endpoints(server.getBaseUrl()))
+                .requestCoalescing(false)
+                .build();
+        LoadGenerator generator = new LoadGenerator(callers, rate);
+
+        try {
+            System.out.println("lookupUserProfiles  " + generator.run(seconds, TimeUnit.SECONDS,
+                    new LoadGenerator.Call() {
+                        @Override
+                        public boolean call() {
+                            return blockstack.lookupUserProfiles(USERNAMES) != null;
+                        }
+                    }));
+            System.out.println("searchUserProfiles  " + generator.run(seconds, TimeUnit.SECONDS,
+                    new LoadGenerator.Call() {
+                        @Override
+                        public boolean call() {
+                            return blockstack.searchUserProfiles("user") != null;
+                        }
+                    }));
+            // Failures the client retried do not show up in the reports above.
+            System.out.println("server              " + server.getRequestCount() + " requests, "
+                    + server.getInjectedErrorCount() + " injected errors");
+        } finally {
+            server.stop();
+        }
+    }
+}
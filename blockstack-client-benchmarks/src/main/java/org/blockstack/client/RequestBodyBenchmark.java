@@ -0,0 +1,65 @@
+package org.blockstack.client;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building and serializing the POST bodies of the user and transaction operations.
+ * The transport writes the body to nowhere and answers from memory with a short status, so the
+ * calls are dominated by the request side.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestBodyBenchmark {
+    private static final String ADDRESS = "1LFS37yRSibwbf8CnXeCn5t1G7zDvTQ9YM";
+    private static final String PUBLIC_KEY =
+            "02a7bc4b3cf9d4c0d8b2ad0a15bf7a6c4a8d5ebc6c1e3e41b0d0b3f1f8c4e9a2d1";
+
+    private Blockstack blockstack;
+    private JSONObject profileData;
+    private String signedTransaction;
+
+    @Setup
+    public void setUp() {
+        blockstack = new Blockstack("id", "secret",
+                new CannedTransport("{\"status\": \"success\"}"));
+        profileData = Fixtures.profileData();
+
+        // A large multi-input transaction, about 10 KB of hex.
+        StringBuilder hex = new StringBuilder();
+        while (hex.length() < 10000) {
+            hex.append(PUBLIC_KEY);
+        }
+        signedTransaction = hex.toString();
+    }
+
+    @Benchmark
+    public String registerUser() {
+        return blockstack.registerUser("user0", ADDRESS, profileData);
+    }
+
+    @Benchmark
+    public String updateUser() {
+        return blockstack.updateUser("user0", profileData, PUBLIC_KEY);
+    }
+
+    @Benchmark
+    public String broadcastTransaction() {
+        return blockstack.broadcastTransaction(signedTransaction);
+    }
+}
@@ -0,0 +1,72 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading and decoding lookup responses of growing size, through each of the
+ * client's lookup APIs, against parsing the same body into a <code>JSONObject</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseParsingBenchmark {
+    @Param({"1", "20", "200"})
+    public int users;
+
+    private Blockstack blockstack;
+    private String[] usernames;
+    private String response;
+
+    @Setup
+    public void setUp() {
+        usernames = Fixtures.usernames(users);
+        response = Fixtures.lookupResponse(usernames);
+        blockstack = new Blockstack("id", "secret", new CannedTransport(response));
+    }
+
+    @Benchmark
+    public JSONObject parseJsonObject() throws JSONException {
+        return new JSONObject(response);
+    }
+
+    @Benchmark
+    public String lookupUsers() {
+        return blockstack.lookupUsers(usernames);
+    }
+
+    @Benchmark
+    public Map<String, User> lookupUserProfiles() {
+        return blockstack.lookupUserProfiles(usernames);
+    }
+
+    @Benchmark
+    public boolean lookupUsersStreaming(final Blackhole blackhole) {
+        return blockstack.lookupUsers(usernames, new UserHandler() {
+            @Override
+            public void onUser(@NonNull String username, @NonNull JSONObject user) {
+                blackhole.consume(user);
+            }
+        });
+    }
+}
@@ -0,0 +1,48 @@
+package org.blockstack.client;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building the lookup and search URLs, which encode the usernames and query.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UrlBuildingBenchmark {
+    @Param({"1", "10", "100"})
+    public int users;
+
+    private Blockstack blockstack;
+    private String[] usernames;
+
+    @Setup
+    public void setUp() {
+        blockstack = new Blockstack("id", "secret", new CannedTransport("{}"));
+        usernames = Fixtures.usernames(users);
+    }
+
+    @Benchmark
+    public String lookupUrl() {
+        return blockstack.lookupUrl(usernames);
+    }
+
+    @Benchmark
+    public String searchUrl() {
+        return blockstack.searchUrl("twitter:user" + users);
+    }
+}
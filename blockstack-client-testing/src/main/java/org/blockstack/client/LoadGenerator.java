@@ -0,0 +1,215 @@
+package org.blockstack.client;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The LoadGenerator <code>class</code> drives a client call at a target rate from several
+ * concurrent callers and reports throughput, latency percentiles and allocations in a
+ * {@link LoadReport}.
+ * <p>
+ * Calls are scheduled on a fixed timetable, so a slow call does not slow the load down. Each
+ * latency is measured from the time the call was scheduled rather than the time it started, so
+ * calls held up behind slow ones count their wait, the way users would see it. With too few
+ * callers for the rate, calls fall behind the timetable and the report shows it.
+ * <p>
+ * Allocations are counted over every thread of the process, since a call may do its work on
+ * client threads, e.g. when identical concurrent requests are coalesced. An in-process server
+ * counts too, and threads ending during the run are missed.
+ *
+ * <pre>
+ * LoadReport report = new LoadGenerator(8, 500).run(30, TimeUnit.SECONDS,
+ *         new LoadGenerator.Call() {
+ *             public boolean call() {
+ *                 return blockstack.lookupUsers(usernames) != null;
+ *             }
+ *         });
+ * </pre>
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class LoadGenerator {
+    /**
+     * A call to drive, e.g. one client operation.
+     */
+    public interface Call {
+        /**
+         * @return <code>false</code> if the call failed, e.g. the client returned
+         *          <code>null</code>. Exceptions count as failures too.
+         */
+        boolean call() throws Exception;
+    }
+
+    private final int callers;
+    private final double callsPerSecond;
+
+    /**
+     * Creates a load generator.
+     *
+     * @param callers the number of concurrent callers.
+     * @param callsPerSecond the target rate, summed over every caller.
+     */
+    public LoadGenerator(int callers, double callsPerSecond) {
+        if (callers < 1 || callsPerSecond <= 0) {
+            throw new IllegalArgumentException("Callers and rate must be positive");
+        }
+
+        this.callers = callers;
+        this.callsPerSecond = callsPerSecond;
+    }
+
+    /**
+     * Drives a call for a while and waits for the calls in progress to finish.
+     *
+     * @param duration how long to schedule calls for.
+     * @param unit the duration unit.
+     * @param call the call to drive.
+     * @return the report of the run.
+     * @throws InterruptedException if the thread was interrupted while waiting for the callers.
+     */
+    public LoadReport run(long duration, TimeUnit unit, final Call call)
+            throws InterruptedException {
+        final long intervalNanos =
+                Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / callsPerSecond));
+        final long scheduled = Math.max(1, unit.toNanos(duration) / intervalNanos);
+        final long startNanos = System.nanoTime();
+        final AtomicLong nextSlot = new AtomicLong();
+        Map<Long, Long> allocatedBefore = allocatedBytesByThread();
+        final Caller[] workers = new Caller[callers];
+        Thread[] threads = new Thread[callers];
+
+        for (int i = 0; i < callers; i++) {
+            workers[i] = new Caller((int) Math.min(Integer.MAX_VALUE, scheduled / callers + 1)) {
+                @Override
+                public void run() {
+                    long slot;
+
+                    while ((slot = nextSlot.getAndIncrement()) < scheduled) {
+                        long intended = startNanos + slot * intervalNanos;
+                        long wait;
+
+                        while ((wait = intended - System.nanoTime()) > 0) {
+                            LockSupport.parkNanos(wait);
+                        }
+
+                        boolean succeeded;
+
+                        try {
+                            succeeded = call.call();
+                        } catch (Exception e) {
+                            succeeded = false;
+                        }
+
+                        record(System.nanoTime() - intended, succeeded);
+                    }
+                }
+            };
+            threads[i] = new Thread(workers[i], "load-" + i);
+            threads[i].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        long elapsedNanos = System.nanoTime() - startNanos;
+        long allocated = allocatedSince(allocatedBefore);
+        long[] latencies = new long[0];
+        long errors = 0;
+
+        for (Caller worker : workers) {
+            int offset = latencies.length;
+            latencies = Arrays.copyOf(latencies, offset + worker.count);
+            System.arraycopy(worker.latencies, 0, latencies, offset, worker.count);
+            errors += worker.errors;
+        }
+
+        Arrays.sort(latencies);
+        return new LoadReport(latencies, errors, elapsedNanos, allocated);
+    }
+
+    /**
+     * @param before the allocations when the run started, may be <code>null</code>.
+     * @return the bytes allocated by every thread since, or -1 if the JVM cannot tell.
+     */
+    private static long allocatedSince(Map<Long, Long> before) {
+        Map<Long, Long> after = allocatedBytesByThread();
+
+        if (before == null || after == null) {
+            return -1;
+        }
+
+        long allocated = 0;
+
+        for (Map.Entry<Long, Long> thread : after.entrySet()) {
+            Long start = before.get(thread.getKey());
+            allocated += thread.getValue() - (start != null ? start : 0);
+        }
+
+        return allocated;
+    }
+
+    /**
+     * @return the bytes allocated so far by each live thread, by thread id, or <code>null</code>
+     *          if the JVM cannot tell.
+     */
+    private static Map<Long, Long> allocatedBytesByThread() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+
+        com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+
+        if (!hotspot.isThreadAllocatedMemorySupported()
+                || !hotspot.isThreadAllocatedMemoryEnabled()) {
+            return null;
+        }
+
+        long[] ids = hotspot.getAllThreadIds();
+        long[] bytes = hotspot.getThreadAllocatedBytes(ids);
+        Map<Long, Long> allocated = new HashMap<>();
+
+        for (int i = 0; i < ids.length; i++) {
+            // -1 for a thread that ended in between.
+            if (bytes[i] >= 0) {
+                allocated.put(ids[i], bytes[i]);
+            }
+        }
+
+        return allocated;
+    }
+
+    /**
+     * One caller thread, recording the latency of each of its calls.
+     */
+    private abstract static class Caller implements Runnable {
+        long[] latencies;
+        int count;
+        long errors;
+
+        Caller(int expectedCalls) {
+            latencies = new long[expectedCalls];
+        }
+
+        void record(long latencyNanos, boolean succeeded) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+
+            latencies[count++] = latencyNanos;
+
+            if (!succeeded) {
+                errors++;
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.blockstack.client;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The LoadReport <code>class</code> holds the results of a {@link LoadGenerator} run.
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class LoadReport {
+    private final long[] sortedLatencyNanos;
+    private final long errorCount;
+    private final long elapsedNanos;
+    private final long allocatedBytes;
+
+    LoadReport(long[] sortedLatencyNanos, long errorCount, long elapsedNanos,
+               long allocatedBytes) {
+        this.sortedLatencyNanos = sortedLatencyNanos;
+        this.errorCount = errorCount;
+        this.elapsedNanos = elapsedNanos;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    public long getCallCount() {
+        return sortedLatencyNanos.length;
+    }
+
+    /**
+     * @return the number of calls that failed or threw.
+     */
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * @return the calls completed per second over the whole run.
+     */
+    public double getThroughput() {
+        return elapsedNanos > 0 ? getCallCount() * 1e9 / elapsedNanos : 0;
+    }
+
+    /**
+     * Returns a latency percentile, measured from the time each call was scheduled.
+     *
+     * @param percentile the percentile, from 0 to 100.
+     * @param unit the unit to return the latency in.
+     * @return the latency, or 0 if no call was made.
+     */
+    public long getLatency(double percentile, TimeUnit unit) {
+        if (sortedLatencyNanos.length == 0) {
+            return 0;
+        }
+
+        int index = (int) Math.ceil(percentile / 100 * sortedLatencyNanos.length) - 1;
+        index = Math.max(0, Math.min(sortedLatencyNanos.length - 1, index));
+        return unit.convert(sortedLatencyNanos[index], TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the bytes allocated by the process per call, or -1 if the JVM cannot tell.
+     */
+    public long getAllocatedBytesPerCall() {
+        if (allocatedBytes < 0 || sortedLatencyNanos.length == 0) {
+            return -1;
+        }
+
+        return allocatedBytes / sortedLatencyNanos.length;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "%d calls, %d errors, %.1f calls/s, p50=%dus p90=%dus p99=%dus max=%dus, %d B/call",
+                getCallCount(), getErrorCount(), getThroughput(),
+                getLatency(50, TimeUnit.MICROSECONDS), getLatency(90, TimeUnit.MICROSECONDS),
+                getLatency(99, TimeUnit.MICROSECONDS), getLatency(100, TimeUnit.MICROSECONDS),
+                getAllocatedBytesPerCall());
+    }
+}
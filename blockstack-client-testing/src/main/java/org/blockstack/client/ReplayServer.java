@@ -0,0 +1,492 @@
+package org.blockstack.client;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The ReplayServer <code>class</code> is an embeddable, offline blockstack-server stand-in. It
+ * answers requests for <code>/users</code>, <code>/search</code>, <code>/addresses</code>,
+ * <code>/transactions</code>, <code>/domains</code> or any other path with recorded responses,
+ * so the client can be load tested without touching the real hosts.
+ * <p>
+ * Responses are matched by method and path, query included. A recorded method of
+ * <code>*</code> matches every method, and a recorded path ending with <code>*</code> matches
+ * every path starting with the rest of it; the longest match wins, and an exact method wins
+ * over <code>*</code>.
+ * Unmatched requests get a <code>404</code>, unless an upstream server is set: they are then
+ * forwarded to it and the answer is recorded, so a session can be captured once with
+ * {@link #saveRecordings(Writer)} and replayed offline with {@link #loadRecordings(Reader)}.
+ * <p>
+ * Latency and failures can be injected: every answer is delayed by a base latency plus random
+ * jitter, and a share of the requests is failed with an error status or a dropped connection.
+ * Answers can also carry an <code>ETag</code>, honoring <code>If-None-Match</code>, and be
+ * compressed for clients accepting it.
+ *
+ * <pre>
+ * ReplayServer server = new ReplayServer();
+ * server.record("GET", "/v1/users/*", 200, lookupJson);
+ * server.setLatency(20, 10);
+ * server.setErrorRate(0.01, 503);
+ * server.start();
+ *
+ * Blockstack blockstack = new Blockstack(appId, appSecret, new Endpoints(server.getBaseUrl()));
+ * </pre>
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class ReplayServer {
+    static {
+        // Without this the JDK server's Nagle delay dominates every measured round trip.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private static final String WILDCARD = "*";
+    private static final byte[] NO_BODY = new byte[0];
+
+    private final Map<String, Recording> recordings = new LinkedHashMap<>();
+    private final Random random = new Random();
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong injectedErrorCount = new AtomicLong();
+    private final AtomicLong unmatchedCount = new AtomicLong();
+
+    private volatile long latencyMillis;
+    private volatile long jitterMillis;
+    private volatile double errorRate;
+    private volatile int errorStatus = 503;
+    private volatile double dropRate;
+    private volatile String upstreamBaseUrl;
+    private volatile String etag;
+    private volatile String contentEncoding;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    // region Recordings
+    /**
+     * Records a response.
+     *
+     * @param method the request method, e.g. <code>"GET"</code>, or <code>*</code> for any.
+     * @param path the request path and query, e.g. <code>"/v1/users/alice"</code>, or a prefix
+     *             followed by <code>*</code>.
+     * @param status the status code to answer with.
+     * @param body the JSON body to answer with.
+     */
+    public void record(String method, String path, int status, String body) {
+        synchronized (recordings) {
+            recordings.put(key(method, path), new Recording(method, path, status, body));
+        }
+    }
+
+    /**
+     * Loads recordings saved by {@link #saveRecordings(Writer)}: one JSON object per line with
+     * <code>method</code>, <code>path</code>, <code>status</code> and <code>body</code> fields.
+     *
+     * @param reader the recordings.
+     * @throws IOException if they cannot be read or parsed.
+     */
+    public void loadRecordings(Reader reader) throws IOException {
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+
+        while ((line = lines.readLine()) != null) {
+            if (line.trim().length() == 0) {
+                continue;
+            }
+
+            try {
+                JSONObject json = new JSONObject(line);
+                record(json.getString("method"), json.getString("path"), json.getInt("status"),
+                        json.getString("body"));
+            } catch (JSONException e) {
+                throw new IOException("Malformed recording: " + line, e);
+            }
+        }
+    }
+
+    /**
+     * Writes every recording, one JSON object per line.
+     *
+     * @param writer where to write them.
+     * @throws IOException if they cannot be written.
+     */
+    public void saveRecordings(Writer writer) throws IOException {
+        List<Recording> snapshot;
+
+        synchronized (recordings) {
+            snapshot = new ArrayList<>(recordings.values());
+        }
+
+        try {
+            for (Recording recording : snapshot) {
+                JSONObject json = new JSONObject();
+                json.put("method", recording.method);
+                json.put("path", recording.path);
+                json.put("status", recording.status);
+                json.put("body", new String(recording.body, "UTF-8"));
+                writer.write(json.toString());
+                writer.write('\n');
+            }
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+
+        writer.flush();
+    }
+
+    /**
+     * Forwards unmatched requests to a real server and records its answers.
+     *
+     * @param upstreamBaseUrl the server the base URL stands in for, e.g.
+     *                        <code>"https://api.onename.com"</code>, or <code>null</code> to
+     *                        answer unmatched requests with a <code>404</code>.
+     */
+    public void setUpstream(String upstreamBaseUrl) {
+        this.upstreamBaseUrl = upstreamBaseUrl;
+    }
+
+    /**
+     * Tags every recorded answer, which is then sent as <code>304 Not Modified</code> to
+     * requests already holding the tag.
+     *
+     * @param etag the <code>ETag</code> header, or <code>null</code> for none.
+     */
+    public void setEtag(String etag) {
+        this.etag = etag;
+    }
+
+    /**
+     * Compresses recorded answers for clients accepting it.
+     *
+     * @param contentEncoding <code>"gzip"</code> or <code>"deflate"</code>, or
+     *                        <code>null</code> to answer uncompressed.
+     */
+    public void setContentEncoding(String contentEncoding) {
+        this.contentEncoding = contentEncoding;
+    }
+    // endregion
+
+    // region Fault injection
+    /**
+     * Delays every answer.
+     *
+     * @param latencyMillis the base delay.
+     * @param jitterMillis the most random delay added to it.
+     */
+    public void setLatency(long latencyMillis, long jitterMillis) {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+    }
+
+    /**
+     * Fails a share of the requests with an error status.
+     *
+     * @param errorRate the share of requests to fail, from 0 to 1.
+     * @param errorStatus the status to answer them with, e.g. 503 or 429.
+     */
+    public void setErrorRate(double errorRate, int errorStatus) {
+        this.errorRate = errorRate;
+        this.errorStatus = errorStatus;
+    }
+
+    /**
+     * Closes the connection without answering a share of the requests.
+     *
+     * @param dropRate the share of requests to drop, from 0 to 1.
+     */
+    public void setDropRate(double dropRate) {
+        this.dropRate = dropRate;
+    }
+
+    /**
+     * Seeds the random latency and failures, so a run can be repeated.
+     *
+     * @param seed the seed.
+     */
+    public void setSeed(long seed) {
+        synchronized (random) {
+            random.setSeed(seed);
+        }
+    }
+    // endregion
+
+    // region Lifecycle
+    /**
+     * Starts answering on a free local port.
+     *
+     * @throws IOException if the server cannot be started.
+     */
+    public synchronized void start() throws IOException {
+        if (server != null) {
+            return;
+        }
+
+        executor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new ReplayHandler());
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * @return the base URL to hand to {@link Endpoints}, e.g.
+     *          <code>"http://127.0.0.1:52100/v1"</code>.
+     */
+    public synchronized String getBaseUrl() {
+        if (server == null) {
+            throw new IllegalStateException("Not started");
+        }
+
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1";
+    }
+
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+    // endregion
+
+    // region Statistics
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return the number of requests failed or dropped on purpose.
+     */
+    public long getInjectedErrorCount() {
+        return injectedErrorCount.get();
+    }
+
+    /**
+     * @return the number of requests without a recording.
+     */
+    public long getUnmatchedCount() {
+        return unmatchedCount.get();
+    }
+    // endregion
+
+    private Recording find(String method, String path) {
+        synchronized (recordings) {
+            Recording exact = recordings.get(key(method, path));
+
+            if (exact == null) {
+                exact = recordings.get(key(WILDCARD, path));
+            }
+
+            if (exact != null) {
+                return exact;
+            }
+
+            Recording longest = null;
+
+            for (Recording recording : recordings.values()) {
+                if (recording.matches(method, path) && (longest == null
+                        || recording.path.length() > longest.path.length()
+                        || recording.path.length() == longest.path.length()
+                                && WILDCARD.equals(longest.method))) {
+                    longest = recording;
+                }
+            }
+
+            return longest;
+        }
+    }
+
+    private Recording fetchUpstream(String upstream, HttpExchange exchange, byte[] requestBody)
+            throws IOException {
+        String path = exchange.getRequestURI().toString();
+        HttpURLConnection connection =
+                (HttpURLConnection) new URL(upstream + path).openConnection();
+        connection.setRequestMethod(exchange.getRequestMethod());
+
+        if (requestBody.length > 0) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type",
+                    exchange.getRequestHeaders().getFirst("Content-Type"));
+            OutputStream out = connection.getOutputStream();
+            out.write(requestBody);
+            out.close();
+        }
+
+        int status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        String body = in != null ? new String(readAll(in), "UTF-8") : "";
+        connection.disconnect();
+
+        record(exchange.getRequestMethod(), path, status, body);
+        return find(exchange.getRequestMethod(), path);
+    }
+
+    private double nextDouble() {
+        synchronized (random) {
+            return random.nextDouble();
+        }
+    }
+
+    private static byte[] compress(byte[] bytes, String encoding) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        OutputStream compressor = "gzip".equals(encoding)
+                ? new GZIPOutputStream(buffer) : new DeflaterOutputStream(buffer);
+        compressor.write(bytes);
+        compressor.close();
+        return buffer.toByteArray();
+    }
+
+    private static String key(String method, String path) {
+        return method.toUpperCase(Locale.US) + " " + path;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int read;
+
+        while ((read = in.read(chunk)) != -1) {
+            buffer.write(chunk, 0, read);
+        }
+
+        in.close();
+        return buffer.toByteArray();
+    }
+
+    private class ReplayHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            requestCount.incrementAndGet();
+            byte[] requestBody = readAll(exchange.getRequestBody());
+            long delay = latencyMillis + (long) (nextDouble() * jitterMillis);
+
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    exchange.close();
+                    return;
+                }
+            }
+
+            if (nextDouble() < dropRate) {
+                injectedErrorCount.incrementAndGet();
+                exchange.close();
+                return;
+            }
+
+            if (nextDouble() < errorRate) {
+                injectedErrorCount.incrementAndGet();
+                if (errorStatus == 429) {
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                }
+
+                send(exchange, errorStatus,
+                        "{\"error\": \"Injected failure\"}".getBytes("UTF-8"));
+                return;
+            }
+
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().toString();
+            Recording recording = find(method, path);
+            String upstream = upstreamBaseUrl;
+
+            if (recording == null && upstream != null) {
+                recording = fetchUpstream(upstream, exchange, requestBody);
+            }
+
+            if (recording == null) {
+                unmatchedCount.incrementAndGet();
+                send(exchange, 404, "{\"error\": \"Not recorded\"}".getBytes("UTF-8"));
+                return;
+            }
+
+            String tag = etag;
+
+            if (tag != null) {
+                exchange.getResponseHeaders().set("ETag", tag);
+
+                if (tag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    send(exchange, 304, NO_BODY);
+                    return;
+                }
+            }
+
+            byte[] body = recording.body;
+            String encoding = contentEncoding;
+            String accepted = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+
+            if (encoding != null && accepted != null && accepted.contains(encoding)) {
+                body = compress(body, encoding);
+                exchange.getResponseHeaders().set("Content-Encoding", encoding);
+            }
+
+            send(exchange, recording.status, body);
+        }
+
+        private void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+
+            OutputStream responseBody = exchange.getResponseBody();
+            responseBody.write(body);
+            responseBody.close();
+        }
+    }
+
+    /**
+     * A recorded response.
+     */
+    private static class Recording {
+        final String method;
+        final String path;
+        final int status;
+        final byte[] body;
+
+        Recording(String method, String path, int status, String body) {
+            this.method = method.toUpperCase(Locale.US);
+            this.path = path;
+            this.status = status;
+
+            try {
+                this.body = body.getBytes("UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new AssertionError(e);
+            }
+        }
+
+        boolean matches(String method, String path) {
+            return (WILDCARD.equals(this.method) || this.method.equalsIgnoreCase(method))
+                    && this.path.endsWith(WILDCARD)
+                    && path.startsWith(this.path.substring(0, this.path.length() - 1));
+        }
+    }
+}
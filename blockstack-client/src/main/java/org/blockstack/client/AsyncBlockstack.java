@@ -0,0 +1,337 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The AsyncBlockstack <code>class</code> exposes the {@link Blockstack} operations as
+ * non-blocking calls. Every call returns a {@link BlockstackFuture} and can optionally notify a
+ * {@link Callback}. Calls run on a bounded executor, so any number of requests can be queued
+ * while only a fixed number of threads wait on the network.
+ *
+ * <pre>
+ * AsyncBlockstack async = new AsyncBlockstack(blockstack, 4);
+ * async.withTimeout(10, TimeUnit.SECONDS).lookupUsers(new String[] {"itsProf"}, callback);
+ * </pre>
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class AsyncBlockstack {
+    public static final int DEFAULT_THREADS = 4;
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private final Blockstack blockstack;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService timer;
+    private final Executor callbackExecutor;
+    private final long timeoutMillis;
+    private final boolean ownsExecutor;
+
+    /**
+     * Creates an asynchronous client backed by {@value #DEFAULT_THREADS} worker threads.
+     *
+     * @param blockstack the synchronous client to delegate to.
+     */
+    public AsyncBlockstack(@NonNull Blockstack blockstack) {
+        this(blockstack, DEFAULT_THREADS);
+    }
+
+    /**
+     * Creates an asynchronous client backed by its own bounded thread pool.
+     *
+     * @param blockstack the synchronous client to delegate to.
+     * @param threads the maximum number of calls running at the same time.
+     */
+    public AsyncBlockstack(@NonNull Blockstack blockstack, int threads) {
+        this(blockstack, newBoundedExecutor(threads, DEFAULT_QUEUE_CAPACITY), null, true);
+    }
+
+    /**
+     * Creates an asynchronous client running its calls on the given executor.
+     *
+     * @param blockstack the synchronous client to delegate to.
+     * @param executor runs the calls; it is not shut down by {@link #shutdown()}.
+     * @param callbackExecutor runs the callbacks, e.g. one posting to the main thread. May be
+     *                         <code>null</code> to run callbacks on the worker thread.
+     */
+    public AsyncBlockstack(@NonNull Blockstack blockstack, @NonNull ExecutorService executor,
+                           Executor callbackExecutor) {
+        this(blockstack, executor, callbackExecutor, false);
+    }
+
+    private AsyncBlockstack(Blockstack blockstack, ExecutorService executor,
+                            Executor callbackExecutor, boolean ownsExecutor) {
+        this(blockstack, executor, newTimer(), callbackExecutor, 0, ownsExecutor);
+    }
+
+    private AsyncBlockstack(Blockstack blockstack, ExecutorService executor,
+                            ScheduledExecutorService timer, Executor callbackExecutor,
+                            long timeoutMillis, boolean ownsExecutor) {
+        this.blockstack = blockstack;
+        this.executor = executor;
+        this.timer = timer;
+        this.callbackExecutor = callbackExecutor;
+        this.timeoutMillis = timeoutMillis;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    /**
+     * Returns a view of this client whose calls fail with a
+     * {@link java.util.concurrent.TimeoutException} if they take longer than the given time.
+     * The view shares this client's executor.
+     *
+     * @param timeout the timeout, or 0 for none.
+     * @param unit the timeout unit.
+     * @return an <code>AsyncBlockstack</code> applying the timeout to every call.
+     */
+    public AsyncBlockstack withTimeout(long timeout, @NonNull TimeUnit unit) {
+        return new AsyncBlockstack(blockstack, executor, timer, callbackExecutor,
+                unit.toMillis(timeout), false);
+    }
+
+    // region User operations
+    /**
+     * @see Blockstack#lookupUsers(String[])
+     */
+    public BlockstackFuture<String> lookupUsers(@NonNull String[] usernames) {
+        return lookupUsers(usernames, null);
+    }
+
+    /**
+     * @see Blockstack#lookupUsers(String[])
+     */
+    public BlockstackFuture<String> lookupUsers(@NonNull final String[] usernames,
+                                                Callback<String> callback) {
+        return submit(new BlockstackCall<String>() {
+            @Override
+            String invoke(Blockstack blockstack) {
+                return blockstack.lookupUsers(usernames);
+            }
+        }, callback);
+    }
+
+    /**
+     * @see Blockstack#searchUsers(String)
+     */
+    public BlockstackFuture<String> searchUsers(@NonNull String query) {
+        return searchUsers(query, null);
+    }
+
+    /**
+     * @see Blockstack#searchUsers(String)
+     */
+    public BlockstackFuture<String> searchUsers(@NonNull final String query,
+                                                Callback<String> callback) {
+        return submit(new BlockstackCall<String>() {
+            @Override
+            String invoke(Blockstack blockstack) {
+                return blockstack.searchUsers(query);
+            }
+        }, callback);
+    }
+
+    /**
+     * @see Blockstack#searchUserProfiles(String)
+     */
+    public BlockstackFuture<SearchResult> searchUserProfiles(@NonNull final String query,
+                                                             Callback<SearchResult> callback) {
+        return submit(new BlockstackCall<SearchResult>() {
+            @Override
+            SearchResult invoke(Blockstack blockstack) {
+                return blockstack.searchUserProfiles(query);
+            }
+        }, callback);
+    }
+
+    /**
+     * @see Blockstack#registerUser(String, String, JSONObject)
+     */
+    public BlockstackFuture<String> registerUser(@NonNull final String username,
+                                                 @NonNull final String recipientAddress,
+                                                 final JSONObject profileData,
+                                                 Callback<String> callback) {
+        return submit(new BlockstackCall<String>() {
+            @Override
+            String invoke(Blockstack blockstack) {
+                return blockstack.registerUser(username, recipientAddress, profileData);
+            }
+        }, callback);
+    }
+
+    /**
+     * @see Blockstack#updateUser(String, JSONObject, String)
+     */
+    public BlockstackFuture<String> updateUser(@NonNull final String username,
+                                               @NonNull final JSONObject profileData,
+                                               @NonNull final String ownerPublicKey,
+                                               Callback<String> callback) {
+        return submit(new BlockstackCall<String>() {
+            @Override
+            String invoke(Blockstack blockstack) {
+                return blockstack.updateUser(username, profileData, ownerPublicKey);
+            }
+        }, callback);
+    }
+
+    /**
+     * @see Blockstack#transferUser(String, String, String)
+     */
+    public BlockstackFuture<String> transferUser(@NonNull final String username,
+                                                 @NonNull final String transferAddress,
+                                                 @NonNull final String ownerPublicKey,
+                                                 Callback<String> callback) {
+        return submit(new BlockstackCall<String>() {
+            @Override
+            String invoke(Blockstack blockstack) {
+                return blockstack.transferUser(username, transferAddress, ownerPublicKey);
+            }
+        }, callback);
+    }
+    // endregion
+
+    // region Transaction operations
+    /**
+     * @see Blockstack#broadcastTransaction(String)
+     */
+    public BlockstackFuture<String> broadcastTransaction(@NonNull final String signedTransaction,
+                                                         Callback<String> callback) {
+        return submit(new BlockstackCall<String>() {
+            @Override
+            String invoke(Blockstack blockstack) {
+                return blockstack.broadcastTransaction(signedTransaction);
+            }
+        }, callback);
+    }
+    // endregion
+
+    // region Address operations
+    /**
+     * @see Blockstack#getUnspentOutputs(String)
+     */
+    public BlockstackFuture<String> getUnspentOutputs(@NonNull final String address,
+                                                      Callback<String> callback) {
+        return submit(new BlockstackCall<String>() {
+            @Override
+            String invoke(Blockstack blockstack) {
+                return blockstack.getUnspentOutputs(address);
+            }
+        }, callback);
+    }
+
+    /**
+     * @see Blockstack#getNamesOwnedByAddress(String)
+     */
+    public BlockstackFuture<String> getNamesOwnedByAddress(@NonNull final String address,
+                                                           Callback<String> callback) {
+        return submit(new BlockstackCall<String>() {
+            @Override
+            String invoke(Blockstack blockstack) {
+                return blockstack.getNamesOwnedByAddress(address);
+            }
+        }, callback);
+    }
+    // endregion
+
+    // region Domain operations
+    /**
+     * @see Blockstack#getDkimPublicKey(String)
+     */
+    public BlockstackFuture<String> getDkimPublicKey(@NonNull final String domain,
+                                                     Callback<String> callback) {
+        return submit(new BlockstackCall<String>() {
+            @Override
+            String invoke(Blockstack blockstack) {
+                return blockstack.getDkimPublicKey(domain);
+            }
+        }, callback);
+    }
+    // endregion
+
+    // region Execution
+    /**
+     * Runs an arbitrary call on this client's executor, applying its timeout.
+     *
+     * @param callable the call to run.
+     * @param callback notified on completion, may be <code>null</code>.
+     * @param <T> the result type.
+     * @return the pending result.
+     */
+    public <T> BlockstackFuture<T> submit(@NonNull Callable<T> callable, Callback<T> callback) {
+        final BlockstackFuture<T> future =
+                new BlockstackFuture<>(callable, callback, callbackExecutor);
+
+        try {
+            executor.execute(future);
+        } catch (RejectedExecutionException e) {
+            future.cancel(false);
+            throw e;
+        }
+
+        if (timeoutMillis > 0) {
+            future.scheduleTimeout(timer, timeoutMillis);
+        }
+
+        return future;
+    }
+
+    /**
+     * Stops accepting new calls. Calls already queued still run, unless the executor was
+     * supplied by the caller, in which case it is left untouched.
+     */
+    public void shutdown() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+
+        timer.shutdown();
+    }
+
+    /**
+     * Adapts a {@link Blockstack} method, which reports failures as <code>null</code>, into a
+     * call that fails with an <code>IOException</code>.
+     */
+    private abstract class BlockstackCall<T> implements Callable<T> {
+        abstract T invoke(Blockstack blockstack);
+
+        @Override
+        public T call() throws IOException {
+            T response = invoke(blockstack);
+
+            if (response == null) {
+                throw new IOException("blockstack-server request failed");
+            }
+
+            return response;
+        }
+    }
+
+    private static ExecutorService newBoundedExecutor(int threads, int queueCapacity) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads < 1");
+        }
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60,
+                TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity),
+                new NamedThreadFactory("worker"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static ScheduledExecutorService newTimer() {
+        return Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("timer"));
+    }
+    // endregion
+}
@@ -1,64 +1,855 @@
 package org.blockstack.client;
 
 import android.support.annotation.NonNull;
-import android.text.TextUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.ProtocolException;
-import java.net.URL;
 import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The Blockstack <code>class</code> provides Android apps with methods to interact
  * with the blockstack-server.
+ * <p>
+ * A client is safe to share between threads and is meant to be shared: build one per app with
+ * a {@link Builder} and hand it to every screen and background task. It owns its transport and
+ * connection pool, the executor behind {@link #async()}, and the caches and schedulers
+ * installed on it; {@link #close()} releases them all. Requests only read volatile fields and
+ * concurrent maps on the way to the transport, so threads calling the same client do not queue
+ * behind each other.
+ *
+ * <pre>
+ * Blockstack blockstack = new Blockstack.Builder(appId, appSecret)
+ *         .profileCache(new ProfileCache())
+ *         .timeouts(10, 20, TimeUnit.SECONDS)
+ *         .build();
+ * </pre>
  *
  * @author  Jorge Tapia (@itsProf)
  * @version 1.0
  * @see <a href="http://blockstack.org">Blockstack Website</a>
  */
-public class Blockstack {
+public class Blockstack implements Closeable {
     private static final String TAG = Blockstack.class.getSimpleName();
-    private String appId;
-    private String appSecret;
+    private static final int HTTP_NOT_MODIFIED = 304;
+    private static final ResponseHandler<String> STRING_HANDLER = new ResponseHandler<String>() {
+        @Override
+        public String handle(@NonNull Response response) throws IOException {
+            return readBody(response);
+        }
+    };
+    private static final JsonTemplate REGISTER_BODY = new JsonTemplate()
+            .string("username").string("recipient_address").raw("profile");
+    private static final JsonTemplate UPDATE_BODY = new JsonTemplate()
+            .raw("profile").string("owner_pubkey");
+    private static final JsonTemplate TRANSFER_BODY = new JsonTemplate()
+            .string("transfer_address").string("owner_pubkey");
+    private static final JsonTemplate BROADCAST_BODY = new JsonTemplate().string("signed_hex");
+    private final String appId;
+    private final String appSecret;
+    private final Transport transport;
+    private final Endpoints endpoints;
+    private final RateLimiter rateLimiter;
+    private volatile ProfileCache profileCache;
+    private volatile DiskProfileCache diskCache;
+    private volatile MetricsListener metricsListener = MetricsListener.NONE;
+    private volatile NameOwnershipIndex nameIndex;
+    private volatile ProfileSyncScheduler syncScheduler;
+    private volatile DkimKeyResolver dkimKeyResolver;
+    private volatile SingleFlight singleFlight = new SingleFlight();
+    private volatile AsyncBlockstack async;
+    private volatile boolean closed;
+    private volatile int asyncThreads = AsyncBlockstack.DEFAULT_THREADS;
 
     /**
-     * Instantiates the Blockstack client for Android.
+     * Instantiates the Blockstack client for Android. Requests go through a
+     * {@link ResilientTransport}, which retries idempotent calls and fails fast while the
+     * server is down.
      *
      * @param appId app id obtained from <a href="https://api.onename.com">Onename API</a>.
      * @param appSecret app secret obtained from <a href="https://api.onename.com">Onename API</a>.
      */
     public Blockstack(@NonNull String appId, @NonNull String appSecret) {
+        this(appId, appSecret, Endpoints.getDefault());
+    }
+
+    /**
+     * Instantiates the Blockstack client for Android against your own blockstack-server
+     * nodes. With more than one node, requests are spread over them by a
+     * {@link LoadBalancingTransport}.
+     *
+     * @param appId app id obtained from <a href="https://api.onename.com">Onename API</a>.
+     * @param appSecret app secret obtained from <a href="https://api.onename.com">Onename API</a>.
+     * @param endpoints the blockstack-server nodes to use.
+     */
+    public Blockstack(@NonNull String appId, @NonNull String appSecret,
+                      @NonNull Endpoints endpoints) {
+        this(appId, appSecret, endpoints, RateLimiter.retain(appId));
+    }
+
+    private Blockstack(@NonNull String appId, @NonNull String appSecret,
+                       @NonNull Endpoints endpoints, @NonNull RateLimiter rateLimiter) {
+        this(appId, appSecret, newDefaultTransport(rateLimiter, endpoints), endpoints,
+                rateLimiter);
+    }
+
+    /**
+     * Instantiates the Blockstack client for Android with a custom HTTP transport.
+     *
+     * @param appId app id obtained from <a href="https://api.onename.com">Onename API</a>.
+     * @param appSecret app secret obtained from <a href="https://api.onename.com">Onename API</a>.
+     * @param transport the {@link Transport} used to reach the blockstack-server.
+     */
+    public Blockstack(@NonNull String appId, @NonNull String appSecret,
+                      @NonNull Transport transport) {
+        this(appId, appSecret, transport, Endpoints.getDefault());
+    }
+
+    /**
+     * Instantiates the Blockstack client for Android with a custom HTTP transport and
+     * blockstack-server nodes.
+     *
+     * @param appId app id obtained from <a href="https://api.onename.com">Onename API</a>.
+     * @param appSecret app secret obtained from <a href="https://api.onename.com">Onename API</a>.
+     * @param transport the {@link Transport} used to reach the blockstack-server.
+     * @param endpoints the endpoints request URLs are built against.
+     */
+    public Blockstack(@NonNull String appId, @NonNull String appSecret,
+                      @NonNull Transport transport, @NonNull Endpoints endpoints) {
+        this(appId, appSecret, transport, endpoints, RateLimiter.retain(appId));
+    }
+
+    private Blockstack(@NonNull String appId, @NonNull String appSecret,
+                       @NonNull Transport transport, @NonNull Endpoints endpoints,
+                       @NonNull RateLimiter rateLimiter) {
         this.appId = appId;
         this.appSecret = appSecret;
+        this.transport = transport;
+        this.endpoints = endpoints;
+        this.rateLimiter = rateLimiter;
+    }
+
+    public Endpoints getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * Returns the limiter keeping clients with this app id under their request quota. It does
+     * not limit the rate until you set one matching your API plan. It applies to clients using
+     * the default transport; wrap a custom transport in a {@link RateLimitingTransport} to use it
+     * there too.
+     *
+     * @return the rate limiter shared by the open clients using this app id.
+     */
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Sets the cache used by {@link #lookupUsers(String[])}. Cached users are answered without
+     * contacting the server.
+     *
+     * @param profileCache the cache to use, or <code>null</code> to disable caching.
+     */
+    public void setProfileCache(ProfileCache profileCache) {
+        this.profileCache = profileCache;
+    }
+
+    public ProfileCache getProfileCache() {
+        return profileCache;
+    }
+
+    /**
+     * Sets the persistent cache used by {@link #lookupUsers(String[])} behind the
+     * {@link ProfileCache}, so lookups survive process restarts.
+     *
+     * @param diskCache the cache to use, or <code>null</code> to disable it.
+     */
+    public void setDiskCache(DiskProfileCache diskCache) {
+        this.diskCache = diskCache;
+    }
+
+    public DiskProfileCache getDiskCache() {
+        return diskCache;
+    }
+
+    /**
+     * Sets the listener receiving the {@link RequestMetrics} of every request, e.g. a
+     * {@link MetricsRegistry}. Requests are only measured while a listener other than
+     * {@link MetricsListener#NONE} is installed.
+     *
+     * @param metricsListener the listener, or <code>null</code> to stop measuring.
+     */
+    public void setMetricsListener(MetricsListener metricsListener) {
+        this.metricsListener = metricsListener != null ? metricsListener : MetricsListener.NONE;
+    }
+
+    public MetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * Sets the index recording the names returned by {@link #getOwnedNames(String)} and the
+     * owners of the users returned by {@link #lookupUserProfiles(String[])}.
+     *
+     * @param nameIndex the index to fill, or <code>null</code> to stop recording.
+     */
+    public void setNameIndex(NameOwnershipIndex nameIndex) {
+        this.nameIndex = nameIndex;
+    }
+
+    public NameOwnershipIndex getNameIndex() {
+        return nameIndex;
+    }
+
+    /**
+     * Sets the scheduler keeping followed profiles fresh. It is told about every user looked up
+     * through the caches and every user stored in them.
+     *
+     * @param syncScheduler the scheduler to inform, or <code>null</code> to stop.
+     */
+    public void setSyncScheduler(ProfileSyncScheduler syncScheduler) {
+        this.syncScheduler = syncScheduler;
+    }
+
+    public ProfileSyncScheduler getSyncScheduler() {
+        return syncScheduler;
+    }
+
+    /**
+     * Sets the resolver caching the keys returned by {@link #getDkimKey(String)}.
+     *
+     * @param dkimKeyResolver the resolver to go through, or <code>null</code> to always ask the
+     *                        server.
+     */
+    public void setDkimKeyResolver(DkimKeyResolver dkimKeyResolver) {
+        this.dkimKeyResolver = dkimKeyResolver;
+    }
+
+    public DkimKeyResolver getDkimKeyResolver() {
+        return dkimKeyResolver;
+    }
+
+    /**
+     * Enables or disables request coalescing, which is on by default. While it is on, identical
+     * GET requests made at the same time, e.g. by several screens looking up the same user at
+     * app start, share a single network call and its decoded result.
+     *
+     * @param coalescing <code>true</code> to coalesce identical concurrent requests.
+     */
+    public synchronized void setRequestCoalescing(boolean coalescing) {
+        if (coalescing && singleFlight == null && !closed) {
+            singleFlight = new SingleFlight();
+        } else if (!coalescing) {
+            singleFlight = null;
+        }
+    }
+
+    public boolean isRequestCoalescing() {
+        return singleFlight != null;
+    }
+
+    /**
+     * Returns the asynchronous view of this client, created on first use with the number of
+     * threads given to {@link Builder#asyncThreads(int)}. It is shared by every caller and shut
+     * down by {@link #close()}, so callers must not shut it down themselves.
+     *
+     * @return the asynchronous client.
+     * @throws IllegalStateException if this client is closed.
+     */
+    public AsyncBlockstack async() {
+        if (closed) {
+            throw new IllegalStateException("Client is closed");
+        }
+
+        AsyncBlockstack current = async;
+
+        if (current == null) {
+            synchronized (this) {
+                if (closed) {
+                    throw new IllegalStateException("Client is closed");
+                }
+
+                if (async == null) {
+                    async = new AsyncBlockstack(this, asyncThreads);
+                }
+
+                current = async;
+            }
+        }
+
+        return current;
     }
 
+    // region Lifecycle
+    /**
+     * Closes this client. Later calls fail, returning <code>null</code> or <code>false</code>
+     * like any failed request, and calls in progress fail once they reach the transport again.
+     * Closing shuts down the transport, the asynchronous executor, the DKIM key resolver, sync
+     * scheduler and name index refreshes, and closes the disk cache. The memory cache is simply
+     * dropped with the client, and the rate limiter once no open client shares it. Closing twice
+     * does nothing.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        if (async != null) {
+            async.shutdown();
+        }
+
+        singleFlight = null;
+
+        DkimKeyResolver resolver = dkimKeyResolver;
+        if (resolver != null) {
+            resolver.shutdown();
+        }
+
+        ProfileSyncScheduler scheduler = syncScheduler;
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+
+        NameOwnershipIndex index = nameIndex;
+        if (index != null) {
+            index.shutdown();
+        }
+
+        DiskProfileCache disk = diskCache;
+        if (disk != null) {
+            try {
+                disk.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        transport.shutdown();
+        RateLimiter.release(appId, rateLimiter);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+    // endregion
+
     // region User operations
     /**
-     * Looks up the data for one or more users by their usernames.
+     * Looks up the data for one or more users by their usernames. Users held by the
+     * {@link ProfileCache} or, failing that, fresh in the {@link DiskProfileCache} are answered
+     * without contacting the server. Stale disk entries are revalidated with a conditional
+     * request when a single user is missing, and served as they are if the server cannot be
+     * reached.
      *
      * @param usernames the usernames(s) to look up.
      * @return a Blockstack server response as a JSON <code>String</code>.
      */
     public String lookupUsers(@NonNull String[] usernames) {
+        if (closed) {
+            return null;
+        }
+
+        if (profileCache == null && diskCache == null) {
+            return fetchUsers(usernames);
+        }
+
+        StringBuilder result = new StringBuilder("{");
+        List<String> misses = new ArrayList<>();
+        Map<String, DiskProfileCache.Entry> stale = new HashMap<>();
+
+        // A repeated username would repeat its key, which JSON parsers reject.
+        for (String key : distinct(usernames)) {
+            String cached = cachedUser(key, stale);
+
+            if (cached != null) {
+                appendUser(result, key, cached);
+            } else {
+                misses.add(key);
+            }
+        }
+
+        if (!misses.isEmpty()) {
+            Map<String, String> fetched;
+
+            try {
+                fetched = misses.size() == 1
+                        ? fetchUser(misses.get(0), stale.get(misses.get(0)))
+                        : fetchAndStoreUsers(misses);
+            } catch (LookupError e) {
+                // Answered as a whole, the way the server did.
+                return e.body;
+            }
+
+            if (fetched == null) {
+                if (stale.size() < misses.size()) {
+                    return null;
+                }
+
+                fetched = new HashMap<>();
+                for (DiskProfileCache.Entry entry : stale.values()) {
+                    fetched.put(entry.getUsername(), entry.getJson());
+                }
+            }
+
+            for (String username : misses) {
+                String userJson = fetched.get(username);
+
+                if (userJson != null) {
+                    appendUser(result, username, userJson);
+                }
+            }
+        }
+
+        return result.append('}').toString();
+    }
+
+    /**
+     * @return the trimmed usernames, each once, in request order.
+     */
+    private static Set<String> distinct(String[] usernames) {
+        Set<String> distinct = new LinkedHashSet<>();
+
+        for (String username : usernames) {
+            distinct.add(username.trim());
+        }
+
+        return distinct;
+    }
+
+    /**
+     * Looks up the data for one or more users and streams each user to a handler as soon as it
+     * has been decoded, without buffering the whole response. Cached users are delivered first.
+     *
+     * @param usernames the usernames(s) to look up.
+     * @param handler receives each user.
+     * @return <code>true</code> if every user was delivered, <code>false</code> if the request
+     *          failed part-way.
+     */
+    public boolean lookupUsers(@NonNull String[] usernames, @NonNull final UserHandler handler) {
+        if (closed) {
+            return false;
+        }
+
+        final ProfileCache cache = profileCache;
+        final DiskProfileCache disk = diskCache;
+        final List<String> misses = new ArrayList<>();
+
+        try {
+            for (String key : distinct(usernames)) {
+                String cached = cachedUser(key, null);
+
+                if (cached != null) {
+                    handler.onUser(key, new JSONObject(cached));
+                } else {
+                    misses.add(key);
+                }
+            }
+
+            if (misses.isEmpty()) {
+                return true;
+            }
+
+            String lookupUrl = lookupUrl(misses.toArray(new String[misses.size()]));
+            if (lookupUrl == null) {
+                return false;
+            }
+
+            Request request = Request.get(lookupUrl).operation("lookupUsers")
+                    .priority(Request.Priority.HIGH);
+
+            execute(request, new ResponseHandler<Void>() {
+                @Override
+                public Void handle(@NonNull Response response) throws IOException {
+                    JsonPullParser parser = newParser(response);
+                    parser.beginObject();
+
+                    while (parser.hasNext()) {
+                        String username = parser.nextName();
+                        JSONObject user = parser.readObject();
+
+                        if (cache != null || disk != null) {
+                            storeUser(username, user.toString(), user.has("error"), null, null);
+                        }
+
+                        handler.onUser(username, user);
+                    }
+
+                    parser.endObject();
+                    return null;
+                }
+            });
+
+            return true;
+        } catch (IOException | JSONException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Looks up the data for one or more users and returns them as typed {@link User} objects.
+     * Each user keeps its raw JSON and only decodes the fields that are actually read.
+     *
+     * @param usernames the usernames(s) to look up.
+     * @return the users keyed by username, or <code>null</code> if the request failed.
+     */
+    public Map<String, User> lookupUserProfiles(@NonNull String[] usernames) {
+        if (closed) {
+            return null;
+        }
+
+        final Map<String, User> users = new LinkedHashMap<>();
+        List<String> misses = new ArrayList<>();
+
+        for (String key : distinct(usernames)) {
+            String cached = cachedUser(key, null);
+
+            if (cached != null) {
+                users.put(key, new User(key, cached));
+            } else {
+                misses.add(key);
+            }
+        }
+
+        if (misses.isEmpty()) {
+            return indexed(users);
+        }
+
+        String lookupUrl = lookupUrl(misses.toArray(new String[misses.size()]));
+        if (lookupUrl == null) {
+            return null;
+        }
+
+        final boolean caching = profileCache != null || diskCache != null;
+        Request request = Request.get(lookupUrl).operation("lookupUserProfiles")
+                .priority(Request.Priority.HIGH);
+
+        try {
+            // Not coalesced: the handler fills this call's map, which already holds cached users.
+            return indexed(execute(request, new ResponseHandler<Map<String, User>>() {
+                @Override
+                public Map<String, User> handle(@NonNull Response response)
+                        throws IOException {
+                    JsonPullParser parser = newParser(response);
+                    parser.beginObject();
+
+                    while (parser.hasNext()) {
+                        String username = parser.nextName();
+                        User user = new User(username, parser.readRawValue());
+                        users.put(username, user);
+
+                        if (caching) {
+                            storeUser(username, user.getJson(), !user.isFound(), null, null);
+                        }
+                    }
+
+                    parser.endObject();
+                    return users;
+                }
+            }));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private Map<String, User> indexed(Map<String, User> users) {
+        NameOwnershipIndex index = nameIndex;
+
+        if (index != null && users != null) {
+            index.putAll(users.values());
+        }
+
+        return users;
+    }
+
+    /**
+     * Returns a user from the memory cache or, failing that, a fresh disk cache entry, which is
+     * then promoted to the memory cache. A disk cache closed with the client is a miss.
+     *
+     * @param username the username.
+     * @param stale collects expired disk entries, may be <code>null</code>.
+     * @return the user's JSON object as a <code>String</code>, or <code>null</code>.
+     */
+    private String cachedUser(@NonNull String username,
+                              Map<String, DiskProfileCache.Entry> stale) {
+        ProfileSyncScheduler sync = syncScheduler;
+        if (sync != null) {
+            sync.recordAccess(username);
+        }
+
+        ProfileCache cache = profileCache;
+        DiskProfileCache disk = diskCache;
+        String cached = cache != null ? cache.get(username) : null;
+
+        if (cached == null && disk != null) {
+            DiskProfileCache.Entry entry = diskEntry(disk, username);
+
+            if (entry != null && entry.isFresh()) {
+                cached = entry.getJson();
+
+                if (cache != null) {
+                    cache.put(username, cached, entry.isNegative());
+                }
+            } else if (entry != null && stale != null) {
+                stale.put(username, entry);
+            }
+        }
+
+        return cached;
+    }
+
+    /**
+     * Sends a lookup for the given usernames to the server, bypassing the caches.
+     *
+     * @param usernames the usernames(s) to look up.
+     * @return a Blockstack server response as a JSON <code>String</code>.
+     */
+    private String fetchUsers(@NonNull String[] usernames) {
+        String lookupUrl = lookupUrl(usernames);
+        return lookupUrl != null
+                ? executeGET("lookupUsers", Request.Priority.HIGH, lookupUrl) : null;
+    }
+
+    /**
+     * Fetches several users and stores each of them in the caches.
+     *
+     * @param usernames the usernames to look up.
+     * @return the user JSON objects keyed by username, or <code>null</code> if the request
+     *          failed.
+     * @throws LookupError if the server answered the whole lookup with an error.
+     */
+    private Map<String, String> fetchAndStoreUsers(@NonNull List<String> usernames)
+            throws LookupError {
+        String response = fetchUsers(usernames.toArray(new String[usernames.size()]));
+
+        if (response == null) {
+            return null;
+        }
+
+        try {
+            return storeUsers(usernames, response, null, null);
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Fetches a single user and stores it in the caches. If a stale disk entry with validators
+     * exists the request is conditional, and a <code>304 Not Modified</code> answer renews the
+     * entry instead of downloading the profile again.
+     *
+     * @param username the username to look up.
+     * @param stale the expired disk cache entry for the user, may be <code>null</code>.
+     * @return the user JSON object keyed by username, or <code>null</code> if the request
+     *          failed.
+     * @throws LookupError if the server answered the lookup with an error.
+     */
+    private Map<String, String> fetchUser(@NonNull final String username,
+                                          final DiskProfileCache.Entry stale) throws LookupError {
+        String lookupUrl = lookupUrl(new String[] {username});
+
+        if (lookupUrl == null) {
+            return null;
+        }
+
+        Request request = Request.get(lookupUrl).operation("lookupUsers")
+                .priority(Request.Priority.HIGH);
+
+        if (stale != null && stale.getEtag() != null) {
+            request.header("If-None-Match", stale.getEtag());
+        }
+
+        if (stale != null && stale.getLastModified() != null) {
+            request.header("If-Modified-Since", stale.getLastModified());
+        }
+
+        try {
+            return execute(request, new ResponseHandler<Map<String, String>>() {
+                @Override
+                public Map<String, String> handle(@NonNull Response response)
+                        throws IOException {
+                    if (response.getStatusCode() == HTTP_NOT_MODIFIED && stale != null) {
+                        storeOnDisk(diskCache, stale.getUsername(), stale.getJson(),
+                                stale.isNegative(), stale.getEtag(), stale.getLastModified());
+
+                        ProfileCache cache = profileCache;
+                        if (cache != null) {
+                            cache.put(username, stale.getJson(), stale.isNegative());
+                        }
+
+                        return Collections.singletonMap(username, stale.getJson());
+                    }
+
+                    if (!response.isSuccessful()) {
+                        throw new IOException("Unexpected HTTP " + response.getStatusCode());
+                    }
+
+                    try {
+                        return storeUsers(Collections.singletonList(username), readBody(response),
+                                response.getHeader("ETag"), response.getHeader("Last-Modified"));
+                    } catch (JSONException e) {
+                        throw new IOException(e);
+                    }
+                }
+            });
+        } catch (LookupError e) {
+            throw e;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Looks up users on the server, bypassing the caches, and stores every answer in them.
+     *
+     * @param usernames the usernames to look up.
+     * @return the number of users stored.
+     * @throws IOException if the request failed.
+     */
+    int refreshUsers(@NonNull List<String> usernames) throws IOException {
+        String lookupUrl = lookupUrl(usernames.toArray(new String[usernames.size()]));
+
+        if (lookupUrl == null) {
+            throw new IOException("Cannot encode the usernames");
+        }
+
+        Request request = Request.get(lookupUrl).operation("refreshUsers")
+                .priority(Request.Priority.LOW);
+
+        return execute(request, new ResponseHandler<Integer>() {
+            @Override
+            public Integer handle(@NonNull Response response) throws IOException {
+                JsonPullParser parser = newParser(response);
+                int stored = 0;
+                parser.beginObject();
+
+                while (parser.hasNext()) {
+                    String username = parser.nextName();
+                    User user = new User(username, parser.readRawValue());
+                    storeUser(username, user.getJson(), !user.isFound(), null, null);
+                    stored++;
+                }
+
+                parser.endObject();
+                return stored;
+            }
+        });
+    }
+
+    /**
+     * Stores the users of a lookup response in the caches. A user the server keyed in another
+     * case is found under its lower-case name, like {@link LookupBatcher} does.
+     *
+     * @param usernames the usernames that were looked up.
+     * @param response the lookup response.
+     * @param etag the response <code>ETag</code>, only meaningful for single-user lookups.
+     * @param lastModified the response <code>Last-Modified</code> date.
+     * @return the user JSON objects keyed by requested username.
+     * @throws LookupError if the response is an error for the whole lookup.
+     */
+    private Map<String, String> storeUsers(@NonNull List<String> usernames,
+                                           @NonNull String response, String etag,
+                                           String lastModified)
+            throws JSONException, LookupError {
+        JSONObject json = new JSONObject(response);
+
+        // A user is an object; a plain "error" message is about the request itself.
+        if (json.has("error") && !(json.get("error") instanceof JSONObject)) {
+            throw new LookupError(response);
+        }
+
+        Map<String, String> users = new HashMap<>();
+
+        for (String username : usernames) {
+            JSONObject user = json.optJSONObject(username);
+
+            if (user == null) {
+                user = json.optJSONObject(username.toLowerCase());
+            }
+
+            if (user == null) {
+                continue;
+            }
+
+            String userJson = user.toString();
+            users.put(username, userJson);
+            storeUser(username, userJson, user.has("error"), etag, lastModified);
+        }
+
+        return users;
+    }
+
+    private void storeUser(@NonNull String username, @NonNull String userJson, boolean negative,
+                           String etag, String lastModified) {
+        ProfileCache cache = profileCache;
+        if (cache != null) {
+            cache.put(username, userJson, negative);
+        }
+
+        storeOnDisk(diskCache, username, userJson, negative, etag, lastModified);
+
+        ProfileSyncScheduler sync = syncScheduler;
+        if (sync != null) {
+            sync.recordRefresh(username);
+        }
+    }
+
+    private static DiskProfileCache.Entry diskEntry(@NonNull DiskProfileCache disk,
+                                                    @NonNull String username) {
+        try {
+            return disk.get(username);
+        } catch (IllegalStateException e) {
+            // Closed with the client while the call was running.
+            return null;
+        }
+    }
+
+    /**
+     * Stores a user on disk, unless there is no disk cache or it was closed with the client.
+     */
+    private static void storeOnDisk(DiskProfileCache disk, @NonNull String username,
+                                    @NonNull String userJson, boolean negative, String etag,
+                                    String lastModified) {
+        if (disk == null) {
+            return;
+        }
+
         try {
-            String lookupUsers = URLEncoder.encode(TextUtils.join(",", usernames).trim(), "UTF-8");
-            String lookupUrl = String.format("%s/%s", Endpoints.USERS, lookupUsers);
+            disk.put(username, userJson, negative, etag, lastModified);
+        } catch (IllegalStateException e) {
+            // Closed with the client while the call was running.
+        }
+    }
 
-            return executeGET(lookupUrl);
+    String lookupUrl(@NonNull String[] usernames) {
+        try {
+            String lookupUsers = URLEncoder.encode(join(",", usernames).trim(), "UTF-8");
+            return String.format("%s/%s", endpoints.getUsersUrl(), lookupUsers);
         } catch (UnsupportedEncodingException e) {
             e.printStackTrace();
+            return null;
         }
-
-        return null;
     }
 
     /**
@@ -72,8 +863,41 @@ public class Blockstack {
      * @return a Blockstack server response as a JSON <code>String</code>.
      */
     public String searchUsers(@NonNull String query) {
-        String searchUrl = String.format("%s%s", Endpoints.SEARCH, URLEncoder.encode(query));
-        return executeGET(searchUrl);
+        return executeGET("searchUsers", Request.Priority.HIGH, searchUrl(query));
+    }
+
+    /**
+     * Searches for users and returns the matches as typed {@link User} objects.
+     *
+     * @param query the text to search for.
+     * @return the matching users, or <code>null</code> if the request failed.
+     * @see #searchUsers(String)
+     */
+    public SearchResult searchUserProfiles(@NonNull String query) {
+        return get("searchUserProfiles", Request.Priority.HIGH, searchUrl(query),
+                new ResponseHandler<SearchResult>() {
+                    @Override
+                    public SearchResult handle(@NonNull Response response) throws IOException {
+                        return SearchResult.read(newParser(response));
+                    }
+                });
+    }
+
+    /**
+     * Searches for users and streams the matches, decoding each one as it arrives. Nothing is
+     * sent until the first call to {@link SearchHits#hasNext()}; close the hits when done.
+     *
+     * @param query the text to search for.
+     * @param limit the most matches to return.
+     * @return the matches, in server order.
+     * @see #searchUsers(String)
+     */
+    public SearchHits openSearch(@NonNull String query, int limit) {
+        return new SearchHits(this, searchUrl(query), limit);
+    }
+
+    String searchUrl(@NonNull String query) {
+        return String.format("%s%s", endpoints.getSearchUrl(), URLEncoder.encode(query));
     }
 
     /**
@@ -86,20 +910,10 @@ public class Blockstack {
      */
     public String registerUser(@NonNull String username, @NonNull String recipientAddress,
                                JSONObject profileData) {
-        JSONObject data = new JSONObject();
-
-        try {
-            data.put("username", username);
-            data.put("recipient_address", recipientAddress);
-
-            if (profileData != null) {
-                data.put("profile", profileData);
-            }
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
+        RequestBody body = REGISTER_BODY.fill(username, recipientAddress,
+                profileData != null ? profileData.toString() : null);
 
-        return executePOST(Endpoints.USERS, data);
+        return executePOST("registerUser", endpoints.getUsersUrl(), body);
     }
 
     /**
@@ -114,17 +928,10 @@ public class Blockstack {
      */
     public String updateUser(@NonNull String username, @NonNull JSONObject profileData,
                                @NonNull String ownerPublicKey) {
-        String updateUrl = String.format("%s/%s/update", Endpoints.USERS, username);
-        JSONObject data = new JSONObject();
-
-        try {
-            data.put("profile", profileData);
-            data.put("owner_pubkey", ownerPublicKey);
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
+        String updateUrl = String.format("%s/%s/update", endpoints.getUsersUrl(), username);
+        RequestBody body = UPDATE_BODY.fill(profileData.toString(), ownerPublicKey);
 
-        return executePOST(updateUrl, data);
+        return executePOST("updateUser", updateUrl, body);
     }
 
     /**
@@ -138,17 +945,10 @@ public class Blockstack {
      */
     public String transferUser(@NonNull String username, @NonNull String transferAddress,
                          @NonNull String ownerPublicKey) {
-        String transferUrl = String.format("%s/%s/update", Endpoints.USERS, username);
-        JSONObject data = new JSONObject();
-
-        try {
-            data.put("transfer_address", transferAddress);
-            data.put("owner_pubkey", ownerPublicKey);
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
+        String transferUrl = String.format("%s/%s/update", endpoints.getUsersUrl(), username);
+        RequestBody body = TRANSFER_BODY.fill(transferAddress, ownerPublicKey);
 
-        return executePOST(transferUrl, data);
+        return executePOST("transferUser", transferUrl, body);
     }
     // endregion
 
@@ -164,15 +964,44 @@ public class Blockstack {
      *          either "success" or "error".
      */
     public String broadcastTransaction(@NonNull String signedTransaction) {
-        JSONObject data = new JSONObject();
+        return executePOST("broadcastTransaction", endpoints.getTransactionsUrl(),
+                BROADCAST_BODY.fill(signedTransaction));
+    }
 
+    /**
+     * Broadcasts a signed transaction and returns the typed server answer.
+     *
+     * @param signedTransaction a signed transaction in hex format.
+     * @return the broadcast result, or <code>null</code> if the request failed.
+     * @see #broadcastTransaction(String)
+     */
+    public BroadcastResult broadcastSignedTransaction(@NonNull String signedTransaction) {
         try {
-            data.put("signed_hex", signedTransaction);
-        } catch (JSONException e) {
+            return sendTransaction(signedTransaction);
+        } catch (IOException e) {
             e.printStackTrace();
+            return null;
         }
+    }
+
+    /**
+     * Broadcasts a signed transaction, reporting failures to the caller.
+     *
+     * @param signedTransaction a signed transaction in hex format.
+     * @return the broadcast result.
+     * @throws IOException if the request failed; an {@link HttpStatusException} if the server
+     *          answered with a non-2xx status.
+     */
+    BroadcastResult sendTransaction(@NonNull String signedTransaction) throws IOException {
+        Request request = Request.post(endpoints.getTransactionsUrl(),
+                BROADCAST_BODY.fill(signedTransaction)).operation("broadcastSignedTransaction");
 
-        return executePOST(Endpoints.TRANSACTIONS, data);
+        return execute(request, new ResponseHandler<BroadcastResult>() {
+            @Override
+            public BroadcastResult handle(@NonNull Response response) throws IOException {
+                return BroadcastResult.read(newParser(response));
+            }
+        });
     }
     // endregion
 
@@ -185,8 +1014,49 @@ public class Blockstack {
      * @return a Blockstack server response as a JSON <code>String</code>.
      */
     public String getUnspentOutputs(@NonNull String address) {
-        String unspentOutputsUrl = String.format("%s/%s/unspents", Endpoints.ADDRESSES, address);
-        return executeGET(unspentOutputsUrl);
+        return executeGET("getUnspentOutputs", Request.Priority.NORMAL, unspentOutputsUrl(address));
+    }
+
+    /**
+     * Retrieves the unspent outputs for a given address as typed objects.
+     *
+     * @param address the address to look up unspent outputs for.
+     * @return the unspent outputs, or <code>null</code> if the request failed.
+     */
+    public List<UnspentOutput> getUnspentOutputList(@NonNull String address) {
+        try {
+            return fetchUnspentOutputs(address, Request.Priority.NORMAL);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Retrieves the unspent outputs for a given address, reporting failures to the caller.
+     *
+     * @param address the address to look up unspent outputs for.
+     * @param priority the request priority.
+     * @return the unspent outputs.
+     * @throws IOException if the request failed.
+     */
+    List<UnspentOutput> fetchUnspentOutputs(@NonNull String address,
+                                            @NonNull Request.Priority priority)
+            throws IOException {
+        Request request = Request.get(unspentOutputsUrl(address))
+                .operation("getUnspentOutputList").priority(priority);
+
+        List<UnspentOutput> outputs = executeShared(request,
+                new ResponseHandler<List<UnspentOutput>>() {
+                    @Override
+                    public List<UnspentOutput> handle(@NonNull Response response)
+                            throws IOException {
+                        return UnspentOutput.readList(newParser(response));
+                    }
+                });
+
+        // Coalesced callers share the decoded list; each gets its own copy to modify.
+        return new ArrayList<>(outputs);
     }
 
     /**
@@ -196,8 +1066,39 @@ public class Blockstack {
      * @return a Blockstack server response as a JSON <code>String</code>.
      */
     public String getNamesOwnedByAddress(@NonNull String address) {
-        String namesOwnedUrl = String.format("%s/%s/names", Endpoints.ADDRESSES, address);
-        return executeGET(namesOwnedUrl);
+        return executeGET("getNamesOwnedByAddress", Request.Priority.NORMAL,
+                namesOwnedUrl(address));
+    }
+
+    /**
+     * Retrieves the names owned by the address provided as a typed object.
+     *
+     * @param address the address to look up names owned by.
+     * @return the owned names, or <code>null</code> if the request failed.
+     */
+    public OwnedNames getOwnedNames(@NonNull final String address) {
+        OwnedNames ownedNames = get("getOwnedNames", Request.Priority.NORMAL,
+                namesOwnedUrl(address), new ResponseHandler<OwnedNames>() {
+                    @Override
+                    public OwnedNames handle(@NonNull Response response) throws IOException {
+                        return OwnedNames.read(address, newParser(response));
+                    }
+                });
+
+        NameOwnershipIndex index = nameIndex;
+        if (index != null && ownedNames != null) {
+            index.put(ownedNames);
+        }
+
+        return ownedNames;
+    }
+
+    private String unspentOutputsUrl(@NonNull String address) {
+        return String.format("%s/%s/unspents", endpoints.getAddressesUrl(), address);
+    }
+
+    private String namesOwnedUrl(@NonNull String address) {
+        return String.format("%s/%s/names", endpoints.getAddressesUrl(), address);
     }
     // endregion
 
@@ -210,8 +1111,55 @@ public class Blockstack {
      * @return a Blockstack server response as a JSON <code>String</code>.
      */
     public String getDkimPublicKey(@NonNull String domain) {
-        String dkimPublicKeyUrl = String.format("%s/%s/dkim", Endpoints.DOMAINS, domain);
-        return executeGET(dkimPublicKeyUrl);
+        return executeGET("getDkimPublicKey", Request.Priority.NORMAL, dkimPublicKeyUrl(domain));
+    }
+
+    /**
+     * Retrieves the DKIM public key for given domain as a typed object, through the
+     * {@link DkimKeyResolver} cache if one is installed.
+     *
+     * @param domain the domain to look the DKIM public key up.
+     * @return the key, or <code>null</code> if the request failed or the domain has none.
+     */
+    public DkimKey getDkimKey(@NonNull final String domain) {
+        DkimKeyResolver resolver = dkimKeyResolver;
+
+        if (resolver != null) {
+            return resolver.resolve(domain);
+        }
+
+        return get("getDkimKey", Request.Priority.NORMAL, dkimPublicKeyUrl(domain),
+                new ResponseHandler<DkimKey>() {
+                    @Override
+                    public DkimKey handle(@NonNull Response response) throws IOException {
+                        return DkimKey.read(domain, newParser(response));
+                    }
+                });
+    }
+
+    /**
+     * Fetches the DKIM public key for given domain, bypassing the {@link DkimKeyResolver}. The
+     * key carries the record TTL, or else the <code>Cache-Control</code> max-age of the response.
+     *
+     * @param domain the domain to look the DKIM public key up.
+     * @return the key.
+     * @throws IOException if the request failed; an {@link HttpStatusException} if the server
+     *          answered with a non-2xx status, e.g. for an unknown domain.
+     */
+    DkimKey fetchDkimKey(@NonNull final String domain) throws IOException {
+        Request request = Request.get(dkimPublicKeyUrl(domain)).operation("fetchDkimKey");
+
+        return execute(request, new ResponseHandler<DkimKey>() {
+            @Override
+            public DkimKey handle(@NonNull Response response) throws IOException {
+                long maxAge = DkimKeyResolver.maxAgeSeconds(response.getHeader("Cache-Control"));
+                return DkimKey.read(domain, newParser(response), maxAge);
+            }
+        });
+    }
+
+    private String dkimPublicKeyUrl(@NonNull String domain) {
+        return String.format("%s/%s/dkim", endpoints.getDomainsUrl(), domain);
     }
     // endregion
 
@@ -219,96 +1167,481 @@ public class Blockstack {
     /**
      * Calls a blockstack-server endpoint using the GET method.
      *
+     * @param operation the client operation, for metrics.
+     * @param priority the request priority.
      * @param endpointUrl the Blockstack server endpoint URL.
      * @return a Blockstack server response as a JSON <code>String</code>.
      */
-    private String executeGET(@NonNull String endpointUrl) {
-        BufferedReader reader = null;
-        HttpURLConnection urlConnection = null;
-
-        try {
-            URL url = new URL(endpointUrl);
-            urlConnection = (HttpURLConnection) url.openConnection();
+    private String executeGET(@NonNull String operation, @NonNull Request.Priority priority,
+                              @NonNull String endpointUrl) {
+        return execute(Request.get(endpointUrl).operation(operation).priority(priority));
+    }
 
-            StringBuilder stringBuilder = new StringBuilder();
-            reader = new BufferedReader(new InputStreamReader(urlConnection.getInputStream()));
+    /**
+     * Calls a blockstack-server endpoint using the POST method.
+     *
+     * @param operation the client operation, for metrics.
+     * @param endpointUrl the Blockstack server endpoint URL.
+     * @param body the JSON body to send via POST.
+     * @return a Blockstack server response as a JSON <code>String</code>.
+     */
+    private String executePOST(@NonNull String operation, @NonNull String endpointUrl,
+                               @NonNull RequestBody body) {
+        return execute(Request.post(endpointUrl, body).operation(operation));
+    }
 
-            String line;
-            while ((line = reader.readLine()) != null) {
-                stringBuilder.append(line);
-            }
+    /**
+     * Calls a blockstack-server endpoint using the GET method and decodes the response.
+     * Identical calls in flight at the same time are coalesced.
+     *
+     * @param operation the client operation, for metrics.
+     * @param priority the request priority.
+     * @param endpointUrl the Blockstack server endpoint URL.
+     * @param handler decodes the response body.
+     * @param <T> the result type.
+     * @return the decoded response, or <code>null</code> if the request failed.
+     */
+    private <T> T get(@NonNull String operation, @NonNull Request.Priority priority,
+                      @NonNull String endpointUrl, @NonNull ResponseHandler<T> handler) {
+        Request request = Request.get(endpointUrl).operation(operation).priority(priority);
 
-            return stringBuilder.toString();
-        } catch (MalformedURLException e) {
+        try {
+            return executeShared(request, handler);
+        } catch (IOException e) {
             e.printStackTrace();
             return null;
+        }
+    }
+
+    /**
+     * Sends a request through the transport and reads the whole response body.
+     *
+     * @param request the request to send.
+     * @return a Blockstack server response as a JSON <code>String</code>, or <code>null</code>
+     *          if the request failed.
+     */
+    private String execute(@NonNull Request request) {
+        try {
+            return executeShared(request, STRING_HANDLER);
         } catch (IOException e) {
             e.printStackTrace();
             return null;
+        }
+    }
+
+    /**
+     * Sends a request through the transport and hands the successful response to a handler,
+     * closing it afterwards. A <code>304 Not Modified</code>, which only conditional requests
+     * receive, is handed over too. While a {@link MetricsListener} is installed the request is
+     * measured and reported to it.
+     *
+     * @param request the request to send.
+     * @param handler consumes the response body.
+     * @param <T> the result type.
+     * @return the handler result.
+     * @throws IOException if the request failed, the server answered with another non-2xx
+     *          status or the handler could not read the body.
+     */
+    <T> T execute(@NonNull Request request, @NonNull ResponseHandler<T> handler)
+            throws IOException {
+        checkOpen();
+        MetricsListener listener = metricsListener;
+
+        if (listener == MetricsListener.NONE) {
+            Response response = transport.execute(request);
+
+            try {
+                return handle(request, response, handler);
+            } finally {
+                response.close();
+            }
+        }
+
+        RequestMetrics metrics = new RequestMetrics(request);
+        request.setMetrics(metrics);
+        Response response = null;
+        Throwable error = null;
+        long handlerNanos = -1;
+
+        try {
+            response = transport.execute(request);
+            long handlerStart = System.nanoTime();
+
+            try {
+                return handle(request, response, handler);
+            } finally {
+                handlerNanos = System.nanoTime() - handlerStart;
+            }
+        } catch (IOException | RuntimeException e) {
+            error = e;
+            throw e;
         } finally {
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+            if (response != null) {
+                response.close();
             }
 
-            if (urlConnection != null) {
-                urlConnection.disconnect();
+            metrics.finished(response, error, handlerNanos);
+
+            try {
+                listener.onRequestFinished(metrics);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
             }
         }
     }
 
     /**
-     * Calls a blockstack-server endpoint using the POST method.
+     * Sends a request like {@link #execute(Request, ResponseHandler)}, except that while
+     * request coalescing is on, a plain GET identical to one already in flight waits for that
+     * call instead and gets the same result. The handler must only depend on the response, as
+     * its result is shared.
      *
-     * @param endpointUrl the Blockstack server endpoint URL.
-     * @param data the JSON data to send via POST.
-     * @return a Blockstack server response as a JSON <code>String</code>.
+     * @param request the request to send.
+     * @param handler consumes the response body.
+     * @param <T> the result type.
+     * @return the handler result.
+     * @throws IOException if the request failed, or this caller was interrupted while waiting.
+     */
+    <T> T executeShared(@NonNull final Request request, @NonNull final ResponseHandler<T> handler)
+            throws IOException {
+        SingleFlight flight = singleFlight;
+
+        if (flight == null || !Request.GET.equals(request.getMethod())
+                || !request.getHeaders().isEmpty()) {
+            return execute(request, handler);
+        }
+
+        // Handlers are keyed by class, so a URL decoded two ways is two calls.
+        String key = handler.getClass().getName() + " " + request.getUrl();
+
+        return flight.execute(key, new Callable<T>() {
+            @Override
+            public T call() throws IOException {
+                return execute(request, handler);
+            }
+        });
+    }
+
+    /**
+     * Sends a request through the transport and returns the successful response still open, for
+     * callers decoding it bit by bit. They hand it back to {@link #finish} when done, which
+     * closes it and reports the request to the {@link MetricsListener}.
+     *
+     * @param request the request to send.
+     * @return the open response.
+     * @throws IOException if the request failed or the server answered with a non-2xx status.
      */
-    private String executePOST(@NonNull String endpointUrl, @NonNull JSONObject data) {
-        BufferedReader reader = null;
-        HttpURLConnection urlConnection = null;
-        OutputStreamWriter writer = null;
+    Response open(@NonNull Request request) throws IOException {
+        checkOpen();
+
+        if (metricsListener != MetricsListener.NONE) {
+            request.setMetrics(new RequestMetrics(request));
+        }
+
+        Response response;
 
         try {
-            urlConnection.setDoOutput(true);
-            urlConnection.setDoInput(true);
-            urlConnection.setRequestProperty("Content-Type", "application/json");
-            urlConnection.setRequestMethod("POST");
+            response = transport.execute(request);
+        } catch (IOException | RuntimeException e) {
+            report(request, null, e);
+            throw e;
+        }
+
+        if (!response.isSuccessful()) {
+            HttpStatusException error =
+                    new HttpStatusException(response.getStatusCode(), request.toString());
+            finish(request, response, error);
+            throw error;
+        }
 
-            writer = new OutputStreamWriter(urlConnection.getOutputStream());
-            writer.write(data.toString());
+        return response;
+    }
 
-            StringBuilder stringBuilder = new StringBuilder();
-            reader = new BufferedReader(new InputStreamReader(urlConnection.getInputStream()));
+    /**
+     * Closes a response returned by {@link #open(Request)}.
+     *
+     * @param request the request sent.
+     * @param response the response to close.
+     * @param error what went wrong while reading it, or <code>null</code>.
+     */
+    void finish(@NonNull Request request, @NonNull Response response, Throwable error) {
+        response.close();
+        report(request, response, error);
+    }
 
-            String line;
-            while ((line = reader.readLine()) != null) {
-                stringBuilder.append(line);
-            }
+    private void report(Request request, Response response, Throwable error) {
+        RequestMetrics metrics = request.getMetrics();
 
-            return stringBuilder.toString();
-        } catch (ProtocolException e) {
-            e.printStackTrace();
-            return  null;
-        } catch (IOException e) {
+        if (metrics == null) {
+            return;
+        }
+
+        metrics.finished(response, error, -1);
+
+        try {
+            metricsListener.onRequestFinished(metrics);
+        } catch (RuntimeException e) {
             e.printStackTrace();
-            return null;
-        } finally {
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Client is closed");
+        }
+    }
+
+    private static <T> T handle(Request request, Response response, ResponseHandler<T> handler)
+            throws IOException {
+        if (!response.isSuccessful() && response.getStatusCode() != HTTP_NOT_MODIFIED) {
+            throw new HttpStatusException(response.getStatusCode(), request.toString());
+        }
+
+        return handler.handle(response);
+    }
+
+    /**
+     * Reads a whole response body as UTF-8 through the response's pooled buffers.
+     *
+     * @param response the response to read.
+     * @return the body as a <code>String</code>.
+     * @throws IOException if the body cannot be read.
+     */
+    private static String readBody(@NonNull Response response) throws IOException {
+        Reader reader = response.getReader();
+        char[] buffer = response.charBuffer();
+
+        int read = reader.read(buffer);
+        if (read == -1) {
+            return "";
+        }
 
-            if (urlConnection != null) {
-                urlConnection.disconnect();
+        int next = reader.read(buffer, read, buffer.length - read);
+        if (next == -1) {
+            // Most responses fit in one buffer and need no builder at all.
+            return new String(buffer, 0, read);
+        }
+
+        StringBuilder stringBuilder = new StringBuilder(buffer.length * 2);
+        stringBuilder.append(buffer, 0, read + next);
+
+        while ((read = reader.read(buffer)) != -1) {
+            stringBuilder.append(buffer, 0, read);
+        }
+
+        return stringBuilder.toString();
+    }
+
+    /**
+     * Opens a pull parser over a response body, so it can be decoded as it arrives.
+     *
+     * @param response the response to read.
+     * @return a parser positioned at the start of the body.
+     */
+    static JsonPullParser newParser(@NonNull Response response) {
+        return new JsonPullParser(response.getReader(), response.charBuffer());
+    }
+    // endregion
+
+    // region Helpers
+    private static Transport newDefaultTransport(@NonNull RateLimiter rateLimiter,
+                                                 @NonNull Endpoints endpoints) {
+        return newDefaultTransport(rateLimiter, endpoints, new HttpURLConnectionTransport());
+    }
+
+    private static Transport newDefaultTransport(@NonNull RateLimiter rateLimiter,
+                                                 @NonNull Endpoints endpoints,
+                                                 @NonNull HttpURLConnectionTransport http) {
+        Transport transport = http;
+        boolean balanced = endpoints.getBaseUrls().size() > 1;
+
+        if (balanced) {
+            transport = new LoadBalancingTransport(transport, endpoints.getBaseUrls());
+        }
+
+        // Below the retries, so every attempt counts against the quota.
+        transport = new RateLimitingTransport(transport, rateLimiter);
+        ResilientTransport resilient = new ResilientTransport(transport);
+        // The balancer ejects failing nodes one by one instead.
+        resilient.setCircuitBreaking(!balanced);
+        return resilient;
+    }
+
+    private static void appendUser(@NonNull StringBuilder json, @NonNull String username,
+                                   @NonNull String userJson) {
+        if (json.length() > 1) {
+            json.append(',');
+        }
+
+        json.append(JSONObject.quote(username)).append(':').append(userJson);
+    }
+
+    private static String join(@NonNull String delimiter, @NonNull String[] tokens) {
+        StringBuilder builder = new StringBuilder();
+
+        for (int i = 0; i < tokens.length; i++) {
+            if (i > 0) {
+                builder.append(delimiter);
             }
+
+            builder.append(tokens[i]);
         }
+
+        return builder.toString();
     }
     // endregion
+
+    /**
+     * A lookup the server answered with an error as a whole, e.g. an invalid username, rather
+     * than user by user.
+     */
+    private static final class LookupError extends IOException {
+        final String body;
+
+        LookupError(@NonNull String body) {
+            super("Lookup failed: " + body);
+            this.body = body;
+        }
+    }
+
+    /**
+     * Builds a {@link Blockstack} client. Unless a custom transport is given, the client gets
+     * the default transport stack over its own {@link HttpURLConnectionTransport}, configured
+     * with the connection pool and timeouts set here.
+     */
+    public static class Builder {
+        private final String appId;
+        private final String appSecret;
+        private Endpoints endpoints = Endpoints.getDefault();
+        private Transport transport;
+        private ConnectionPool connectionPool;
+        private long connectTimeoutMillis =
+                HttpURLConnectionTransport.DEFAULT_CONNECT_TIMEOUT_MILLIS;
+        private long readTimeoutMillis = HttpURLConnectionTransport.DEFAULT_READ_TIMEOUT_MILLIS;
+        private ProfileCache profileCache;
+        private DiskProfileCache diskCache;
+        private MetricsListener metricsListener;
+        private boolean requestCoalescing = true;
+        private int asyncThreads = AsyncBlockstack.DEFAULT_THREADS;
+
+        /**
+         * @param appId app id obtained from <a href="https://api.onename.com">Onename API</a>.
+         * @param appSecret app secret obtained from
+         *                  <a href="https://api.onename.com">Onename API</a>.
+         */
+        public Builder(@NonNull String appId, @NonNull String appSecret) {
+            this.appId = appId;
+            this.appSecret = appSecret;
+        }
+
+        /**
+         * @param endpoints the blockstack-server nodes to use. Defaults to
+         *                  {@link Endpoints#getDefault()}.
+         */
+        public Builder endpoints(@NonNull Endpoints endpoints) {
+            this.endpoints = endpoints;
+            return this;
+        }
+
+        /**
+         * @param transport a custom transport, used as it is. The connection pool and timeouts
+         *                  of this builder are then ignored. The client shuts it down when
+         *                  closed.
+         */
+        public Builder transport(@NonNull Transport transport) {
+            this.transport = transport;
+            return this;
+        }
+
+        /**
+         * @param connectionPool the pool of the default transport. Defaults to a new
+         *                       {@link ConnectionPool}.
+         */
+        public Builder connectionPool(@NonNull ConnectionPool connectionPool) {
+            this.connectionPool = connectionPool;
+            return this;
+        }
+
+        /**
+         * Sets the timeouts of the default transport.
+         *
+         * @param connectTimeout how long to wait for a connection, or 0 to wait forever.
+         * @param readTimeout how long a read may block, or 0 to wait forever.
+         * @param unit the timeout unit.
+         */
+        public Builder timeouts(long connectTimeout, long readTimeout, @NonNull TimeUnit unit) {
+            this.connectTimeoutMillis = unit.toMillis(connectTimeout);
+            this.readTimeoutMillis = unit.toMillis(readTimeout);
+            return this;
+        }
+
+        /**
+         * @param profileCache the memory cache for lookups. None by default.
+         */
+        public Builder profileCache(ProfileCache profileCache) {
+            this.profileCache = profileCache;
+            return this;
+        }
+
+        /**
+         * @param diskCache the persistent cache for lookups. None by default. The client
+         *                  closes it when closed.
+         */
+        public Builder diskCache(DiskProfileCache diskCache) {
+            this.diskCache = diskCache;
+            return this;
+        }
+
+        /**
+         * @param metricsListener receives the metrics of every request. None by default.
+         */
+        public Builder metricsListener(MetricsListener metricsListener) {
+            this.metricsListener = metricsListener;
+            return this;
+        }
+
+        /**
+         * @param requestCoalescing whether identical concurrent GET requests share one call.
+         *                          On by default.
+         */
+        public Builder requestCoalescing(boolean requestCoalescing) {
+            this.requestCoalescing = requestCoalescing;
+            return this;
+        }
+
+        /**
+         * @param asyncThreads the number of threads behind {@link Blockstack#async()}.
+         *                     Defaults to {@value AsyncBlockstack#DEFAULT_THREADS}.
+         */
+        public Builder asyncThreads(int asyncThreads) {
+            if (asyncThreads < 1) {
+                throw new IllegalArgumentException("asyncThreads < 1");
+            }
+
+            this.asyncThreads = asyncThreads;
+            return this;
+        }
+
+        public Blockstack build() {
+            RateLimiter rateLimiter = RateLimiter.retain(appId);
+            Transport clientTransport = transport;
+
+            if (clientTransport == null) {
+                HttpURLConnectionTransport http = new HttpURLConnectionTransport(
+                        connectionPool != null ? connectionPool : new ConnectionPool());
+                http.setConnectTimeout(connectTimeoutMillis, TimeUnit.MILLISECONDS);
+                http.setReadTimeout(readTimeoutMillis, TimeUnit.MILLISECONDS);
+                clientTransport = newDefaultTransport(rateLimiter, endpoints, http);
+            }
+
+            Blockstack blockstack = new Blockstack(appId, appSecret, clientTransport, endpoints,
+                    rateLimiter);
+            blockstack.setProfileCache(profileCache);
+            blockstack.setDiskCache(diskCache);
+            blockstack.setMetricsListener(metricsListener);
+            blockstack.setRequestCoalescing(requestCoalescing);
+            blockstack.asyncThreads = asyncThreads;
+            return blockstack;
+        }
+    }
 }
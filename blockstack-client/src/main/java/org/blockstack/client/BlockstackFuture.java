@@ -0,0 +1,219 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The BlockstackFuture <code>class</code> is the pending result of an asynchronous Blockstack
+ * call. It can be cancelled, timed out, and notifies an optional {@link Callback} exactly once
+ * when it completes.
+ *
+ * @param <T> the result type.
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class BlockstackFuture<T> extends FutureTask<T> {
+    private final Callback<T> callback;
+    private final Executor callbackExecutor;
+    private volatile Timeout timeout;
+    // Guarded by this, like interrupted: the thread inside run(), if any.
+    private Thread runner;
+    private boolean interrupted;
+
+    /**
+     * Creates a future for a call.
+     *
+     * @param callable the call to run.
+     * @param callback notified on completion, may be <code>null</code>.
+     * @param callbackExecutor runs the callback, may be <code>null</code> to run it on the
+     *                         thread that completed the call.
+     */
+    public BlockstackFuture(@NonNull Callable<T> callable, Callback<T> callback,
+                            Executor callbackExecutor) {
+        super(callable);
+        this.callback = callback;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    /**
+     * Creates a future that is completed explicitly through {@link #complete(Object)} or
+     * {@link #fail(Throwable)} instead of by running a call.
+     *
+     * @param callback notified on completion, may be <code>null</code>.
+     * @param callbackExecutor runs the callback, may be <code>null</code>.
+     */
+    BlockstackFuture(Callback<T> callback, Executor callbackExecutor) {
+        this(new Callable<T>() {
+            @Override
+            public T call() {
+                throw new IllegalStateException("Future is completed explicitly");
+            }
+        }, callback, callbackExecutor);
+    }
+
+    /**
+     * Completes the future with a result, unless it is already done.
+     *
+     * @param result the result.
+     */
+    void complete(T result) {
+        set(result);
+    }
+
+    /**
+     * Completes the future with an error, unless it is already done.
+     *
+     * @param error the failure cause.
+     */
+    void fail(@NonNull Throwable error) {
+        setException(error);
+    }
+
+    @Override
+    public void run() {
+        synchronized (this) {
+            runner = Thread.currentThread();
+        }
+
+        try {
+            super.run();
+        } finally {
+            synchronized (this) {
+                runner = null;
+
+                if (interrupted) {
+                    // Delivered for this call only; the thread may run another one next.
+                    Thread.interrupted();
+                }
+            }
+        }
+    }
+
+    /**
+     * Schedules {@link #timeout()}. The scheduled task is cancelled, and lets go of this
+     * future, as soon as the call completes.
+     *
+     * @param timer runs the timeout.
+     * @param timeoutMillis how long the call may take.
+     */
+    void scheduleTimeout(@NonNull ScheduledExecutorService timer, long timeoutMillis) {
+        Timeout task = new Timeout(this);
+        task.scheduled = timer.schedule(task, timeoutMillis, TimeUnit.MILLISECONDS);
+        timeout = task;
+
+        if (isDone()) {
+            task.cancel();
+        }
+    }
+
+    /**
+     * Fails the call with a {@link TimeoutException} if it has not completed yet and interrupts
+     * the thread running it. Like <code>cancel(true)</code>, the thread is only interrupted if
+     * this failure is what completed the call, and only while it is still running it.
+     */
+    void timeout() {
+        TimeoutException failure = new TimeoutException("Blockstack call timed out");
+        setException(failure);
+
+        if (!failedWith(failure)) {
+            return;
+        }
+
+        synchronized (this) {
+            if (runner != null) {
+                interrupted = true;
+                runner.interrupt();
+            }
+        }
+    }
+
+    private boolean failedWith(Throwable failure) {
+        if (!isDone() || isCancelled()) {
+            return false;
+        }
+
+        try {
+            get();
+            return false;
+        } catch (ExecutionException e) {
+            return e.getCause() == failure;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Override
+    protected void done() {
+        Timeout task = timeout;
+        if (task != null) {
+            task.cancel();
+        }
+
+        if (callback == null) {
+            return;
+        }
+
+        Runnable notification = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    callback.onSuccess(get());
+                } catch (CancellationException e) {
+                    callback.onFailure(e);
+                } catch (ExecutionException e) {
+                    callback.onFailure(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    callback.onFailure(e);
+                }
+            }
+        };
+
+        if (callbackExecutor != null) {
+            callbackExecutor.execute(notification);
+        } else {
+            notification.run();
+        }
+    }
+
+    /**
+     * The scheduled timeout of a call. Before Android 5.0 a cancelled task stays in the timer
+     * queue until it is due, so cancelling also drops the reference to the future.
+     */
+    private static final class Timeout implements Runnable {
+        private volatile BlockstackFuture<?> future;
+        private volatile ScheduledFuture<?> scheduled;
+
+        Timeout(BlockstackFuture<?> future) {
+            this.future = future;
+        }
+
+        @Override
+        public void run() {
+            BlockstackFuture<?> pending = future;
+
+            if (pending != null) {
+                pending.timeout();
+            }
+        }
+
+        void cancel() {
+            future = null;
+            ScheduledFuture<?> task = scheduled;
+
+            if (task != null) {
+                task.cancel(false);
+            }
+        }
+    }
+}
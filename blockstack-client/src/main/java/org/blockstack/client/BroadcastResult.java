@@ -0,0 +1,78 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+
+/**
+ * The BroadcastResult <code>class</code> is the server answer to a transaction broadcast.
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class BroadcastResult {
+    private final String transactionHash;
+    private final String status;
+    private final String error;
+
+    public BroadcastResult(String transactionHash, String status, String error) {
+        this.transactionHash = transactionHash;
+        this.status = status;
+        this.error = error;
+    }
+
+    /**
+     * @return the hash of the broadcast transaction, or <code>null</code> if it was rejected.
+     */
+    public String getTransactionHash() {
+        return transactionHash;
+    }
+
+    /**
+     * @return the status reported by the server, e.g. <code>"success"</code>, or
+     *          <code>null</code>.
+     */
+    public String getStatus() {
+        return status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * @return <code>true</code> if the server accepted the transaction.
+     */
+    public boolean isSuccessful() {
+        return error == null && (transactionHash != null || "success".equals(status));
+    }
+
+    /**
+     * Reads a broadcast response.
+     */
+    static BroadcastResult read(@NonNull JsonPullParser parser) throws IOException {
+        String transactionHash = null;
+        String status = null;
+        String error = null;
+
+        parser.beginObject();
+
+        while (parser.hasNext()) {
+            String name = parser.nextName();
+
+            if ("transaction_hash".equals(name) && parser.peek() == JsonPullParser.Token.STRING) {
+                transactionHash = parser.nextString();
+            } else if ("status".equals(name) && parser.peek() == JsonPullParser.Token.STRING) {
+                status = parser.nextString();
+            } else if ("error".equals(name)) {
+                error = parser.peek() == JsonPullParser.Token.STRING
+                        ? parser.nextString() : parser.readRawValue();
+            } else {
+                parser.skipValue();
+            }
+        }
+
+        parser.endObject();
+        return new BroadcastResult(transactionHash, status, error);
+    }
+}
@@ -0,0 +1,105 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded pool of the byte buffers, char buffers and UTF-8 decoders used to read response
+ * bodies, so a steady stream of calls does not allocate them again for every response. Buffers
+ * beyond the pool size are simply left to the garbage collector.
+ * <p>
+ * Every request takes and returns buffers, so the pool is lock-free: each object sits in a
+ * fixed slot that threads claim and fill with a compare-and-set, and a thread that loses a race
+ * moves on to the next slot or, failing that, allocates.
+ */
+final class BufferPool {
+    static final int BYTE_BUFFER_SIZE = 8192;
+    static final int CHAR_BUFFER_SIZE = 8192;
+
+    private static final int MAX_POOLED = 8;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Slots<byte[]> byteBuffers = new Slots<>(MAX_POOLED);
+    private static final Slots<char[]> charBuffers = new Slots<>(MAX_POOLED);
+    private static final Slots<CharsetDecoder> decoders = new Slots<>(MAX_POOLED);
+
+    private BufferPool() {
+    }
+
+    static byte[] takeBytes() {
+        byte[] buffer = byteBuffers.take();
+        return buffer != null ? buffer : new byte[BYTE_BUFFER_SIZE];
+    }
+
+    static void recycle(@NonNull byte[] buffer) {
+        if (buffer.length == BYTE_BUFFER_SIZE) {
+            byteBuffers.offer(buffer);
+        }
+    }
+
+    static char[] takeChars() {
+        char[] buffer = charBuffers.take();
+        return buffer != null ? buffer : new char[CHAR_BUFFER_SIZE];
+    }
+
+    static void recycle(@NonNull char[] buffer) {
+        if (buffer.length == CHAR_BUFFER_SIZE) {
+            charBuffers.offer(buffer);
+        }
+    }
+
+    /**
+     * @return a reset UTF-8 decoder that replaces malformed input, like
+     *          <code>InputStreamReader</code> does.
+     */
+    static CharsetDecoder takeDecoder() {
+        CharsetDecoder decoder = decoders.take();
+
+        if (decoder != null) {
+            return decoder.reset();
+        }
+
+        return UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    static void recycle(@NonNull CharsetDecoder decoder) {
+        decoders.offer(decoder);
+    }
+
+    /**
+     * A fixed number of slots, each empty or holding one pooled object.
+     */
+    private static final class Slots<T> {
+        private final AtomicReferenceArray<T> slots;
+
+        Slots(int size) {
+            slots = new AtomicReferenceArray<>(size);
+        }
+
+        T take() {
+            for (int i = 0; i < slots.length(); i++) {
+                T value = slots.get(i);
+
+                if (value != null && slots.compareAndSet(i, value, null)) {
+                    return value;
+                }
+            }
+
+            return null;
+        }
+
+        void offer(T value) {
+            for (int i = 0; i < slots.length(); i++) {
+                if (slots.get(i) == null && slots.compareAndSet(i, null, value)) {
+                    return;
+                }
+            }
+        }
+    }
+}
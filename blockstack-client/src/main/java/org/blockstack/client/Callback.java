@@ -0,0 +1,24 @@
+package org.blockstack.client;
+
+/**
+ * The Callback <code>interface</code> receives the outcome of an asynchronous Blockstack call.
+ *
+ * @param <T> the result type.
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public interface Callback<T> {
+    /**
+     * Called when the call completed successfully.
+     *
+     * @param result the call result.
+     */
+    void onSuccess(T result);
+
+    /**
+     * Called when the call failed, timed out or was cancelled.
+     *
+     * @param error the failure cause.
+     */
+    void onFailure(Throwable error);
+}
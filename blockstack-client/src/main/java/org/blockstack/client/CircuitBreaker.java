@@ -0,0 +1,144 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The CircuitBreaker <code>class</code> stops requests to a host that keeps failing, so callers
+ * fail fast with a {@link CircuitOpenException} instead of piling up threads blocked on a dead
+ * server.
+ * <p>
+ * The breaker opens after a number of consecutive failures. Once the open duration has
+ * elapsed it lets a single trial request through; success closes it again, while failure
+ * keeps it open for another period.
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class CircuitBreaker {
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final long DEFAULT_OPEN_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * The states of a breaker.
+     */
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String host;
+    private final int failureThreshold;
+    private final long openMillis;
+
+    // Volatile so the closed state, which nearly every request sees, is checked without a lock.
+    private volatile State state = State.CLOSED;
+    private volatile int failures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    /**
+     * Creates a breaker with the default threshold and open duration.
+     *
+     * @param host the host guarded by this breaker.
+     */
+    public CircuitBreaker(@NonNull String host) {
+        this(host, DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MILLIS);
+    }
+
+    /**
+     * Creates a breaker.
+     *
+     * @param host the host guarded by this breaker.
+     * @param failureThreshold consecutive failures that open the breaker.
+     * @param openMillis how long the breaker stays open before a trial request.
+     */
+    public CircuitBreaker(@NonNull String host, int failureThreshold, long openMillis) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("failureThreshold < 1");
+        }
+
+        this.host = host;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * @return the current state. An open breaker reports {@link State#OPEN} until the next
+     *          request turns it half-open.
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Asks permission to send a request. Every granted request must be followed by
+     * {@link #onSuccess()} or {@link #onFailure()}.
+     *
+     * @throws CircuitOpenException if the breaker is open, or half-open with its trial request
+     *          still running.
+     */
+    void acquire() throws CircuitOpenException {
+        if (state == State.CLOSED) {
+            return;
+        }
+
+        synchronized (this) {
+            acquireLocked();
+        }
+    }
+
+    private void acquireLocked() throws CircuitOpenException {
+        if (state == State.OPEN) {
+            long remaining = openedAt + openMillis - now();
+            if (remaining > 0) {
+                throw new CircuitOpenException(host, remaining);
+            }
+
+            state = State.HALF_OPEN;
+        }
+
+        if (state == State.HALF_OPEN) {
+            if (trialInFlight) {
+                throw new CircuitOpenException(host, 0);
+            }
+
+            trialInFlight = true;
+        }
+    }
+
+    void onSuccess() {
+        if (state == State.CLOSED && failures == 0) {
+            return;
+        }
+
+        synchronized (this) {
+            state = State.CLOSED;
+            failures = 0;
+            trialInFlight = false;
+        }
+    }
+
+    synchronized void onFailure() {
+        trialInFlight = false;
+
+        if (state == State.OPEN) {
+            // A request sent before the breaker opened; it must not extend the open period.
+            return;
+        }
+
+        if (state == State.HALF_OPEN || ++failures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = now();
+            failures = 0;
+        }
+    }
+
+    long now() {
+        return System.currentTimeMillis();
+    }
+}
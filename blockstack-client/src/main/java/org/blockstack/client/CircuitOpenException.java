@@ -0,0 +1,33 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of sending a request while the {@link CircuitBreaker} for its host is open.
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class CircuitOpenException extends IOException {
+    private final String host;
+    private final long retryAfterMillis;
+
+    public CircuitOpenException(@NonNull String host, long retryAfterMillis) {
+        super("Circuit open for " + host + ", retry in " + retryAfterMillis + " ms");
+        this.host = host;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * @return how long until the breaker lets a trial request through.
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
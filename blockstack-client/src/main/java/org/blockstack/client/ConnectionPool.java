@@ -0,0 +1,133 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * The ConnectionPool <code>class</code> bounds and configures the keep-alive connections used
+ * by {@link HttpURLConnectionTransport}.
+ * <p>
+ * Sockets themselves are pooled by the platform <code>HttpURLConnection</code> implementation,
+ * which owns keep-alive and idle eviction. Its limits are process-wide and read once, from the
+ * <code>http.keepAlive</code>, <code>http.maxConnections</code> and
+ * <code>http.keepAliveDuration</code> system properties, so they are left to the app to set at
+ * startup. This class limits the number of concurrent connections per host and owns a single
+ * <code>SSLSocketFactory</code> whose session cache allows TLS session resumption.
+ * HTTPS connections are only reused when they were created by the same factory instance, so
+ * every request going through a pool shares it.
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class ConnectionPool {
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 5;
+    public static final long DEFAULT_ACQUIRE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    public static final int DEFAULT_TLS_SESSION_CACHE_SIZE = 32;
+    public static final int DEFAULT_TLS_SESSION_TIMEOUT_SECONDS = (int) TimeUnit.HOURS.toSeconds(1);
+
+    private final int maxConnectionsPerHost;
+    private final long acquireTimeoutMillis;
+    private final SSLSocketFactory sslSocketFactory;
+    private final ConcurrentMap<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a pool with the default limits.
+     */
+    public ConnectionPool() {
+        this(DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_ACQUIRE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Creates a pool.
+     *
+     * @param maxConnectionsPerHost maximum number of connections open to a single host.
+     * @param acquireTimeoutMillis how long a request waits for a free connection slot.
+     */
+    public ConnectionPool(int maxConnectionsPerHost, long acquireTimeoutMillis) {
+        if (maxConnectionsPerHost < 1) {
+            throw new IllegalArgumentException("maxConnectionsPerHost < 1");
+        }
+
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.sslSocketFactory = createSslSocketFactory();
+    }
+
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    /**
+     * @return the socket factory shared by every HTTPS connection of this pool.
+     */
+    public SSLSocketFactory getSslSocketFactory() {
+        return sslSocketFactory;
+    }
+
+    /**
+     * Reserves a connection slot for a host, waiting if the host is at its limit.
+     *
+     * @param host the host to connect to.
+     * @return the permit to release once the response has been consumed.
+     * @throws IOException if no slot became available in time.
+     */
+    Semaphore acquire(@NonNull String host) throws IOException {
+        Semaphore permits = hostPermits.get(host);
+
+        if (permits == null) {
+            // Not fair: a free slot is taken with a single compare-and-set instead of queueing
+            // behind the waiters, which only matters while the host is at its limit.
+            Semaphore created = new Semaphore(maxConnectionsPerHost);
+            permits = hostPermits.putIfAbsent(host, created);
+
+            if (permits == null) {
+                permits = created;
+            }
+        }
+
+        if (permits.tryAcquire()) {
+            return permits;
+        }
+
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Timed out waiting for a connection to " + host);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a connection to " + host);
+        }
+
+        return permits;
+    }
+
+    private static SSLSocketFactory createSslSocketFactory() {
+        try {
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, null, null);
+
+            SSLSessionContext sessions = context.getClientSessionContext();
+            if (sessions != null) {
+                sessions.setSessionCacheSize(DEFAULT_TLS_SESSION_CACHE_SIZE);
+                sessions.setSessionTimeout(DEFAULT_TLS_SESSION_TIMEOUT_SECONDS);
+            }
+
+            return new TimingSSLSocketFactory(context.getSocketFactory());
+        } catch (GeneralSecurityException e) {
+            e.printStackTrace();
+            return new TimingSSLSocketFactory(HttpsURLConnection.getDefaultSSLSocketFactory());
+        }
+    }
+}
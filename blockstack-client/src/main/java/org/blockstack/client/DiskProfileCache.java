@@ -0,0 +1,676 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The DiskProfileCache <code>class</code> persists user lookup results across process restarts.
+ * <p>
+ * Entries are appended to a data file and located through a memory-mapped hash index, so a read
+ * costs one index probe and one positional read. Superseded records are reclaimed by compacting
+ * the data file once it exceeds its size limit or is mostly garbage; the oldest entries are
+ * dropped if live data alone is over the limit. If the index is missing or does not match the
+ * data file, for instance after a crash, it is rebuilt by replaying the data file.
+ * <p>
+ * Each entry keeps the <code>ETag</code> and <code>Last-Modified</code> validators of the
+ * response it came from so that an expired entry can be revalidated with a conditional request
+ * instead of being downloaded again.
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class DiskProfileCache implements Closeable {
+    public static final long DEFAULT_MAX_BYTES = 10 * 1024 * 1024;
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.HOURS.toMillis(24);
+    public static final long DEFAULT_NEGATIVE_TTL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final String DATA_FILE = "profiles.dat";
+    private static final String INDEX_FILE = "profiles.idx";
+    private static final String COMPACT_FILE = "profiles.dat.tmp";
+
+    private static final int MAGIC = 0x42534b43;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 40;
+    private static final int SLOT_BYTES = 24;
+    private static final int MIN_CAPACITY = 256;
+    private static final float MAX_LOAD = 0.7f;
+    private static final long MIN_COMPACTION_BYTES = 64 * 1024;
+
+    private static final byte TYPE_PUT = 1;
+    private static final byte TYPE_REMOVE = 2;
+
+    // Header field offsets
+    private static final int CAPACITY = 8;
+    private static final int COUNT = 12;
+    private static final int USED = 16;
+    private static final int LIVE_BYTES = 24;
+    private static final int COMMITTED_LENGTH = 32;
+
+    private final File directory;
+    private final long maxBytes;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+
+    private RandomAccessFile data;
+    private FileChannel dataChannel;
+    private RandomAccessFile index;
+    private MappedByteBuffer slots;
+    private int capacity;
+    private long dataLength;
+
+    /**
+     * Opens or creates a cache with the default size limit and time-to-live values.
+     *
+     * @param directory the directory holding the cache files, e.g. a subdirectory of
+     *                  <code>Context.getCacheDir()</code>.
+     * @throws IOException if the cache files cannot be opened.
+     */
+    public DiskProfileCache(@NonNull File directory) throws IOException {
+        this(directory, DEFAULT_MAX_BYTES, DEFAULT_TTL_MILLIS, DEFAULT_NEGATIVE_TTL_MILLIS);
+    }
+
+    /**
+     * Opens or creates a cache.
+     *
+     * @param directory the directory holding the cache files.
+     * @param maxBytes the maximum size of the data file.
+     * @param ttlMillis how long a found user is fresh.
+     * @param negativeTtlMillis how long an <code>"error"</code> entry is fresh.
+     * @throws IOException if the cache files cannot be opened.
+     */
+    public DiskProfileCache(@NonNull File directory, long maxBytes, long ttlMillis,
+                            long negativeTtlMillis) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create cache directory " + directory);
+        }
+
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttlMillis;
+        this.negativeTtlMillis = negativeTtlMillis;
+
+        openDataFile();
+        index = new RandomAccessFile(new File(directory, INDEX_FILE), "rw");
+
+        if (!loadIndex()) {
+            rebuildIndex();
+        }
+    }
+
+    // region Cache operations
+    /**
+     * Returns the cached entry for a user, fresh or not.
+     *
+     * @param username the username.
+     * @return the entry, or <code>null</code> if the user is not cached.
+     */
+    public synchronized Entry get(@NonNull String username) {
+        ensureOpen();
+
+        int slot = findSlot(hash(username));
+        if (slot < 0) {
+            return null;
+        }
+
+        try {
+            Entry entry = readEntry(slotOffset(slot), slotLength(slot));
+            return entry != null && entry.username.equals(username) ? entry : null;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Stores the lookup result for a user, replacing any previous entry.
+     *
+     * @param username the username.
+     * @param json the user's JSON object as a <code>String</code>.
+     * @param negative <code>true</code> if the server answered with an <code>"error"</code>.
+     * @param etag the response <code>ETag</code>, may be <code>null</code>.
+     * @param lastModified the response <code>Last-Modified</code> date, may be
+     *                     <code>null</code>.
+     */
+    public synchronized void put(@NonNull String username, @NonNull String json, boolean negative,
+                                 String etag, String lastModified) {
+        ensureOpen();
+
+        long now = now();
+        Entry entry = new Entry(username, json, negative, now,
+                now + (negative ? negativeTtlMillis : ttlMillis), etag, lastModified);
+
+        try {
+            byte[] record = encode(entry);
+
+            if (record.length > maxBytes) {
+                remove(username);
+                return;
+            }
+
+            long offset = append(record);
+            putSlot(hash(username), offset, record.length);
+            commit();
+
+            if (needsCompaction()) {
+                compact();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Marks an entry as fresh again after the server confirmed it has not changed.
+     *
+     * @param entry the revalidated entry.
+     */
+    public void refresh(@NonNull Entry entry) {
+        put(entry.username, entry.json, entry.negative, entry.etag, entry.lastModified);
+    }
+
+    /**
+     * Removes a user from the cache.
+     *
+     * @param username the username.
+     */
+    public synchronized void remove(@NonNull String username) {
+        ensureOpen();
+
+        long hash = hash(username);
+        int slot = findSlot(hash);
+        if (slot < 0) {
+            return;
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0);
+            out.writeByte(TYPE_REMOVE);
+            out.writeUTF(username);
+            byte[] record = finishRecord(bytes);
+
+            append(record);
+            setLiveBytes(liveBytes() - slotLength(slot));
+            slots.putLong(slotPosition(slot) + 8, -1);
+            slots.putInt(COUNT, slots.getInt(COUNT) - 1);
+            commit();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return the number of cached users.
+     */
+    public synchronized int size() {
+        ensureOpen();
+        return slots.getInt(COUNT);
+    }
+
+    /**
+     * @return the size of the data file, including records not yet reclaimed by compaction.
+     */
+    public synchronized long getDataFileSize() {
+        return dataLength;
+    }
+
+    /**
+     * Rewrites the data file with live entries only, dropping the oldest entries if they do
+     * not fit in the size limit.
+     *
+     * @throws IOException if the data file cannot be rewritten.
+     */
+    public synchronized void compact() throws IOException {
+        ensureOpen();
+
+        List<Entry> entries = new ArrayList<>();
+        for (int slot = 0; slot < capacity; slot++) {
+            if (slotHash(slot) != 0 && slotOffset(slot) >= 0) {
+                Entry entry = readEntry(slotOffset(slot), slotLength(slot));
+
+                if (entry != null) {
+                    entries.add(entry);
+                }
+            }
+        }
+
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry lhs, Entry rhs) {
+                return lhs.storedAt < rhs.storedAt ? 1 : lhs.storedAt == rhs.storedAt ? 0 : -1;
+            }
+        });
+
+        // Leave headroom so the next few writes do not trigger another compaction right away.
+        long budget = maxBytes * 3 / 4;
+        File compacted = new File(directory, COMPACT_FILE);
+        Map<Long, long[]> locations = new HashMap<>();
+        RandomAccessFile out = new RandomAccessFile(compacted, "rw");
+
+        try {
+            out.setLength(0);
+            long length = 0;
+
+            for (Entry entry : entries) {
+                byte[] record = encode(entry);
+
+                if (length + record.length > budget) {
+                    continue;
+                }
+
+                out.write(record);
+                locations.put(hash(entry.username), new long[] {length, record.length});
+                length += record.length;
+            }
+
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+
+        dataChannel.close();
+        data.close();
+
+        if (!compacted.renameTo(new File(directory, DATA_FILE))) {
+            openDataFile();
+            throw new IOException("Cannot replace " + DATA_FILE + " with compacted file");
+        }
+
+        openDataFile();
+        writeIndex(locations);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (data == null) {
+            return;
+        }
+
+        slots.force();
+        dataChannel.force(false);
+        dataChannel.close();
+        data.close();
+        index.close();
+        data = null;
+    }
+    // endregion
+
+    long now() {
+        return System.currentTimeMillis();
+    }
+
+    // region Data file
+    private void openDataFile() throws IOException {
+        data = new RandomAccessFile(new File(directory, DATA_FILE), "rw");
+        dataChannel = data.getChannel();
+        dataLength = data.length();
+    }
+
+    private long append(byte[] record) throws IOException {
+        long offset = dataLength;
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+
+        while (buffer.hasRemaining()) {
+            dataChannel.write(buffer, offset + buffer.position());
+        }
+
+        dataLength += record.length;
+        return offset;
+    }
+
+    private byte[] read(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+
+        while (buffer.hasRemaining()) {
+            if (dataChannel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of " + DATA_FILE);
+            }
+        }
+
+        return buffer.array();
+    }
+
+    private Entry readEntry(long offset, int length) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(read(offset, length)));
+        in.readInt();
+
+        if (in.readByte() != TYPE_PUT) {
+            return null;
+        }
+
+        String username = in.readUTF();
+        long storedAt = in.readLong();
+        long expiresAt = in.readLong();
+        boolean negative = in.readBoolean();
+        String etag = in.readUTF();
+        String lastModified = in.readUTF();
+        byte[] json = new byte[in.readInt()];
+        in.readFully(json);
+
+        return new Entry(username, new String(json, "UTF-8"), negative, storedAt, expiresAt,
+                etag.length() > 0 ? etag : null, lastModified.length() > 0 ? lastModified : null);
+    }
+
+    private static byte[] encode(Entry entry) throws IOException {
+        byte[] json = entry.json.getBytes("UTF-8");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(json.length + 128);
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeInt(0);
+        out.writeByte(TYPE_PUT);
+        out.writeUTF(entry.username);
+        out.writeLong(entry.storedAt);
+        out.writeLong(entry.expiresAt);
+        out.writeBoolean(entry.negative);
+        out.writeUTF(entry.etag != null ? entry.etag : "");
+        out.writeUTF(entry.lastModified != null ? entry.lastModified : "");
+        out.writeInt(json.length);
+        out.write(json);
+
+        return finishRecord(bytes);
+    }
+
+    /**
+     * Fills in the length prefix of a record, which counts the bytes following it.
+     */
+    private static byte[] finishRecord(ByteArrayOutputStream bytes) {
+        byte[] record = bytes.toByteArray();
+        ByteBuffer.wrap(record).putInt(0, record.length - 4);
+        return record;
+    }
+
+    private boolean needsCompaction() {
+        long garbage = dataLength - liveBytes();
+        return dataLength > maxBytes
+                || (dataLength > MIN_COMPACTION_BYTES && garbage > dataLength / 2);
+    }
+    // endregion
+
+    // region Index
+    private boolean loadIndex() throws IOException {
+        long length = index.length();
+        if (length < HEADER_BYTES) {
+            return false;
+        }
+
+        slots = index.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+        capacity = slots.getInt(CAPACITY);
+
+        return slots.getInt(0) == MAGIC && slots.getInt(4) == VERSION
+                && capacity >= MIN_CAPACITY && Integer.bitCount(capacity) == 1
+                && length == HEADER_BYTES + (long) capacity * SLOT_BYTES
+                && slots.getLong(COMMITTED_LENGTH) == dataLength;
+    }
+
+    /**
+     * Recreates the index by replaying the data file, truncating any partially written
+     * trailing record.
+     */
+    private void rebuildIndex() throws IOException {
+        Map<Long, long[]> locations = new HashMap<>();
+        DataInputStream in;
+        long offset = 0;
+
+        while (offset + 4 <= dataLength) {
+            int length = ByteBuffer.wrap(read(offset, 4)).getInt();
+
+            if (length <= 0 || offset + 4 + length > dataLength) {
+                break;
+            }
+
+            in = new DataInputStream(new ByteArrayInputStream(read(offset + 4, length)));
+            byte type = in.readByte();
+            String username = in.readUTF();
+
+            if (type == TYPE_PUT) {
+                locations.put(hash(username), new long[] {offset, length + 4});
+            } else {
+                locations.remove(hash(username));
+            }
+
+            offset += 4 + length;
+        }
+
+        if (offset < dataLength) {
+            data.setLength(offset);
+            dataLength = offset;
+        }
+
+        writeIndex(locations);
+    }
+
+    /**
+     * Replaces the index with a new one, sized for the given records.
+     *
+     * @param locations the offset and length of each live record, keyed by username hash.
+     */
+    private void writeIndex(Map<Long, long[]> locations) throws IOException {
+        int newCapacity = MIN_CAPACITY;
+        while (locations.size() > newCapacity * MAX_LOAD / 2) {
+            newCapacity <<= 1;
+        }
+
+        long length = HEADER_BYTES + (long) newCapacity * SLOT_BYTES;
+        index.setLength(length);
+        slots = index.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+        capacity = newCapacity;
+
+        for (int position = 0; position < length; position += 8) {
+            slots.putLong(position, 0);
+        }
+
+        slots.putInt(0, MAGIC);
+        slots.putInt(4, VERSION);
+        slots.putInt(CAPACITY, capacity);
+
+        for (Map.Entry<Long, long[]> location : locations.entrySet()) {
+            putSlot(location.getKey(), location.getValue()[0], (int) location.getValue()[1]);
+        }
+
+        commit();
+    }
+
+    private void putSlot(long hash, long offset, int length) throws IOException {
+        int slot = findSlot(hash);
+
+        if (slot >= 0) {
+            setLiveBytes(liveBytes() - slotLength(slot));
+        } else {
+            if (slots.getInt(USED) + 1 > capacity * MAX_LOAD) {
+                grow();
+            }
+
+            slot = freeSlot(hash);
+            if (slotHash(slot) == 0) {
+                slots.putInt(USED, slots.getInt(USED) + 1);
+            }
+
+            slots.putInt(COUNT, slots.getInt(COUNT) + 1);
+        }
+
+        int position = slotPosition(slot);
+        slots.putLong(position, hash);
+        slots.putLong(position + 8, offset);
+        slots.putInt(position + 16, length);
+        setLiveBytes(liveBytes() + length);
+    }
+
+    private void grow() throws IOException {
+        Map<Long, long[]> locations = new HashMap<>();
+
+        for (int slot = 0; slot < capacity; slot++) {
+            if (slotHash(slot) != 0 && slotOffset(slot) >= 0) {
+                locations.put(slotHash(slot), new long[] {slotOffset(slot), slotLength(slot)});
+            }
+        }
+
+        writeIndex(locations);
+    }
+
+    /**
+     * @return the slot holding a live entry for the hash, or -1.
+     */
+    private int findSlot(long hash) {
+        int mask = capacity - 1;
+
+        int i = (int) hash & mask;
+
+        for (int probes = 0; probes < capacity; probes++, i = (i + 1) & mask) {
+            long slotHash = slotHash(i);
+
+            if (slotHash == 0) {
+                return -1;
+            }
+
+            if (slotHash == hash && slotOffset(i) >= 0) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @return the first empty or deleted slot in the probe sequence of the hash.
+     */
+    private int freeSlot(long hash) {
+        int mask = capacity - 1;
+        int i = (int) hash & mask;
+
+        while (slotHash(i) != 0 && slotOffset(i) >= 0) {
+            i = (i + 1) & mask;
+        }
+
+        return i;
+    }
+
+    private void commit() {
+        slots.putLong(COMMITTED_LENGTH, dataLength);
+    }
+
+    private long liveBytes() {
+        return slots.getLong(LIVE_BYTES);
+    }
+
+    private void setLiveBytes(long liveBytes) {
+        slots.putLong(LIVE_BYTES, liveBytes);
+    }
+
+    private static int slotPosition(int slot) {
+        return HEADER_BYTES + slot * SLOT_BYTES;
+    }
+
+    private long slotHash(int slot) {
+        return slots.getLong(slotPosition(slot));
+    }
+
+    private long slotOffset(int slot) {
+        return slots.getLong(slotPosition(slot) + 8);
+    }
+
+    private int slotLength(int slot) {
+        return slots.getInt(slotPosition(slot) + 16);
+    }
+
+    /**
+     * 64-bit FNV-1a; 0 marks an empty slot, so it is never returned.
+     */
+    private static long hash(String username) {
+        long hash = 0xcbf29ce484222325L;
+
+        for (int i = 0; i < username.length(); i++) {
+            hash ^= username.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        return hash != 0 ? hash : 1;
+    }
+    // endregion
+
+    private void ensureOpen() {
+        if (data == null) {
+            throw new IllegalStateException("DiskProfileCache is closed");
+        }
+    }
+
+    /**
+     * A cached lookup result and the validators of the response it came from.
+     */
+    public class Entry {
+        private final String username;
+        private final String json;
+        private final boolean negative;
+        private final long storedAt;
+        private final long expiresAt;
+        private final String etag;
+        private final String lastModified;
+
+        Entry(String username, String json, boolean negative, long storedAt, long expiresAt,
+              String etag, String lastModified) {
+            this.username = username;
+            this.json = json;
+            this.negative = negative;
+            this.storedAt = storedAt;
+            this.expiresAt = expiresAt;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public String getJson() {
+            return json;
+        }
+
+        public boolean isNegative() {
+            return negative;
+        }
+
+        public long getStoredAt() {
+            return storedAt;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * @return <code>true</code> if the entry has not reached its time-to-live yet.
+         */
+        public boolean isFresh() {
+            return now() < expiresAt;
+        }
+
+        /**
+         * @return <code>true</code> if the entry can be revalidated with a conditional request.
+         */
+        public boolean hasValidators() {
+            return etag != null || lastModified != null;
+        }
+    }
+}
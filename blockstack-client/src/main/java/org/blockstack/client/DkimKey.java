@@ -0,0 +1,98 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+
+/**
+ * The DkimKey <code>class</code> is the DKIM public key published by a domain.
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class DkimKey {
+    private final String domain;
+    private final String publicKey;
+    private final String keyType;
+    private final long ttlSeconds;
+
+    public DkimKey(@NonNull String domain, @NonNull String publicKey, String keyType) {
+        this(domain, publicKey, keyType, -1);
+    }
+
+    /**
+     * @param ttlSeconds how long the key may be cached, or -1 if the server did not say.
+     */
+    public DkimKey(@NonNull String domain, @NonNull String publicKey, String keyType,
+                   long ttlSeconds) {
+        this.domain = domain;
+        this.publicKey = publicKey;
+        this.keyType = keyType;
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    public String getDomain() {
+        return domain;
+    }
+
+    public String getPublicKey() {
+        return publicKey;
+    }
+
+    /**
+     * @return the key algorithm, e.g. <code>"rsa"</code>, or <code>null</code>.
+     */
+    public String getKeyType() {
+        return keyType;
+    }
+
+    /**
+     * @return how long the key may be cached, from the record TTL, or -1 if the server did not
+     *          say.
+     */
+    public long getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    static DkimKey read(@NonNull String domain, @NonNull JsonPullParser parser)
+            throws IOException {
+        return read(domain, parser, -1);
+    }
+
+    /**
+     * Reads a <code>{"public_key": ..., "key_type": ..., "ttl": ...}</code> response.
+     *
+     * @param defaultTtlSeconds the TTL to use when the response has none, e.g. from its
+     *                          <code>Cache-Control</code> header, or -1.
+     */
+    static DkimKey read(@NonNull String domain, @NonNull JsonPullParser parser,
+                        long defaultTtlSeconds) throws IOException {
+        String publicKey = null;
+        String keyType = null;
+        long ttlSeconds = defaultTtlSeconds;
+
+        parser.beginObject();
+
+        while (parser.hasNext()) {
+            String name = parser.nextName();
+
+            if ("public_key".equals(name) && parser.peek() == JsonPullParser.Token.STRING) {
+                publicKey = parser.nextString();
+            } else if ("key_type".equals(name) && parser.peek() == JsonPullParser.Token.STRING) {
+                keyType = parser.nextString();
+            } else if ("ttl".equals(name) && parser.peek() == JsonPullParser.Token.NUMBER) {
+                ttlSeconds = Math.max(0, parser.nextLong());
+            } else {
+                parser.skipValue();
+            }
+        }
+
+        parser.endObject();
+
+        if (publicKey == null) {
+            throw new IOException("No DKIM public key for " + domain);
+        }
+
+        return new DkimKey(domain, publicKey, keyType, ttlSeconds);
+    }
+}
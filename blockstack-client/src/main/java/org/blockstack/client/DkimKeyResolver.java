@@ -0,0 +1,412 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The DkimKeyResolver <code>class</code> resolves domain DKIM keys through a concurrent cache,
+ * much like a DNS resolver. A burst of messages from one sender domain costs a single request:
+ * <ul>
+ *     <li>Keys are cached for the record TTL when the server returns one, either as a
+ *     <code>"ttl"</code> field or a <code>Cache-Control: max-age</code> header, and for a
+ *     default TTL otherwise.</li>
+ *     <li>Concurrent misses for the same domain wait for one request.</li>
+ *     <li>A key about to expire is refreshed in the background while it is still served.</li>
+ *     <li>An expired key is still served for a while, its refresh running in the background,
+ *     so a slow or failing server does not hold up verification.</li>
+ *     <li>Domains the server does not know are remembered for a short time too.</li>
+ * </ul>
+ * Hits take no lock. The cache is bounded: entries too old to be served are dropped, and when
+ * it is full the keys expiring first make room. Install the resolver with
+ * {@link Blockstack#setDkimKeyResolver(DkimKeyResolver)} so
+ * {@link Blockstack#getDkimKey(String)} goes through it.
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class DkimKeyResolver {
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    public static final long DEFAULT_MAX_STALE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    public static final long DEFAULT_NEGATIVE_TTL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    // Keys are prefetched during the last tenth of their TTL.
+    private static final int PREFETCH_DIVISOR = 10;
+    private static final int REFRESH_THREADS = 2;
+
+    private final Blockstack blockstack;
+    private final long defaultTtlMillis;
+    private final long maxStaleMillis;
+    private final long negativeTtlMillis;
+    private final int maxEntries;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, FutureTask<Entry>> loads = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor refresher;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong staleHitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong refreshCount = new AtomicLong();
+    private final AtomicLong nextSweepAt = new AtomicLong();
+
+    /**
+     * Creates a resolver with the default TTL, stale window, negative TTL and size.
+     *
+     * @param blockstack the client fetching the keys.
+     */
+    public DkimKeyResolver(@NonNull Blockstack blockstack) {
+        this(blockstack, DEFAULT_TTL_MILLIS, DEFAULT_MAX_STALE_MILLIS, DEFAULT_NEGATIVE_TTL_MILLIS);
+    }
+
+    /**
+     * Creates a resolver caching up to {@value #DEFAULT_MAX_ENTRIES} domains.
+     *
+     * @param blockstack the client fetching the keys.
+     * @param defaultTtlMillis how long keys are cached when the server gives no TTL.
+     * @param maxStaleMillis how long an expired key is still served while it is refreshed.
+     * @param negativeTtlMillis how long a domain without a key is remembered.
+     */
+    public DkimKeyResolver(@NonNull Blockstack blockstack, long defaultTtlMillis,
+                           long maxStaleMillis, long negativeTtlMillis) {
+        this(blockstack, defaultTtlMillis, maxStaleMillis, negativeTtlMillis,
+                DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Creates a resolver.
+     *
+     * @param blockstack the client fetching the keys.
+     * @param defaultTtlMillis how long keys are cached when the server gives no TTL.
+     * @param maxStaleMillis how long an expired key is still served while it is refreshed.
+     * @param negativeTtlMillis how long a domain without a key is remembered.
+     * @param maxEntries the maximum number of cached domains.
+     */
+    public DkimKeyResolver(@NonNull Blockstack blockstack, long defaultTtlMillis,
+                           long maxStaleMillis, long negativeTtlMillis, int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries < 1");
+        }
+
+        this.blockstack = blockstack;
+        this.defaultTtlMillis = defaultTtlMillis;
+        this.maxStaleMillis = maxStaleMillis;
+        this.negativeTtlMillis = negativeTtlMillis;
+        this.maxEntries = maxEntries;
+        this.refresher = new ThreadPoolExecutor(REFRESH_THREADS, REFRESH_THREADS, 60,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new NamedThreadFactory("dkim"));
+        this.refresher.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Resolves the DKIM key of a domain, from the cache when possible.
+     *
+     * @param domain the domain.
+     * @return the key, or <code>null</code> if the domain has none or the request failed.
+     */
+    public DkimKey resolve(@NonNull String domain) {
+        try {
+            return resolveOrThrow(domain);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Resolves the DKIM key of a domain like {@link #resolve(String)}, telling failures apart.
+     *
+     * @return the key, or <code>null</code> if the server does not know the domain.
+     * @throws IOException if the key could not be fetched and none is cached.
+     */
+    DkimKey resolveOrThrow(@NonNull String domain) throws IOException {
+        String name = domain.trim().toLowerCase(Locale.US);
+        long now = now();
+        Entry entry = entries.get(name);
+
+        if (entry != null && now < entry.expiresAt) {
+            hitCount.incrementAndGet();
+
+            if (now >= entry.prefetchAt) {
+                refreshInBackground(name, entry);
+            }
+
+            return entry.key;
+        }
+
+        if (entry != null && entry.key != null && now < entry.expiresAt + maxStaleMillis) {
+            staleHitCount.incrementAndGet();
+            refreshInBackground(name, entry);
+            return entry.key;
+        }
+
+        if (entry != null) {
+            // Too old to be served.
+            entries.remove(name, entry);
+        }
+
+        missCount.incrementAndGet();
+        return load(name).key;
+    }
+
+    /**
+     * Forgets the cached key of a domain, e.g. after it failed to verify a signature.
+     *
+     * @param domain the domain.
+     */
+    public void invalidate(@NonNull String domain) {
+        entries.remove(domain.trim().toLowerCase(Locale.US));
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Stops the background refreshes. Keys are then only fetched on a miss.
+     */
+    public void shutdown() {
+        refresher.shutdown();
+    }
+
+    // region Statistics
+    /**
+     * @return the number of lookups answered with a fresh key or a remembered missing one.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return the number of lookups answered with an expired key while it was refreshed.
+     */
+    public long getStaleHitCount() {
+        return staleHitCount.get();
+    }
+
+    /**
+     * @return the number of lookups that had to wait for the server.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return the number of background refreshes, prefetches included.
+     */
+    public long getRefreshCount() {
+        return refreshCount.get();
+    }
+    // endregion
+
+    long now() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Fetches a key, or waits for the fetch already in progress for the domain.
+     */
+    private Entry load(@NonNull final String name) throws IOException {
+        FutureTask<Entry> task = loads.get(name);
+        boolean owner = false;
+
+        if (task == null) {
+            FutureTask<Entry> created = new FutureTask<>(new Callable<Entry>() {
+                @Override
+                public Entry call() throws IOException {
+                    return fetch(name);
+                }
+            });
+
+            task = loads.putIfAbsent(name, created);
+
+            if (task == null) {
+                task = created;
+                owner = true;
+            }
+        }
+
+        if (owner) {
+            try {
+                task.run();
+            } finally {
+                loads.remove(name, task);
+            }
+        }
+
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while resolving " + name);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+
+            throw new IOException(cause);
+        }
+    }
+
+    private Entry fetch(@NonNull String name) throws IOException {
+        Entry entry;
+
+        try {
+            DkimKey key = blockstack.fetchDkimKey(name);
+            long ttlMillis = key.getTtlSeconds() >= 0
+                    ? TimeUnit.SECONDS.toMillis(key.getTtlSeconds()) : defaultTtlMillis;
+            entry = new Entry(key, now(), ttlMillis);
+        } catch (HttpStatusException e) {
+            if (!e.isClientError()) {
+                throw e;
+            }
+
+            entry = new Entry(null, now(), negativeTtlMillis);
+        }
+
+        entries.put(name, entry);
+        evict(now());
+        return entry;
+    }
+
+    /**
+     * Drops the entries too old to be served, every default TTL, and makes room when the cache
+     * is over its size by dropping the entries expiring first. Runs after fetches only, so hits
+     * stay lock-free.
+     */
+    private void evict(long now) {
+        long sweepAt = nextSweepAt.get();
+        boolean due = now >= sweepAt && nextSweepAt.compareAndSet(sweepAt, now + defaultTtlMillis);
+
+        if (!due && entries.size() <= maxEntries) {
+            return;
+        }
+
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+
+            if (now >= entry.expiresAt + (entry.key != null ? maxStaleMillis : 0)) {
+                iterator.remove();
+            }
+        }
+
+        int excess = entries.size() - maxEntries;
+        if (excess <= 0) {
+            return;
+        }
+
+        List<Map.Entry<String, Entry>> live = new ArrayList<>(entries.entrySet());
+        Collections.sort(live, new Comparator<Map.Entry<String, Entry>>() {
+            @Override
+            public int compare(Map.Entry<String, Entry> a, Map.Entry<String, Entry> b) {
+                long left = a.getValue().expiresAt;
+                long right = b.getValue().expiresAt;
+                return left < right ? -1 : (left == right ? 0 : 1);
+            }
+        });
+
+        // A tenth more, so the next few misses do not sort again.
+        excess = Math.min(live.size(), excess + maxEntries / 10);
+        for (Map.Entry<String, Entry> eldest : live.subList(0, excess)) {
+            entries.remove(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    private void refreshInBackground(@NonNull final String name, @NonNull final Entry entry) {
+        if (!entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            refresher.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        refreshCount.incrementAndGet();
+                        load(name);
+                    } catch (IOException | RuntimeException e) {
+                        // The stale key keeps being served; the next lookup tries again.
+                        e.printStackTrace();
+                        entry.refreshing.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shut down.
+            entry.refreshing.set(false);
+        }
+    }
+
+    /**
+     * Reads the <code>max-age</code> directive of a <code>Cache-Control</code> header.
+     *
+     * @param cacheControl the header value, may be <code>null</code>.
+     * @return the maximum age in seconds, or -1 if there is none.
+     */
+    static long maxAgeSeconds(String cacheControl) {
+        if (cacheControl == null) {
+            return -1;
+        }
+
+        for (String directive : cacheControl.split(",")) {
+            String value = directive.trim().toLowerCase(Locale.US);
+
+            if (value.startsWith("max-age=")) {
+                try {
+                    return Math.max(0, Long.parseLong(value.substring(8).trim()));
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * A cached key, or a remembered missing one when <code>key</code> is <code>null</code>.
+     */
+    private static class Entry {
+        final DkimKey key;
+        final long expiresAt;
+        final long prefetchAt;
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Entry(DkimKey key, long fetchedAt, long ttlMillis) {
+            this.key = key;
+            this.expiresAt = fetchedAt + ttlMillis;
+            this.prefetchAt = key != null ? expiresAt - ttlMillis / PREFETCH_DIVISOR : expiresAt;
+        }
+    }
+}
@@ -1,26 +1,114 @@
 package org.blockstack.client;
 
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * The Endpoints <code>class</code> defines all valid blockstack-server endpoints.
+ * <p>
+ * The static constants point at the public Onename API. An <code>Endpoints</code> instance
+ * builds the same endpoints for one or more blockstack-server nodes of your own; URLs are
+ * built against the first node, and a {@link LoadBalancingTransport} spreads them over the
+ * rest.
  *
  * @author  Jorge Tapia (@itsProf)
  * @version 1.0
  */
 public class Endpoints {
+    public static final String DEFAULT_BASE_URL = "https://api.onename.com/v1";
+
     // region User endpoints
-    public static final String USERS = "https://api.onename.com/v1/users";
-    public static final String SEARCH = "https://api.onename.com/v1/search?query=";
+    public static final String USERS = DEFAULT_BASE_URL + "/users";
+    public static final String SEARCH = DEFAULT_BASE_URL + "/search?query=";
     // endregion
 
     // region Transaction endpoints
-    public static final String TRANSACTIONS = "https://api.onename.com/v1/transactions";
+    public static final String TRANSACTIONS = DEFAULT_BASE_URL + "/transactions";
     // endregion
 
     // region Address endpoints
-    public static final String ADDRESSES = "https://api.onename.com/v1/addresses";
+    public static final String ADDRESSES = DEFAULT_BASE_URL + "/addresses";
     // endregion
 
     // region Domain endpoints
-    public static final String DOMAINS = "https://api.onename.com/v1/domains";
+    public static final String DOMAINS = DEFAULT_BASE_URL + "/domains";
     // endregion
+
+    private final List<String> baseUrls;
+    private final String users;
+    private final String search;
+    private final String transactions;
+    private final String addresses;
+    private final String domains;
+
+    /**
+     * Creates the endpoints of one or more blockstack-server nodes.
+     *
+     * @param baseUrls the API base URL of every node, e.g.
+     *                 <code>"https://blockstack.example.com/v1"</code>.
+     */
+    public Endpoints(@NonNull String... baseUrls) {
+        if (baseUrls.length == 0) {
+            throw new IllegalArgumentException("No base URLs");
+        }
+
+        List<String> urls = new ArrayList<>();
+        for (String baseUrl : baseUrls) {
+            urls.add(trimTrailingSlash(baseUrl));
+        }
+
+        this.baseUrls = Collections.unmodifiableList(urls);
+
+        String primary = urls.get(0);
+        this.users = primary + "/users";
+        this.search = primary + "/search?query=";
+        this.transactions = primary + "/transactions";
+        this.addresses = primary + "/addresses";
+        this.domains = primary + "/domains";
+    }
+
+    /**
+     * @return the endpoints of the public Onename API.
+     */
+    public static Endpoints getDefault() {
+        return new Endpoints(DEFAULT_BASE_URL);
+    }
+
+    /**
+     * @return the base URL of every node, the one URLs are built against first.
+     */
+    public List<String> getBaseUrls() {
+        return baseUrls;
+    }
+
+    public String getBaseUrl() {
+        return baseUrls.get(0);
+    }
+
+    public String getUsersUrl() {
+        return users;
+    }
+
+    public String getSearchUrl() {
+        return search;
+    }
+
+    public String getTransactionsUrl() {
+        return transactions;
+    }
+
+    public String getAddressesUrl() {
+        return addresses;
+    }
+
+    public String getDomainsUrl() {
+        return domains;
+    }
+
+    private static String trimTrailingSlash(String baseUrl) {
+        return baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    }
 }
@@ -0,0 +1,447 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import javax.net.ssl.HttpsURLConnection;
+
+/**
+ * The HttpURLConnectionTransport <code>class</code> is the default {@link Transport}. It keeps
+ * connections alive between calls instead of disconnecting them, so consecutive requests to the
+ * blockstack-server skip the TCP and TLS handshakes. Responses are requested with gzip or
+ * deflate compression and decoded here, counting the bytes on both sides of the decoder.
+ * <p>
+ * Requests carrying {@link RequestMetrics} get their DNS, connect, TLS, time-to-first-byte
+ * and body read phases timed; the others pay nothing for it. The host is only resolved, and
+ * the DNS phase timed, when the request is expected to open a new connection: one is counted
+ * idle for each response closed within the last few seconds, and a request taking one reports
+ * no DNS phase.
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class HttpURLConnectionTransport implements Transport {
+    public static final long DEFAULT_CONNECT_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(15);
+    public static final long DEFAULT_READ_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    // The shortest keep-alive timeout among the platforms, the JVM's.
+    static final long KEEP_ALIVE_WINDOW_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    private static final InputStream EMPTY_BODY = new ByteArrayInputStream(new byte[0]);
+    private static final String ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String SUPPORTED_ENCODINGS = "gzip, deflate";
+
+    private final ConnectionPool pool;
+    private final TransferStats totalTransferStats = new TransferStats();
+    private final ConcurrentMap<String, IdleConnections> idleConnections =
+            new ConcurrentHashMap<>();
+    private volatile int connectTimeoutMillis = (int) DEFAULT_CONNECT_TIMEOUT_MILLIS;
+    private volatile int readTimeoutMillis = (int) DEFAULT_READ_TIMEOUT_MILLIS;
+    private volatile boolean shutdown;
+
+    /**
+     * Creates a transport backed by a default {@link ConnectionPool}.
+     */
+    public HttpURLConnectionTransport() {
+        this(new ConnectionPool());
+    }
+
+    /**
+     * Creates a transport backed by the given pool.
+     *
+     * @param pool the connection pool to use.
+     */
+    public HttpURLConnectionTransport(@NonNull ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    public ConnectionPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Sets how long to wait for a connection to be established. The platform default is to
+     * wait forever.
+     *
+     * @param timeout the timeout, or 0 to wait forever.
+     * @param unit the timeout unit.
+     */
+    public void setConnectTimeout(long timeout, @NonNull TimeUnit unit) {
+        this.connectTimeoutMillis = toTimeoutMillis(timeout, unit);
+    }
+
+    public long getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    /**
+     * Sets how long a read from the server may block, both while waiting for the response and
+     * between body chunks.
+     *
+     * @param timeout the timeout, or 0 to wait forever.
+     * @param unit the timeout unit.
+     */
+    public void setReadTimeout(long timeout, @NonNull TimeUnit unit) {
+        this.readTimeoutMillis = toTimeoutMillis(timeout, unit);
+    }
+
+    public long getReadTimeoutMillis() {
+        return readTimeoutMillis;
+    }
+
+    /**
+     * @return the wire and decoded byte totals of every response closed so far.
+     */
+    public TransferStats getTotalTransferStats() {
+        return totalTransferStats;
+    }
+
+    @Override
+    public Response execute(@NonNull Request request) throws IOException {
+        if (shutdown) {
+            throw new IOException("Transport has been shut down");
+        }
+
+        URL url = new URL(request.getUrl());
+        RequestMetrics metrics = request.getMetrics();
+        final Semaphore permit = pool.acquire(url.getHost());
+        HttpURLConnection urlConnection = null;
+        InputStream stream = null;
+        boolean released = false;
+
+        try {
+            urlConnection = (HttpURLConnection) url.openConnection();
+
+            if (urlConnection instanceof HttpsURLConnection) {
+                ((HttpsURLConnection) urlConnection).setSSLSocketFactory(
+                        pool.getSslSocketFactory());
+            }
+
+            urlConnection.setConnectTimeout(connectTimeoutMillis);
+            urlConnection.setReadTimeout(readTimeoutMillis);
+            urlConnection.setRequestMethod(request.getMethod());
+            urlConnection.setDoInput(true);
+
+            // Setting the header ourselves also turns off the transparent gzip handling some
+            // platform versions do, which would hide the compressed size from us.
+            urlConnection.setRequestProperty(ACCEPT_ENCODING, SUPPORTED_ENCODINGS);
+
+            for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+                urlConnection.setRequestProperty(header.getKey(), header.getValue());
+            }
+
+            RequestBody body = request.getRequestBody();
+            long contentLength = body != null ? body.contentLength() : 0;
+
+            if (body != null) {
+                urlConnection.setDoOutput(true);
+
+                // Stream the body instead of letting the connection buffer it whole.
+                if (contentLength >= 0 && contentLength <= Integer.MAX_VALUE) {
+                    urlConnection.setFixedLengthStreamingMode((int) contentLength);
+                } else {
+                    urlConnection.setChunkedStreamingMode(0);
+                }
+            }
+
+            long firstByteStart = 0;
+            IdleConnections idle = null;
+
+            if (metrics != null) {
+                idle = idleConnections(url.getAuthority());
+                metrics.attemptStarted(Math.max(0, contentLength));
+                connect(urlConnection, url, metrics, idle);
+                firstByteStart = System.nanoTime();
+            }
+
+            if (body != null) {
+                OutputStream outputStream = urlConnection.getOutputStream();
+                try {
+                    body.writeTo(outputStream);
+                    outputStream.flush();
+                } finally {
+                    outputStream.close();
+                }
+            }
+
+            int statusCode = urlConnection.getResponseCode();
+
+            if (metrics != null) {
+                metrics.setPhase(RequestMetrics.Phase.TIME_TO_FIRST_BYTE,
+                        System.nanoTime() - firstByteStart);
+            }
+
+            stream = statusCode >= HttpURLConnection.HTTP_BAD_REQUEST
+                    ? urlConnection.getErrorStream() : urlConnection.getInputStream();
+
+            Map<String, List<String>> headers = urlConnection.getHeaderFields();
+            if (headers == null) {
+                headers = Collections.emptyMap();
+            }
+
+            final TransferStats transferStats = new TransferStats();
+            InputStream responseBody = stream != null
+                    ? decode(new CountingInputStream(stream, transferStats.wireBytes),
+                            urlConnection.getContentEncoding())
+                    : EMPTY_BODY;
+
+            if (metrics != null) {
+                responseBody = new TimedInputStream(responseBody, metrics);
+            }
+
+            final IdleConnections keptAlive = idle != null
+                    && !"close".equalsIgnoreCase(urlConnection.getHeaderField("Connection"))
+                    ? idle : null;
+
+            released = true;
+            return new Response(statusCode, headers, responseBody, new Closeable() {
+                @Override
+                public void close() {
+                    totalTransferStats.add(transferStats);
+                    permit.release();
+
+                    if (keptAlive != null) {
+                        keptAlive.release();
+                    }
+                }
+            }, transferStats);
+        } finally {
+            if (!released) {
+                permit.release();
+                abandon(urlConnection, stream);
+            }
+        }
+    }
+
+    /**
+     * Releases a connection whose response will not be handed out, e.g. after a bad gzip
+     * header, so its socket does not linger until it is garbage collected.
+     */
+    private static void abandon(HttpURLConnection urlConnection, InputStream stream) {
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                // Disconnected below anyway.
+            }
+        }
+
+        if (urlConnection != null) {
+            urlConnection.disconnect();
+        }
+    }
+
+    private IdleConnections idleConnections(String authority) {
+        IdleConnections idle = idleConnections.get(authority);
+
+        if (idle == null) {
+            IdleConnections created = new IdleConnections();
+            idle = idleConnections.putIfAbsent(authority, created);
+
+            if (idle == null) {
+                idle = created;
+            }
+        }
+
+        return idle;
+    }
+
+    /**
+     * Opens the connection, timing the connect and TLS phases, and the DNS phase when no idle
+     * connection is expected to be reused. The connection itself resolves the host again, which
+     * hits the cache warmed here; a keep-alive connection is reused without connecting, leaving
+     * only a near-zero connect.
+     */
+    private void connect(HttpURLConnection urlConnection, URL url, RequestMetrics metrics,
+                         IdleConnections idle) throws IOException {
+        boolean reusing = idle.take(pool.getMaxConnectionsPerHost());
+
+        if (!reusing) {
+            long dnsStart = System.nanoTime();
+            InetAddress.getAllByName(url.getHost());
+            metrics.setPhase(RequestMetrics.Phase.DNS, System.nanoTime() - dnsStart);
+        }
+
+        TimingSSLSocketFactory.CURRENT.set(metrics);
+        try {
+            metrics.connectStarted();
+            urlConnection.connect();
+            metrics.connectFinished();
+        } finally {
+            TimingSSLSocketFactory.CURRENT.remove();
+        }
+
+        if (reusing && metrics.getDuration(RequestMetrics.Phase.TLS, TimeUnit.NANOSECONDS) >= 0) {
+            // A handshake: the platform had closed the connections counted idle.
+            idle.clear();
+        }
+    }
+
+    private static int toTimeoutMillis(long timeout, TimeUnit unit) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout < 0");
+        }
+
+        long millis = unit.toMillis(timeout);
+        if (timeout > 0 && millis == 0) {
+            // Sub-millisecond timeouts would otherwise mean "wait forever".
+            return 1;
+        }
+
+        return (int) Math.min(millis, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Wraps a response body in the decoder for its content encoding. An empty body, as sent
+     * with a 304, is returned as is since it has no compression header to read.
+     *
+     * @param stream the body as received.
+     * @param contentEncoding the <code>Content-Encoding</code> header, may be <code>null</code>.
+     * @return the decoded body.
+     * @throws IOException if the compression header cannot be read.
+     */
+    static InputStream decode(@NonNull InputStream stream, String contentEncoding)
+            throws IOException {
+        if (contentEncoding == null) {
+            return stream;
+        }
+
+        String encoding = contentEncoding.trim();
+        boolean gzip = "gzip".equalsIgnoreCase(encoding) || "x-gzip".equalsIgnoreCase(encoding);
+
+        if (!gzip && !"deflate".equalsIgnoreCase(encoding)) {
+            return stream;
+        }
+
+        PushbackInputStream pushback = new PushbackInputStream(stream, 2);
+        byte[] head = new byte[2];
+        int read = 0;
+        int count;
+        while (read < head.length && (count = pushback.read(head, read, head.length - read)) > 0) {
+            read += count;
+        }
+
+        if (read == 0) {
+            return pushback;
+        }
+
+        pushback.unread(head, 0, read);
+
+        if (gzip) {
+            return new GZIPInputStream(pushback, BufferPool.BYTE_BUFFER_SIZE);
+        }
+
+        // "deflate" is meant to be zlib-wrapped, but some servers send a raw deflate stream.
+        int header = ((head[0] & 0xff) << 8) | (head[1] & 0xff);
+        boolean zlib = read == 2 && (head[0] & 0x0f) == 8 && header % 31 == 0;
+        final Inflater inflater = new Inflater(!zlib);
+
+        return new InflaterInputStream(pushback, inflater, BufferPool.BYTE_BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+    }
+
+    /**
+     * Adds the time spent reading, and decoding, the response body to the body phase.
+     */
+    private static class TimedInputStream extends FilterInputStream {
+        private final RequestMetrics metrics;
+
+        TimedInputStream(InputStream in, RequestMetrics metrics) {
+            super(in);
+            this.metrics = metrics;
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.read();
+            } finally {
+                metrics.addPhase(RequestMetrics.Phase.BODY, System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public int read(@NonNull byte[] buffer, int offset, int length) throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.read(buffer, offset, length);
+            } finally {
+                metrics.addPhase(RequestMetrics.Phase.BODY, System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * The connections to one host believed idle in the platform keep-alive pool. Counting
+     * takes no lock, so requests with metrics do not contend on it.
+     */
+    private static final class IdleConnections {
+        private final AtomicInteger count = new AtomicInteger();
+        private volatile long releasedAt;
+
+        /**
+         * @param max the most connections the platform keeps idle for a host.
+         * @return <code>true</code> if an idle connection was taken for the next request.
+         */
+        boolean take(int max) {
+            if (System.nanoTime() - releasedAt > TimeUnit.MILLISECONDS.toNanos(
+                    KEEP_ALIVE_WINDOW_MILLIS)) {
+                // Timed out by the platform since.
+                count.set(0);
+                return false;
+            }
+
+            int idle;
+            while ((idle = count.get()) > 0) {
+                if (count.compareAndSet(idle, Math.min(idle, max) - 1)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        void release() {
+            releasedAt = System.nanoTime();
+            count.incrementAndGet();
+        }
+
+        void clear() {
+            count.set(0);
+        }
+    }
+}
@@ -0,0 +1,604 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * The JsonPullParser <code>class</code> reads a JSON document one token at a time from a
+ * <code>Reader</code>, so responses can be decoded while they are still arriving and without
+ * first holding the whole body in memory. Its API follows <code>android.util.JsonReader</code>,
+ * which is not available to code running on a plain JVM.
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class JsonPullParser implements Closeable {
+    /**
+     * The kinds of token found in a JSON document.
+     */
+    public enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL,
+        END_DOCUMENT
+    }
+
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_OBJECT = 2;
+    private static final int DANGLING_NAME = 3;
+    private static final int NONEMPTY_OBJECT = 4;
+    private static final int EMPTY_ARRAY = 5;
+    private static final int NONEMPTY_ARRAY = 6;
+
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+    private final char[] buffer;
+    private int pos;
+    private int limit;
+
+    private int[] stack = new int[32];
+    private int stackSize;
+
+    private Token peeked;
+    private String value;
+    private final StringBuilder scratch = new StringBuilder();
+
+    private StringBuilder capture;
+    private int captureFrom;
+    private boolean skipping;
+
+    /**
+     * Creates a parser reading from the given reader.
+     *
+     * @param reader the JSON source.
+     */
+    public JsonPullParser(@NonNull Reader reader) {
+        this(reader, new char[DEFAULT_BUFFER_SIZE]);
+    }
+
+    /**
+     * Creates a parser reading from the given reader through a caller-supplied buffer, which
+     * lets callers reuse buffers between responses.
+     *
+     * @param reader the JSON source.
+     * @param buffer the read buffer; it must not be used by anything else while parsing.
+     */
+    public JsonPullParser(@NonNull Reader reader, @NonNull char[] buffer) {
+        if (buffer.length == 0) {
+            throw new IllegalArgumentException("Empty buffer");
+        }
+
+        this.reader = reader;
+        this.buffer = buffer;
+        stack[stackSize++] = EMPTY_DOCUMENT;
+    }
+
+    // region Token navigation
+    /**
+     * @return the type of the next token without consuming it.
+     * @throws IOException if the document is malformed or cannot be read.
+     */
+    public Token peek() throws IOException {
+        if (peeked != null) {
+            return peeked;
+        }
+
+        int scope = stack[stackSize - 1];
+        int c;
+
+        switch (scope) {
+            case EMPTY_ARRAY:
+                stack[stackSize - 1] = NONEMPTY_ARRAY;
+                c = nextNonWhitespace();
+
+                if (c == ']') {
+                    stackSize--;
+                    return peeked = Token.END_ARRAY;
+                }
+
+                return peeked = readValueToken(c);
+            case NONEMPTY_ARRAY:
+                c = nextNonWhitespace();
+
+                if (c == ']') {
+                    stackSize--;
+                    return peeked = Token.END_ARRAY;
+                } else if (c != ',') {
+                    throw syntaxError("Expected ',' or ']'");
+                }
+
+                return peeked = readValueToken(nextNonWhitespace());
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                c = nextNonWhitespace();
+
+                if (c == '}') {
+                    stackSize--;
+                    return peeked = Token.END_OBJECT;
+                }
+
+                if (scope == NONEMPTY_OBJECT) {
+                    if (c != ',') {
+                        throw syntaxError("Expected ',' or '}'");
+                    }
+
+                    c = nextNonWhitespace();
+                }
+
+                if (c != '"') {
+                    throw syntaxError("Expected a name");
+                }
+
+                stack[stackSize - 1] = DANGLING_NAME;
+                value = readString();
+                return peeked = Token.NAME;
+            case DANGLING_NAME:
+                if (nextNonWhitespace() != ':') {
+                    throw syntaxError("Expected ':'");
+                }
+
+                stack[stackSize - 1] = NONEMPTY_OBJECT;
+                return peeked = readValueToken(nextNonWhitespace());
+            case EMPTY_DOCUMENT:
+                stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+                return peeked = readValueToken(nextNonWhitespace());
+            default:
+                if (nextNonWhitespaceOrEnd() != -1) {
+                    throw syntaxError("Expected end of document");
+                }
+
+                return peeked = Token.END_DOCUMENT;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the current object or array has another element.
+     * @throws IOException if the document is malformed or cannot be read.
+     */
+    public boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY
+                && token != Token.END_DOCUMENT;
+    }
+
+    public void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+    }
+
+    public void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+    }
+
+    public void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+    }
+
+    public void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+    }
+
+    /**
+     * @return the next property name of the current object.
+     * @throws IOException if the next token is not a name.
+     */
+    public String nextName() throws IOException {
+        expect(Token.NAME);
+        return value;
+    }
+
+    /**
+     * @return the next string value, or the literal text of the next number.
+     * @throws IOException if the next token is neither a string nor a number.
+     */
+    public String nextString() throws IOException {
+        Token token = peek();
+
+        if (token != Token.STRING && token != Token.NUMBER) {
+            throw syntaxError("Expected a string but was " + token);
+        }
+
+        peeked = null;
+        return value;
+    }
+
+    public boolean nextBoolean() throws IOException {
+        expect(Token.BOOLEAN);
+        return "true".equals(value);
+    }
+
+    public void nextNull() throws IOException {
+        expect(Token.NULL);
+    }
+
+    public long nextLong() throws IOException {
+        String number = nextString();
+
+        try {
+            return Long.parseLong(number);
+        } catch (NumberFormatException e) {
+            double asDouble = Double.parseDouble(number);
+
+            if (asDouble != (long) asDouble) {
+                throw syntaxError("Expected a long but was " + number);
+            }
+
+            return (long) asDouble;
+        }
+    }
+
+    public double nextDouble() throws IOException {
+        try {
+            return Double.parseDouble(nextString());
+        } catch (NumberFormatException e) {
+            throw syntaxError("Expected a number");
+        }
+    }
+
+    /**
+     * Skips the next value, including every nested value of an object or array.
+     *
+     * @throws IOException if the document is malformed or cannot be read.
+     */
+    public void skipValue() throws IOException {
+        int depth = 0;
+
+        // Strings read while skipping are scanned but never turned into String objects.
+        skipping = true;
+
+        try {
+            do {
+                Token token = peek();
+                peeked = null;
+
+                if (token == Token.BEGIN_OBJECT || token == Token.BEGIN_ARRAY) {
+                    depth++;
+                } else if (token == Token.END_OBJECT || token == Token.END_ARRAY) {
+                    depth--;
+                } else if (token == Token.END_DOCUMENT) {
+                    throw syntaxError("Unexpected end of document");
+                }
+            } while (depth > 0);
+        } finally {
+            skipping = false;
+        }
+    }
+    // endregion
+
+    // region Value materialization
+    /**
+     * Consumes the next value and returns its JSON text exactly as it appeared in the source,
+     * without building any objects for it.
+     *
+     * @return the raw JSON of the next value.
+     * @throws IOException if the document is malformed or cannot be read.
+     */
+    public String readRawValue() throws IOException {
+        Token token = peek();
+
+        switch (token) {
+            case STRING:
+                return JSONObject.quote(nextString());
+            case NUMBER:
+            case BOOLEAN:
+                peeked = null;
+                return value;
+            case NULL:
+                nextNull();
+                return "null";
+            case BEGIN_OBJECT:
+            case BEGIN_ARRAY:
+                // The opening bracket has already been consumed by peek().
+                capture = new StringBuilder(256).append(token == Token.BEGIN_OBJECT ? '{' : '[');
+                captureFrom = pos;
+
+                try {
+                    skipValue();
+                    return capture.append(buffer, captureFrom, pos - captureFrom).toString();
+                } finally {
+                    capture = null;
+                }
+            default:
+                throw syntaxError("Expected a value but was " + token);
+        }
+    }
+
+    /**
+     * Consumes the next value and converts it into the <code>org.json</code> model.
+     *
+     * @return a <code>JSONObject</code>, <code>JSONArray</code>, <code>String</code>,
+     *          <code>Boolean</code>, <code>Long</code>, <code>Double</code> or
+     *          <code>JSONObject.NULL</code>.
+     * @throws IOException if the document is malformed or cannot be read.
+     */
+    public Object readValue() throws IOException {
+        switch (peek()) {
+            case BEGIN_OBJECT:
+                return readObject();
+            case BEGIN_ARRAY:
+                JSONArray array = new JSONArray();
+                beginArray();
+
+                while (hasNext()) {
+                    array.put(readValue());
+                }
+
+                endArray();
+                return array;
+            case STRING:
+                return nextString();
+            case NUMBER:
+                String number = nextString();
+
+                try {
+                    return Long.valueOf(number);
+                } catch (NumberFormatException e) {
+                    return Double.valueOf(number);
+                }
+            case BOOLEAN:
+                return nextBoolean();
+            case NULL:
+                nextNull();
+                return JSONObject.NULL;
+            default:
+                throw syntaxError("Expected a value but was " + peek());
+        }
+    }
+
+    /**
+     * Consumes the next object and converts it into a <code>JSONObject</code>.
+     *
+     * @return the object.
+     * @throws IOException if the next value is not an object or is malformed.
+     */
+    public JSONObject readObject() throws IOException {
+        JSONObject object = new JSONObject();
+        beginObject();
+
+        try {
+            while (hasNext()) {
+                String name = nextName();
+                object.put(name, readValue());
+            }
+        } catch (JSONException e) {
+            throw new IOException("Invalid JSON value: " + e.getMessage());
+        }
+
+        endObject();
+        return object;
+    }
+    // endregion
+
+    @Override
+    public void close() throws IOException {
+        peeked = null;
+        stack[0] = NONEMPTY_DOCUMENT;
+        stackSize = 1;
+        reader.close();
+    }
+
+    // region Lexing
+    private void expect(Token expected) throws IOException {
+        Token token = peek();
+
+        if (token != expected) {
+            throw syntaxError("Expected " + expected + " but was " + token);
+        }
+
+        peeked = null;
+    }
+
+    private Token readValueToken(int c) throws IOException {
+        switch (c) {
+            case '{':
+                push(EMPTY_OBJECT);
+                return Token.BEGIN_OBJECT;
+            case '[':
+                push(EMPTY_ARRAY);
+                return Token.BEGIN_ARRAY;
+            case '"':
+                value = readString();
+                return Token.STRING;
+            case 't':
+                readKeyword("rue");
+                value = "true";
+                return Token.BOOLEAN;
+            case 'f':
+                readKeyword("alse");
+                value = "false";
+                return Token.BOOLEAN;
+            case 'n':
+                readKeyword("ull");
+                value = null;
+                return Token.NULL;
+            case -1:
+                throw syntaxError("Unexpected end of document");
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    value = readNumber((char) c);
+                    return Token.NUMBER;
+                }
+
+                throw syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    private void push(int scope) {
+        if (stackSize == stack.length) {
+            int[] grown = new int[stackSize * 2];
+            System.arraycopy(stack, 0, grown, 0, stackSize);
+            stack = grown;
+        }
+
+        stack[stackSize++] = scope;
+    }
+
+    private String readString() throws IOException {
+        scratch.setLength(0);
+
+        while (true) {
+            int start = pos;
+
+            while (pos < limit) {
+                char c = buffer[pos++];
+
+                if (c == '"') {
+                    if (skipping) {
+                        return null;
+                    }
+
+                    scratch.append(buffer, start, pos - 1 - start);
+                    return scratch.toString();
+                } else if (c == '\\') {
+                    if (!skipping) {
+                        scratch.append(buffer, start, pos - 1 - start);
+                        scratch.append(readEscape());
+                    } else {
+                        readEscape();
+                    }
+
+                    start = pos;
+                }
+            }
+
+            if (!skipping) {
+                scratch.append(buffer, start, pos - start);
+            }
+
+            if (!fill()) {
+                throw syntaxError("Unterminated string");
+            }
+        }
+    }
+
+    private char readEscape() throws IOException {
+        int c = nextChar();
+
+        switch (c) {
+            case 'u':
+                int code = 0;
+
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(nextChar(), 16);
+
+                    if (digit < 0) {
+                        throw syntaxError("Invalid unicode escape");
+                    }
+
+                    code = (code << 4) | digit;
+                }
+
+                return (char) code;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case '"':
+            case '\\':
+            case '/':
+                return (char) c;
+            default:
+                throw syntaxError("Invalid escape sequence");
+        }
+    }
+
+    private String readNumber(char first) throws IOException {
+        scratch.setLength(0);
+        scratch.append(first);
+
+        while (pos < limit || fill()) {
+            char c = buffer[pos];
+
+            if ((c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E' || c == '+'
+                    || c == '-') {
+                scratch.append(c);
+                pos++;
+            } else {
+                break;
+            }
+        }
+
+        return scratch.toString();
+    }
+
+    private void readKeyword(String rest) throws IOException {
+        for (int i = 0; i < rest.length(); i++) {
+            if (nextChar() != rest.charAt(i)) {
+                throw syntaxError("Invalid literal");
+            }
+        }
+    }
+
+    private int nextChar() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+
+        return buffer[pos++];
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        int c = nextNonWhitespaceOrEnd();
+
+        if (c == -1) {
+            throw syntaxError("Unexpected end of document");
+        }
+
+        return c;
+    }
+
+    private int nextNonWhitespaceOrEnd() throws IOException {
+        while (true) {
+            int c = nextChar();
+
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+        }
+    }
+
+    /**
+     * Refills the buffer once every buffered character has been consumed, first saving any
+     * characters that belong to a raw value being captured.
+     *
+     * @return <code>false</code> at the end of the input.
+     */
+    private boolean fill() throws IOException {
+        if (capture != null) {
+            capture.append(buffer, captureFrom, limit - captureFrom);
+            captureFrom = 0;
+        }
+
+        pos = 0;
+        limit = 0;
+
+        int read;
+        do {
+            read = reader.read(buffer, 0, buffer.length);
+        } while (read == 0);
+
+        if (read < 0) {
+            return false;
+        }
+
+        limit = read;
+        return true;
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException("Malformed JSON: " + message);
+    }
+    // endregion
+}
@@ -0,0 +1,280 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A fixed-shape JSON object body, such as the POST bodies of the user and transaction
+ * operations. The field names are encoded once; filling in the values creates a
+ * {@link RequestBody} that encodes them to UTF-8 straight into the connection through a pooled
+ * buffer, and knows its exact length beforehand without building the body. A large value such
+ * as a signed transaction is never copied into an intermediate <code>String</code> or array.
+ */
+final class JsonTemplate {
+    private static final String CONTENT_TYPE = "application/json";
+    private static final byte[] HEX = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a',
+            'b', 'c', 'd', 'e', 'f'};
+
+    private final List<byte[]> names = new ArrayList<>();
+    private final List<Boolean> quoted = new ArrayList<>();
+
+    /**
+     * Adds a string field, quoted and escaped when written.
+     */
+    JsonTemplate string(@NonNull String name) {
+        return field(name, true);
+    }
+
+    /**
+     * Adds a field whose value is already JSON, e.g. a serialized object, written as it is.
+     */
+    JsonTemplate raw(@NonNull String name) {
+        return field(name, false);
+    }
+
+    /**
+     * Creates a body with the given values, one per field in order. Fields with a
+     * <code>null</code> value are left out.
+     */
+    RequestBody fill(@NonNull String... values) {
+        if (values.length != names.size()) {
+            throw new IllegalArgumentException("Expected " + names.size() + " values");
+        }
+
+        return new Body(values);
+    }
+
+    private JsonTemplate field(String name, boolean quote) {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        Utf8Sink sink = new Utf8Sink(encoded);
+
+        try {
+            sink.writeQuoted(name);
+            sink.put(':');
+            sink.flush();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        } finally {
+            sink.release();
+        }
+
+        names.add(encoded.toByteArray());
+        quoted.add(quote);
+        return this;
+    }
+
+    private final class Body extends RequestBody {
+        private final String[] values;
+        private final long length;
+
+        Body(String[] values) {
+            this.values = values;
+            this.length = measure();
+        }
+
+        @Override
+        public String contentType() {
+            return CONTENT_TYPE;
+        }
+
+        @Override
+        public long contentLength() {
+            return length;
+        }
+
+        @Override
+        public void writeTo(@NonNull OutputStream out) throws IOException {
+            Utf8Sink sink = new Utf8Sink(out);
+
+            try {
+                write(sink);
+                sink.flush();
+            } finally {
+                sink.release();
+            }
+        }
+
+        private long measure() {
+            Utf8Sink counter = new Utf8Sink(null);
+
+            try {
+                write(counter);
+            } catch (IOException e) {
+                // Counting does not write anywhere.
+                throw new AssertionError(e);
+            }
+
+            return counter.count;
+        }
+
+        private void write(Utf8Sink sink) throws IOException {
+            sink.put('{');
+            boolean first = true;
+
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] == null) {
+                    continue;
+                }
+
+                if (!first) {
+                    sink.put(',');
+                }
+
+                first = false;
+                sink.put(names.get(i));
+
+                if (quoted.get(i)) {
+                    sink.writeQuoted(values[i]);
+                } else {
+                    sink.writeRaw(values[i]);
+                }
+            }
+
+            sink.put('}');
+        }
+    }
+
+    /**
+     * Encodes characters to UTF-8 into an output stream through a pooled buffer, or only counts
+     * the bytes when there is no stream.
+     */
+    private static final class Utf8Sink {
+        private final OutputStream out;
+        private byte[] buffer;
+        private int position;
+        long count;
+
+        Utf8Sink(OutputStream out) {
+            this.out = out;
+        }
+
+        void writeQuoted(String value) throws IOException {
+            put('"');
+
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+
+                switch (c) {
+                    case '"':
+                    case '\\':
+                        put('\\');
+                        put(c);
+                        break;
+                    case '\b':
+                        put('\\');
+                        put('b');
+                        break;
+                    case '\f':
+                        put('\\');
+                        put('f');
+                        break;
+                    case '\n':
+                        put('\\');
+                        put('n');
+                        break;
+                    case '\r':
+                        put('\\');
+                        put('r');
+                        break;
+                    case '\t':
+                        put('\\');
+                        put('t');
+                        break;
+                    default:
+                        if (c < 0x20) {
+                            put('\\');
+                            put('u');
+                            put('0');
+                            put('0');
+                            put(HEX[c >> 4]);
+                            put(HEX[c & 0xf]);
+                        } else {
+                            i = writeChar(value, i);
+                        }
+                }
+            }
+
+            put('"');
+        }
+
+        void writeRaw(String value) throws IOException {
+            for (int i = 0; i < value.length(); i++) {
+                i = writeChar(value, i);
+            }
+        }
+
+        /**
+         * Encodes the character at <code>i</code>, or the surrogate pair starting there.
+         *
+         * @return the index of the last character consumed.
+         */
+        private int writeChar(String value, int i) throws IOException {
+            char c = value.charAt(i);
+
+            if (c < 0x80) {
+                put(c);
+            } else if (c < 0x800) {
+                put(0xc0 | (c >> 6));
+                put(0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(i + 1));
+                put(0xf0 | (codePoint >> 18));
+                put(0x80 | ((codePoint >> 12) & 0x3f));
+                put(0x80 | ((codePoint >> 6) & 0x3f));
+                put(0x80 | (codePoint & 0x3f));
+                return i + 1;
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                // A lone surrogate, replaced like String.getBytes does.
+                put('?');
+            } else {
+                put(0xe0 | (c >> 12));
+                put(0x80 | ((c >> 6) & 0x3f));
+                put(0x80 | (c & 0x3f));
+            }
+
+            return i;
+        }
+
+        void put(byte[] bytes) throws IOException {
+            for (byte b : bytes) {
+                put(b);
+            }
+        }
+
+        void put(int b) throws IOException {
+            count++;
+
+            if (out == null) {
+                return;
+            }
+
+            if (buffer == null) {
+                buffer = BufferPool.takeBytes();
+            } else if (position == buffer.length) {
+                flush();
+            }
+
+            buffer[position++] = (byte) b;
+        }
+
+        void flush() throws IOException {
+            if (position > 0) {
+                out.write(buffer, 0, position);
+                position = 0;
+            }
+        }
+
+        void release() {
+            if (buffer != null) {
+                BufferPool.recycle(buffer);
+                buffer = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The LatencyHistogram <code>class</code> records latencies in the style of an HDR histogram:
+ * buckets are exact up to 32 microseconds and then split every power of two into 16 linear
+ * sub-buckets, so any recorded value is reported within about 6% while the whole range up to
+ * 19 hours fits in a few kilobytes. Recording is lock-free.
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2;
+    private static final long MAX_MICROS = (1L << 36) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(bucketIndex(MAX_MICROS) + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /**
+     * Records a latency. Negative values are ignored and very large ones are clamped.
+     *
+     * @param duration the latency.
+     * @param unit the latency unit.
+     */
+    public void record(long duration, @NonNull TimeUnit unit) {
+        if (duration < 0) {
+            return;
+        }
+
+        long micros = Math.min(unit.toMicros(duration), MAX_MICROS);
+        counts.incrementAndGet(bucketIndex(micros));
+        count.incrementAndGet();
+        sumMicros.addAndGet(micros);
+
+        long max;
+        while (micros > (max = maxMicros.get()) && !maxMicros.compareAndSet(max, micros)) {
+            // Another thread raised the maximum; compare against the new value.
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @param unit the unit of the result.
+     * @return the mean latency, or 0 if nothing was recorded.
+     */
+    public long getMean(@NonNull TimeUnit unit) {
+        long recorded = count.get();
+        return recorded > 0 ? unit.convert(sumMicros.get() / recorded, TimeUnit.MICROSECONDS) : 0;
+    }
+
+    /**
+     * @param unit the unit of the result.
+     * @return the largest latency recorded.
+     */
+    public long getMax(@NonNull TimeUnit unit) {
+        return unit.convert(maxMicros.get(), TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * Returns the latency below which the given percentage of recorded values fall.
+     *
+     * @param percentile the percentile, between 0 and 100, e.g. 99.9.
+     * @param unit the unit of the result.
+     * @return the upper bound of the bucket holding the percentile, or 0 if nothing was
+     *          recorded.
+     */
+    public long getValueAtPercentile(double percentile, @NonNull TimeUnit unit) {
+        long recorded = count.get();
+        if (recorded == 0) {
+            return 0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(recorded * Math.min(percentile, 100) / 100));
+        long seen = 0;
+
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+
+            if (seen >= target) {
+                long upper = Math.min(highestEquivalentValue(i), maxMicros.get());
+                return unit.convert(upper, TimeUnit.MICROSECONDS);
+            }
+        }
+
+        return getMax(unit);
+    }
+
+    /**
+     * Clears every recorded value.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+
+        count.set(0);
+        sumMicros.set(0);
+        maxMicros.set(0);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+
+        // Shift the value so it falls in the upper half of the sub-buckets.
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKET_HALF + (int) (value >>> shift);
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+
+        int shift = index / SUB_BUCKET_HALF - 1;
+        long lowest = (long) (index % SUB_BUCKET_HALF + SUB_BUCKET_HALF) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + getCount()
+                + " p50=" + getValueAtPercentile(50, TimeUnit.MICROSECONDS) + "us"
+                + " p99=" + getValueAtPercentile(99, TimeUnit.MICROSECONDS) + "us"
+                + " max=" + getMax(TimeUnit.MICROSECONDS) + "us";
+    }
+}
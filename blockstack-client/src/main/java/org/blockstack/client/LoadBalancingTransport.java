@@ -0,0 +1,329 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The LoadBalancingTransport <code>class</code> is a {@link Transport} decorator that spreads
+ * requests over several blockstack-server nodes serving the same API.
+ * <p>
+ * Requests whose URL starts with the base URL of one of the nodes are sent to the node chosen
+ * by power-of-two-choices: two healthy nodes are picked at random and the request goes to the
+ * one with the lower exponentially weighted moving average of response time, scaled by its
+ * requests in flight. Nodes that have not answered yet are tried first, and failures count as
+ * slow responses.
+ * <p>
+ * A node failing several requests in a row, with an <code>IOException</code> or a 5xx status,
+ * is ejected for a while. Once the ejection ends a single request is let through as a probe;
+ * success brings the node back, while failure ejects it again for twice as long. Ejection acts
+ * as a circuit breaker per node: while every node is ejected, requests fail fast with a
+ * {@link CircuitOpenException} until the first one is due for its probe.
+ * <p>
+ * Choosing a node and recording a success take no locks; only failures, which may eject a
+ * node, and probes of ejected nodes do.
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class LoadBalancingTransport implements Transport {
+    public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+    public static final long DEFAULT_EJECTION_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    public static final long MAX_EJECTION_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final double EWMA_WEIGHT = 0.3;
+    private static final long FAILURE_PENALTY_MILLIS = 1000;
+
+    private final Transport delegate;
+    private final List<Node> nodes;
+    private final int failureThreshold;
+    private final long ejectionMillis;
+    // Thread-safe without locking: its seed is advanced with a compare-and-set.
+    private final Random random = new Random();
+
+    /**
+     * Creates a load balancer with the default ejection settings.
+     *
+     * @param delegate the transport sending the requests.
+     * @param baseUrls the API base URL of every node.
+     */
+    public LoadBalancingTransport(@NonNull Transport delegate, @NonNull List<String> baseUrls) {
+        this(delegate, baseUrls, DEFAULT_FAILURE_THRESHOLD, DEFAULT_EJECTION_MILLIS);
+    }
+
+    /**
+     * Creates a load balancer.
+     *
+     * @param delegate the transport sending the requests.
+     * @param baseUrls the API base URL of every node.
+     * @param failureThreshold consecutive failures that eject a node.
+     * @param ejectionMillis how long a node is first ejected for.
+     */
+    public LoadBalancingTransport(@NonNull Transport delegate, @NonNull List<String> baseUrls,
+                                  int failureThreshold, long ejectionMillis) {
+        if (baseUrls.isEmpty()) {
+            throw new IllegalArgumentException("No base URLs");
+        }
+
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("failureThreshold < 1");
+        }
+
+        List<Node> nodes = new ArrayList<>();
+        for (String baseUrl : baseUrls) {
+            nodes.add(new Node(baseUrl));
+        }
+
+        this.delegate = delegate;
+        this.nodes = Collections.unmodifiableList(nodes);
+        this.failureThreshold = failureThreshold;
+        this.ejectionMillis = ejectionMillis;
+    }
+
+    /**
+     * @return the nodes, in the order they were given.
+     */
+    public List<Node> getNodes() {
+        return nodes;
+    }
+
+    @Override
+    public Response execute(@NonNull Request request) throws IOException {
+        String url = request.getUrl();
+        Node origin = findNode(url);
+
+        if (origin == null) {
+            return delegate.execute(request);
+        }
+
+        long now = now();
+        Node node = choose(now);
+
+        if (node == null) {
+            Node soonest = nodes.get(0);
+            for (Node candidate : nodes) {
+                if (candidate.getEjectedUntil() < soonest.getEjectedUntil()) {
+                    soonest = candidate;
+                }
+            }
+
+            throw new CircuitOpenException(new URL(soonest.baseUrl).getHost(),
+                    Math.max(0, soonest.getEjectedUntil() - now));
+        }
+
+        Request routed = node == origin
+                ? request : request.withUrl(node.baseUrl + url.substring(origin.baseUrl.length()));
+
+        node.started();
+        long start = System.nanoTime();
+        boolean succeeded = false;
+
+        try {
+            Response response = delegate.execute(routed);
+            succeeded = response.getStatusCode() < 500;
+            return response;
+        } finally {
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            if (succeeded) {
+                node.succeeded(elapsed);
+            } else {
+                node.failed(now(), elapsed, failureThreshold, ejectionMillis);
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    private Node findNode(String url) {
+        Node match = null;
+
+        for (Node node : nodes) {
+            if (url.startsWith(node.baseUrl)
+                    && (match == null || node.baseUrl.length() > match.baseUrl.length())) {
+                match = node;
+            }
+        }
+
+        return match;
+    }
+
+    private Node choose(long now) {
+        List<Node> available = new ArrayList<>(nodes.size());
+
+        for (Node node : nodes) {
+            if (node.isAvailable(now)) {
+                if (!node.isEjected()) {
+                    available.add(node);
+                } else if (node.claimProbe()) {
+                    return node;
+                }
+            }
+        }
+
+        if (available.isEmpty()) {
+            return null;
+        }
+
+        if (available.size() == 1) {
+            return available.get(0);
+        }
+
+        int first = random.nextInt(available.size());
+        int second = random.nextInt(available.size() - 1);
+
+        if (second >= first) {
+            second++;
+        }
+
+        Node a = available.get(first);
+        Node b = available.get(second);
+        return a.score() <= b.score() ? a : b;
+    }
+
+    long now() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * A blockstack-server node and what the load balancer knows about it.
+     * <p>
+     * Its latency and requests in flight are atomics, so every request can update them without
+     * locking; the ejection state is only written under the node's lock.
+     */
+    public static class Node {
+        // Bits of a negative latency, for a node that has not answered yet.
+        private static final long UNMEASURED = Double.doubleToLongBits(-1);
+
+        private final String baseUrl;
+        private final AtomicLong latencyBits = new AtomicLong(UNMEASURED);
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private volatile int consecutiveFailures;
+        private volatile int ejections;
+        private volatile long ejectedUntil;
+        private volatile boolean probing;
+
+        Node(@NonNull String baseUrl) {
+            this.baseUrl = baseUrl.endsWith("/")
+                    ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        }
+
+        public String getBaseUrl() {
+            return baseUrl;
+        }
+
+        /**
+         * @return the moving average response time, or 0 before the first response.
+         */
+        public double getLatencyMillis() {
+            return Math.max(0, Double.longBitsToDouble(latencyBits.get()));
+        }
+
+        public int getInFlight() {
+            return inFlight.get();
+        }
+
+        /**
+         * @return <code>true</code> while the node is ejected or waiting for its probe to pass.
+         */
+        public boolean isEjected() {
+            return ejections > 0;
+        }
+
+        long getEjectedUntil() {
+            return ejectedUntil;
+        }
+
+        boolean isAvailable(long now) {
+            return now >= ejectedUntil && !probing;
+        }
+
+        /**
+         * Reserves the probe of a node coming back from ejection.
+         *
+         * @return <code>true</code> if this node needs probing and the caller should use it.
+         */
+        synchronized boolean claimProbe() {
+            if (ejections == 0 || probing) {
+                return false;
+            }
+
+            probing = true;
+            return true;
+        }
+
+        double score() {
+            // Unmeasured nodes score 0 so every node gets its first sample quickly.
+            return getLatencyMillis() * (inFlight.get() + 1);
+        }
+
+        void started() {
+            inFlight.incrementAndGet();
+        }
+
+        void succeeded(long elapsedMillis) {
+            inFlight.decrementAndGet();
+            record(elapsedMillis);
+
+            if (consecutiveFailures != 0 || ejections != 0 || probing) {
+                synchronized (this) {
+                    consecutiveFailures = 0;
+                    ejections = 0;
+                    probing = false;
+                }
+            }
+        }
+
+        void failed(long now, long elapsedMillis, int failureThreshold, long ejectionMillis) {
+            inFlight.decrementAndGet();
+            // Count a failure as a slow response, so a retry goes to another node.
+            record(Math.max(elapsedMillis, FAILURE_PENALTY_MILLIS));
+
+            synchronized (this) {
+                if (now < ejectedUntil) {
+                    // Sent before the node was ejected.
+                    return;
+                }
+
+                if (probing || ++consecutiveFailures >= failureThreshold) {
+                    long duration = ejectionMillis << Math.min(ejections, 20);
+                    ejectedUntil = now + Math.min(duration, MAX_EJECTION_MILLIS);
+                    ejections++;
+                    consecutiveFailures = 0;
+                    probing = false;
+                }
+            }
+        }
+
+        private void record(long elapsedMillis) {
+            while (true) {
+                long bits = latencyBits.get();
+                double latency = Double.longBitsToDouble(bits);
+                double next = bits == UNMEASURED
+                        ? elapsedMillis : latency + EWMA_WEIGHT * (elapsedMillis - latency);
+
+                if (latencyBits.compareAndSet(bits, Double.doubleToLongBits(next))) {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return baseUrl + " (" + Math.round(getLatencyMillis()) + " ms, " + inFlight.get()
+                    + " in flight" + (ejections > 0 ? ", ejected)" : ")");
+        }
+    }
+}
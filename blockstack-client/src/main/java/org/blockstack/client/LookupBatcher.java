@@ -0,0 +1,346 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The LookupBatcher <code>class</code> coalesces user lookups issued within a short window into
+ * as few {@link Blockstack#lookupUsers(String[])} calls as possible.
+ * <p>
+ * Usernames requested by every caller during the window are de-duplicated, split into chunks
+ * whose lookup URL stays under a safe length, and the chunks are fetched in parallel. Each
+ * caller then receives a <code>JSONObject</code> holding only the users it asked for, in the
+ * same shape as a <code>lookupUsers</code> response.
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class LookupBatcher {
+    public static final long DEFAULT_WINDOW_MILLIS = 20;
+    public static final int DEFAULT_MAX_URL_LENGTH = 2000;
+    public static final int DEFAULT_MAX_PENDING_USERS = 500;
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    private static final int ENCODED_SEPARATOR_LENGTH = 3; // "," is sent as "%2C"
+
+    private final Blockstack blockstack;
+    private final long windowMillis;
+    private final int maxUrlLength;
+    private final int maxPendingUsers;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService executor;
+
+    private final Object lock = new Object();
+    private List<PendingLookup> pending = new ArrayList<>();
+    private Set<String> pendingUsers = new LinkedHashSet<>();
+    private boolean flushScheduled;
+    private boolean shutdown;
+
+    /**
+     * Creates a batcher with the default window, URL length and parallelism.
+     *
+     * @param blockstack the client used to send the lookups.
+     */
+    public LookupBatcher(@NonNull Blockstack blockstack) {
+        this(blockstack, DEFAULT_WINDOW_MILLIS, DEFAULT_MAX_URL_LENGTH, DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * Creates a batcher.
+     *
+     * @param blockstack the client used to send the lookups.
+     * @param windowMillis how long lookups are collected before they are sent.
+     * @param maxUrlLength the maximum length of a single lookup URL.
+     * @param parallelism the maximum number of chunks fetched at the same time.
+     */
+    public LookupBatcher(@NonNull Blockstack blockstack, long windowMillis, int maxUrlLength,
+                         int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism < 1");
+        }
+
+        this.blockstack = blockstack;
+        this.windowMillis = windowMillis;
+        this.maxUrlLength = maxUrlLength;
+        this.maxPendingUsers = DEFAULT_MAX_PENDING_USERS;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                new NamedThreadFactory("batcher"));
+        this.executor = Executors.newFixedThreadPool(parallelism,
+                new NamedThreadFactory("batch-lookup"));
+    }
+
+    /**
+     * Queues a lookup to be sent with the next batch.
+     *
+     * @param usernames the usernames to look up.
+     * @return the pending response, holding one entry per requested username.
+     */
+    public BlockstackFuture<JSONObject> lookup(@NonNull String... usernames) {
+        return lookup(usernames, null);
+    }
+
+    /**
+     * Queues a lookup to be sent with the next batch.
+     *
+     * @param usernames the usernames to look up.
+     * @param callback notified when the lookup completes, may be <code>null</code>.
+     * @return the pending response, holding one entry per requested username. It fails with a
+     *          <code>RejectedExecutionException</code> once the batcher is shut down.
+     */
+    public BlockstackFuture<JSONObject> lookup(@NonNull String[] usernames,
+                                               Callback<JSONObject> callback) {
+        PendingLookup lookup = new PendingLookup(usernames, callback);
+        boolean flushNow = false;
+
+        synchronized (lock) {
+            if (shutdown) {
+                // Nothing would ever send it.
+                lookup.future.fail(new RejectedExecutionException("Batcher is shut down"));
+                return lookup.future;
+            }
+
+            pending.add(lookup);
+            pendingUsers.addAll(lookup.usernames);
+
+            if (pendingUsers.size() >= maxPendingUsers) {
+                flushNow = true;
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                scheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        flush();
+                    }
+                }, windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (flushNow) {
+            flush();
+        }
+
+        return lookup.future;
+    }
+
+    /**
+     * Sends every queued lookup immediately.
+     */
+    public void flush() {
+        List<PendingLookup> lookups;
+        Set<String> usernames;
+
+        synchronized (lock) {
+            if (pending.isEmpty()) {
+                flushScheduled = false;
+                return;
+            }
+
+            lookups = pending;
+            usernames = pendingUsers;
+            pending = new ArrayList<>();
+            pendingUsers = new LinkedHashSet<>();
+            flushScheduled = false;
+        }
+
+        new Batch(lookups, chunk(usernames)).send();
+    }
+
+    /**
+     * Stops the batcher. Lookups still queued are sent first; later ones fail right away.
+     */
+    public void shutdown() {
+        synchronized (lock) {
+            shutdown = true;
+        }
+
+        flush();
+        scheduler.shutdown();
+        executor.shutdown();
+    }
+
+    /**
+     * Splits usernames into groups whose lookup URL does not exceed the maximum length.
+     *
+     * @param usernames the de-duplicated usernames.
+     * @return the chunks, in request order.
+     */
+    List<String[]> chunk(@NonNull Collection<String> usernames) {
+        int baseLength = blockstack.getEndpoints().getUsersUrl().length() + 1;
+        List<String[]> chunks = new ArrayList<>();
+        List<String> current = new ArrayList<>();
+        int length = baseLength;
+
+        for (String username : usernames) {
+            int encodedLength = encodedLength(username);
+            int added = current.isEmpty() ? encodedLength : encodedLength + ENCODED_SEPARATOR_LENGTH;
+
+            if (!current.isEmpty() && length + added > maxUrlLength) {
+                chunks.add(current.toArray(new String[current.size()]));
+                current.clear();
+                length = baseLength;
+                added = encodedLength;
+            }
+
+            current.add(username);
+            length += added;
+        }
+
+        if (!current.isEmpty()) {
+            chunks.add(current.toArray(new String[current.size()]));
+        }
+
+        return chunks;
+    }
+
+    private static int encodedLength(String username) {
+        try {
+            return URLEncoder.encode(username, "UTF-8").length();
+        } catch (UnsupportedEncodingException e) {
+            return username.length() * 3;
+        }
+    }
+
+    /**
+     * A caller waiting for some users of a batch.
+     */
+    private static class PendingLookup {
+        final Set<String> usernames = new LinkedHashSet<>();
+        final BlockstackFuture<JSONObject> future;
+
+        PendingLookup(String[] usernames, Callback<JSONObject> callback) {
+            for (String username : usernames) {
+                String trimmed = username.trim();
+
+                if (trimmed.length() > 0) {
+                    this.usernames.add(trimmed);
+                }
+            }
+
+            this.future = new BlockstackFuture<>(callback, null);
+        }
+    }
+
+    /**
+     * The chunks sent for one window and the callers waiting on them.
+     */
+    private class Batch {
+        final List<PendingLookup> lookups;
+        final List<String[]> chunks;
+        final Map<String, JSONObject> users = new ConcurrentHashMap<>();
+        final Map<String, Throwable> failures = new ConcurrentHashMap<>();
+        final AtomicInteger remaining;
+
+        Batch(List<PendingLookup> lookups, List<String[]> chunks) {
+            this.lookups = lookups;
+            this.chunks = chunks;
+            this.remaining = new AtomicInteger(chunks.size());
+        }
+
+        void send() {
+            if (chunks.isEmpty()) {
+                route();
+                return;
+            }
+
+            for (final String[] chunk : chunks) {
+                try {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            fetch(chunk);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    fail(chunk, e);
+                    chunkDone();
+                }
+            }
+        }
+
+        void fetch(String[] chunk) {
+            try {
+                String response = blockstack.lookupUsers(chunk);
+
+                if (response == null) {
+                    throw new IOException("blockstack-server request failed");
+                }
+
+                JSONObject json = new JSONObject(response);
+                for (String username : chunk) {
+                    JSONObject user = json.optJSONObject(username);
+
+                    if (user == null) {
+                        user = json.optJSONObject(username.toLowerCase());
+                    }
+
+                    if (user != null) {
+                        users.put(username, user);
+                    }
+                }
+            } catch (IOException | JSONException e) {
+                fail(chunk, e);
+            } finally {
+                chunkDone();
+            }
+        }
+
+        void fail(String[] chunk, Throwable error) {
+            for (String username : chunk) {
+                failures.put(username, error);
+            }
+        }
+
+        void chunkDone() {
+            if (remaining.decrementAndGet() == 0) {
+                route();
+            }
+        }
+
+        void route() {
+            for (PendingLookup lookup : lookups) {
+                JSONObject result = new JSONObject();
+                Throwable error = null;
+
+                try {
+                    for (String username : lookup.usernames) {
+                        JSONObject user = users.get(username);
+
+                        if (user != null) {
+                            result.put(username, user);
+                        } else if (failures.containsKey(username)) {
+                            error = failures.get(username);
+                            break;
+                        }
+                    }
+                } catch (JSONException e) {
+                    error = e;
+                }
+
+                if (error != null) {
+                    lookup.future.fail(error);
+                } else {
+                    lookup.future.complete(result);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+/**
+ * The MetricsListener <code>interface</code> receives the {@link RequestMetrics} of every
+ * request a {@link Blockstack} client sends, e.g. to export them to your own telemetry.
+ * {@link MetricsRegistry} is an implementation that aggregates them in memory.
+ * <p>
+ * Listeners are called on the thread that made the request, right after the response has been
+ * read, so they should return quickly.
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public interface MetricsListener {
+    /**
+     * A listener that ignores every request. While it is installed the client does not
+     * measure anything.
+     */
+    MetricsListener NONE = new MetricsListener() {
+        @Override
+        public void onRequestFinished(@NonNull RequestMetrics metrics) {
+        }
+    };
+
+    /**
+     * Called once a request has finished, successfully or not.
+     *
+     * @param metrics the measurements of the request.
+     */
+    void onRequestFinished(@NonNull RequestMetrics metrics);
+}
@@ -0,0 +1,209 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The MetricsRegistry <code>class</code> is a {@link MetricsListener} that aggregates request
+ * metrics per operation: latency histograms for the whole request and each of its phases,
+ * bytes in and out, and error counts by type. It can forward every request to another
+ * listener, e.g. one exporting to your telemetry.
+ *
+ * <pre>
+ * MetricsRegistry metrics = new MetricsRegistry();
+ * blockstack.setMetricsListener(metrics);
+ * long p99 = metrics.getOperationStats("lookupUsers").getLatency()
+ *         .getValueAtPercentile(99, TimeUnit.MILLISECONDS);
+ * </pre>
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class MetricsRegistry implements MetricsListener {
+    private static final String UNNAMED_OPERATION = "request";
+
+    private final ConcurrentMap<String, OperationStats> operations = new ConcurrentHashMap<>();
+    private final MetricsListener next;
+
+    /**
+     * Creates a registry that only aggregates.
+     */
+    public MetricsRegistry() {
+        this(MetricsListener.NONE);
+    }
+
+    /**
+     * Creates a registry that aggregates and then forwards every request.
+     *
+     * @param next the listener to forward to.
+     */
+    public MetricsRegistry(@NonNull MetricsListener next) {
+        this.next = next;
+    }
+
+    @Override
+    public void onRequestFinished(@NonNull RequestMetrics metrics) {
+        String operation = metrics.getOperation();
+        getOrCreate(operation != null ? operation : UNNAMED_OPERATION).record(metrics);
+        next.onRequestFinished(metrics);
+    }
+
+    /**
+     * @return the names of the operations seen so far, sorted.
+     */
+    public Set<String> getOperations() {
+        return Collections.unmodifiableSet(new TreeSet<>(operations.keySet()));
+    }
+
+    /**
+     * @param operation an operation name, e.g. <code>"lookupUsers"</code>.
+     * @return the statistics of the operation, or <code>null</code> if it was never seen.
+     */
+    public OperationStats getOperationStats(@NonNull String operation) {
+        return operations.get(operation);
+    }
+
+    /**
+     * Forgets every recorded request.
+     */
+    public void reset() {
+        operations.clear();
+    }
+
+    private OperationStats getOrCreate(String operation) {
+        OperationStats stats = operations.get(operation);
+
+        if (stats == null) {
+            OperationStats created = new OperationStats(operation);
+            stats = operations.putIfAbsent(operation, created);
+
+            if (stats == null) {
+                stats = created;
+            }
+        }
+
+        return stats;
+    }
+
+    /**
+     * The aggregated metrics of one operation.
+     */
+    public static class OperationStats {
+        private final String operation;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final Map<RequestMetrics.Phase, LatencyHistogram> phases =
+                new EnumMap<>(RequestMetrics.Phase.class);
+        private final AtomicLong requestCount = new AtomicLong();
+        private final AtomicLong bytesOut = new AtomicLong();
+        private final AtomicLong bytesIn = new AtomicLong();
+        private final AtomicLong decodedBytesIn = new AtomicLong();
+        private final Map<String, Long> errorCounts = new HashMap<>();
+
+        OperationStats(@NonNull String operation) {
+            this.operation = operation;
+
+            for (RequestMetrics.Phase phase : RequestMetrics.Phase.values()) {
+                phases.put(phase, new LatencyHistogram());
+            }
+        }
+
+        void record(RequestMetrics metrics) {
+            requestCount.incrementAndGet();
+            latency.record(metrics.getTotalDuration(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+
+            for (Map.Entry<RequestMetrics.Phase, LatencyHistogram> phase : phases.entrySet()) {
+                long nanos = metrics.getDuration(phase.getKey(), TimeUnit.NANOSECONDS);
+                if (nanos >= 0) {
+                    phase.getValue().record(nanos, TimeUnit.NANOSECONDS);
+                }
+            }
+
+            bytesOut.addAndGet(metrics.getBytesOut());
+            bytesIn.addAndGet(metrics.getBytesIn());
+            decodedBytesIn.addAndGet(metrics.getDecodedBytesIn());
+
+            String errorType = metrics.getErrorType();
+            if (errorType != null) {
+                synchronized (errorCounts) {
+                    Long count = errorCounts.get(errorType);
+                    errorCounts.put(errorType, count != null ? count + 1 : 1);
+                }
+            }
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        public long getRequestCount() {
+            return requestCount.get();
+        }
+
+        /**
+         * @return the number of failed requests, of any type.
+         */
+        public long getErrorCount() {
+            long errors = 0;
+
+            synchronized (errorCounts) {
+                for (Long count : errorCounts.values()) {
+                    errors += count;
+                }
+            }
+
+            return errors;
+        }
+
+        /**
+         * @return the number of failed requests keyed by {@link RequestMetrics#getErrorType()}.
+         */
+        public Map<String, Long> getErrorCounts() {
+            synchronized (errorCounts) {
+                return new HashMap<>(errorCounts);
+            }
+        }
+
+        /**
+         * @return the histogram of whole request durations.
+         */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        /**
+         * @param phase a request phase.
+         * @return the histogram of the phase's durations, for requests that went through it.
+         */
+        public LatencyHistogram getPhaseLatency(@NonNull RequestMetrics.Phase phase) {
+            return phases.get(phase);
+        }
+
+        public long getBytesOut() {
+            return bytesOut.get();
+        }
+
+        public long getBytesIn() {
+            return bytesIn.get();
+        }
+
+        public long getDecodedBytesIn() {
+            return decodedBytesIn.get();
+        }
+
+        @Override
+        public String toString() {
+            return operation + ": requests=" + getRequestCount() + " errors=" + getErrorCount()
+                    + " " + latency;
+        }
+    }
+}
@@ -0,0 +1,488 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The NameOwnershipIndex <code>class</code> answers "which names does this address own" and
+ * "which address owns this name" from memory, without contacting the server.
+ * <p>
+ * The index is filled from {@link Blockstack#getOwnedNames(String)} answers, which list every
+ * name of an address, and from looked up {@link User}s, which tell the owner of a single name.
+ * Install it with {@link Blockstack#setNameIndex(NameOwnershipIndex)} and both are recorded as
+ * the app makes them; {@link #track(Collection)} adds addresses to fetch in the background.
+ * <p>
+ * Entries older than the time-to-live are still answered, and {@link #refreshStale()}, run
+ * periodically once {@link #start(long, TimeUnit)} is called, re-fetches only those. The index
+ * is bounded by the approximate memory its entries take, evicting the least recently used
+ * addresses with their names.
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class NameOwnershipIndex {
+    public static final long DEFAULT_MAX_BYTES = 1024 * 1024;
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    public static final int DEFAULT_MAX_REFRESH_PER_RUN = 50;
+
+    // Rough cost of a map node and entry object on top of the key chars.
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
+    private static final int LOOKUP_CHUNK_SIZE = 20;
+    private static final long NEVER = -1;
+
+    private final Blockstack blockstack;
+    private final long maxBytes;
+    private final long ttlMillis;
+    private final int maxRefreshPerRun;
+    private final LinkedHashMap<String, AddressEntry> addresses =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, String> owners = new HashMap<>();
+
+    private ScheduledExecutorService scheduler;
+    private long bytes;
+    private long evictionCount;
+    private long refreshCount;
+
+    /**
+     * Creates an index with the default memory limit and time-to-live.
+     *
+     * @param blockstack the client used to refresh entries.
+     */
+    public NameOwnershipIndex(@NonNull Blockstack blockstack) {
+        this(blockstack, DEFAULT_MAX_BYTES, DEFAULT_TTL_MILLIS, DEFAULT_MAX_REFRESH_PER_RUN);
+    }
+
+    /**
+     * Creates an index.
+     *
+     * @param blockstack the client used to refresh entries.
+     * @param maxBytes the maximum approximate memory taken by the index.
+     * @param ttlMillis how long an entry is fresh.
+     * @param maxRefreshPerRun the maximum number of addresses refreshed by one
+     *                         {@link #refreshStale()} run.
+     */
+    public NameOwnershipIndex(@NonNull Blockstack blockstack, long maxBytes, long ttlMillis,
+                              int maxRefreshPerRun) {
+        if (maxBytes < 1 || maxRefreshPerRun < 1) {
+            throw new IllegalArgumentException("Index limits must be positive");
+        }
+
+        this.blockstack = blockstack;
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttlMillis;
+        this.maxRefreshPerRun = maxRefreshPerRun;
+    }
+
+    // region Queries
+    /**
+     * @param name a name, e.g. <code>"itsProf"</code>.
+     * @return the address owning the name, or <code>null</code> if it is not indexed.
+     */
+    public synchronized String getOwner(@NonNull String name) {
+        String owner = owners.get(name);
+
+        if (owner != null) {
+            // Counts as a use of the owner's entry.
+            addresses.get(owner);
+        }
+
+        return owner;
+    }
+
+    /**
+     * @param address an address.
+     * @return the names owned by the address, or <code>null</code> unless every name of the
+     *          address is indexed.
+     */
+    public synchronized Set<String> getNames(@NonNull String address) {
+        AddressEntry entry = addresses.get(address);
+        return entry != null && entry.complete ? entry.copyNames() : null;
+    }
+
+    /**
+     * @param addresses some addresses.
+     * @return the names owned by each address whose names are all indexed.
+     */
+    public synchronized Map<String, Set<String>> getNames(@NonNull Collection<String> addresses) {
+        Map<String, Set<String>> names = new LinkedHashMap<>();
+
+        for (String address : addresses) {
+            Set<String> owned = getNames(address);
+
+            if (owned != null) {
+                names.put(address, owned);
+            }
+        }
+
+        return names;
+    }
+    // endregion
+
+    // region Updates
+    /**
+     * Records every name owned by an address, replacing what was known about it.
+     *
+     * @param ownedNames a {@link Blockstack#getOwnedNames(String)} answer.
+     */
+    public synchronized void put(@NonNull OwnedNames ownedNames) {
+        String address = ownedNames.getAddress();
+        AddressEntry entry = entry(address);
+        Set<String> names = new LinkedHashSet<>(ownedNames.getNames());
+
+        for (String name : new ArrayList<>(entry.names)) {
+            if (!names.contains(name)) {
+                owners.remove(name);
+                entry.removeName(name);
+            }
+        }
+
+        for (String name : names) {
+            setOwner(name, address, entry);
+        }
+
+        entry.complete = true;
+        entry.refreshedAt = now();
+        bytes += entry.reweigh();
+        trim();
+    }
+
+    /**
+     * Records the owner of a looked up user, if the server reported it.
+     *
+     * @param user a looked up user.
+     */
+    public synchronized void put(@NonNull User user) {
+        String name = user.getUsername();
+        String address = user.getOwnerAddress();
+
+        if (name == null || address == null) {
+            return;
+        }
+
+        AddressEntry entry = entry(address);
+        setOwner(name, address, entry);
+
+        if (!entry.complete) {
+            entry.refreshedAt = now();
+        }
+
+        bytes += entry.reweigh();
+        trim();
+    }
+
+    /**
+     * Records the owners of several looked up users.
+     *
+     * @param users looked up users.
+     */
+    public synchronized void putAll(@NonNull Collection<User> users) {
+        for (User user : users) {
+            put(user);
+        }
+    }
+
+    /**
+     * Adds addresses to the index without their names, so the next {@link #refreshStale()}
+     * fetches them.
+     *
+     * @param addresses the addresses to index.
+     */
+    public synchronized void track(@NonNull Collection<String> addresses) {
+        for (String address : addresses) {
+            AddressEntry entry = entry(address);
+
+            if (!entry.complete) {
+                entry.refreshedAt = NEVER;
+            }
+
+            bytes += entry.reweigh();
+        }
+
+        trim();
+    }
+
+    /**
+     * Removes every entry. Statistics are kept.
+     */
+    public synchronized void clear() {
+        addresses.clear();
+        owners.clear();
+        bytes = 0;
+    }
+    // endregion
+
+    // region Refresh
+    /**
+     * Refreshes the stale entries every <code>interval</code>, on a background thread.
+     *
+     * @param interval the delay between two refresh runs.
+     * @param unit the interval unit.
+     */
+    public synchronized void start(long interval, @NonNull TimeUnit unit) {
+        if (scheduler != null) {
+            return;
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+                new NamedThreadFactory("name-index"));
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    refreshStale();
+                } catch (RuntimeException e) {
+                    // Keep the schedule alive; the entries are retried on the next run.
+                    e.printStackTrace();
+                }
+            }
+        }, interval, interval, unit);
+    }
+
+    /**
+     * Stops refreshing in the background. The index keeps answering.
+     */
+    public synchronized void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Re-fetches the stale entries, the oldest first and at most <code>maxRefreshPerRun</code>
+     * addresses, with {@link Blockstack#getOwnedNames(String)}, which also completes entries
+     * only known from lookups or {@link #track(Collection)}. Names known from lookups that the
+     * address no longer owns are looked up again to find their new owner. Entries that fail to
+     * refresh are kept and retried on the next run.
+     *
+     * @return the number of addresses refreshed.
+     */
+    public int refreshStale() {
+        // Each stale address with the names it held only from lookups.
+        Map<String, List<String>> staleEntries = new LinkedHashMap<>();
+
+        synchronized (this) {
+            long now = now();
+            List<AddressEntry> stale = new ArrayList<>();
+
+            for (AddressEntry entry : addresses.values()) {
+                if (entry.refreshedAt == NEVER || now - entry.refreshedAt >= ttlMillis) {
+                    stale.add(entry);
+                }
+            }
+
+            Collections.sort(stale, new Comparator<AddressEntry>() {
+                @Override
+                public int compare(AddressEntry a, AddressEntry b) {
+                    return a.refreshedAt < b.refreshedAt ? -1
+                            : (a.refreshedAt == b.refreshedAt ? 0 : 1);
+                }
+            });
+
+            for (AddressEntry entry : stale.subList(0, Math.min(stale.size(), maxRefreshPerRun))) {
+                staleEntries.put(entry.address, entry.complete
+                        ? Collections.<String>emptyList() : new ArrayList<>(entry.names));
+            }
+        }
+
+        Set<String> refreshed = new LinkedHashSet<>();
+        List<String> staleNames = new ArrayList<>();
+
+        for (Map.Entry<String, List<String>> stale : staleEntries.entrySet()) {
+            OwnedNames ownedNames = blockstack.getOwnedNames(stale.getKey());
+
+            if (ownedNames == null) {
+                continue;
+            }
+
+            put(ownedNames);
+            refreshed.add(stale.getKey());
+
+            for (String name : stale.getValue()) {
+                if (!ownedNames.getNames().contains(name)) {
+                    staleNames.add(name);
+                }
+            }
+        }
+
+        for (int i = 0; i < staleNames.size(); i += LOOKUP_CHUNK_SIZE) {
+            List<String> chunk =
+                    staleNames.subList(i, Math.min(staleNames.size(), i + LOOKUP_CHUNK_SIZE));
+            Map<String, User> users =
+                    blockstack.lookupUserProfiles(chunk.toArray(new String[chunk.size()]));
+
+            if (users != null) {
+                refreshed.addAll(refreshOwners(chunk, users));
+            }
+        }
+
+        synchronized (this) {
+            refreshCount += refreshed.size();
+        }
+
+        return refreshed.size();
+    }
+
+    /**
+     * Applies fresh lookups of names, dropping the ones that no longer resolve to an owner.
+     *
+     * @return the addresses whose entry was refreshed.
+     */
+    private synchronized Set<String> refreshOwners(List<String> names, Map<String, User> users) {
+        Set<String> refreshed = new LinkedHashSet<>();
+
+        for (String name : names) {
+            String previous = owners.get(name);
+            User user = users.get(name);
+
+            if (user != null && user.getOwnerAddress() != null) {
+                put(user);
+                refreshed.add(user.getOwnerAddress());
+            } else if (previous != null && addresses.containsKey(previous)) {
+                AddressEntry entry = addresses.get(previous);
+                owners.remove(name);
+                entry.removeName(name);
+                entry.refreshedAt = now();
+                bytes += entry.reweigh();
+                refreshed.add(previous);
+            }
+        }
+
+        return refreshed;
+    }
+    // endregion
+
+    // region Statistics
+    /**
+     * @return the number of indexed addresses.
+     */
+    public synchronized int size() {
+        return addresses.size();
+    }
+
+    /**
+     * @return the number of indexed names.
+     */
+    public synchronized int getNameCount() {
+        return owners.size();
+    }
+
+    public synchronized long getSizeInBytes() {
+        return bytes;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public synchronized long getRefreshCount() {
+        return refreshCount;
+    }
+    // endregion
+
+    long now() {
+        return System.currentTimeMillis();
+    }
+
+    private AddressEntry entry(String address) {
+        AddressEntry entry = addresses.get(address);
+
+        if (entry == null) {
+            entry = new AddressEntry(address);
+            addresses.put(address, entry);
+        }
+
+        return entry;
+    }
+
+    /**
+     * Moves a name to its new owner's entry, taking it off its previous owner's.
+     */
+    private void setOwner(String name, String address, AddressEntry entry) {
+        String previous = owners.put(name, address);
+
+        if (previous != null && !previous.equals(address)) {
+            AddressEntry previousEntry = addresses.get(previous);
+
+            if (previousEntry != null) {
+                previousEntry.removeName(name);
+                bytes += previousEntry.reweigh();
+            }
+        }
+
+        entry.names.add(name);
+    }
+
+    private void trim() {
+        Iterator<AddressEntry> iterator = addresses.values().iterator();
+
+        while (bytes > maxBytes && iterator.hasNext()) {
+            AddressEntry eldest = iterator.next();
+            iterator.remove();
+            bytes -= eldest.weight;
+            evictionCount++;
+
+            for (String name : eldest.names) {
+                if (eldest.address.equals(owners.get(name))) {
+                    owners.remove(name);
+                }
+            }
+        }
+    }
+
+    /**
+     * An address and the names it is known to own. The entry carries the memory of its names
+     * in both directions of the index.
+     */
+    private static class AddressEntry {
+        final String address;
+        final Set<String> names = new LinkedHashSet<>();
+        boolean complete;
+        long refreshedAt = NEVER;
+        int weight;
+
+        AddressEntry(String address) {
+            this.address = address;
+        }
+
+        void removeName(String name) {
+            names.remove(name);
+        }
+
+        Set<String> copyNames() {
+            return Collections.unmodifiableSet(new LinkedHashSet<>(names));
+        }
+
+        /**
+         * Recomputes the weight of the entry.
+         *
+         * @return the change in weight.
+         */
+        int reweigh() {
+            int updated = ENTRY_OVERHEAD_BYTES + 2 * address.length();
+
+            for (String name : names) {
+                // The name is held by this entry's set and as a key of the owner map.
+                updated += 2 * ENTRY_OVERHEAD_BYTES + 2 * name.length();
+            }
+
+            int delta = updated - weight;
+            weight = updated;
+            return delta;
+        }
+    }
+}
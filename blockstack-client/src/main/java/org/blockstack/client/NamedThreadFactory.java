@@ -0,0 +1,25 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates named daemon threads so an idle client never keeps the process alive.
+ */
+class NamedThreadFactory implements ThreadFactory {
+    private final String name;
+    private final AtomicInteger count = new AtomicInteger();
+
+    NamedThreadFactory(@NonNull String name) {
+        this.name = name;
+    }
+
+    @Override
+    public Thread newThread(@NonNull Runnable runnable) {
+        Thread thread = new Thread(runnable, "blockstack-" + name + "-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -0,0 +1,38 @@
+package org.blockstack.client;
+
+/**
+ * The NetworkPolicy <code>interface</code> tells background work whether the current network
+ * conditions allow it to use the network. The client library does not depend on Android
+ * connectivity APIs, so apps implement it, e.g. on top of <code>ConnectivityManager</code>:
+ *
+ * <pre>
+ * NetworkPolicy unmeteredOnly = new NetworkPolicy() {
+ *     public boolean allowsBackgroundRequests() {
+ *         NetworkInfo network = connectivityManager.getActiveNetworkInfo();
+ *         return network != null &amp;&amp; network.isConnected()
+ *                 &amp;&amp; !connectivityManager.isActiveNetworkMetered();
+ *     }
+ * };
+ * </pre>
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public interface NetworkPolicy {
+    /**
+     * A policy that always allows background requests.
+     */
+    NetworkPolicy ALWAYS = new NetworkPolicy() {
+        @Override
+        public boolean allowsBackgroundRequests() {
+            return true;
+        }
+    };
+
+    /**
+     * Called before every round of background requests, on the background thread.
+     *
+     * @return <code>true</code> if background requests may be sent now.
+     */
+    boolean allowsBackgroundRequests();
+}
@@ -0,0 +1,59 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The OwnedNames <code>class</code> lists the names owned by an address.
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class OwnedNames {
+    private final String address;
+    private final List<String> names;
+
+    public OwnedNames(@NonNull String address, @NonNull List<String> names) {
+        this.address = address;
+        this.names = Collections.unmodifiableList(names);
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public List<String> getNames() {
+        return names;
+    }
+
+    /**
+     * Reads a <code>{"names": [...]}</code> response.
+     */
+    static OwnedNames read(@NonNull String address, @NonNull JsonPullParser parser)
+            throws IOException {
+        List<String> names = new ArrayList<>();
+        parser.beginObject();
+
+        while (parser.hasNext()) {
+            if ("names".equals(parser.nextName())
+                    && parser.peek() == JsonPullParser.Token.BEGIN_ARRAY) {
+                parser.beginArray();
+
+                while (parser.hasNext()) {
+                    names.add(parser.nextString());
+                }
+
+                parser.endArray();
+            } else {
+                parser.skipValue();
+            }
+        }
+
+        parser.endObject();
+        return new OwnedNames(address, names);
+    }
+}
@@ -0,0 +1,144 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * The Profile <code>class</code> is the profile data attached to a user.
+ * <p>
+ * Common fields such as the name or the avatar URL are read by scanning the raw JSON for just
+ * that field. The full <code>JSONObject</code> tree is only built if {@link #getJSONObject()} is
+ * called.
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class Profile {
+    private final String json;
+    private volatile JSONObject object;
+
+    /**
+     * Creates a profile from its JSON object.
+     *
+     * @param json the profile's JSON object.
+     */
+    public Profile(@NonNull String json) {
+        this.json = json;
+    }
+
+    /**
+     * @return the profile as returned by the server.
+     */
+    public String getJson() {
+        return json;
+    }
+
+    /**
+     * @return the display name, read from either <code>"name"</code> or
+     *          <code>"name.formatted"</code>, or <code>null</code>.
+     */
+    public String getName() {
+        String name = findString("name");
+        return name != null ? name : findString("name", "formatted");
+    }
+
+    /**
+     * @return the avatar image URL, or <code>null</code>.
+     */
+    public String getAvatarUrl() {
+        return findString("avatar", "url");
+    }
+
+    /**
+     * @return the short biography, or <code>null</code>.
+     */
+    public String getBio() {
+        String bio = findString("bio");
+        return bio != null ? bio : findString("description");
+    }
+
+    /**
+     * @return the website URL, or <code>null</code>.
+     */
+    public String getWebsite() {
+        return findString("website");
+    }
+
+    /**
+     * Builds, once, the full <code>JSONObject</code> tree of the profile.
+     *
+     * @return the profile as a <code>JSONObject</code>, or <code>null</code> if it is malformed.
+     */
+    public JSONObject getJSONObject() {
+        JSONObject result = object;
+
+        if (result == null) {
+            try {
+                result = new JSONObject(json);
+                object = result;
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Finds a string value by its path of property names without building the profile tree.
+     *
+     * @param path the property names leading to the value.
+     * @return the value, or <code>null</code> if it is missing or not a string.
+     */
+    public String findString(@NonNull String... path) {
+        JSONObject tree = object;
+
+        if (tree != null) {
+            for (int i = 0; i < path.length - 1 && tree != null; i++) {
+                tree = tree.optJSONObject(path[i]);
+            }
+
+            Object value = tree != null ? tree.opt(path[path.length - 1]) : null;
+            return value instanceof String ? (String) value : null;
+        }
+
+        JsonPullParser parser = new JsonPullParser(new StringReader(json), new char[256]);
+
+        try {
+            for (int depth = 0; depth < path.length; depth++) {
+                if (parser.peek() != JsonPullParser.Token.BEGIN_OBJECT) {
+                    return null;
+                }
+
+                parser.beginObject();
+                boolean found = false;
+
+                while (!found && parser.hasNext()) {
+                    if (path[depth].equals(parser.nextName())) {
+                        found = true;
+                    } else {
+                        parser.skipValue();
+                    }
+                }
+
+                if (!found) {
+                    return null;
+                }
+            }
+
+            return parser.peek() == JsonPullParser.Token.STRING ? parser.nextString() : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return json;
+    }
+}
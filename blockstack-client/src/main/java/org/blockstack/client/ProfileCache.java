@@ -0,0 +1,227 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The ProfileCache <code>class</code> is a size-bounded, approximately least-recently-used
+ * cache of user lookup results keyed by username.
+ * <p>
+ * Entries expire after a time-to-live. Lookups the server answered with an <code>"error"</code>
+ * entry are cached too, with a shorter time-to-live, so repeated lookups of unknown names do not
+ * hit the network either. The cache is bounded both by entry count and by the approximate
+ * memory taken by the cached JSON.
+ * <p>
+ * Hits take no lock, so every thread of an app can read the cache at once: a hit only marks the
+ * entry as used. Writes are serialized and evict in insertion order, giving entries used since
+ * they were added a second chance at the end of the line.
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class ProfileCache {
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+    public static final long DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    public static final long DEFAULT_NEGATIVE_TTL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    // Rough per-entry cost of the map node, entry object and key on top of the value chars.
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    // Guarded by this, like bytes and evictionCount: the entries in eviction order.
+    private final LinkedHashMap<String, Entry> order = new LinkedHashMap<>();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    private long bytes;
+    private long evictionCount;
+
+    /**
+     * Creates a cache with the default limits and time-to-live values.
+     */
+    public ProfileCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES, DEFAULT_TTL_MILLIS,
+                DEFAULT_NEGATIVE_TTL_MILLIS);
+    }
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxEntries the maximum number of cached users.
+     * @param maxBytes the maximum approximate memory taken by cached users.
+     * @param ttlMillis how long a found user stays cached.
+     * @param negativeTtlMillis how long an <code>"error"</code> entry stays cached.
+     */
+    public ProfileCache(int maxEntries, long maxBytes, long ttlMillis, long negativeTtlMillis) {
+        if (maxEntries < 1 || maxBytes < 1) {
+            throw new IllegalArgumentException("Cache limits must be positive");
+        }
+
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttlMillis;
+        this.negativeTtlMillis = negativeTtlMillis;
+    }
+
+    /**
+     * Returns the cached lookup result for a user.
+     *
+     * @param username the username.
+     * @return the user's JSON object as a <code>String</code>, or <code>null</code> if it is not
+     *          cached or has expired.
+     */
+    public String get(@NonNull String username) {
+        Entry entry = entries.get(username);
+
+        if (entry == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+
+        if (entry.expiresAt <= now()) {
+            synchronized (this) {
+                if (entries.remove(username, entry)) {
+                    order.remove(username);
+                    bytes -= entry.weight;
+                }
+            }
+
+            missCount.incrementAndGet();
+            return null;
+        }
+
+        if (!entry.used) {
+            entry.used = true;
+        }
+
+        hitCount.incrementAndGet();
+        return entry.json;
+    }
+
+    /**
+     * Caches the lookup result for a user.
+     *
+     * @param username the username.
+     * @param json the user's JSON object as a <code>String</code>.
+     * @param negative <code>true</code> if the server answered with an <code>"error"</code>.
+     */
+    public synchronized void put(@NonNull String username, @NonNull String json,
+                                 boolean negative) {
+        long ttl = negative ? negativeTtlMillis : ttlMillis;
+        invalidate(username);
+
+        if (ttl <= 0) {
+            return;
+        }
+
+        Entry entry = new Entry(json, now() + ttl, weigh(username, json));
+        if (entry.weight > maxBytes) {
+            return;
+        }
+
+        entries.put(username, entry);
+        order.put(username, entry);
+        bytes += entry.weight;
+        trim();
+    }
+
+    /**
+     * Removes a user from the cache.
+     *
+     * @param username the username.
+     */
+    public synchronized void invalidate(@NonNull String username) {
+        Entry entry = order.remove(username);
+
+        if (entry != null) {
+            entries.remove(username);
+            bytes -= entry.weight;
+        }
+    }
+
+    /**
+     * Removes every user from the cache. Statistics are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        order.clear();
+        bytes = 0;
+    }
+
+    // region Statistics
+    public int size() {
+        return entries.size();
+    }
+
+    public synchronized long getSizeInBytes() {
+        return bytes;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+    // endregion
+
+    long now() {
+        return System.currentTimeMillis();
+    }
+
+    private void trim() {
+        // Each entry gets at most one second chance, so hits racing with the loop cannot keep it
+        // going.
+        int chances = order.size();
+
+        while ((order.size() > maxEntries || bytes > maxBytes) && !order.isEmpty()) {
+            Map.Entry<String, Entry> eldest = order.entrySet().iterator().next();
+            String username = eldest.getKey();
+            Entry entry = eldest.getValue();
+            order.remove(username);
+
+            if (entry.used && chances-- > 0) {
+                entry.used = false;
+                order.put(username, entry);
+                continue;
+            }
+
+            entries.remove(username);
+            bytes -= entry.weight;
+            evictionCount++;
+        }
+    }
+
+    private static int weigh(String username, String json) {
+        return ENTRY_OVERHEAD_BYTES + 2 * (username.length() + json.length());
+    }
+
+    private static class Entry {
+        final String json;
+        final long expiresAt;
+        final int weight;
+        volatile boolean used;
+
+        Entry(String json, long expiresAt, int weight) {
+            this.json = json;
+            this.expiresAt = expiresAt;
+            this.weight = weight;
+        }
+    }
+}
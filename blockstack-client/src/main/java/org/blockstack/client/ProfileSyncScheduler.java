@@ -0,0 +1,363 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ProfileSyncScheduler <code>class</code> keeps a working set of profiles, such as the
+ * user's contacts or followed users, fresh in the client's {@link ProfileCache} and
+ * {@link DiskProfileCache}, so screens showing them answer from local state instead of waiting
+ * for the network.
+ * <p>
+ * Once started, a single background worker periodically looks up the followed users whose
+ * cached profile is older than the maximum age, several per request. Each run sends at most a
+ * fixed number of requests, is skipped while the {@link NetworkPolicy} disallows background
+ * requests, and refreshes the users that were never synced first, then the stalest and most
+ * often viewed ones. Install the scheduler with
+ * {@link Blockstack#setSyncScheduler(ProfileSyncScheduler)} so it learns which profiles are
+ * viewed and which were already refreshed by regular lookups.
+ *
+ * <pre>
+ * ProfileSyncScheduler sync = new ProfileSyncScheduler(blockstack);
+ * blockstack.setSyncScheduler(sync);
+ * sync.setNetworkPolicy(unmeteredOnly);
+ * sync.follow(contacts);
+ * sync.start(15, TimeUnit.MINUTES);
+ * </pre>
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class ProfileSyncScheduler {
+    public static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.MINUTES.toMillis(15);
+    public static final int DEFAULT_BATCH_SIZE = 50;
+    public static final int DEFAULT_MAX_REQUESTS_PER_RUN = 4;
+
+    private static final long NEVER = -1;
+
+    private final Blockstack blockstack;
+    private final long maxAgeMillis;
+    private final int batchSize;
+    private final int maxRequestsPerRun;
+    private final Map<String, FollowedUser> followed = new HashMap<>();
+    private final Object runLock = new Object();
+
+    private volatile NetworkPolicy networkPolicy = NetworkPolicy.ALWAYS;
+    private ScheduledExecutorService worker;
+    private long refreshCount;
+    private long requestCount;
+    private long skippedRunCount;
+
+    /**
+     * Creates a scheduler with the default maximum age, batch size and request budget.
+     *
+     * @param blockstack the client whose caches are kept fresh.
+     */
+    public ProfileSyncScheduler(@NonNull Blockstack blockstack) {
+        this(blockstack, DEFAULT_MAX_AGE_MILLIS, DEFAULT_BATCH_SIZE, DEFAULT_MAX_REQUESTS_PER_RUN);
+    }
+
+    /**
+     * Creates a scheduler.
+     *
+     * @param blockstack the client whose caches are kept fresh.
+     * @param maxAgeMillis how old a profile gets before it is refreshed.
+     * @param batchSize the maximum number of users looked up by one request.
+     * @param maxRequestsPerRun the maximum number of requests sent by one run.
+     */
+    public ProfileSyncScheduler(@NonNull Blockstack blockstack, long maxAgeMillis, int batchSize,
+                                int maxRequestsPerRun) {
+        if (batchSize < 1 || maxRequestsPerRun < 1) {
+            throw new IllegalArgumentException("Sync limits must be positive");
+        }
+
+        this.blockstack = blockstack;
+        this.maxAgeMillis = maxAgeMillis;
+        this.batchSize = batchSize;
+        this.maxRequestsPerRun = maxRequestsPerRun;
+    }
+
+    /**
+     * @param networkPolicy decides whether a run may use the network, e.g. only on unmetered
+     *                      networks.
+     */
+    public void setNetworkPolicy(@NonNull NetworkPolicy networkPolicy) {
+        this.networkPolicy = networkPolicy;
+    }
+
+    public NetworkPolicy getNetworkPolicy() {
+        return networkPolicy;
+    }
+
+    // region Working set
+    /**
+     * Adds users to the working set. They are refreshed on the next run.
+     *
+     * @param usernames the usernames to keep fresh.
+     */
+    public synchronized void follow(@NonNull Collection<String> usernames) {
+        for (String username : usernames) {
+            String key = username.trim();
+
+            if (key.length() > 0 && !followed.containsKey(key)) {
+                followed.put(key, new FollowedUser(key));
+            }
+        }
+    }
+
+    /**
+     * Removes users from the working set. Their cached profiles are kept.
+     *
+     * @param usernames the usernames to stop refreshing.
+     */
+    public synchronized void unfollow(@NonNull Collection<String> usernames) {
+        for (String username : usernames) {
+            followed.remove(username.trim());
+        }
+    }
+
+    /**
+     * @return the usernames in the working set.
+     */
+    public synchronized Set<String> getFollowed() {
+        return new LinkedHashSet<>(followed.keySet());
+    }
+
+    /**
+     * Records that a user's profile was viewed. Users viewed more often are refreshed first.
+     * The client does this for every user it looks up once the scheduler is installed.
+     *
+     * @param username the username.
+     */
+    public synchronized void recordAccess(@NonNull String username) {
+        FollowedUser user = followed.get(username);
+
+        if (user != null) {
+            user.accesses++;
+        }
+    }
+
+    /**
+     * Records that a user's profile was just stored in the caches, by a sync or any other
+     * lookup.
+     */
+    synchronized void recordRefresh(@NonNull String username) {
+        FollowedUser user = followed.get(username);
+
+        if (user != null) {
+            user.refreshedAt = now();
+        }
+    }
+    // endregion
+
+    // region Scheduling
+    /**
+     * Runs right away and then every <code>interval</code>, on a single background thread.
+     *
+     * @param interval the delay between two runs.
+     * @param unit the interval unit.
+     */
+    public synchronized void start(long interval, @NonNull TimeUnit unit) {
+        if (worker != null) {
+            return;
+        }
+
+        worker = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("sync"));
+        worker.scheduleWithFixedDelay(newRun(), 0, interval, unit);
+    }
+
+    /**
+     * Asks for a run as soon as the worker is free, e.g. when the device gets back online.
+     * Does nothing unless the scheduler is started.
+     */
+    public synchronized void requestSync() {
+        if (worker == null) {
+            return;
+        }
+
+        try {
+            worker.execute(newRun());
+        } catch (RejectedExecutionException e) {
+            // Shutting down.
+        }
+    }
+
+    /**
+     * Stops the background runs. A run in progress finishes its current request.
+     */
+    public synchronized void shutdown() {
+        if (worker != null) {
+            worker.shutdown();
+            worker = null;
+        }
+    }
+
+    /**
+     * Refreshes the stale users of the working set, sending at most
+     * <code>maxRequestsPerRun</code> lookups. Does nothing while the network policy disallows
+     * background requests. A failed request ends the run, and its users are retried on the
+     * next one.
+     *
+     * @return the number of users refreshed.
+     */
+    public int refreshStale() {
+        synchronized (runLock) {
+            if (!networkPolicy.allowsBackgroundRequests()) {
+                synchronized (this) {
+                    skippedRunCount++;
+                }
+
+                return 0;
+            }
+
+            List<String> due = selectDue();
+            int refreshed = 0;
+
+            for (int i = 0; i < due.size(); i += batchSize) {
+                if (i > 0 && !networkPolicy.allowsBackgroundRequests()) {
+                    break;
+                }
+
+                List<String> batch = due.subList(i, Math.min(due.size(), i + batchSize));
+
+                try {
+                    synchronized (this) {
+                        requestCount++;
+                    }
+
+                    blockstack.refreshUsers(batch);
+                } catch (IOException e) {
+                    // Most likely offline; the rest waits for the next run.
+                    e.printStackTrace();
+                    break;
+                }
+
+                synchronized (this) {
+                    for (String username : batch) {
+                        // Users missing from the answer are not asked for again on every run.
+                        recordRefresh(username);
+                    }
+
+                    refreshCount += batch.size();
+                }
+
+                refreshed += batch.size();
+            }
+
+            return refreshed;
+        }
+    }
+
+    /**
+     * Picks the users to refresh in this run: never synced first, then by age weighted by how
+     * often they were viewed. View counts are halved on every run, so recent interest counts
+     * most.
+     */
+    private synchronized List<String> selectDue() {
+        final long now = now();
+        List<FollowedUser> stale = new ArrayList<>();
+
+        for (FollowedUser user : followed.values()) {
+            if (user.refreshedAt == NEVER || now - user.refreshedAt >= maxAgeMillis) {
+                stale.add(user);
+            }
+        }
+
+        Collections.sort(stale, new Comparator<FollowedUser>() {
+            @Override
+            public int compare(FollowedUser a, FollowedUser b) {
+                return Double.compare(b.priority(now), a.priority(now));
+            }
+        });
+
+        int budget = (int) Math.min(Integer.MAX_VALUE, (long) batchSize * maxRequestsPerRun);
+        List<String> due = new ArrayList<>();
+
+        for (FollowedUser user : stale.subList(0, Math.min(stale.size(), budget))) {
+            due.add(user.username);
+        }
+
+        for (FollowedUser user : followed.values()) {
+            user.accesses /= 2;
+        }
+
+        return due;
+    }
+
+    private Runnable newRun() {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    refreshStale();
+                } catch (RuntimeException e) {
+                    // Keep the schedule alive; the users are retried on the next run.
+                    e.printStackTrace();
+                }
+            }
+        };
+    }
+    // endregion
+
+    // region Statistics
+    /**
+     * @return the number of users refreshed since the scheduler was created.
+     */
+    public synchronized long getRefreshCount() {
+        return refreshCount;
+    }
+
+    /**
+     * @return the number of lookups sent since the scheduler was created.
+     */
+    public synchronized long getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * @return the number of runs skipped because of the network policy.
+     */
+    public synchronized long getSkippedRunCount() {
+        return skippedRunCount;
+    }
+    // endregion
+
+    long now() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * A user of the working set.
+     */
+    private static class FollowedUser {
+        final String username;
+        long refreshedAt = NEVER;
+        int accesses;
+
+        FollowedUser(String username) {
+            this.username = username;
+        }
+
+        double priority(long now) {
+            if (refreshedAt == NEVER) {
+                return Double.MAX_VALUE;
+            }
+
+            return (double) (now - refreshedAt) * (1 + accesses);
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The RateLimiter <code>class</code> keeps a client under the request quota of its app
+ * credentials with a token bucket: requests are sent at up to a steady rate, with bursts up to
+ * the bucket size. Requests held back wait in a queue ordered by {@link Request.Priority}, so
+ * interactive lookups and searches overtake background syncs and bulk fetches.
+ * <p>
+ * The limiter adapts to the server: when it throttles a request, every request pauses for
+ * the time the server asked for and the rate is halved, then recovers step by step as requests
+ * succeed again.
+ * <p>
+ * Clients created with the same app id share one limiter, see
+ * {@link #forCredential(String)}, since the server counts their requests together: a rate set
+ * or a throttle reported through one client applies to all of them. The limiter is dropped
+ * when the last of those clients is closed, so clients created afterwards start afresh. Quotas
+ * differ between plans and self-hosted endpoints have none, so that limiter lets requests
+ * through at any rate until {@link #setRate(double, int)} is called; until then it only
+ * honors the pauses the server asks for.
+ * <p>
+ * Every request goes through the limiter, so taking a free permit is lock-free: the bucket is
+ * kept as the time its next permit frees up and advanced with a compare-and-set. Only requests
+ * that have to wait, and so need the priority queue, take a lock.
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class RateLimiter {
+    public static final long DEFAULT_THROTTLE_PAUSE_MILLIS = TimeUnit.SECONDS.toMillis(1);
+
+    private static final double MIN_PERMITS_PER_SECOND = 0.5;
+    private static final double MICROS_PER_SECOND = 1000000;
+    // Successful requests needed to climb back from a throttled rate to the configured one.
+    private static final int RECOVERY_STEPS = 20;
+    // Guarded by itself, like the client count of each limiter in it.
+    private static final Map<String, RateLimiter> CREDENTIALS = new HashMap<>();
+
+    // Guarded by this, like sequence.
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<>();
+    private final AtomicInteger queueLength = new AtomicInteger();
+    // When the next permit frees up, in microseconds. A request may go while that is at most a
+    // burst ahead of now, and pushes it one interval further.
+    private final AtomicLong nextFreeMicros = new AtomicLong();
+    private final AtomicLong throttleCount = new AtomicLong();
+
+    private volatile boolean limited;
+    private volatile double maxPermitsPerSecond;
+    private volatile double permitsPerSecond;
+    private volatile int burst;
+    private volatile long pausedUntil;
+    private long sequence;
+    private int clients;
+
+    /**
+     * Creates a limiter that does not limit the rate until {@link #setRate(double, int)} is
+     * called, but still pauses requests when the server throttles them.
+     */
+    public RateLimiter() {
+    }
+
+    /**
+     * Creates a limiter.
+     *
+     * @param permitsPerSecond the steady request rate.
+     * @param burst the number of requests that can be sent at once after an idle period.
+     */
+    public RateLimiter(double permitsPerSecond, int burst) {
+        setRate(permitsPerSecond, burst);
+    }
+
+    /**
+     * Returns the limiter shared by every client using an app id, creating it without a rate
+     * limit on first use. It is kept, with its rate and any throttling, until the last client
+     * using it is closed.
+     *
+     * @param appId the app id passed to {@link Blockstack}.
+     * @return the limiter of the credential.
+     */
+    public static RateLimiter forCredential(@NonNull String appId) {
+        synchronized (CREDENTIALS) {
+            RateLimiter limiter = CREDENTIALS.get(appId);
+
+            if (limiter == null) {
+                limiter = new RateLimiter();
+                CREDENTIALS.put(appId, limiter);
+            }
+
+            return limiter;
+        }
+    }
+
+    /**
+     * Returns the limiter of an app id for a new client, which has to
+     * {@link #release(String, RateLimiter)} it when closed.
+     */
+    static RateLimiter retain(@NonNull String appId) {
+        synchronized (CREDENTIALS) {
+            RateLimiter limiter = forCredential(appId);
+            limiter.clients++;
+            return limiter;
+        }
+    }
+
+    /**
+     * Drops the limiter of an app id once no client uses it anymore.
+     */
+    static void release(@NonNull String appId, @NonNull RateLimiter limiter) {
+        synchronized (CREDENTIALS) {
+            if (--limiter.clients <= 0 && CREDENTIALS.get(appId) == limiter) {
+                CREDENTIALS.remove(appId);
+            }
+        }
+    }
+
+    /**
+     * Drops every shared limiter, so that clients created afterwards start afresh whatever the
+     * clients before them were throttled to.
+     */
+    static void clearCredentials() {
+        synchronized (CREDENTIALS) {
+            CREDENTIALS.clear();
+        }
+    }
+
+    /**
+     * Changes the rate, e.g. to match the quota of your API plan.
+     *
+     * @param permitsPerSecond the steady request rate.
+     * @param burst the number of requests that can be sent at once after an idle period.
+     */
+    public synchronized void setRate(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Rate and burst must be positive");
+        }
+
+        this.maxPermitsPerSecond = permitsPerSecond;
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        // Coming from no limit at all, the next permit is free now, i.e. the burst is full.
+        this.limited = true;
+        notifyAll();
+    }
+
+    /**
+     * Waits until a request of the given priority may be sent. Higher priority requests are let
+     * through first; requests of the same priority in arrival order.
+     *
+     * @param priority the request priority.
+     * @throws InterruptedIOException if the thread was interrupted while waiting.
+     */
+    public void acquire(@NonNull Request.Priority priority) throws InterruptedIOException {
+        // Nobody waits and a permit is free: no need to queue.
+        if (queueLength.get() == 0 && tryAcquire(nowMicros()) == 0) {
+            return;
+        }
+
+        synchronized (this) {
+            Waiter waiter = new Waiter(priority, sequence++);
+            waiters.add(waiter);
+            queueLength.incrementAndGet();
+
+            try {
+                while (true) {
+                    long now = nowMicros();
+                    // Only the first in line takes a permit; the others are woken up when it did.
+                    long delay = waiters.peek() == waiter ? tryAcquire(now) : Math.max(1000,
+                            delayMicros(now));
+
+                    if (delay == 0) {
+                        // The next waiter may be able to go too.
+                        notifyAll();
+                        return;
+                    }
+
+                    wait(Math.max(1, (delay + 999) / 1000));
+                }
+            } catch (InterruptedException e) {
+                notifyAll();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a request permit");
+            } finally {
+                waiters.remove(waiter);
+                queueLength.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Reports that the server throttled a request. Every request pauses for the time the server
+     * asked for and the rate, if one is set, is halved.
+     *
+     * @param retryAfterMillis the time the server asked to wait, or a negative value if it did
+     *                         not say.
+     */
+    public synchronized void onThrottled(long retryAfterMillis) {
+        throttleCount.incrementAndGet();
+
+        long pause = retryAfterMillis >= 0 ? retryAfterMillis : DEFAULT_THROTTLE_PAUSE_MILLIS;
+        long until = Math.max(pausedUntil, now() + pause);
+        pausedUntil = until;
+
+        if (limited) {
+            permitsPerSecond = Math.max(MIN_PERMITS_PER_SECOND, permitsPerSecond / 2);
+
+            // No saved up burst right after the pause.
+            long resume = until * 1000 + (burst - 1) * intervalMicros();
+            long next;
+            do {
+                next = nextFreeMicros.get();
+            } while (next < resume && !nextFreeMicros.compareAndSet(next, resume));
+        }
+
+        notifyAll();
+    }
+
+    /**
+     * Reports that a request went through, raising a throttled rate a step back towards the
+     * configured one.
+     */
+    public void onSuccess() {
+        if (limited && permitsPerSecond < maxPermitsPerSecond) {
+            synchronized (this) {
+                permitsPerSecond = Math.min(maxPermitsPerSecond,
+                        permitsPerSecond + maxPermitsPerSecond / RECOVERY_STEPS);
+            }
+        }
+    }
+
+    /**
+     * @return whether a rate was set with {@link #setRate(double, int)}.
+     */
+    public boolean isLimited() {
+        return limited;
+    }
+
+    /**
+     * @return the current rate, lower than the configured one after throttling, or
+     *          <code>Double.POSITIVE_INFINITY</code> if no rate was set.
+     */
+    public double getPermitsPerSecond() {
+        return limited ? permitsPerSecond : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @return the number of requests waiting for a permit.
+     */
+    public int getQueueLength() {
+        return queueLength.get();
+    }
+
+    /**
+     * @return the number of throttled requests reported so far.
+     */
+    public long getThrottleCount() {
+        return throttleCount.get();
+    }
+
+    long now() {
+        return System.currentTimeMillis();
+    }
+
+    private long nowMicros() {
+        return now() * 1000;
+    }
+
+    /**
+     * Takes a permit if one is free.
+     *
+     * @return 0 if a permit was taken, otherwise how long to wait in microseconds.
+     */
+    private long tryAcquire(long now) {
+        while (true) {
+            long delay = delayMicros(now);
+
+            if (delay > 0 || !limited) {
+                return delay;
+            }
+
+            long next = nextFreeMicros.get();
+
+            if (next - now <= (burst - 1) * intervalMicros()
+                    && nextFreeMicros.compareAndSet(next, Math.max(next, now) + intervalMicros())) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * @return 0 if a permit is free, otherwise how long to wait in microseconds.
+     */
+    private long delayMicros(long now) {
+        long paused = pausedUntil * 1000 - now;
+
+        if (paused > 0) {
+            return paused;
+        }
+
+        if (!limited) {
+            return 0;
+        }
+
+        return Math.max(0, nextFreeMicros.get() - now - (burst - 1) * intervalMicros());
+    }
+
+    private long intervalMicros() {
+        return Math.max(1, (long) Math.ceil(MICROS_PER_SECOND / permitsPerSecond));
+    }
+
+    /**
+     * A thread waiting for a permit, ordered by priority and then arrival.
+     */
+    private static final class Waiter implements Comparable<Waiter> {
+        final Request.Priority priority;
+        final long sequence;
+
+        Waiter(Request.Priority priority, long sequence) {
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(@NonNull Waiter other) {
+            int byPriority = priority.compareTo(other.priority);
+            if (byPriority != 0) {
+                return byPriority;
+            }
+
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The RateLimitingTransport <code>class</code> is a {@link Transport} decorator that sends
+ * requests through a {@link RateLimiter}, highest {@link Request.Priority} first.
+ * <p>
+ * A <code>429 Too Many Requests</code>, or a <code>503</code> carrying a
+ * <code>Retry-After</code> header, pauses the limiter for the time the server asked for and
+ * lowers its rate. Idempotent requests answered with a 429 are then sent again once the pause
+ * is over, up to a few times; the last throttled response is returned as it is. A 503 is
+ * returned right away and left to the retries of a {@link ResilientTransport} above, whose
+ * next attempt waits here for the pause to end, so the two layers do not multiply attempts.
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class RateLimitingTransport implements Transport {
+    public static final int DEFAULT_MAX_THROTTLE_RETRIES = 2;
+
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final int HTTP_UNAVAILABLE = 503;
+
+    private final Transport delegate;
+    private final RateLimiter limiter;
+    private final AtomicLong throttledRetryCount = new AtomicLong();
+
+    private volatile int maxThrottleRetries = DEFAULT_MAX_THROTTLE_RETRIES;
+
+    /**
+     * Wraps a transport.
+     *
+     * @param delegate the transport sending the requests.
+     * @param limiter the limiter the requests go through, e.g.
+     *                {@link RateLimiter#forCredential(String)}.
+     */
+    public RateLimitingTransport(@NonNull Transport delegate, @NonNull RateLimiter limiter) {
+        this.delegate = delegate;
+        this.limiter = limiter;
+    }
+
+    /**
+     * @param maxThrottleRetries how many times an idempotent request answered with a 429 is
+     *                           sent again, or 0 to return the throttled response right away.
+     */
+    public void setMaxThrottleRetries(int maxThrottleRetries) {
+        if (maxThrottleRetries < 0) {
+            throw new IllegalArgumentException("maxThrottleRetries < 0");
+        }
+
+        this.maxThrottleRetries = maxThrottleRetries;
+    }
+
+    public RateLimiter getRateLimiter() {
+        return limiter;
+    }
+
+    /**
+     * @return the number of throttled requests sent again so far.
+     */
+    public long getThrottledRetryCount() {
+        return throttledRetryCount.get();
+    }
+
+    @Override
+    public Response execute(@NonNull Request request) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            limiter.acquire(request.getPriority());
+            Response response = delegate.execute(request);
+            String retryAfter = response.getHeader("Retry-After");
+
+            if (response.getStatusCode() != HTTP_TOO_MANY_REQUESTS
+                    && (response.getStatusCode() != HTTP_UNAVAILABLE || retryAfter == null)) {
+                limiter.onSuccess();
+                return response;
+            }
+
+            limiter.onThrottled(parseRetryAfter(retryAfter, System.currentTimeMillis()));
+
+            if (attempt >= maxThrottleRetries || !request.isIdempotent()
+                    || response.getStatusCode() != HTTP_TOO_MANY_REQUESTS) {
+                return response;
+            }
+
+            response.close();
+            throttledRetryCount.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    /**
+     * Reads a <code>Retry-After</code> header, either a number of seconds or an HTTP date.
+     *
+     * @param retryAfter the header value, may be <code>null</code>.
+     * @param now the current time, to turn a date into a delay.
+     * @return the delay in milliseconds, or -1 if the header is missing or malformed.
+     */
+    static long parseRetryAfter(String retryAfter, long now) {
+        if (retryAfter == null) {
+            return -1;
+        }
+
+        String value = retryAfter.trim();
+
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException e) {
+            // Not seconds; try a date.
+        }
+
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+
+        try {
+            return Math.max(0, format.parse(value).getTime() - now);
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The Request <code>class</code> describes a single call to a blockstack-server endpoint.
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class Request {
+    public static final String GET = "GET";
+    public static final String POST = "POST";
+
+    /**
+     * How urgently a request should be sent when the client has to hold requests back, e.g.
+     * because of a {@link RateLimiter}.
+     */
+    public enum Priority {
+        /** Waited for by the user, such as lookups and searches. */
+        HIGH,
+        NORMAL,
+        /** Background work such as syncs and bulk fetches, sent after everything else. */
+        LOW
+    }
+
+    private final String method;
+    private final String url;
+    private final RequestBody body;
+    private final Map<String, String> headers = new LinkedHashMap<>();
+    private String operation;
+    private Priority priority = Priority.NORMAL;
+    private RequestMetrics metrics;
+
+    private Request(@NonNull String method, @NonNull String url, RequestBody body) {
+        this.method = method;
+        this.url = url;
+        this.body = body;
+    }
+
+    /**
+     * Creates a GET request.
+     *
+     * @param url the endpoint URL.
+     * @return a new GET <code>Request</code>.
+     */
+    public static Request get(@NonNull String url) {
+        return new Request(GET, url, null);
+    }
+
+    /**
+     * Creates a POST request.
+     *
+     * @param url the endpoint URL.
+     * @param body the request body.
+     * @param contentType the MIME type of the body.
+     * @return a new POST <code>Request</code>.
+     */
+    public static Request post(@NonNull String url, @NonNull byte[] body,
+                               @NonNull String contentType) {
+        return post(url, RequestBody.create(body, contentType));
+    }
+
+    /**
+     * Creates a POST request with a body written straight to the connection.
+     *
+     * @param url the endpoint URL.
+     * @param body the request body.
+     * @return a new POST <code>Request</code>.
+     */
+    public static Request post(@NonNull String url, @NonNull RequestBody body) {
+        return new Request(POST, url, body).header("Content-Type", body.contentType());
+    }
+
+    /**
+     * Sets a request header, replacing any previous value.
+     *
+     * @param name the header name.
+     * @param value the header value.
+     * @return this <code>Request</code>.
+     */
+    public Request header(@NonNull String name, @NonNull String value) {
+        headers.put(name, value);
+        return this;
+    }
+
+    /**
+     * Names the client operation sending this request, e.g. <code>"lookupUsers"</code>, so its
+     * metrics can be aggregated per operation.
+     *
+     * @param operation the operation name.
+     * @return this <code>Request</code>.
+     */
+    public Request operation(@NonNull String operation) {
+        this.operation = operation;
+        return this;
+    }
+
+    /**
+     * Sets how urgently the request should be sent. Requests are {@link Priority#NORMAL} by
+     * default.
+     *
+     * @param priority the request priority.
+     * @return this <code>Request</code>.
+     */
+    public Request priority(@NonNull Priority priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    /**
+     * Creates a copy of this request sent to another URL, e.g. the same endpoint on another
+     * blockstack-server node.
+     *
+     * @param url the new URL.
+     * @return a new <code>Request</code> with this request's method, body, headers, operation
+     *          and priority.
+     */
+    public Request withUrl(@NonNull String url) {
+        Request copy = new Request(method, url, body);
+        copy.headers.putAll(headers);
+        copy.operation = operation;
+        copy.priority = priority;
+        copy.metrics = metrics;
+        return copy;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return the request body, or <code>null</code> for a GET request.
+     */
+    public RequestBody getRequestBody() {
+        return body;
+    }
+
+    /**
+     * Writes the request body into a new array, e.g. to inspect it in tests. Transports should
+     * write {@link #getRequestBody()} to the connection instead.
+     *
+     * @return the request body, or <code>null</code> for a GET request.
+     */
+    public byte[] getBody() {
+        if (body == null) {
+            return null;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try {
+            body.writeTo(bytes);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot write the request body", e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    public Map<String, String> getHeaders() {
+        return Collections.unmodifiableMap(headers);
+    }
+
+    /**
+     * @return the client operation sending this request, or <code>null</code>.
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    /**
+     * @return the metrics the transport records into, or <code>null</code> when metrics are
+     *          disabled.
+     */
+    RequestMetrics getMetrics() {
+        return metrics;
+    }
+
+    void setMetrics(RequestMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return <code>true</code> if the request can safely be sent more than once.
+     */
+    public boolean isIdempotent() {
+        return GET.equals(method);
+    }
+
+    @Override
+    public String toString() {
+        return method + " " + url;
+    }
+}
@@ -0,0 +1,66 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The RequestBody <code>class</code> is the body of a POST {@link Request}, written straight
+ * to the connection's output stream. Bodies that know their length up front are sent in fixed
+ * length streaming mode, others chunked; either way the body is never buffered whole by the
+ * connection.
+ * <p>
+ * A body may be written more than once, e.g. when a request is retried, and must write the
+ * same bytes every time.
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public abstract class RequestBody {
+    /**
+     * @return the MIME type of the body, e.g. <code>"application/json"</code>.
+     */
+    public abstract String contentType();
+
+    /**
+     * @return the number of bytes {@link #writeTo(OutputStream)} writes, or -1 if it is not
+     *          known in advance.
+     */
+    public abstract long contentLength();
+
+    /**
+     * Writes the body.
+     *
+     * @param out the stream to write to. It is not closed.
+     * @throws IOException if the body cannot be written.
+     */
+    public abstract void writeTo(@NonNull OutputStream out) throws IOException;
+
+    /**
+     * Creates a body from bytes.
+     *
+     * @param bytes the body. It is not copied, so it must not be changed afterwards.
+     * @param contentType the MIME type of the body.
+     * @return a new <code>RequestBody</code>.
+     */
+    public static RequestBody create(@NonNull final byte[] bytes,
+                                     @NonNull final String contentType) {
+        return new RequestBody() {
+            @Override
+            public String contentType() {
+                return contentType;
+            }
+
+            @Override
+            public long contentLength() {
+                return bytes.length;
+            }
+
+            @Override
+            public void writeTo(@NonNull OutputStream out) throws IOException {
+                out.write(bytes);
+            }
+        };
+    }
+}
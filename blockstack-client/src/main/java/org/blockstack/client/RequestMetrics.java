@@ -0,0 +1,247 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The RequestMetrics <code>class</code> holds the measurements of a single request: how long
+ * each phase took, how many bytes went over the wire and how it failed, if it did.
+ * <p>
+ * Phases that did not happen are reported as -1. A request reusing a keep-alive HTTPS
+ * connection, for example, has no TLS phase and a near-zero connect phase. When a request is
+ * retried the phases describe the last attempt, while the total covers all of them.
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class RequestMetrics {
+    /**
+     * The phases of a request.
+     */
+    public enum Phase {
+        /** Resolving the host name. */
+        DNS,
+        /** Opening the TCP connection. */
+        CONNECT,
+        /** The TLS handshake. */
+        TLS,
+        /** Sending the request until the response headers arrive. */
+        TIME_TO_FIRST_BYTE,
+        /** Reading and decompressing the response body. */
+        BODY,
+        /** Decoding the response body, excluding the time spent reading it. */
+        PARSE
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final String operation;
+    private final String method;
+    private final String url;
+    private final long startNanos = System.nanoTime();
+    private final long[] phaseNanos = new long[PHASES.length];
+
+    private volatile long connectStartNanos;
+    private volatile long tlsStartNanos;
+    private long totalNanos = -1;
+    private int attempts;
+    private int statusCode = -1;
+    private long bytesOut;
+    private long bytesIn;
+    private long decodedBytesIn;
+    private Throwable error;
+
+    RequestMetrics(@NonNull Request request) {
+        this.operation = request.getOperation();
+        this.method = request.getMethod();
+        this.url = request.getUrl();
+
+        for (int i = 0; i < phaseNanos.length; i++) {
+            phaseNanos[i] = -1;
+        }
+    }
+
+    /**
+     * @return the client operation that sent the request, e.g. <code>"lookupUsers"</code>.
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @param phase a phase of the request.
+     * @param unit the unit of the result.
+     * @return how long the phase took, or -1 if it did not happen.
+     */
+    public synchronized long getDuration(@NonNull Phase phase, @NonNull TimeUnit unit) {
+        long nanos = phaseNanos[phase.ordinal()];
+        return nanos < 0 ? -1 : unit.convert(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param unit the unit of the result.
+     * @return how long the whole request took, including retries and parsing.
+     */
+    public synchronized long getTotalDuration(@NonNull TimeUnit unit) {
+        return totalNanos < 0 ? -1 : unit.convert(totalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return how many times the request was sent, more than once when it was retried.
+     */
+    public synchronized int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * @return the HTTP status code, or -1 if no response was received.
+     */
+    public synchronized int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return the request body size.
+     */
+    public synchronized long getBytesOut() {
+        return bytesOut;
+    }
+
+    /**
+     * @return the response body bytes received on the wire.
+     */
+    public synchronized long getBytesIn() {
+        return bytesIn;
+    }
+
+    /**
+     * @return the response body bytes after decompression.
+     */
+    public synchronized long getDecodedBytesIn() {
+        return decodedBytesIn;
+    }
+
+    /**
+     * @return the exception the request failed with, or <code>null</code>.
+     */
+    public synchronized Throwable getError() {
+        return error;
+    }
+
+    /**
+     * @return <code>true</code> if a response was received and decoded successfully.
+     */
+    public synchronized boolean isSuccessful() {
+        return error == null && statusCode >= 200 && statusCode < 400;
+    }
+
+    /**
+     * @return a short error class for counting, such as <code>"SocketTimeoutException"</code>
+     *          or <code>"HTTP 503"</code>, or <code>null</code> if the request succeeded.
+     */
+    public synchronized String getErrorType() {
+        if (statusCode >= 400) {
+            return "HTTP " + statusCode;
+        }
+
+        return error != null ? error.getClass().getSimpleName() : null;
+    }
+
+    // region Recording
+    synchronized void setPhase(Phase phase, long nanos) {
+        phaseNanos[phase.ordinal()] = nanos;
+    }
+
+    synchronized void addPhase(Phase phase, long nanos) {
+        int index = phase.ordinal();
+        phaseNanos[index] = Math.max(0, phaseNanos[index]) + nanos;
+    }
+
+    /**
+     * Marks the start of an attempt, clearing the phases of the previous one.
+     */
+    synchronized void attemptStarted(long bytesOut) {
+        attempts++;
+        this.bytesOut = bytesOut;
+        phaseNanos[Phase.DNS.ordinal()] = -1;
+        phaseNanos[Phase.CONNECT.ordinal()] = -1;
+        phaseNanos[Phase.TLS.ordinal()] = -1;
+        phaseNanos[Phase.TIME_TO_FIRST_BYTE.ordinal()] = -1;
+        phaseNanos[Phase.BODY.ordinal()] = -1;
+    }
+
+    void connectStarted() {
+        tlsStartNanos = 0;
+        connectStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Called by the socket factory when the TLS layer is put over a fresh TCP connection.
+     */
+    void tlsStarted() {
+        tlsStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Splits the time spent connecting into the TCP and TLS phases.
+     */
+    synchronized void connectFinished() {
+        long now = System.nanoTime();
+        long tlsStart = tlsStartNanos;
+
+        if (tlsStart != 0) {
+            phaseNanos[Phase.CONNECT.ordinal()] = tlsStart - connectStartNanos;
+            phaseNanos[Phase.TLS.ordinal()] = now - tlsStart;
+        } else {
+            phaseNanos[Phase.CONNECT.ordinal()] = now - connectStartNanos;
+        }
+    }
+
+    synchronized void finished(Response response, Throwable error, long handlerNanos) {
+        totalNanos = System.nanoTime() - startNanos;
+        this.error = error;
+
+        if (response != null) {
+            statusCode = response.getStatusCode();
+            bytesIn = response.getTransferStats().getWireBytes();
+            decodedBytesIn = response.getTransferStats().getDecodedBytes();
+        }
+
+        if (handlerNanos >= 0) {
+            long body = Math.max(0, phaseNanos[Phase.BODY.ordinal()]);
+            phaseNanos[Phase.PARSE.ordinal()] = Math.max(0, handlerNanos - body);
+        }
+    }
+    // endregion
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder(operation != null ? operation : method)
+                .append(' ').append(statusCode)
+                .append(" total=").append(TimeUnit.NANOSECONDS.toMicros(totalNanos)).append("us");
+
+        for (Phase phase : PHASES) {
+            long nanos = phaseNanos[phase.ordinal()];
+            if (nanos >= 0) {
+                builder.append(' ').append(phase.name().toLowerCase(Locale.US))
+                        .append('=').append(TimeUnit.NANOSECONDS.toMicros(nanos)).append("us");
+            }
+        }
+
+        if (getErrorType() != null) {
+            builder.append(" error=").append(getErrorType());
+        }
+
+        return builder.toString();
+    }
+}
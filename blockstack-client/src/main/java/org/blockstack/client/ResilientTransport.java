@@ -0,0 +1,451 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The ResilientTransport <code>class</code> is a {@link Transport} decorator that makes calls
+ * to the blockstack-server survive transient failures:
+ * <ul>
+ * <li>Idempotent requests that fail with an <code>IOException</code> or a 408, 502, 503 or 504
+ * are retried with jittered exponential backoff. POSTs are never retried.</li>
+ * <li>When hedging is enabled, an idempotent request still unanswered after the 95th
+ * percentile of recent latencies is sent a second time, and the first answer wins.</li>
+ * <li>A {@link CircuitBreaker} per host fails calls fast with a {@link CircuitOpenException}
+ * while the host keeps failing. Over a {@link LoadBalancingTransport}, which ejects failing
+ * nodes itself, turn them off with {@link #setCircuitBreaking(boolean)}: every node would
+ * otherwise share the breaker of the host the request was addressed to.</li>
+ * </ul>
+ * Connect and read timeouts are set on the underlying transport, e.g.
+ * {@link HttpURLConnectionTransport#setReadTimeout(long, TimeUnit)}.
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class ResilientTransport implements Transport {
+    public static final int DEFAULT_MAX_RETRIES = 2;
+    public static final long DEFAULT_BASE_DELAY_MILLIS = 200;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    private static final int MAX_HEDGE_THREADS = 8;
+    private static final int LATENCY_WINDOW = 128;
+    private static final int MIN_HEDGE_SAMPLES = 20;
+    private static final double HEDGE_PERCENTILE = 0.95;
+
+    private final Transport delegate;
+    private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final LatencyWindow latencies = new LatencyWindow(LATENCY_WINDOW);
+    private final ExecutorService hedgeExecutor;
+    private final Random random = new Random();
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong hedgeCount = new AtomicLong();
+
+    private volatile int maxRetries = DEFAULT_MAX_RETRIES;
+    private volatile long baseDelayMillis = DEFAULT_BASE_DELAY_MILLIS;
+    private volatile long maxDelayMillis = DEFAULT_MAX_DELAY_MILLIS;
+    private volatile int failureThreshold = CircuitBreaker.DEFAULT_FAILURE_THRESHOLD;
+    private volatile long openMillis = CircuitBreaker.DEFAULT_OPEN_MILLIS;
+    private volatile boolean hedging;
+    private volatile boolean circuitBreaking = true;
+
+    /**
+     * Wraps a transport with the default retry and circuit breaker settings. Hedging is off.
+     *
+     * @param delegate the transport sending the requests.
+     */
+    public ResilientTransport(@NonNull Transport delegate) {
+        this.delegate = delegate;
+
+        this.hedgeExecutor = new ThreadPoolExecutor(0, MAX_HEDGE_THREADS, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(), new NamedThreadFactory("hedge"));
+    }
+
+    /**
+     * Configures retries of idempotent requests. The delay before retry <code>n</code> is
+     * picked at random between half and all of <code>baseDelay * 2^(n - 1)</code>, capped at
+     * <code>maxDelay</code>.
+     *
+     * @param maxRetries retries after the first attempt, or 0 to disable retrying.
+     * @param baseDelay the delay before the first retry.
+     * @param maxDelay the longest delay between two attempts.
+     * @param unit the delay unit.
+     */
+    public void setRetries(int maxRetries, long baseDelay, long maxDelay,
+                           @NonNull TimeUnit unit) {
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("maxRetries < 0");
+        }
+
+        this.maxRetries = maxRetries;
+        this.baseDelayMillis = unit.toMillis(baseDelay);
+        this.maxDelayMillis = unit.toMillis(maxDelay);
+    }
+
+    /**
+     * Configures the circuit breakers created from now on.
+     *
+     * @param failureThreshold consecutive failures that open a host's breaker.
+     * @param openDuration how long a breaker stays open before a trial request.
+     * @param unit the duration unit.
+     */
+    public void setCircuitBreaker(int failureThreshold, long openDuration,
+                                  @NonNull TimeUnit unit) {
+        this.failureThreshold = failureThreshold;
+        this.openMillis = unit.toMillis(openDuration);
+        breakers.clear();
+    }
+
+    /**
+     * Turns the per-host circuit breakers on or off. They are on by default.
+     *
+     * @param circuitBreaking <code>false</code> to send every request, e.g. when the delegate
+     *                        already ejects failing nodes.
+     */
+    public void setCircuitBreaking(boolean circuitBreaking) {
+        this.circuitBreaking = circuitBreaking;
+    }
+
+    /**
+     * Enables hedged requests for idempotent calls. Hedging trades extra load on the server for
+     * lower tail latency, so it is off by default.
+     *
+     * @param hedging <code>true</code> to send a duplicate request after the hedge delay.
+     */
+    public void setHedging(boolean hedging) {
+        this.hedging = hedging;
+    }
+
+    /**
+     * @return the delay after which a duplicate request is sent, or -1 until enough latencies
+     *          have been observed to estimate it.
+     */
+    public long getHedgeDelayMillis() {
+        return latencies.percentile(HEDGE_PERCENTILE, MIN_HEDGE_SAMPLES);
+    }
+
+    /**
+     * @param host a host name.
+     * @return the breaker guarding the host.
+     */
+    public CircuitBreaker getCircuitBreaker(@NonNull String host) {
+        CircuitBreaker breaker = breakers.get(host);
+
+        if (breaker == null) {
+            CircuitBreaker created = new CircuitBreaker(host, failureThreshold, openMillis);
+            breaker = breakers.putIfAbsent(host, created);
+
+            if (breaker == null) {
+                breaker = created;
+            }
+        }
+
+        return breaker;
+    }
+
+    /**
+     * @return the number of retries sent so far.
+     */
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    /**
+     * @return the number of hedged duplicate requests sent so far.
+     */
+    public long getHedgeCount() {
+        return hedgeCount.get();
+    }
+
+    @Override
+    public Response execute(@NonNull Request request) throws IOException {
+        CircuitBreaker breaker = getCircuitBreaker(new URL(request.getUrl()).getHost());
+        boolean idempotent = request.isIdempotent();
+        int attempts = idempotent ? maxRetries + 1 : 1;
+        IOException failure = null;
+
+        for (int attempt = 0; attempt < attempts; attempt++) {
+            if (attempt > 0) {
+                retryCount.incrementAndGet();
+                sleep(backoffMillis(attempt));
+            }
+
+            Response response;
+            try {
+                response = idempotent && hedging
+                        ? executeHedged(request, breaker) : executeOnce(request, breaker);
+            } catch (CircuitOpenException e) {
+                throw e;
+            } catch (IOException e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+
+                failure = e;
+                continue;
+            }
+
+            if (attempt == attempts - 1 || !isRetryable(response.getStatusCode())) {
+                return response;
+            }
+
+            response.close();
+            failure = new HttpStatusException(response.getStatusCode(), request.toString());
+        }
+
+        throw failure;
+    }
+
+    @Override
+    public void shutdown() {
+        hedgeExecutor.shutdown();
+        delegate.shutdown();
+    }
+
+    private Response executeOnce(Request request, CircuitBreaker breaker) throws IOException {
+        if (!circuitBreaking) {
+            return measure(request);
+        }
+
+        breaker.acquire();
+        boolean succeeded = false;
+
+        try {
+            Response response = measure(request);
+            succeeded = response.getStatusCode() < 500;
+            return response;
+        } finally {
+            if (succeeded) {
+                breaker.onSuccess();
+            } else {
+                breaker.onFailure();
+            }
+        }
+    }
+
+    /**
+     * Sends a request, adding its latency to the hedge estimate if it succeeded.
+     */
+    private Response measure(Request request) throws IOException {
+
+        long start = System.nanoTime();
+        Response response = delegate.execute(request);
+
+        if (response.isSuccessful()) {
+            latencies.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+
+        return response;
+    }
+
+    /**
+     * Sends the request on the hedge executor and, if it has not been answered within the
+     * hedge delay, sends it once more. The first response wins and the other is closed.
+     */
+    private Response executeHedged(Request request, CircuitBreaker breaker) throws IOException {
+        long hedgeDelay = getHedgeDelayMillis();
+        if (hedgeDelay < 0) {
+            return executeOnce(request, breaker);
+        }
+
+        Hedge hedge = new Hedge(request, breaker);
+        if (!hedge.launch()) {
+            return executeOnce(request, breaker);
+        }
+
+        // A zero timeout would mean waiting for every attempt.
+        Response response = hedge.await(Math.max(1, hedgeDelay));
+        if (response != null) {
+            return response;
+        }
+
+        if (hedge.launch()) {
+            hedgeCount.incrementAndGet();
+        }
+
+        return hedge.await(0);
+    }
+
+    private long backoffMillis(int attempt) {
+        long cap = baseDelayMillis << Math.min(attempt - 1, 30);
+        if (cap <= 0 || cap > maxDelayMillis) {
+            cap = maxDelayMillis;
+        }
+
+        long half = cap / 2;
+        synchronized (random) {
+            return half + (long) (random.nextDouble() * (cap - half));
+        }
+    }
+
+    private static boolean isRetryable(int statusCode) {
+        return statusCode == 408 || statusCode == 502 || statusCode == 503 || statusCode == 504;
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry");
+        }
+    }
+
+    /**
+     * Races the attempts of a hedged request. The first response wins; attempts finishing
+     * after it, or after the caller gave up, close their response.
+     */
+    private final class Hedge {
+        private final Request request;
+        private final CircuitBreaker breaker;
+
+        private Response winner;
+        private IOException failure;
+        private int running;
+        private boolean abandoned;
+
+        Hedge(Request request, CircuitBreaker breaker) {
+            this.request = request;
+            this.breaker = breaker;
+        }
+
+        /**
+         * @return <code>false</code> if the hedge executor had no thread to spare.
+         */
+        boolean launch() {
+            synchronized (this) {
+                running++;
+            }
+
+            try {
+                hedgeExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        Response response;
+
+                        try {
+                            response = executeOnce(request, breaker);
+                        } catch (IOException e) {
+                            fail(e);
+                            return;
+                        }
+
+                        if (!offer(response)) {
+                            response.close();
+                        }
+                    }
+                });
+                return true;
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    running--;
+                }
+
+                return false;
+            }
+        }
+
+        synchronized boolean offer(Response response) {
+            running--;
+
+            if (abandoned || winner != null) {
+                return false;
+            }
+
+            winner = response;
+            notifyAll();
+            return true;
+        }
+
+        synchronized void fail(IOException e) {
+            running--;
+            failure = e;
+            notifyAll();
+        }
+
+        /**
+         * Waits for the first response.
+         *
+         * @param timeoutMillis how long to wait, or 0 to wait until every attempt finished.
+         * @return the winning response, or <code>null</code> if the timeout elapsed first.
+         * @throws IOException the last failure if every attempt failed.
+         */
+        synchronized Response await(long timeoutMillis) throws IOException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+            try {
+                while (winner == null && running > 0) {
+                    if (timeoutMillis == 0) {
+                        wait();
+                    } else {
+                        long remaining = TimeUnit.NANOSECONDS.toMillis(
+                                deadline - System.nanoTime());
+                        if (remaining <= 0) {
+                            return null;
+                        }
+
+                        wait(remaining);
+                    }
+                }
+            } catch (InterruptedException e) {
+                abandoned = true;
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for " + request);
+            }
+
+            if (winner != null) {
+                return winner;
+            }
+
+            throw failure;
+        }
+    }
+
+    /**
+     * Keeps the most recent request latencies to estimate percentiles. Every successful request
+     * adds one, so adding only claims a slot with an atomic increment; percentiles read a
+     * snapshot that may miss the samples being written at that moment.
+     */
+    private static final class LatencyWindow {
+        private final AtomicLongArray samples;
+        private final AtomicLong added = new AtomicLong();
+
+        LatencyWindow(int size) {
+            this.samples = new AtomicLongArray(size);
+        }
+
+        void add(long millis) {
+            samples.set((int) (added.getAndIncrement() % samples.length()), millis);
+        }
+
+        long percentile(double percentile, int minSamples) {
+            int count = (int) Math.min(added.get(), samples.length());
+
+            if (count < minSamples) {
+                return -1;
+            }
+
+            long[] sorted = new long[count];
+
+            for (int i = 0; i < count; i++) {
+                sorted[i] = samples.get(i);
+            }
+
+            Arrays.sort(sorted);
+            return sorted[Math.min(count - 1, (int) Math.ceil(percentile * count) - 1)];
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The Response <code>class</code> holds the status, headers and body stream returned by the
+ * blockstack-server. It must be closed once the body has been consumed, which also returns its
+ * read buffers to the pool.
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class Response implements Closeable {
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    private final int statusCode;
+    private final Map<String, List<String>> headers;
+    private final InputStream body;
+    private final Closeable onClose;
+    private final TransferStats transferStats;
+    private Utf8Reader reader;
+    private char[] charBuffer;
+    private boolean closed;
+
+    /**
+     * Creates a response whose body is sent without a content encoding.
+     *
+     * @param statusCode the HTTP status code.
+     * @param headers the response headers.
+     * @param body the response body stream, never <code>null</code>.
+     * @param onClose released after the body is closed, may be <code>null</code>.
+     */
+    public Response(int statusCode, @NonNull Map<String, List<String>> headers,
+                    @NonNull InputStream body, Closeable onClose) {
+        this(statusCode, headers, body, onClose, new TransferStats(), true);
+    }
+
+    /**
+     * Creates a response whose body has already been decoded by the transport.
+     *
+     * @param statusCode the HTTP status code.
+     * @param headers the response headers.
+     * @param body the decoded response body stream, never <code>null</code>.
+     * @param onClose released after the body is closed, may be <code>null</code>.
+     * @param transferStats the stats whose wire byte count the transport maintains; the
+     *                      response adds the decoded bytes read from <code>body</code>.
+     */
+    public Response(int statusCode, @NonNull Map<String, List<String>> headers,
+                    @NonNull InputStream body, Closeable onClose,
+                    @NonNull TransferStats transferStats) {
+        this(statusCode, headers, body, onClose, transferStats, false);
+    }
+
+    private Response(int statusCode, Map<String, List<String>> headers, InputStream body,
+                     Closeable onClose, TransferStats transferStats, boolean identity) {
+        this.statusCode = statusCode;
+        this.headers = headers;
+        this.onClose = onClose;
+        this.transferStats = transferStats;
+
+        if (identity) {
+            body = new CountingInputStream(body, transferStats.wireBytes);
+        }
+
+        this.body = new CountingInputStream(body, transferStats.decodedBytes);
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return <code>true</code> if the status code is in the 2xx range.
+     */
+    public boolean isSuccessful() {
+        return statusCode >= 200 && statusCode < 300;
+    }
+
+    public Map<String, List<String>> getHeaders() {
+        return Collections.unmodifiableMap(headers);
+    }
+
+    /**
+     * Returns the first value of a response header, ignoring the case of its name.
+     *
+     * @param name the header name.
+     * @return the header value or <code>null</code> if it is not present.
+     */
+    public String getHeader(@NonNull String name) {
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            if (name.equalsIgnoreCase(entry.getKey()) && !entry.getValue().isEmpty()) {
+                return entry.getValue().get(0);
+            }
+        }
+
+        return null;
+    }
+
+    public InputStream getBody() {
+        return body;
+    }
+
+    /**
+     * Returns a UTF-8 reader over the body. The reader is created once and backed by pooled
+     * buffers, which go back to the pool when the response is closed.
+     *
+     * @return the body reader.
+     */
+    public synchronized Reader getReader() {
+        if (reader == null) {
+            reader = new Utf8Reader(body);
+        }
+
+        return reader;
+    }
+
+    /**
+     * @return the wire and decoded byte counts of this response's body so far.
+     */
+    public TransferStats getTransferStats() {
+        return transferStats;
+    }
+
+    /**
+     * @return a pooled char buffer for reading this response, recycled when it is closed.
+     */
+    synchronized char[] charBuffer() {
+        if (charBuffer == null) {
+            charBuffer = BufferPool.takeChars();
+        }
+
+        return charBuffer;
+    }
+
+    /**
+     * Drains and closes the body so the connection can go back to the pool.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        byte[] buffer = BufferPool.takeBytes();
+
+        try {
+            // Drain a small remainder so the socket can be reused; give up on large leftovers.
+            int drained = 0;
+            int read;
+            while (drained < MAX_DRAIN_BYTES && (read = body.read(buffer)) != -1) {
+                drained += read;
+            }
+        } catch (IOException e) {
+            // The connection will simply not be reused.
+        } finally {
+            BufferPool.recycle(buffer);
+
+            try {
+                body.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+
+            if (reader != null) {
+                reader.release();
+            }
+
+            if (charBuffer != null) {
+                BufferPool.recycle(charBuffer);
+                charBuffer = null;
+            }
+
+            if (onClose != null) {
+                try {
+                    onClose.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
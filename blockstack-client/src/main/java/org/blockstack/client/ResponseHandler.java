@@ -0,0 +1,25 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+
+/**
+ * The ResponseHandler <code>interface</code> consumes a successful blockstack-server response,
+ * typically by streaming its body, and turns it into a result.
+ *
+ * @param <T> the result type.
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public interface ResponseHandler<T> {
+    /**
+     * Handles a response whose status code is in the 2xx range. The response is closed by the
+     * caller once this method returns.
+     *
+     * @param response the response to handle.
+     * @return the result.
+     * @throws IOException if the body cannot be read or decoded.
+     */
+    T handle(@NonNull Response response) throws IOException;
+}
@@ -0,0 +1,356 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The SearchEngine <code>class</code> turns keystrokes into user searches. Queries are
+ * debounced, so only a pause in typing reaches the network. A newer query cancels the search
+ * it made stale, and only the results of the newest query are ever delivered.
+ * <p>
+ * Results are remembered per query. When the results for a shorter prefix are complete, i.e.
+ * fewer than the server's result limit, a longer query is answered by filtering them locally
+ * instead of searching again. Only plain queries are refined, against the fields the server
+ * matches them with: the username, the name and the Twitter handle. Field queries such as
+ * <code>twitter:itsProf</code> or <code>domain:muneebali.com</code> are matched by the server
+ * against data the results do not hold, so they are only answered from the cache when the very
+ * same query was searched before.
+ *
+ * <pre>
+ * SearchEngine engine = new SearchEngine(async, listener, mainThreadExecutor);
+ * engine.onQueryChanged(editable.toString());
+ * </pre>
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class SearchEngine {
+    public static final long DEFAULT_DEBOUNCE_MILLIS = 300;
+    public static final int DEFAULT_RESULT_LIMIT = 20;
+
+    private static final char FIELD_SEPARATOR = ':';
+    private static final int MAX_CACHED_QUERIES = 32;
+    private static final SearchResult NO_RESULTS =
+            new SearchResult(Collections.<User>emptyList());
+
+    /**
+     * Receives the results of the newest query.
+     */
+    public interface Listener {
+        void onResults(@NonNull String query, @NonNull SearchResult result);
+
+        void onError(@NonNull String query, @NonNull Throwable error);
+    }
+
+    private final AsyncBlockstack async;
+    private final Listener listener;
+    private final Executor callbackExecutor;
+    private final ScheduledExecutorService timer;
+
+    private final Object lock = new Object();
+    private final Map<String, SearchResult> results =
+            new LinkedHashMap<String, SearchResult>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, SearchResult> eldest) {
+                    return size() > MAX_CACHED_QUERIES;
+                }
+            };
+
+    private volatile long debounceMillis = DEFAULT_DEBOUNCE_MILLIS;
+    private volatile int resultLimit = DEFAULT_RESULT_LIMIT;
+
+    private long generation;
+    private String currentQuery;
+    private ScheduledFuture<?> pending;
+    private BlockstackFuture<SearchResult> inFlight;
+    private int requestCount;
+
+    /**
+     * Creates a search engine delivering results on the thread that produced them.
+     *
+     * @param async the client to search with.
+     * @param listener receives the results.
+     */
+    public SearchEngine(@NonNull AsyncBlockstack async, @NonNull Listener listener) {
+        this(async, listener, null);
+    }
+
+    /**
+     * Creates a search engine.
+     *
+     * @param async the client to search with.
+     * @param listener receives the results.
+     * @param callbackExecutor runs the listener, e.g. one posting to the main thread. May be
+     *                         <code>null</code> to run it on the thread that produced them.
+     */
+    public SearchEngine(@NonNull AsyncBlockstack async, @NonNull Listener listener,
+                        Executor callbackExecutor) {
+        this.async = async;
+        this.listener = listener;
+        this.callbackExecutor = callbackExecutor;
+        this.timer = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("search"));
+    }
+
+    /**
+     * Sets how long typing must pause before a query is sent to the server.
+     *
+     * @param debounce the pause, or 0 to search on every keystroke.
+     * @param unit the pause unit.
+     */
+    public void setDebounce(long debounce, @NonNull TimeUnit unit) {
+        this.debounceMillis = unit.toMillis(debounce);
+    }
+
+    /**
+     * Sets the most results the server returns for a query. Results with fewer users than this
+     * are known to be complete and can be refined locally.
+     *
+     * @param resultLimit the server's result limit.
+     */
+    public void setResultLimit(int resultLimit) {
+        this.resultLimit = resultLimit;
+    }
+
+    /**
+     * @return the number of searches sent to the server so far.
+     */
+    public int getRequestCount() {
+        synchronized (lock) {
+            return requestCount;
+        }
+    }
+
+    /**
+     * Updates the query being typed. Empty queries deliver an empty result right away, and
+     * queries that can be answered from earlier results skip the debounce.
+     *
+     * @param text the current search text.
+     */
+    public void onQueryChanged(@NonNull String text) {
+        final String query = text.trim().toLowerCase(Locale.US);
+        final long current;
+        SearchResult local;
+
+        synchronized (lock) {
+            if (query.equals(currentQuery)) {
+                return;
+            }
+
+            current = ++generation;
+            currentQuery = query;
+            cancelPending();
+
+            local = query.isEmpty() ? NO_RESULTS : localResult(query);
+
+            if (local == null) {
+                pending = timer.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        search(current, query);
+                    }
+                }, debounceMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (local != null) {
+            deliver(current, query, local, null);
+        }
+    }
+
+    /**
+     * Cancels the pending search, if any, so no further results are delivered until the query
+     * changes again.
+     */
+    public void cancel() {
+        synchronized (lock) {
+            generation++;
+            currentQuery = null;
+            cancelPending();
+        }
+    }
+
+    /**
+     * Cancels the pending search and stops the debounce timer. The {@link AsyncBlockstack} is
+     * left running.
+     */
+    public void shutdown() {
+        cancel();
+        timer.shutdownNow();
+    }
+
+    private void search(final long current, final String query) {
+        SearchResult local;
+
+        synchronized (lock) {
+            if (current != generation) {
+                return;
+            }
+
+            // A shorter prefix may have come back while this query was waiting.
+            local = localResult(query);
+
+            if (local == null) {
+                requestCount++;
+
+                try {
+                    inFlight = async.searchUserProfiles(query, new Callback<SearchResult>() {
+                        @Override
+                        public void onSuccess(SearchResult result) {
+                            synchronized (lock) {
+                                results.put(query, result);
+                            }
+
+                            deliver(current, query, result, null);
+                        }
+
+                        @Override
+                        public void onFailure(Throwable error) {
+                            if (!(error instanceof CancellationException)) {
+                                deliver(current, query, null, error);
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    deliver(current, query, null, e);
+                }
+            }
+        }
+
+        if (local != null) {
+            deliver(current, query, local, null);
+        }
+    }
+
+    private void deliver(final long current, final String query, final SearchResult result,
+                         final Throwable error) {
+        Runnable delivery = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (lock) {
+                    if (current != generation) {
+                        return;
+                    }
+                }
+
+                if (result != null) {
+                    listener.onResults(query, result);
+                } else {
+                    listener.onError(query, error);
+                }
+            }
+        };
+
+        if (callbackExecutor != null) {
+            callbackExecutor.execute(delivery);
+        } else {
+            delivery.run();
+        }
+    }
+
+    private void cancelPending() {
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+
+        if (inFlight != null) {
+            inFlight.cancel(true);
+            inFlight = null;
+        }
+    }
+
+    /**
+     * Answers a query from the results of the same query or of its longest remembered prefix.
+     *
+     * @return the results, or <code>null</code> if the server has to be asked.
+     */
+    private SearchResult localResult(String query) {
+        SearchResult exact = results.get(query);
+        if (exact != null || query.indexOf(FIELD_SEPARATOR) >= 0) {
+            return exact;
+        }
+
+        for (int length = query.length() - 1; length > 0; length--) {
+            SearchResult shorter = results.get(query.substring(0, length));
+
+            if (shorter != null) {
+                // Truncated results may be missing users that match the longer query.
+                return shorter.size() < resultLimit ? refine(shorter, query) : null;
+            }
+        }
+
+        return null;
+    }
+
+    private static SearchResult refine(SearchResult shorter, String query) {
+        List<User> users = new ArrayList<>();
+
+        for (User user : shorter.getUsers()) {
+            if (matches(user, query)) {
+                users.add(user);
+            }
+        }
+
+        return new SearchResult(users);
+    }
+
+    private static boolean matches(User user, String query) {
+        String username = user.getUsername();
+        if (username != null && username.toLowerCase(Locale.US).contains(query)) {
+            return true;
+        }
+
+        Profile profile = user.getProfile();
+        if (profile == null) {
+            return false;
+        }
+
+        String name = profile.getName();
+        if (name != null && name.toLowerCase(Locale.US).contains(query)) {
+            return true;
+        }
+
+        String handle = twitterHandle(profile);
+        return handle != null && handle.toLowerCase(Locale.US).contains(query);
+    }
+
+    /**
+     * Reads the Twitter handle from either the <code>"twitter"</code> object or the
+     * <code>"account"</code> list of a profile.
+     */
+    private static String twitterHandle(Profile profile) {
+        String handle = profile.findString("twitter", "username");
+        if (handle != null) {
+            return handle;
+        }
+
+        JSONObject json = profile.getJSONObject();
+        JSONArray accounts = json != null ? json.optJSONArray("account") : null;
+
+        for (int i = 0; accounts != null && i < accounts.length(); i++) {
+            JSONObject account = accounts.optJSONObject(i);
+
+            if (account != null && "twitter".equals(account.optString("service"))) {
+                return account.optString("identifier", null);
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,232 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.NoSuchElementException;
+
+/**
+ * The SearchHits <code>class</code> streams the users matching a search query. Hits are
+ * decoded one at a time straight from the response body, so the first rows of a broad query
+ * can be shown while the rest is still arriving, and memory use does not grow with the size of
+ * the result.
+ * <p>
+ * Iteration stops after the limit given to {@link Blockstack#openSearch(String, int)}; the
+ * rest of the response is then discarded. When a page carries a <code>"next"</code> field,
+ * either a URL or a cursor, the following page is requested once the current one is used up.
+ * Servers that do not page simply return a single page.
+ *
+ * <pre>
+ * SearchHits hits = blockstack.openSearch("twitter:", 100);
+ * try {
+ *     while (hits.hasNext()) {
+ *         adapter.add(hits.next());
+ *     }
+ * } finally {
+ *     hits.close();
+ * }
+ * </pre>
+ * <p>
+ * Instances are not meant for concurrent use; iterate and close them from one thread.
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class SearchHits implements Closeable {
+    private final Blockstack blockstack;
+    private final String firstUrl;
+    private final int limit;
+
+    private String pageUrl;
+    private Request request;
+    private Response response;
+    private JsonPullParser parser;
+    private boolean inResults;
+    private String cursor;
+    private int pageHits;
+    private int count;
+    private int pageCount;
+    private boolean closed;
+
+    SearchHits(@NonNull Blockstack blockstack, @NonNull String firstUrl, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit < 1");
+        }
+
+        this.blockstack = blockstack;
+        this.firstUrl = firstUrl;
+        this.limit = limit;
+        this.pageUrl = firstUrl;
+    }
+
+    /**
+     * Tells whether another hit is available, requesting the first or the next page if needed.
+     *
+     * @return <code>true</code> if {@link #next()} returns a hit.
+     * @throws IOException if a page could not be fetched or read. The hits are closed.
+     */
+    public synchronized boolean hasNext() throws IOException {
+        try {
+            while (!closed && count < limit) {
+                if (parser == null) {
+                    if (pageUrl == null) {
+                        break;
+                    }
+
+                    openPage();
+                }
+
+                if (advance()) {
+                    return true;
+                }
+
+                finishPage(null);
+            }
+        } catch (IOException | RuntimeException e) {
+            finishPage(e);
+            closed = true;
+            throw e;
+        }
+
+        close();
+        return false;
+    }
+
+    /**
+     * Decodes the next hit.
+     *
+     * @return the next matching user, with the JSON the server sent for it.
+     * @throws IOException if the hit could not be read. The hits are closed.
+     * @throws NoSuchElementException if there are no more hits.
+     */
+    public synchronized User next() throws IOException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        String json;
+
+        try {
+            json = parser.readRawValue();
+        } catch (IOException | RuntimeException e) {
+            finishPage(e);
+            closed = true;
+            throw e;
+        }
+
+        count++;
+        pageHits++;
+        return new User(null, json);
+    }
+
+    /**
+     * @return the number of hits returned so far.
+     */
+    public synchronized int getCount() {
+        return count;
+    }
+
+    /**
+     * @return the number of pages requested so far.
+     */
+    public synchronized int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * Stops iterating and discards the rest of the current page.
+     */
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            finishPage(null);
+        }
+    }
+
+    private void openPage() throws IOException {
+        request = Request.get(pageUrl).operation("openSearch").priority(Request.Priority.HIGH);
+        pageUrl = null;
+        pageCount++;
+        response = blockstack.open(request);
+        parser = Blockstack.newParser(response);
+        parser.beginObject();
+    }
+
+    /**
+     * Moves the parser to the next hit of the current page, reading the <code>"next"</code>
+     * field on the way.
+     *
+     * @return <code>false</code> once the page is used up.
+     */
+    private boolean advance() throws IOException {
+        if (inResults) {
+            if (parser.hasNext()) {
+                return true;
+            }
+
+            parser.endArray();
+            inResults = false;
+        }
+
+        while (parser.hasNext()) {
+            String name = parser.nextName();
+
+            if ("results".equals(name) && parser.peek() == JsonPullParser.Token.BEGIN_ARRAY) {
+                parser.beginArray();
+                inResults = true;
+
+                if (parser.hasNext()) {
+                    return true;
+                }
+
+                parser.endArray();
+                inResults = false;
+            } else if ("next".equals(name) && parser.peek() == JsonPullParser.Token.STRING) {
+                cursor = parser.nextString();
+            } else {
+                parser.skipValue();
+            }
+        }
+
+        parser.endObject();
+        return false;
+    }
+
+    /**
+     * Closes the current page and works out the URL of the next one, if any. An empty page
+     * ends the iteration even if it has a cursor, so a server repeating it cannot loop forever.
+     */
+    private void finishPage(Throwable error) {
+        if (response != null) {
+            blockstack.finish(request, response, error);
+        }
+
+        if (error == null && parser != null && pageHits > 0 && cursor != null) {
+            pageUrl = nextPageUrl(cursor);
+        }
+
+        request = null;
+        response = null;
+        parser = null;
+        inResults = false;
+        cursor = null;
+        pageHits = 0;
+    }
+
+    private String nextPageUrl(@NonNull String next) {
+        if (next.startsWith("https://") || next.startsWith("http://")) {
+            return next;
+        }
+
+        try {
+            return firstUrl + "&cursor=" + URLEncoder.encode(next, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+}
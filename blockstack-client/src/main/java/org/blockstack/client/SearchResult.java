@@ -0,0 +1,59 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The SearchResult <code>class</code> holds the users matching a search query.
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class SearchResult {
+    private final List<User> users;
+
+    SearchResult(@NonNull List<User> users) {
+        this.users = Collections.unmodifiableList(users);
+    }
+
+    /**
+     * @return the matching users, in server order.
+     */
+    public List<User> getUsers() {
+        return users;
+    }
+
+    public int size() {
+        return users.size();
+    }
+
+    /**
+     * Reads a <code>{"results": [...]}</code> search response.
+     */
+    static SearchResult read(@NonNull JsonPullParser parser) throws IOException {
+        List<User> users = new ArrayList<>();
+        parser.beginObject();
+
+        while (parser.hasNext()) {
+            if ("results".equals(parser.nextName())
+                    && parser.peek() == JsonPullParser.Token.BEGIN_ARRAY) {
+                parser.beginArray();
+
+                while (parser.hasNext()) {
+                    users.add(new User(null, parser.readRawValue()));
+                }
+
+                parser.endArray();
+            } else {
+                parser.skipValue();
+            }
+        }
+
+        parser.endObject();
+        return new SearchResult(users);
+    }
+}
@@ -0,0 +1,146 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collapses identical concurrent calls into one. The first caller for a key runs the call on its
+ * own thread, so a call nobody else asks for costs no thread handoff, and every caller arriving
+ * before it completes waits for the same result or error.
+ * <p>
+ * A waiting caller can give up, by being interrupted or timed out, without failing the others.
+ * If the caller running the call is interrupted instead, the call fails for it alone: the
+ * others start it again.
+ */
+final class SingleFlight {
+    private final ConcurrentMap<String, Flight<?>> flights = new ConcurrentHashMap<>();
+    private final AtomicLong callCount = new AtomicLong();
+    private final AtomicLong sharedCount = new AtomicLong();
+
+    /**
+     * Runs a call, or waits for the identical call already in flight.
+     *
+     * @param key identifies identical calls, e.g. the request URL.
+     * @param call the call to run if none is in flight for the key.
+     * @param <T> the result type.
+     * @return the call result, shared with every caller that waited for it.
+     * @throws IOException if the call failed, or an {@link InterruptedIOException} if this
+     *          caller was interrupted while running or waiting for it.
+     */
+    @SuppressWarnings("unchecked")
+    <T> T execute(@NonNull String key, @NonNull Callable<T> call) throws IOException {
+        while (true) {
+            Flight<T> flight = (Flight<T>) flights.get(key);
+
+            if (flight == null) {
+                Flight<T> started = new Flight<>(key, call);
+                flight = (Flight<T>) flights.putIfAbsent(key, started);
+
+                if (flight == null) {
+                    callCount.incrementAndGet();
+                    started.run();
+                    return result(started);
+                }
+            }
+
+            if (flight.isDone()) {
+                // Completed a moment ago; start a new one.
+                flights.remove(key, flight);
+                continue;
+            }
+
+            try {
+                flight.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for " + key);
+            } catch (ExecutionException e) {
+                if (flight.abandoned) {
+                    continue;
+                }
+            }
+
+            sharedCount.incrementAndGet();
+            return result(flight);
+        }
+    }
+
+    /**
+     * @return the number of calls actually run.
+     */
+    long getCallCount() {
+        return callCount.get();
+    }
+
+    /**
+     * @return the number of callers served by a call another caller started.
+     */
+    long getSharedCount() {
+        return sharedCount.get();
+    }
+
+    private static <T> T result(Flight<T> flight) throws IOException {
+        try {
+            return flight.get();
+        } catch (InterruptedException | CancellationException e) {
+            // Done already, so neither happens.
+            throw new InterruptedIOException(e.getMessage());
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        }
+    }
+
+    private static IOException rethrow(Throwable cause) {
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+
+        return new IOException(cause);
+    }
+
+    /**
+     * One call in flight, run by the caller that started it.
+     */
+    private final class Flight<T> extends FutureTask<T> {
+        private final String key;
+        // Failed because the caller running it was interrupted, not because of the call.
+        volatile boolean abandoned;
+
+        Flight(String key, Callable<T> call) {
+            super(call);
+            this.key = key;
+        }
+
+        // Leave the map before waking the waiters, so a caller coming back right away for the
+        // same key starts a new call rather than reusing this result.
+        @Override
+        protected void set(T result) {
+            flights.remove(key, this);
+            super.set(result);
+        }
+
+        @Override
+        protected void setException(Throwable error) {
+            abandoned = Thread.currentThread().isInterrupted()
+                    || error instanceof InterruptedException
+                    || error instanceof InterruptedIOException
+                    && !(error instanceof SocketTimeoutException);
+            flights.remove(key, this);
+            super.setException(error);
+        }
+    }
+}
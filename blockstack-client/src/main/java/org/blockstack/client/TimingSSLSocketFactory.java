@@ -0,0 +1,73 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * An <code>SSLSocketFactory</code> that tells the {@link RequestMetrics} of the request being
+ * connected on the current thread when the TLS layer is put over the TCP connection, so the
+ * connect and TLS phases can be told apart.
+ */
+final class TimingSSLSocketFactory extends SSLSocketFactory {
+    static final ThreadLocal<RequestMetrics> CURRENT = new ThreadLocal<>();
+
+    private final SSLSocketFactory delegate;
+
+    TimingSSLSocketFactory(@NonNull SSLSocketFactory delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public String[] getDefaultCipherSuites() {
+        return delegate.getDefaultCipherSuites();
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites() {
+        return delegate.getSupportedCipherSuites();
+    }
+
+    @Override
+    public Socket createSocket(Socket socket, String host, int port, boolean autoClose)
+            throws IOException {
+        // Layering over a connected socket: TCP is done and the handshake is next.
+        RequestMetrics metrics = CURRENT.get();
+        if (metrics != null) {
+            metrics.tlsStarted();
+        }
+
+        return delegate.createSocket(socket, host, port, autoClose);
+    }
+
+    @Override
+    public Socket createSocket() throws IOException {
+        return delegate.createSocket();
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return delegate.createSocket(host, port);
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort)
+            throws IOException {
+        return delegate.createSocket(host, port, localHost, localPort);
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        return delegate.createSocket(host, port);
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress,
+                               int localPort) throws IOException {
+        return delegate.createSocket(address, port, localAddress, localPort);
+    }
+}
@@ -0,0 +1,427 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The TransactionBroadcaster <code>class</code> broadcasts signed transactions without losing
+ * them to a dropped connection or a killed process.
+ * <p>
+ * {@link #broadcast(String)} returns once the transaction is written to a durable outbox on
+ * disk; it is then sent in the background, several transactions at a time over the pooled
+ * keep-alive connections. Network failures and 5xx answers are retried with exponential
+ * backoff until the server gives a definitive answer, which the {@link Listener} receives.
+ * Only an answer refusing the transaction itself, a 400, 409 or 422, rejects it; other client
+ * errors such as 401, 403 or 404 point at the credentials or the endpoint, so the transaction
+ * stays pending and is retried like a network failure.
+ * Transactions still in the outbox when the broadcaster is created, e.g. after the process was
+ * killed, are sent again.
+ * <p>
+ * Transactions are keyed by their hash, so queuing one twice sends it once, and sending one
+ * again after a crash is harmless: an answer saying the network already has it counts as
+ * accepted.
+ *
+ * <pre>
+ * TransactionBroadcaster broadcaster =
+ *         new TransactionBroadcaster(blockstack, new File(context.getFilesDir(), "outbox"));
+ * broadcaster.setListener(listener);
+ * String hash = broadcaster.broadcast(signedHex);
+ * </pre>
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class TransactionBroadcaster implements Closeable {
+    public static final int DEFAULT_PARALLELISM = 4;
+    public static final long DEFAULT_RETRY_BASE_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(1);
+    public static final long DEFAULT_RETRY_MAX_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Where a transaction is in the broadcast pipeline.
+     */
+    public enum Status {
+        /** In the outbox, waiting to be sent or retried. */
+        PENDING,
+        /** Accepted by the server. */
+        ACCEPTED,
+        /** Refused by the server; sending it again will not help. */
+        REJECTED
+    }
+
+    /**
+     * Receives the outcome of each transaction. Called on the broadcaster's threads.
+     */
+    public interface Listener {
+        /**
+         * Called when the server accepted a transaction.
+         *
+         * @param transactionHash the transaction hash.
+         * @param result the server answer.
+         */
+        void onAccepted(@NonNull String transactionHash, @NonNull BroadcastResult result);
+
+        /**
+         * Called when the server refused a transaction. It is removed from the outbox.
+         *
+         * @param transactionHash the transaction hash.
+         * @param reason the server's error.
+         */
+        void onRejected(@NonNull String transactionHash, @NonNull String reason);
+
+        /**
+         * Called when sending a transaction failed and it will be retried.
+         *
+         * @param transactionHash the transaction hash.
+         * @param attempt the number of failed attempts so far.
+         * @param error the failure cause.
+         */
+        void onRetrying(@NonNull String transactionHash, int attempt, @NonNull Throwable error);
+    }
+
+    private final Blockstack blockstack;
+    private final TransactionOutbox outbox;
+    private final ScheduledExecutorService executor;
+    private final long retryBaseDelayMillis;
+    private final long retryMaxDelayMillis;
+    private final Set<String> scheduled =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Map<String, Integer> attempts = new ConcurrentHashMap<>();
+    private final Map<String, Status> outcomes = new ConcurrentHashMap<>();
+    private final Random random = new Random();
+    private volatile Listener listener;
+
+    /**
+     * Opens the outbox in a directory with the default parallelism and retry delays, and sends
+     * any transaction left in it.
+     *
+     * @param blockstack the client used to broadcast.
+     * @param directory the directory holding the outbox, e.g. a subdirectory of
+     *                  <code>Context.getFilesDir()</code>. It must not be shared with another
+     *                  broadcaster.
+     * @throws IOException if the outbox cannot be opened.
+     */
+    public TransactionBroadcaster(@NonNull Blockstack blockstack, @NonNull File directory)
+            throws IOException {
+        this(blockstack, directory, DEFAULT_PARALLELISM, DEFAULT_RETRY_BASE_DELAY_MILLIS,
+                DEFAULT_RETRY_MAX_DELAY_MILLIS);
+    }
+
+    /**
+     * Opens the outbox in a directory and sends any transaction left in it.
+     *
+     * @param blockstack the client used to broadcast.
+     * @param directory the directory holding the outbox.
+     * @param parallelism the maximum number of transactions sent at the same time.
+     * @param retryBaseDelayMillis the delay before the first retry, doubled on every attempt.
+     * @param retryMaxDelayMillis the maximum delay between two attempts.
+     * @throws IOException if the outbox cannot be opened.
+     */
+    public TransactionBroadcaster(@NonNull Blockstack blockstack, @NonNull File directory,
+                                  int parallelism, long retryBaseDelayMillis,
+                                  long retryMaxDelayMillis) throws IOException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism < 1");
+        }
+
+        this.blockstack = blockstack;
+        this.outbox = new TransactionOutbox(directory);
+        this.executor = Executors.newScheduledThreadPool(parallelism,
+                new NamedThreadFactory("broadcast"));
+        this.retryBaseDelayMillis = Math.max(1, retryBaseDelayMillis);
+        this.retryMaxDelayMillis = Math.max(this.retryBaseDelayMillis, retryMaxDelayMillis);
+
+        for (String hash : outbox.getPending().keySet()) {
+            schedule(hash, 0);
+        }
+    }
+
+    /**
+     * @param listener notified of each transaction's outcome, may be <code>null</code>.
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Queues a signed transaction. It is on disk when this method returns.
+     *
+     * @param signedTransaction a signed transaction in hex format.
+     * @return the transaction hash.
+     * @throws IOException if the outbox cannot be written; the transaction is not queued.
+     */
+    public String broadcast(@NonNull String signedTransaction) throws IOException {
+        return broadcastAll(Collections.singletonList(signedTransaction)).get(0);
+    }
+
+    /**
+     * Queues several signed transactions with a single write to disk, which is much cheaper
+     * than queuing them one by one.
+     *
+     * @param signedTransactions signed transactions in hex format.
+     * @return the transaction hashes, in the same order.
+     * @throws IOException if the outbox cannot be written; none of the transactions is queued.
+     */
+    public List<String> broadcastAll(@NonNull Collection<String> signedTransactions)
+            throws IOException {
+        Map<String, String> transactions = new LinkedHashMap<>();
+        List<String> hashes = new ArrayList<>(signedTransactions.size());
+
+        for (String signedTransaction : signedTransactions) {
+            String hex = signedTransaction.trim().toLowerCase(Locale.US);
+            String hash = transactionHash(hex);
+            transactions.put(hash, hex);
+            hashes.add(hash);
+        }
+
+        outbox.add(transactions);
+
+        for (String hash : transactions.keySet()) {
+            outcomes.remove(hash);
+            schedule(hash, 0);
+        }
+
+        return hashes;
+    }
+
+    /**
+     * @param transactionHash a transaction hash returned by {@link #broadcast(String)}.
+     * @return the transaction's status, or <code>null</code> if it is unknown to this
+     *          broadcaster.
+     */
+    public Status getStatus(@NonNull String transactionHash) {
+        if (outbox.get(transactionHash) != null) {
+            return Status.PENDING;
+        }
+
+        return outcomes.get(transactionHash);
+    }
+
+    /**
+     * @return the number of transactions waiting to be sent or retried.
+     */
+    public int getPendingCount() {
+        return outbox.size();
+    }
+
+    /**
+     * Stops sending and closes the outbox. Pending transactions stay on disk and are sent by
+     * the next broadcaster opened on the same directory.
+     *
+     * @throws IOException if the outbox cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        outbox.close();
+    }
+
+    /**
+     * Computes the hash identifying a transaction on the network, the reversed double SHA-256
+     * of its bytes.
+     *
+     * @param signedTransaction a signed transaction in hex format.
+     * @return the transaction hash in hex format.
+     * @throws IllegalArgumentException if the transaction is not valid hex.
+     */
+    public static String transactionHash(@NonNull String signedTransaction) {
+        String hex = signedTransaction.trim();
+        if (hex.isEmpty() || hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("Not a hex transaction");
+        }
+
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException("Not a hex transaction");
+            }
+
+            bytes[i] = (byte) (high << 4 | low);
+        }
+
+        byte[] hash;
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            hash = sha256.digest(sha256.digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        char[] chars = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            int value = hash[hash.length - 1 - i] & 0xff;
+            chars[2 * i] = HEX[value >>> 4];
+            chars[2 * i + 1] = HEX[value & 0x0f];
+        }
+
+        return new String(chars);
+    }
+
+    private void schedule(final String hash, long delayMillis) {
+        if (!scheduled.add(hash)) {
+            // Already waiting to be sent.
+            return;
+        }
+
+        try {
+            executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    send(hash);
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Closed; the transaction stays in the outbox.
+            scheduled.remove(hash);
+        }
+    }
+
+    private void send(String hash) {
+        String transaction = outbox.get(hash);
+
+        if (transaction == null) {
+            scheduled.remove(hash);
+            return;
+        }
+
+        try {
+            BroadcastResult result = blockstack.sendTransaction(transaction);
+
+            if (result.isSuccessful() || isAlreadyKnown(result.getError())) {
+                finish(hash, Status.ACCEPTED);
+                notifyAccepted(hash, result);
+            } else {
+                finish(hash, Status.REJECTED);
+                notifyRejected(hash, result.getError() != null
+                        ? result.getError() : String.valueOf(result.getStatus()));
+            }
+        } catch (HttpStatusException e) {
+            if (isRefusal(e.getStatusCode())) {
+                finish(hash, Status.REJECTED);
+                notifyRejected(hash, e.getMessage());
+            } else {
+                retry(hash, e);
+            }
+        } catch (IOException | RuntimeException e) {
+            retry(hash, e);
+        }
+    }
+
+    private void finish(String hash, Status status) {
+        attempts.remove(hash);
+        outcomes.put(hash, status);
+
+        try {
+            outbox.remove(hash);
+        } catch (IOException e) {
+            // Still logged as pending, so it is sent once more after a restart; harmless.
+            e.printStackTrace();
+        }
+
+        scheduled.remove(hash);
+    }
+
+    private void retry(String hash, Exception error) {
+        Integer previous = attempts.get(hash);
+        int attempt = previous != null ? previous + 1 : 1;
+        attempts.put(hash, attempt);
+
+        long delay = backoffMillis(attempt);
+        if (error instanceof CircuitOpenException) {
+            delay = Math.max(delay, ((CircuitOpenException) error).getRetryAfterMillis());
+        }
+
+        Listener current = listener;
+        if (current != null) {
+            try {
+                current.onRetrying(hash, attempt, error);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+
+        scheduled.remove(hash);
+        schedule(hash, delay);
+    }
+
+    private long backoffMillis(int attempt) {
+        long cap = retryBaseDelayMillis << Math.min(attempt - 1, 30);
+        if (cap <= 0 || cap > retryMaxDelayMillis) {
+            cap = retryMaxDelayMillis;
+        }
+
+        long half = cap / 2;
+        synchronized (random) {
+            return half + (long) (random.nextDouble() * (cap - half));
+        }
+    }
+
+    private void notifyAccepted(String hash, BroadcastResult result) {
+        Listener current = listener;
+
+        if (current != null) {
+            try {
+                current.onAccepted(hash, result);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void notifyRejected(String hash, String reason) {
+        Listener current = listener;
+
+        if (current != null) {
+            try {
+                current.onRejected(hash, reason);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * @return <code>true</code> for a status refusing the transaction itself, which sending it
+     *          again will not change.
+     */
+    private static boolean isRefusal(int statusCode) {
+        return statusCode == 400 || statusCode == 409 || statusCode == 422;
+    }
+
+    /**
+     * Recognizes the errors nodes answer for a transaction they already have, as happens when
+     * a transaction sent before a crash is sent again.
+     */
+    private static boolean isAlreadyKnown(String error) {
+        if (error == null) {
+            return false;
+        }
+
+        String lower = error.toLowerCase(Locale.US);
+        return lower.contains("already in block chain") || lower.contains("already known")
+                || lower.contains("txn-already");
+    }
+}
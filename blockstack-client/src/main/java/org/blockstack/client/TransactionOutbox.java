@@ -0,0 +1,307 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of the transactions waiting to be broadcast, so they survive a process
+ * kill. Each transaction is logged when it is queued and again once the server gave a
+ * definitive answer; replaying the log yields the transactions still pending.
+ * <p>
+ * Records are checksummed, and a torn record left by a crash mid-write ends the replay and is
+ * cut off. The log is rewritten with the pending transactions only once it is mostly done
+ * records.
+ */
+final class TransactionOutbox implements Closeable {
+    private static final String LOG_FILE = "outbox.log";
+    private static final String COMPACT_FILE = "outbox.log.tmp";
+    private static final long MIN_COMPACTION_BYTES = 64 * 1024;
+
+    private static final byte TYPE_QUEUED = 1;
+    private static final byte TYPE_DONE = 2;
+
+    // Length and checksum prefix of every record.
+    private static final int RECORD_HEADER_BYTES = 12;
+
+    private final File directory;
+    private final LinkedHashMap<String, String> pending = new LinkedHashMap<>();
+
+    private RandomAccessFile log;
+    private FileChannel channel;
+    private long length;
+    private long pendingBytes;
+
+    /**
+     * Opens or creates the outbox in a directory and replays it.
+     *
+     * @param directory the directory holding the log, e.g. a subdirectory of
+     *                  <code>Context.getFilesDir()</code>.
+     * @throws IOException if the log cannot be opened.
+     */
+    TransactionOutbox(@NonNull File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create outbox directory " + directory);
+        }
+
+        this.directory = directory;
+        open();
+        replay();
+    }
+
+    /**
+     * Logs transactions as queued and forces them to disk before returning.
+     *
+     * @param transactions the signed transactions in hex format, keyed by transaction hash.
+     * @return the hashes that were not already pending.
+     * @throws IOException if the log cannot be written; none of the transactions is queued.
+     */
+    synchronized List<String> add(@NonNull Map<String, String> transactions)
+            throws IOException {
+        ensureOpen();
+
+        List<String> added = new ArrayList<>();
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+
+        for (Map.Entry<String, String> transaction : transactions.entrySet()) {
+            String hash = transaction.getKey();
+
+            if (!pending.containsKey(hash)) {
+                records.write(record(TYPE_QUEUED, hash, transaction.getValue()));
+                added.add(hash);
+            }
+        }
+
+        if (added.isEmpty()) {
+            return added;
+        }
+
+        append(records.toByteArray());
+        channel.force(false);
+
+        for (String hash : added) {
+            String transaction = transactions.get(hash);
+            pending.put(hash, transaction);
+            pendingBytes += weigh(hash, transaction);
+        }
+
+        return added;
+    }
+
+    /**
+     * Logs that a transaction got a definitive answer and no longer needs sending.
+     *
+     * @param hash the transaction hash.
+     * @throws IOException if the log cannot be written.
+     */
+    synchronized void remove(@NonNull String hash) throws IOException {
+        ensureOpen();
+
+        String transaction = pending.remove(hash);
+        if (transaction == null) {
+            return;
+        }
+
+        pendingBytes -= weigh(hash, transaction);
+        append(record(TYPE_DONE, hash, null));
+
+        if (length > MIN_COMPACTION_BYTES && pendingBytes < length / 4) {
+            compact();
+        }
+    }
+
+    /**
+     * @return the pending transactions keyed by hash, in the order they were queued.
+     */
+    synchronized Map<String, String> getPending() {
+        return new LinkedHashMap<>(pending);
+    }
+
+    /**
+     * @param hash a transaction hash.
+     * @return the pending transaction, or <code>null</code> if it is not pending.
+     */
+    synchronized String get(@NonNull String hash) {
+        return pending.get(hash);
+    }
+
+    synchronized int size() {
+        return pending.size();
+    }
+
+    synchronized long getLogSize() {
+        return length;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (log == null) {
+            return;
+        }
+
+        channel.force(false);
+        channel.close();
+        log.close();
+        log = null;
+    }
+
+    private void open() throws IOException {
+        log = new RandomAccessFile(new File(directory, LOG_FILE), "rw");
+        channel = log.getChannel();
+        length = log.length();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (log == null) {
+            throw new IOException("Outbox is closed");
+        }
+    }
+
+    private void replay() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+        long offset = 0;
+
+        while (offset + RECORD_HEADER_BYTES <= length) {
+            header.clear();
+            readFully(header, offset);
+            int recordLength = header.getInt(0);
+            long checksum = header.getLong(4);
+
+            if (recordLength <= 0 || offset + RECORD_HEADER_BYTES + recordLength > length) {
+                break;
+            }
+
+            ByteBuffer body = ByteBuffer.allocate(recordLength);
+            readFully(body, offset + RECORD_HEADER_BYTES);
+
+            CRC32 crc = new CRC32();
+            crc.update(body.array());
+            if (crc.getValue() != checksum) {
+                break;
+            }
+
+            apply(body.array());
+            offset += RECORD_HEADER_BYTES + recordLength;
+        }
+
+        if (offset < length) {
+            // A record torn by a crash; later appends would otherwise be unreadable.
+            log.setLength(offset);
+            length = offset;
+        }
+    }
+
+    private void apply(byte[] body) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        byte type = buffer.get();
+        String hash = readString(buffer);
+
+        if (type == TYPE_QUEUED) {
+            String transaction = readString(buffer);
+
+            if (pending.put(hash, transaction) == null) {
+                pendingBytes += weigh(hash, transaction);
+            }
+        } else if (type == TYPE_DONE) {
+            String transaction = pending.remove(hash);
+
+            if (transaction != null) {
+                pendingBytes -= weigh(hash, transaction);
+            }
+        }
+    }
+
+    private void compact() throws IOException {
+        File compacted = new File(directory, COMPACT_FILE);
+        RandomAccessFile out = new RandomAccessFile(compacted, "rw");
+
+        try {
+            out.setLength(0);
+
+            for (Map.Entry<String, String> transaction : pending.entrySet()) {
+                out.write(record(TYPE_QUEUED, transaction.getKey(), transaction.getValue()));
+            }
+
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+
+        channel.close();
+        log.close();
+
+        if (!compacted.renameTo(new File(directory, LOG_FILE))) {
+            open();
+            throw new IOException("Cannot replace " + LOG_FILE + " with compacted file");
+        }
+
+        open();
+    }
+
+    private void append(byte[] records) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(records);
+
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, length + buffer.position());
+        }
+
+        length += records.length;
+    }
+
+    private void readFully(ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of " + LOG_FILE);
+            }
+        }
+    }
+
+    private static byte[] record(byte type, String hash, String transaction) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeByte(type);
+        writeString(out, hash);
+
+        if (transaction != null) {
+            writeString(out, transaction);
+        }
+
+        byte[] body = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(body);
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + body.length);
+        record.putInt(body.length).putLong(crc.getValue()).put(body);
+        return record.array();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        // Transactions can exceed the 64 KB limit of writeUTF.
+        byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static long weigh(String hash, String transaction) {
+        return RECORD_HEADER_BYTES + 9 + hash.length() + transaction.length();
+    }
+}
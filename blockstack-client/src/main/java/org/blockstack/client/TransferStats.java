@@ -0,0 +1,57 @@
+package org.blockstack.client;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The TransferStats <code>class</code> counts the response body bytes received on the wire and
+ * the bytes they decoded to, so the bandwidth saved by compression can be measured. A
+ * {@link Response} keeps the counts for its own body, while a transport keeps the running totals
+ * of every response it has closed.
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class TransferStats {
+    final AtomicLong wireBytes = new AtomicLong();
+    final AtomicLong decodedBytes = new AtomicLong();
+
+    /**
+     * @return the number of body bytes read from the network, before decompression.
+     */
+    public long getWireBytes() {
+        return wireBytes.get();
+    }
+
+    /**
+     * @return the number of body bytes after decompression.
+     */
+    public long getDecodedBytes() {
+        return decodedBytes.get();
+    }
+
+    /**
+     * @return the number of bytes compression kept off the wire.
+     */
+    public long getSavedBytes() {
+        return Math.max(0, getDecodedBytes() - getWireBytes());
+    }
+
+    /**
+     * @return the wire size divided by the decoded size, or <code>1</code> when nothing has
+     *          been read yet.
+     */
+    public double getCompressionRatio() {
+        long decoded = getDecodedBytes();
+        return decoded > 0 ? (double) getWireBytes() / decoded : 1;
+    }
+
+    void add(TransferStats stats) {
+        wireBytes.addAndGet(stats.getWireBytes());
+        decodedBytes.addAndGet(stats.getDecodedBytes());
+    }
+
+    @Override
+    public String toString() {
+        return "wire=" + getWireBytes() + " decoded=" + getDecodedBytes();
+    }
+}
@@ -0,0 +1,30 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+
+/**
+ * The Transport <code>interface</code> abstracts the HTTP layer used by {@link Blockstack} to
+ * talk to the blockstack-server. Implementations must be safe to share between threads.
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public interface Transport {
+    /**
+     * Executes a request and returns the server response. The caller owns the returned
+     * {@link Response} and must {@link Response#close() close} it so the underlying connection
+     * can be reused.
+     *
+     * @param request the request to execute.
+     * @return the server response, whatever its status code.
+     * @throws IOException if the request could not be completed.
+     */
+    Response execute(@NonNull Request request) throws IOException;
+
+    /**
+     * Releases the resources held by this transport. Requests executed after this call fail.
+     */
+    void shutdown();
+}
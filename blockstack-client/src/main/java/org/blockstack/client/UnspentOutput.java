@@ -0,0 +1,122 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The UnspentOutput <code>class</code> is an unspent transaction output owned by an address.
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class UnspentOutput {
+    private final String transactionHash;
+    private final int outputIndex;
+    private final long value;
+    private final String scriptHex;
+    private final long confirmations;
+
+    public UnspentOutput(@NonNull String transactionHash, int outputIndex, long value,
+                         String scriptHex, long confirmations) {
+        this.transactionHash = transactionHash;
+        this.outputIndex = outputIndex;
+        this.value = value;
+        this.scriptHex = scriptHex;
+        this.confirmations = confirmations;
+    }
+
+    public String getTransactionHash() {
+        return transactionHash;
+    }
+
+    public int getOutputIndex() {
+        return outputIndex;
+    }
+
+    /**
+     * @return the output value in satoshis.
+     */
+    public long getValue() {
+        return value;
+    }
+
+    public String getScriptHex() {
+        return scriptHex;
+    }
+
+    public long getConfirmations() {
+        return confirmations;
+    }
+
+    /**
+     * Reads a <code>{"unspents": [...]}</code> response.
+     */
+    static List<UnspentOutput> readList(@NonNull JsonPullParser parser) throws IOException {
+        List<UnspentOutput> outputs = new ArrayList<>();
+        parser.beginObject();
+
+        while (parser.hasNext()) {
+            if ("unspents".equals(parser.nextName())
+                    && parser.peek() == JsonPullParser.Token.BEGIN_ARRAY) {
+                parser.beginArray();
+
+                while (parser.hasNext()) {
+                    outputs.add(read(parser));
+                }
+
+                parser.endArray();
+            } else {
+                parser.skipValue();
+            }
+        }
+
+        parser.endObject();
+        return outputs;
+    }
+
+    private static UnspentOutput read(JsonPullParser parser) throws IOException {
+        String transactionHash = null;
+        int outputIndex = 0;
+        long value = 0;
+        String scriptHex = null;
+        long confirmations = 0;
+
+        parser.beginObject();
+
+        while (parser.hasNext()) {
+            String name = parser.nextName();
+
+            if (parser.peek() == JsonPullParser.Token.NULL) {
+                parser.skipValue();
+            } else if ("transaction_hash".equals(name)) {
+                transactionHash = parser.nextString();
+            } else if ("output_index".equals(name)) {
+                outputIndex = (int) parser.nextLong();
+            } else if ("value".equals(name)) {
+                value = parser.nextLong();
+            } else if ("script_hex".equals(name)) {
+                scriptHex = parser.nextString();
+            } else if ("confirmations".equals(name)) {
+                confirmations = parser.nextLong();
+            } else {
+                parser.skipValue();
+            }
+        }
+
+        parser.endObject();
+
+        if (transactionHash == null) {
+            throw new IOException("Unspent output without a transaction hash");
+        }
+
+        return new UnspentOutput(transactionHash, outputIndex, value, scriptHex, confirmations);
+    }
+
+    @Override
+    public String toString() {
+        return transactionHash + ":" + outputIndex + " (" + value + ")";
+    }
+}
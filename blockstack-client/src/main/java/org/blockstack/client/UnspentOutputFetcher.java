@@ -0,0 +1,233 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The UnspentOutputFetcher <code>class</code> fetches the unspent outputs of many addresses at
+ * once, e.g. to sync an HD wallet. Addresses are fetched in parallel, at most
+ * <code>parallelism</code> at a time, so a full sync takes about
+ * <code>addresses / parallelism</code> round trips instead of one per address.
+ * <p>
+ * Each address is reported to an optional {@link Listener} as soon as it completes, and the
+ * returned future completes with an {@link UnspentOutputSet} aggregating all of them. A failed
+ * address does not fail the whole fetch; it is listed in
+ * {@link UnspentOutputSet#getFailures()}. Cancelling the future stops fetching the addresses
+ * not started yet.
+ *
+ * <pre>
+ * UnspentOutputFetcher fetcher = new UnspentOutputFetcher(blockstack);
+ * UnspentOutputSet wallet = fetcher.fetch(addresses, null).get();
+ * long balance = wallet.getTotalValue();
+ * </pre>
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class UnspentOutputFetcher {
+    /**
+     * Matches the default connections per host, beyond which requests only queue for a
+     * connection.
+     */
+    public static final int DEFAULT_PARALLELISM = ConnectionPool.DEFAULT_MAX_CONNECTIONS_PER_HOST;
+
+    private final Blockstack blockstack;
+    private final ExecutorService executor;
+
+    /**
+     * Receives the outcome of each address as it completes. Called on the fetching threads,
+     * possibly concurrently.
+     */
+    public interface Listener {
+        /**
+         * Called when the unspent outputs of an address have been fetched.
+         *
+         * @param address the address.
+         * @param outputs its unspent outputs.
+         */
+        void onAddressFetched(@NonNull String address, @NonNull List<UnspentOutput> outputs);
+
+        /**
+         * Called when fetching an address failed.
+         *
+         * @param address the address.
+         * @param error the failure cause.
+         */
+        void onAddressFailed(@NonNull String address, @NonNull Throwable error);
+    }
+
+    /**
+     * Creates a fetcher with the default parallelism.
+     *
+     * @param blockstack the client used to send the requests.
+     */
+    public UnspentOutputFetcher(@NonNull Blockstack blockstack) {
+        this(blockstack, DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * Creates a fetcher.
+     *
+     * @param blockstack the client used to send the requests.
+     * @param parallelism the maximum number of addresses fetched at the same time.
+     */
+    public UnspentOutputFetcher(@NonNull Blockstack blockstack, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism < 1");
+        }
+
+        this.blockstack = blockstack;
+        this.executor = Executors.newFixedThreadPool(parallelism,
+                new NamedThreadFactory("utxo-fetch"));
+    }
+
+    /**
+     * Fetches the unspent outputs of every address. Duplicate addresses are fetched once.
+     *
+     * @param addresses the addresses.
+     * @param listener notified as each address completes, may be <code>null</code>.
+     * @return the pending aggregated outputs.
+     */
+    public BlockstackFuture<UnspentOutputSet> fetch(@NonNull Collection<String> addresses,
+                                                    Listener listener) {
+        return fetch(addresses, listener, null);
+    }
+
+    /**
+     * Fetches the unspent outputs of every address. Duplicate addresses are fetched once.
+     *
+     * @param addresses the addresses.
+     * @param listener notified as each address completes, may be <code>null</code>.
+     * @param callback notified once every address has completed, may be <code>null</code>.
+     * @return the pending aggregated outputs.
+     */
+    public BlockstackFuture<UnspentOutputSet> fetch(@NonNull Collection<String> addresses,
+                                                    Listener listener,
+                                                    Callback<UnspentOutputSet> callback) {
+        Set<String> unique = new LinkedHashSet<>();
+
+        for (String address : addresses) {
+            String trimmed = address.trim();
+
+            if (trimmed.length() > 0) {
+                unique.add(trimmed);
+            }
+        }
+
+        Fetch fetch = new Fetch(unique, listener, callback);
+        fetch.start();
+        return fetch.future;
+    }
+
+    /**
+     * Stops the fetcher. Addresses already queued are still fetched.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * The addresses of one {@link #fetch} call and their results.
+     */
+    private class Fetch {
+        final Set<String> addresses;
+        final Listener listener;
+        final BlockstackFuture<UnspentOutputSet> future;
+        final Map<String, List<UnspentOutput>> outputs = new ConcurrentHashMap<>();
+        final Map<String, Throwable> failures = new ConcurrentHashMap<>();
+        final AtomicInteger remaining;
+
+        Fetch(Set<String> addresses, Listener listener, Callback<UnspentOutputSet> callback) {
+            this.addresses = addresses;
+            this.listener = listener;
+            this.future = new BlockstackFuture<>(callback, null);
+            this.remaining = new AtomicInteger(addresses.size());
+        }
+
+        void start() {
+            if (addresses.isEmpty()) {
+                finish();
+                return;
+            }
+
+            for (final String address : addresses) {
+                try {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            fetch(address);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    failed(address, e);
+                    addressDone();
+                }
+            }
+        }
+
+        void fetch(String address) {
+            if (future.isDone()) {
+                // Cancelled; skip the addresses not sent yet.
+                addressDone();
+                return;
+            }
+
+            try {
+                List<UnspentOutput> addressOutputs =
+                        Collections.unmodifiableList(blockstack.fetchUnspentOutputs(address,
+                                Request.Priority.LOW));
+                outputs.put(address, addressOutputs);
+
+                if (listener != null) {
+                    listener.onAddressFetched(address, addressOutputs);
+                }
+            } catch (Exception e) {
+                failed(address, e);
+            } finally {
+                addressDone();
+            }
+        }
+
+        void failed(String address, Throwable error) {
+            failures.put(address, error);
+
+            if (listener != null) {
+                listener.onAddressFailed(address, error);
+            }
+        }
+
+        void addressDone() {
+            if (remaining.decrementAndGet() == 0) {
+                finish();
+            }
+        }
+
+        void finish() {
+            // Keep the caller's address order rather than completion order.
+            Map<String, List<UnspentOutput>> ordered = new LinkedHashMap<>();
+            Map<String, Throwable> orderedFailures = new LinkedHashMap<>();
+
+            for (String address : addresses) {
+                if (outputs.containsKey(address)) {
+                    ordered.put(address, outputs.get(address));
+                } else if (failures.containsKey(address)) {
+                    orderedFailures.put(address, failures.get(address));
+                }
+            }
+
+            future.complete(new UnspentOutputSet(ordered, orderedFailures));
+        }
+    }
+}
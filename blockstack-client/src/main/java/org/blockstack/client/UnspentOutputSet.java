@@ -0,0 +1,140 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The UnspentOutputSet <code>class</code> holds the unspent outputs of several addresses, e.g.
+ * every address of an HD wallet, with their totals. Addresses whose request failed are listed
+ * with their error instead, so a partial result can still be used and the rest retried.
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class UnspentOutputSet {
+    private final Map<String, List<UnspentOutput>> outputs;
+    private final Map<String, Throwable> failures;
+    private final long totalValue;
+    private final int size;
+
+    UnspentOutputSet(@NonNull Map<String, List<UnspentOutput>> outputs,
+                     @NonNull Map<String, Throwable> failures) {
+        this.outputs = Collections.unmodifiableMap(new LinkedHashMap<>(outputs));
+        this.failures = Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+
+        long total = 0;
+        int count = 0;
+
+        for (List<UnspentOutput> addressOutputs : outputs.values()) {
+            for (UnspentOutput output : addressOutputs) {
+                total += output.getValue();
+            }
+
+            count += addressOutputs.size();
+        }
+
+        this.totalValue = total;
+        this.size = count;
+    }
+
+    /**
+     * @return the addresses fetched successfully, in request order.
+     */
+    public Set<String> getAddresses() {
+        return outputs.keySet();
+    }
+
+    /**
+     * @return every unspent output, grouped by address in request order.
+     */
+    public List<UnspentOutput> getOutputs() {
+        List<UnspentOutput> all = new ArrayList<>(size);
+
+        for (List<UnspentOutput> addressOutputs : outputs.values()) {
+            all.addAll(addressOutputs);
+        }
+
+        return all;
+    }
+
+    /**
+     * @param address a fetched address.
+     * @return the unspent outputs of the address, or an empty list if it was not fetched.
+     */
+    public List<UnspentOutput> getOutputs(@NonNull String address) {
+        List<UnspentOutput> addressOutputs = outputs.get(address);
+        return addressOutputs != null ? addressOutputs : Collections.<UnspentOutput>emptyList();
+    }
+
+    /**
+     * @return the number of unspent outputs.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the value of every unspent output, in satoshis.
+     */
+    public long getTotalValue() {
+        return totalValue;
+    }
+
+    /**
+     * @param address a fetched address.
+     * @return the value of the address's unspent outputs, in satoshis.
+     */
+    public long getTotalValue(@NonNull String address) {
+        long total = 0;
+
+        for (UnspentOutput output : getOutputs(address)) {
+            total += output.getValue();
+        }
+
+        return total;
+    }
+
+    /**
+     * @param minConfirmations the confirmations an output needs to be counted.
+     * @return the value of the outputs with at least that many confirmations, in satoshis.
+     */
+    public long getConfirmedValue(long minConfirmations) {
+        long total = 0;
+
+        for (List<UnspentOutput> addressOutputs : outputs.values()) {
+            for (UnspentOutput output : addressOutputs) {
+                if (output.getConfirmations() >= minConfirmations) {
+                    total += output.getValue();
+                }
+            }
+        }
+
+        return total;
+    }
+
+    /**
+     * @return the addresses whose request failed, with the cause.
+     */
+    public Map<String, Throwable> getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return <code>true</code> if every address was fetched.
+     */
+    public boolean isComplete() {
+        return failures.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return size + " outputs worth " + totalValue + " over " + outputs.size() + " addresses"
+                + (failures.isEmpty() ? "" : ", " + failures.size() + " failed");
+    }
+}
@@ -0,0 +1,152 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * The User <code>class</code> is a user returned by a lookup or a search.
+ * <p>
+ * A user keeps the JSON it was decoded from and only reads its top-level fields the first time
+ * one of them is requested. Nested values such as the profile are kept as raw JSON until they
+ * are accessed, so callers that only need the username never pay for the rest.
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public class User {
+    private final String json;
+    private String username;
+
+    private boolean decoded;
+    private String profileJson;
+    private String verificationsJson;
+    private String error;
+    private String ownerAddress;
+    private Profile profile;
+
+    /**
+     * Creates a user from its lookup data.
+     *
+     * @param username the username, or <code>null</code> to read it from the JSON, as in
+     *                 search results.
+     * @param json the user's JSON object.
+     */
+    public User(String username, @NonNull String json) {
+        this.username = username;
+        this.json = json;
+    }
+
+    public synchronized String getUsername() {
+        if (username == null) {
+            decode();
+        }
+
+        return username;
+    }
+
+    /**
+     * @return the user's JSON object as returned by the server.
+     */
+    public String getJson() {
+        return json;
+    }
+
+    /**
+     * @return <code>true</code> unless the server answered with an <code>"error"</code>.
+     */
+    public boolean isFound() {
+        return getError() == null;
+    }
+
+    /**
+     * @return the error returned by the server, or <code>null</code>.
+     */
+    public synchronized String getError() {
+        decode();
+        return error;
+    }
+
+    /**
+     * @return the Bitcoin address owning the name, or <code>null</code> if it was not returned.
+     */
+    public synchronized String getOwnerAddress() {
+        decode();
+        return ownerAddress;
+    }
+
+    /**
+     * @return the user's profile, or <code>null</code> if the user has none.
+     */
+    public synchronized Profile getProfile() {
+        decode();
+
+        if (profile == null && profileJson != null) {
+            profile = new Profile(profileJson);
+        }
+
+        return profile;
+    }
+
+    /**
+     * @return the user's verified accounts, or an empty array.
+     */
+    public synchronized JSONArray getVerifications() {
+        decode();
+
+        try {
+            return verificationsJson != null ? new JSONArray(verificationsJson) : new JSONArray();
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return new JSONArray();
+        }
+    }
+
+    /**
+     * Reads the top-level fields, capturing nested values as raw JSON.
+     */
+    private void decode() {
+        if (decoded) {
+            return;
+        }
+
+        decoded = true;
+        JsonPullParser parser = new JsonPullParser(new StringReader(json), new char[256]);
+
+        try {
+            parser.beginObject();
+
+            while (parser.hasNext()) {
+                String name = parser.nextName();
+
+                if ("profile".equals(name) && parser.peek() == JsonPullParser.Token.BEGIN_OBJECT) {
+                    profileJson = parser.readRawValue();
+                } else if ("verifications".equals(name)) {
+                    verificationsJson = parser.readRawValue();
+                } else if ("error".equals(name)) {
+                    error = parser.peek() == JsonPullParser.Token.STRING
+                            ? parser.nextString() : parser.readRawValue();
+                } else if ("owner_address".equals(name)
+                        && parser.peek() == JsonPullParser.Token.STRING) {
+                    ownerAddress = parser.nextString();
+                } else if ("username".equals(name) && username == null
+                        && parser.peek() == JsonPullParser.Token.STRING) {
+                    username = parser.nextString();
+                } else {
+                    parser.skipValue();
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return json;
+    }
+}
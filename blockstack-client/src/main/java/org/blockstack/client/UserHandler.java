@@ -0,0 +1,23 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import org.json.JSONObject;
+
+/**
+ * The UserHandler <code>interface</code> receives the users of a lookup one at a time, as soon
+ * as each of them has been decoded.
+ *
+ * @author  Jorge Tapia (@itsProf)
+ * @version 1.0
+ */
+public interface UserHandler {
+    /**
+     * Called once per user found in the response. Users the server could not find are
+     * delivered too, as an object holding an <code>"error"</code> entry.
+     *
+     * @param username the username.
+     * @param user the user's lookup data.
+     */
+    void onUser(@NonNull String username, @NonNull JSONObject user);
+}
@@ -0,0 +1,145 @@
+package org.blockstack.client;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+
+/**
+ * Decodes a UTF-8 byte stream through a pooled byte buffer and decoder, which are handed back
+ * to the {@link BufferPool} by {@link #release()}. Unlike <code>InputStreamReader</code> it
+ * never falls back to the platform default charset.
+ */
+class Utf8Reader extends Reader {
+    private final InputStream stream;
+    private byte[] bytes;
+    private CharsetDecoder decoder;
+    private ByteBuffer input;
+    private boolean endOfInput;
+    private boolean flushed;
+    private int pendingChar = -1;
+
+    Utf8Reader(@NonNull InputStream stream) {
+        this.stream = stream;
+        this.bytes = BufferPool.takeBytes();
+        this.decoder = BufferPool.takeDecoder();
+        this.input = ByteBuffer.wrap(bytes);
+        input.limit(0);
+    }
+
+    @Override
+    public int read(@NonNull char[] chars, int offset, int length) throws IOException {
+        if (decoder == null) {
+            throw new IOException("Reader has been closed");
+        }
+
+        if (length == 0) {
+            return 0;
+        }
+
+        int start = offset;
+        if (pendingChar >= 0) {
+            chars[offset++] = (char) pendingChar;
+            length--;
+            pendingChar = -1;
+
+            if (length == 0) {
+                return 1;
+            }
+        }
+
+        if (length == 1) {
+            // A supplementary character needs two slots; keep its second half for the next call.
+            char[] pair = new char[2];
+            int read = decode(pair, 0, 2);
+
+            if (read <= 0) {
+                return offset > start ? offset - start : -1;
+            }
+
+            chars[offset++] = pair[0];
+            if (read == 2) {
+                pendingChar = pair[1];
+            }
+
+            return offset - start;
+        }
+
+        int read = decode(chars, offset, length);
+        if (read <= 0) {
+            return offset > start ? offset - start : -1;
+        }
+
+        return offset - start + read;
+    }
+
+    private int decode(char[] chars, int offset, int length) throws IOException {
+        if (flushed) {
+            // A flushed decoder cannot decode again; the stream stays at its end.
+            return 0;
+        }
+
+        CharBuffer output = CharBuffer.wrap(chars, offset, length);
+
+        while (true) {
+            CoderResult result = decoder.decode(input, output, endOfInput);
+
+            if (endOfInput && result.isUnderflow()) {
+                decoder.flush(output);
+                flushed = true;
+                return output.position() - offset;
+            }
+
+            if (output.position() > offset || result.isOverflow()) {
+                return output.position() - offset;
+            }
+
+            fill();
+        }
+    }
+
+    private void fill() throws IOException {
+        input.compact();
+
+        try {
+            int read = stream.read(bytes, input.position(), input.remaining());
+            if (read == -1) {
+                endOfInput = true;
+            } else {
+                input.position(input.position() + read);
+            }
+        } finally {
+            input.flip();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            stream.close();
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Returns the buffer and decoder to the pool without closing the stream. The reader cannot
+     * be used afterwards.
+     */
+    void release() {
+        if (decoder == null) {
+            return;
+        }
+
+        BufferPool.recycle(bytes);
+        BufferPool.recycle(decoder);
+        bytes = null;
+        decoder = null;
+        input = null;
+    }
+}
@@ -0,0 +1,176 @@
+package org.blockstack.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncBlockstackTest {
+    private static final String RESPONSE = "{\"itsProf\": {\"profile\": {}}}";
+
+    private ReplayServer server;
+    private AsyncBlockstack async;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new ReplayServer();
+        server.record("*", "/*", 200, RESPONSE);
+        server.start();
+        Blockstack blockstack = new Blockstack("id", "secret",
+                new HttpURLConnectionTransport(),
+                new Endpoints(server.getBaseUrl()));
+        async = new AsyncBlockstack(blockstack, 2);
+    }
+
+    @After
+    public void tearDown() {
+        async.shutdown();
+        server.stop();
+    }
+
+    @Test
+    public void deliversResultToFutureAndCallback() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<String> result = new AtomicReference<>();
+
+        BlockstackFuture<String> future = async.lookupUsers(new String[] {"itsProf"},
+                new Callback<String>() {
+                    @Override
+                    public void onSuccess(String response) {
+                        result.set(response);
+                        latch.countDown();
+                    }
+
+                    @Override
+                    public void onFailure(Throwable error) {
+                        latch.countDown();
+                    }
+                });
+
+        assertEquals(RESPONSE, future.get(5, TimeUnit.SECONDS));
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(RESPONSE, result.get());
+    }
+
+    @Test
+    public void timesOutSlowCalls() throws Exception {
+        server.setLatency(2000, 0);
+
+        BlockstackFuture<String> future = async.withTimeout(100, TimeUnit.MILLISECONDS)
+                .lookupUsers(new String[] {"itsProf"});
+
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Expected a timeout");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+    }
+
+    @Test
+    public void completedCallsCancelTheirTimeout() throws Exception {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1);
+
+        try {
+            BlockstackFuture<String> future = new BlockstackFuture<>(new Callable<String>() {
+                @Override
+                public String call() {
+                    return RESPONSE;
+                }
+            }, null, null);
+            future.scheduleTimeout(timer, TimeUnit.HOURS.toMillis(1));
+            future.run();
+
+            assertEquals(RESPONSE, future.get());
+            timer.purge();
+            assertEquals(0, timer.getQueue().size());
+        } finally {
+            timer.shutdownNow();
+        }
+    }
+
+    @Test
+    public void timeoutInterruptsOnlyTheTimedOutCall() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicBoolean interruptedAfterwards = new AtomicBoolean(true);
+        final BlockstackFuture<String> future = new BlockstackFuture<>(new Callable<String>() {
+            @Override
+            public String call() throws InterruptedException {
+                started.countDown();
+                Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+                return RESPONSE;
+            }
+        }, null, null);
+
+        Thread worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                future.run();
+                // The next task of a pool thread must not see the interrupt.
+                interruptedAfterwards.set(Thread.currentThread().isInterrupted());
+            }
+        });
+        worker.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        future.timeout();
+        worker.join(5000);
+
+        try {
+            future.get();
+            fail("Expected a timeout");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+
+        assertFalse(worker.isAlive());
+        assertFalse(interruptedAfterwards.get());
+
+        // Already completed: a late timeout leaves the thread alone.
+        BlockstackFuture<String> done = new BlockstackFuture<>(new Callable<String>() {
+            @Override
+            public String call() {
+                return RESPONSE;
+            }
+        }, null, null);
+        done.run();
+        done.timeout();
+
+        assertEquals(RESPONSE, done.get());
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    @Test
+    public void cancelledCallsNotifyCallback() throws Exception {
+        server.setLatency(2000, 0);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        BlockstackFuture<String> future = async.searchUsers("muneeb", new Callback<String>() {
+            @Override
+            public void onSuccess(String result) {
+            }
+
+            @Override
+            public void onFailure(Throwable failure) {
+                error.set(failure);
+            }
+        });
+
+        assertTrue(future.cancel(true));
+        assertTrue(error.get() instanceof CancellationException);
+    }
+}
@@ -0,0 +1,160 @@
+package org.blockstack.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompressionTest {
+    private static final Map<String, List<String>> NO_HEADERS = Collections.emptyMap();
+
+    private ReplayServer server;
+    private HttpURLConnectionTransport transport;
+    private Blockstack blockstack;
+    private String response;
+
+    @Before
+    public void setUp() throws Exception {
+        StringBuilder json = new StringBuilder("{");
+        for (int i = 0; i < 200; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+
+            json.append("\"user").append(i).append("\": {\"profile\": {\"name\": \"Jos\u00e9 M\u00fcller ")
+                    .append(i).append(" \ud83d\ude80\", \"bio\": \"Blockstack enthusiast\"}}");
+        }
+
+        response = json.append('}').toString();
+        server = new ReplayServer();
+        server.record("*", "/*", 200, response);
+        server.start();
+        transport = new HttpURLConnectionTransport();
+        blockstack = new Blockstack("id", "secret", transport,
+                new Endpoints(server.getBaseUrl()));
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void decodesGzipResponsesAndCountsSavedBytes() throws Exception {
+        server.setContentEncoding("gzip");
+
+        assertEquals(response, blockstack.lookupUsers(new String[]{"user0"}));
+
+        TransferStats stats = transport.getTotalTransferStats();
+        assertEquals(response.getBytes("UTF-8").length, stats.getDecodedBytes());
+        assertTrue(stats.getWireBytes() * 4 < stats.getDecodedBytes());
+        assertTrue(stats.getSavedBytes() > 0);
+    }
+
+    @Test
+    public void decodesDeflateResponses() throws Exception {
+        server.setContentEncoding("deflate");
+
+        assertEquals(response, blockstack.lookupUsers(new String[]{"user0"}));
+        assertTrue(transport.getTotalTransferStats().getCompressionRatio() < 0.25);
+    }
+
+    @Test
+    public void countsUncompressedResponsesOnBothSides() throws Exception {
+        blockstack.lookupUsers(new String[]{"user0"});
+
+        TransferStats stats = transport.getTotalTransferStats();
+        assertEquals(stats.getWireBytes(), stats.getDecodedBytes());
+        assertEquals(0, stats.getSavedBytes());
+    }
+
+    @Test
+    public void decodesRawDeflateStreams() throws Exception {
+        byte[] bytes = response.getBytes("UTF-8");
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DeflaterOutputStream deflater = new DeflaterOutputStream(buffer,
+                new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+        deflater.write(bytes);
+        deflater.close();
+
+        InputStream decoded = HttpURLConnectionTransport.decode(
+                new ByteArrayInputStream(buffer.toByteArray()), "deflate");
+        Response raw = new Response(200, NO_HEADERS, decoded, null);
+
+        assertEquals(response, readAll(raw.getReader()));
+        raw.close();
+    }
+
+    @Test
+    public void leavesEmptyCompressedBodiesAlone() throws Exception {
+        InputStream decoded = HttpURLConnectionTransport.decode(
+                new ByteArrayInputStream(new byte[0]), "gzip");
+
+        assertEquals(-1, decoded.read());
+    }
+
+    @Test
+    public void decodesCharactersSplitAcrossReads() throws Exception {
+        // Hand the reader one byte at a time so every multi-byte sequence is split.
+        InputStream trickle = new FilterInputStream(
+                new ByteArrayInputStream(response.getBytes("UTF-8"))) {
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                return super.read(buffer, offset, Math.min(length, 1));
+            }
+        };
+
+        Response trickled = new Response(200, NO_HEADERS, trickle, null);
+        Reader reader = trickled.getReader();
+        StringBuilder text = new StringBuilder();
+        char[] single = new char[1];
+
+        while (reader.read(single, 0, 1) != -1) {
+            text.append(single[0]);
+        }
+
+        trickled.close();
+        assertEquals(response, text.toString());
+        assertEquals(response.getBytes("UTF-8").length,
+                trickled.getTransferStats().getWireBytes());
+    }
+
+    @Test
+    public void keepsReturningEndOfStreamAfterTheEnd() throws Exception {
+        Response small = new Response(200, NO_HEADERS,
+                new ByteArrayInputStream("{}".getBytes("UTF-8")), null);
+        Reader reader = small.getReader();
+        char[] buffer = new char[16];
+
+        assertEquals(2, reader.read(buffer));
+        assertEquals(-1, reader.read(buffer));
+        assertEquals(-1, reader.read(buffer));
+        assertEquals(-1, reader.read(buffer, 0, 1));
+        small.close();
+    }
+
+    private static String readAll(Reader reader) throws IOException {
+        StringBuilder text = new StringBuilder();
+        char[] buffer = new char[100];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            text.append(buffer, 0, read);
+        }
+
+        return text.toString();
+    }
+}
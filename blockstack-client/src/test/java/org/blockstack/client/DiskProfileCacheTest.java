@@ -0,0 +1,125 @@
+package org.blockstack.client;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DiskProfileCacheTest {
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("blockstack", "cache");
+        assertTrue(directory.delete());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+
+        directory.delete();
+    }
+
+    @Test
+    public void entriesSurviveReopening() throws IOException {
+        DiskProfileCache cache = new DiskProfileCache(directory);
+        cache.put("alice", "{\"profile\": {}}", false, "\"v1\"", null);
+        cache.put("nobody", "{\"error\": \"Not found\"}", true, null, null);
+        cache.remove("nobody");
+        cache.close();
+
+        cache = new DiskProfileCache(directory);
+        DiskProfileCache.Entry entry = cache.get("alice");
+
+        assertNotNull(entry);
+        assertEquals("{\"profile\": {}}", entry.getJson());
+        assertEquals("\"v1\"", entry.getEtag());
+        assertTrue(entry.isFresh());
+        assertNull(cache.get("nobody"));
+        assertEquals(1, cache.size());
+        cache.close();
+    }
+
+    @Test
+    public void rebuildsIndexFromDataFile() throws IOException {
+        DiskProfileCache cache = new DiskProfileCache(directory);
+        for (int i = 0; i < 1000; i++) {
+            cache.put("user" + i, "{\"n\": " + i + "}", false, null, null);
+        }
+        cache.close();
+
+        RandomAccessFile index = new RandomAccessFile(new File(directory, "profiles.idx"), "rw");
+        index.setLength(10);
+        index.close();
+
+        cache = new DiskProfileCache(directory);
+        assertEquals(1000, cache.size());
+        assertEquals("{\"n\": 999}", cache.get("user999").getJson());
+        cache.close();
+    }
+
+    @Test
+    public void compactionKeepsDataFileBounded() throws IOException {
+        DiskProfileCache cache = new DiskProfileCache(directory, 64 * 1024,
+                DiskProfileCache.DEFAULT_TTL_MILLIS, DiskProfileCache.DEFAULT_NEGATIVE_TTL_MILLIS);
+        StringBuilder profile = new StringBuilder("{\"bio\": \"");
+        for (int i = 0; i < 500; i++) {
+            profile.append('x');
+        }
+        profile.append("\"}");
+
+        for (int i = 0; i < 1000; i++) {
+            cache.put("user" + (i % 300), profile.toString(), false, null, null);
+        }
+
+        assertTrue(cache.getDataFileSize() <= 64 * 1024);
+        assertNotNull(cache.get("user299"));
+        assertFalse(cache.size() == 300);
+        cache.close();
+    }
+
+    @Test
+    public void revalidatesStaleEntriesWithConditionalRequests() throws Exception {
+        ReplayServer server = new ReplayServer();
+        server.record("*", "/*", 200, "{\"alice\": {\"profile\": {\"name\": \"Alice\"}}}");
+        server.setEtag("\"v1\"");
+        server.start();
+        DiskProfileCache cache = new DiskProfileCache(directory, DiskProfileCache.DEFAULT_MAX_BYTES,
+                0, 0);
+
+        try {
+            Blockstack blockstack = new Blockstack("id", "secret",
+                    new HttpURLConnectionTransport(), new Endpoints(server.getBaseUrl()));
+            blockstack.setDiskCache(cache);
+
+            blockstack.lookupUsers(new String[] {"alice"});
+            assertEquals("\"v1\"", cache.get("alice").getEtag());
+
+            server.record("*", "/*", 200, "{}");
+            String revalidated = blockstack.lookupUsers(new String[] {"alice"});
+
+            assertEquals(2, server.getRequestCount());
+            assertEquals("Alice", new JSONObject(revalidated).getJSONObject("alice")
+                    .getJSONObject("profile").getString("name"));
+        } finally {
+            cache.close();
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package org.blockstack.client;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DkimKeyResolverTest {
+    private static final Map<String, List<String>> NO_HEADERS = Collections.emptyMap();
+
+    private KeyServer server;
+    private Blockstack blockstack;
+    private DkimKeyResolver resolver;
+    private volatile long clock;
+
+    @Before
+    public void setUp() {
+        server = new KeyServer();
+        blockstack = new Blockstack("id", "secret", server);
+        resolver = new DkimKeyResolver(blockstack, 1000, 5000, 100) {
+            @Override
+            long now() {
+                return clock;
+            }
+        };
+        blockstack.setDkimKeyResolver(resolver);
+    }
+
+    @Test
+    public void aBurstFromOneDomainCostsOneRequest() throws Exception {
+        server.delayMillis = 100;
+        final CountDownLatch done = new CountDownLatch(20);
+        final AtomicInteger resolved = new AtomicInteger();
+
+        for (int i = 0; i < 20; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    if (blockstack.getDkimKey("Example.com") != null) {
+                        resolved.incrementAndGet();
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(20, resolved.get());
+        assertEquals(1, server.requests.get());
+        assertEquals(1, resolver.size());
+    }
+
+    @Test
+    public void honorsTheRecordTtl() throws Exception {
+        server.ttlSeconds = 60;
+        assertEquals("key1", resolver.resolve("example.com").getPublicKey());
+
+        clock = 59000;
+        assertEquals("key1", resolver.resolve("example.com").getPublicKey());
+        assertEquals(1, server.requests.get());
+    }
+
+    @Test
+    public void readsTheTtlFromCacheControl() throws Exception {
+        server.cacheControl = "public, max-age=30";
+        DkimKey key = resolver.resolve("example.com");
+
+        assertEquals(30, key.getTtlSeconds());
+        assertEquals(30, DkimKeyResolver.maxAgeSeconds("max-age=30"));
+        assertEquals(-1, DkimKeyResolver.maxAgeSeconds("private"));
+        assertEquals(-1, DkimKeyResolver.maxAgeSeconds(null));
+    }
+
+    @Test
+    public void prefetchesKeysAboutToExpire() throws Exception {
+        resolver.resolve("example.com");
+
+        clock = 950;
+        assertEquals("key1", resolver.resolve("example.com").getPublicKey());
+        awaitRequests(2);
+
+        clock = 1500;
+        assertEquals("key2", resolver.resolve("example.com").getPublicKey());
+        assertEquals(1, resolver.getRefreshCount());
+    }
+
+    @Test
+    public void servesStaleKeysWhileRefreshing() throws Exception {
+        resolver.resolve("example.com");
+        server.delayMillis = 200;
+
+        clock = 3000;
+        long start = System.nanoTime();
+        assertEquals("key1", resolver.resolve("example.com").getPublicKey());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 100);
+        assertEquals(1, resolver.getStaleHitCount());
+
+        awaitRequests(2);
+        clock = 10000;
+        server.failing = true;
+        assertNull(resolver.resolve("example.com"));
+    }
+
+    @Test
+    public void remembersDomainsWithoutAKey() throws Exception {
+        server.missing = true;
+
+        assertNull(resolver.resolveOrThrow("unknown.com"));
+        assertNull(resolver.resolveOrThrow("unknown.com"));
+        assertEquals(1, server.requests.get());
+
+        clock = 100;
+        assertNull(resolver.resolveOrThrow("unknown.com"));
+        assertEquals(2, server.requests.get());
+    }
+
+    @Test
+    public void dropsKeysTooOldToServe() throws Exception {
+        resolver.resolve("old.com");
+
+        // Past the TTL and the stale window.
+        clock = 6000;
+        resolver.resolve("new.com");
+
+        assertEquals(1, resolver.size());
+        assertEquals(2, server.requests.get());
+    }
+
+    @Test
+    public void staysWithinItsSize() throws Exception {
+        DkimKeyResolver bounded = new DkimKeyResolver(blockstack, 1000, 5000, 100, 10);
+
+        for (int i = 0; i < 50; i++) {
+            assertEquals("key" + (i + 1), bounded.resolve("domain" + i + ".com").getPublicKey());
+        }
+
+        assertTrue(String.valueOf(bounded.size()), bounded.size() <= 10);
+        assertEquals("key50", bounded.resolve("domain49.com").getPublicKey());
+        bounded.shutdown();
+    }
+
+    private void awaitRequests(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (server.requests.get() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+
+        // Let the refresh store its result.
+        Thread.sleep(50);
+    }
+
+    /**
+     * Answers with a new key on every request, numbered from 1.
+     */
+    private static class KeyServer implements Transport {
+        final AtomicInteger requests = new AtomicInteger();
+        volatile long delayMillis;
+        volatile long ttlSeconds = -1;
+        volatile String cacheControl;
+        volatile boolean missing;
+        volatile boolean failing;
+
+        @Override
+        public Response execute(Request request) throws IOException {
+            int number = requests.incrementAndGet();
+
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+
+            if (failing) {
+                throw new IOException("Network is unreachable");
+            }
+
+            if (missing) {
+                return new Response(404, NO_HEADERS, new ByteArrayInputStream(new byte[0]), null);
+            }
+
+            String json = "{\"public_key\": \"key" + number + "\", \"key_type\": \"rsa\""
+                    + (ttlSeconds >= 0 ? ", \"ttl\": " + ttlSeconds : "") + "}";
+            Map<String, List<String>> headers = NO_HEADERS;
+            if (cacheControl != null) {
+                headers = Collections.singletonMap("Cache-Control",
+                        Collections.singletonList(cacheControl));
+            }
+
+            return new Response(200, headers,
+                    new ByteArrayInputStream(json.getBytes("UTF-8")), null);
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.blockstack.client;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JsonPullParserTest {
+    private static final String DOCUMENT = "{\"muneeb\": {\"profile\": {\"name\": "
+            + "{\"formatted\": \"Muneeb \\\"Ali\\\" \\u00e9\"}, \"age\": 30, \"ratio\": -1.5e2, "
+            + "\"verified\": true, \"website\": null, \"accounts\": [1, [], {}, \"x\"]}}}";
+
+    @Test
+    public void readsTokensAcrossBufferRefills() throws IOException {
+        JsonPullParser parser = new JsonPullParser(new StringReader(DOCUMENT), new char[3]);
+
+        parser.beginObject();
+        assertEquals("muneeb", parser.nextName());
+        parser.beginObject();
+        assertEquals("profile", parser.nextName());
+        parser.beginObject();
+        assertEquals("name", parser.nextName());
+        parser.beginObject();
+        assertEquals("formatted", parser.nextName());
+        assertEquals("Muneeb \"Ali\" \u00e9", parser.nextString());
+        parser.endObject();
+        assertEquals("age", parser.nextName());
+        assertEquals(30, parser.nextLong());
+        assertEquals("ratio", parser.nextName());
+        assertEquals(-150.0, parser.nextDouble(), 0);
+        assertEquals("verified", parser.nextName());
+        assertTrue(parser.nextBoolean());
+        assertEquals("website", parser.nextName());
+        parser.nextNull();
+        assertEquals("accounts", parser.nextName());
+        parser.skipValue();
+        assertFalse(parser.hasNext());
+        parser.endObject();
+        parser.endObject();
+        parser.endObject();
+        assertEquals(JsonPullParser.Token.END_DOCUMENT, parser.peek());
+    }
+
+    @Test
+    public void capturesRawValuesVerbatim() throws IOException {
+        JsonPullParser parser = new JsonPullParser(new StringReader(DOCUMENT), new char[5]);
+
+        parser.beginObject();
+        parser.nextName();
+        String raw = parser.readRawValue();
+
+        assertEquals(DOCUMENT.substring(DOCUMENT.indexOf(": ") + 2, DOCUMENT.length() - 1), raw);
+        assertFalse(parser.hasNext());
+    }
+
+    @Test
+    public void materializesObjects() throws IOException {
+        JSONObject json = new JsonPullParser(new StringReader(DOCUMENT)).readObject();
+        JSONObject profile = json.getJSONObject("muneeb").getJSONObject("profile");
+
+        assertEquals(30, profile.getLong("age"));
+        assertEquals(4, profile.getJSONArray("accounts").length());
+        assertTrue(profile.isNull("website"));
+    }
+
+    @Test
+    public void rejectsMalformedDocuments() {
+        String[] documents = {"{\"a\" 1}", "[1 2]", "{\"a\": tru}", "{\"a\": \"b}", "{} {}"};
+
+        for (String document : documents) {
+            try {
+                new JsonPullParser(new StringReader(document)).skipValue();
+                JsonPullParser parser = new JsonPullParser(new StringReader(document));
+                parser.skipValue();
+                parser.peek();
+                fail("Parsed " + document);
+            } catch (IOException expected) {
+                // Expected
+            }
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package org.blockstack.client;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LoadBalancingTransportTest {
+    private static final String FAST = "https://fast.example.com/v1";
+    private static final String SLOW = "https://slow.example.com/v1";
+    private static final Map<String, List<String>> NO_HEADERS = Collections.emptyMap();
+
+    @Test
+    public void prefersTheFasterNode() throws Exception {
+        FakeNodes fake = new FakeNodes();
+        fake.delays.put("slow.example.com", 20L);
+        LoadBalancingTransport transport =
+                new LoadBalancingTransport(fake, Arrays.asList(FAST, SLOW));
+
+        for (int i = 0; i < 100; i++) {
+            transport.execute(Request.get(FAST + "/users/itsProf")).close();
+        }
+
+        int fast = fake.count("fast.example.com");
+        int slow = fake.count("slow.example.com");
+        assertTrue("fast=" + fast + " slow=" + slow, fast > slow * 4);
+    }
+
+    @Test
+    public void rewritesOnlyTheBaseUrl() throws Exception {
+        FakeNodes fake = new FakeNodes();
+        fake.failing.put("fast.example.com", true);
+        LoadBalancingTransport transport =
+                new LoadBalancingTransport(fake, Arrays.asList(FAST, SLOW), 1, 60000);
+
+        LoadBalancingTransport.Node fast = transport.getNodes().get(0);
+        for (int i = 0; i < 20 && !fast.isEjected(); i++) {
+            try {
+                transport.execute(Request.get(FAST + "/users/itsProf")).close();
+            } catch (IOException e) {
+                // Ejects the fast node.
+            }
+        }
+
+        Request request = Request.get(FAST + "/users/itsProf").header("X-Test", "1");
+        transport.execute(request).close();
+
+        assertEquals(SLOW + "/users/itsProf", fake.lastRequest.getUrl());
+        assertEquals("1", fake.lastRequest.getHeaders().get("X-Test"));
+    }
+
+    @Test
+    public void ejectsFailingNodesAndProbesThemAgain() throws Exception {
+        FakeNodes fake = new FakeNodes();
+        fake.failing.put("slow.example.com", true);
+        final long[] clock = {0};
+        LoadBalancingTransport transport =
+                new LoadBalancingTransport(fake, Arrays.asList(FAST, SLOW), 1, 1000) {
+                    @Override
+                    long now() {
+                        return clock[0];
+                    }
+                };
+
+        int failures = 0;
+        for (int i = 0; i < 50; i++) {
+            try {
+                transport.execute(Request.get(FAST + "/users/itsProf")).close();
+            } catch (IOException e) {
+                failures++;
+            }
+        }
+
+        LoadBalancingTransport.Node slow = transport.getNodes().get(1);
+        assertEquals(1, failures);
+        assertTrue(slow.isEjected());
+        assertEquals(1, fake.count("slow.example.com"));
+
+        // Once the ejection ends, the next request probes the node and brings it back.
+        fake.failing.remove("slow.example.com");
+        clock[0] = 1000;
+        int before = fake.count("slow.example.com");
+        transport.execute(Request.get(FAST + "/users/itsProf")).close();
+
+        assertEquals(before + 1, fake.count("slow.example.com"));
+        assertFalse(slow.isEjected());
+    }
+
+    @Test
+    public void failsFastWhileEveryNodeIsEjected() throws Exception {
+        FakeNodes fake = new FakeNodes();
+        fake.failing.put("fast.example.com", true);
+        fake.failing.put("slow.example.com", true);
+        LoadBalancingTransport transport =
+                new LoadBalancingTransport(fake, Arrays.asList(FAST, SLOW), 1, 60000);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                transport.execute(Request.get(FAST + "/users/itsProf")).close();
+                fail("Expected the node to fail");
+            } catch (CircuitOpenException e) {
+                throw e;
+            } catch (IOException e) {
+                // Ejects a node.
+            }
+        }
+
+        try {
+            transport.execute(Request.get(FAST + "/users/itsProf")).close();
+            fail("Expected the request to fail fast");
+        } catch (CircuitOpenException e) {
+            assertTrue(e.getRetryAfterMillis() > 0);
+        }
+
+        assertEquals(1, fake.count("fast.example.com"));
+        assertEquals(1, fake.count("slow.example.com"));
+    }
+
+    @Test
+    public void routesClientRequestsAcrossServers() throws Exception {
+        ReplayServer first = new ReplayServer();
+        first.record("*", "/*", 200, "{\"itsProf\": {\"profile\": {}}}");
+        first.start();
+        ReplayServer second = new ReplayServer();
+        second.record("*", "/*", 200, "{\"itsProf\": {\"profile\": {}}}");
+        second.start();
+
+        try {
+            Blockstack blockstack = new Blockstack("id", "secret",
+                    new Endpoints(first.getBaseUrl(), second.getBaseUrl()));
+
+            for (int i = 0; i < 10; i++) {
+                assertNotNull(blockstack.lookupUsers(new String[]{"itsProf"}));
+            }
+
+            assertTrue(first.getRequestCount() > 0);
+            assertTrue(second.getRequestCount() > 0);
+
+            first.stop();
+
+            for (int i = 0; i < 10; i++) {
+                assertNotNull(blockstack.lookupUsers(new String[]{"itsProf"}));
+            }
+        } finally {
+            first.stop();
+            second.stop();
+        }
+    }
+
+    /**
+     * Answers requests per host, optionally slowly or with a connection failure.
+     */
+    private static class FakeNodes implements Transport {
+        final Map<String, Long> delays = new ConcurrentHashMap<>();
+        final Map<String, Boolean> failing = new ConcurrentHashMap<>();
+        private final Map<String, AtomicInteger> counts = new ConcurrentHashMap<>();
+        volatile Request lastRequest;
+
+        int count(String host) {
+            AtomicInteger count = counts.get(host);
+            return count != null ? count.get() : 0;
+        }
+
+        @Override
+        public Response execute(Request request) throws IOException {
+            String host = new java.net.URL(request.getUrl()).getHost();
+            lastRequest = request;
+
+            AtomicInteger count = counts.get(host);
+            if (count == null) {
+                counts.put(host, count = new AtomicInteger());
+            }
+            count.incrementAndGet();
+
+            Long delay = delays.get(host);
+            if (delay != null) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+
+            if (failing.containsKey(host)) {
+                throw new IOException("Connection refused");
+            }
+
+            return new Response(200, NO_HEADERS, new ByteArrayInputStream(new byte[0]), null);
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+}
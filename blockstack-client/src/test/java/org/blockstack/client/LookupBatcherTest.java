@@ -0,0 +1,102 @@
+package org.blockstack.client;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LookupBatcherTest {
+    private static final String RESPONSE = "{\"alice\": {\"profile\": {\"name\": \"Alice\"}}, "
+            + "\"bob\": {\"profile\": {\"name\": \"Bob\"}}, "
+            + "\"carol\": {\"error\": \"Not found\"}}";
+
+    private ReplayServer server;
+    private LookupBatcher batcher;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new ReplayServer();
+        server.record("*", "/*", 200, RESPONSE);
+        server.start();
+        Blockstack blockstack = new Blockstack("id", "secret",
+                new HttpURLConnectionTransport(),
+                new Endpoints(server.getBaseUrl()));
+        batcher = new LookupBatcher(blockstack, 100, LookupBatcher.DEFAULT_MAX_URL_LENGTH, 2);
+    }
+
+    @After
+    public void tearDown() {
+        batcher.shutdown();
+        server.stop();
+    }
+
+    @Test
+    public void coalescesOverlappingLookupsIntoOneRequest() throws Exception {
+        BlockstackFuture<JSONObject> first = batcher.lookup("alice", "bob");
+        BlockstackFuture<JSONObject> second = batcher.lookup("bob", "carol");
+        BlockstackFuture<JSONObject> third = batcher.lookup("alice");
+
+        JSONObject firstResult = first.get(5, TimeUnit.SECONDS);
+        JSONObject secondResult = second.get(5, TimeUnit.SECONDS);
+        JSONObject thirdResult = third.get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, server.getRequestCount());
+        assertEquals(2, firstResult.length());
+        assertEquals("Bob", secondResult.getJSONObject("bob").getJSONObject("profile")
+                .getString("name"));
+        assertTrue(secondResult.getJSONObject("carol").has("error"));
+        assertEquals(1, thirdResult.length());
+    }
+
+    @Test
+    public void sendsQueuedLookupsOnShutdownAndRejectsLaterOnes() throws Exception {
+        BlockstackFuture<JSONObject> queued = batcher.lookup("alice");
+        batcher.shutdown();
+
+        assertEquals(1, queued.get(5, TimeUnit.SECONDS).length());
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                batcher.lookup("bob").get(5, TimeUnit.SECONDS);
+                fail("Expected a rejection");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+        }
+    }
+
+    @Test
+    public void splitsLongUsernameListsIntoUrlSafeChunks() {
+        List<String> usernames = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            usernames.add("user" + i);
+        }
+
+        List<String[]> chunks = batcher.chunk(usernames);
+        int total = 0;
+
+        for (String[] chunk : chunks) {
+            StringBuilder joined = new StringBuilder();
+            for (String username : chunk) {
+                joined.append(joined.length() > 0 ? "%2C" : "").append(username);
+            }
+
+            assertTrue((server.getBaseUrl() + "/users").length() + 1 + joined.length()
+                    <= LookupBatcher.DEFAULT_MAX_URL_LENGTH);
+            total += chunk.length;
+        }
+
+        assertTrue(chunks.size() > 1);
+        assertEquals(1000, total);
+    }
+}
@@ -0,0 +1,150 @@
+package org.blockstack.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsTest {
+    private static final String USER = "{\"itsProf\": {\"profile\": {\"name\": \"Jorge\"}}}";
+
+    private ReplayServer server;
+    private Blockstack blockstack;
+    private MetricsRegistry registry;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new ReplayServer();
+        server.record("*", "/*", 200, USER);
+        server.start();
+        registry = new MetricsRegistry();
+        blockstack = new Blockstack("id", "secret", new HttpURLConnectionTransport(),
+                new Endpoints(server.getBaseUrl()));
+        blockstack.setMetricsListener(registry);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void histogramReportsPercentilesWithinItsPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i, TimeUnit.MILLISECONDS);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000, histogram.getMax(TimeUnit.MILLISECONDS));
+        assertEquals(500, histogram.getMean(TimeUnit.MILLISECONDS));
+        assertWithin(500, histogram.getValueAtPercentile(50, TimeUnit.MILLISECONDS));
+        assertWithin(990, histogram.getValueAtPercentile(99, TimeUnit.MILLISECONDS));
+        assertEquals(1000, histogram.getValueAtPercentile(100, TimeUnit.MILLISECONDS));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(99, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void bucketsCoverTheirValues() {
+        for (long value = 0; value < 1 << 20; value += 7) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertTrue(value <= LatencyHistogram.highestEquivalentValue(index));
+            assertTrue(index == 0 || value > LatencyHistogram.highestEquivalentValue(index - 1));
+        }
+    }
+
+    @Test
+    public void recordsEachOperationWithItsPhases() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(blockstack.lookupUsers(new String[]{"itsProf"}));
+        }
+        assertNotNull(blockstack.searchUserProfiles("itsProf"));
+
+        assertEquals(Arrays.asList("lookupUsers", "searchUserProfiles"),
+                Arrays.asList(registry.getOperations().toArray()));
+
+        MetricsRegistry.OperationStats lookups = registry.getOperationStats("lookupUsers");
+        assertEquals(3, lookups.getRequestCount());
+        assertEquals(0, lookups.getErrorCount());
+        assertEquals(3 * USER.length(), lookups.getBytesIn());
+        assertEquals(3, lookups.getLatency().getCount());
+
+        for (RequestMetrics.Phase phase : Arrays.asList(RequestMetrics.Phase.CONNECT,
+                RequestMetrics.Phase.TIME_TO_FIRST_BYTE, RequestMetrics.Phase.BODY,
+                RequestMetrics.Phase.PARSE)) {
+            assertEquals(phase.name(), 3, lookups.getPhaseLatency(phase).getCount());
+        }
+
+        // Only the first lookup opened a connection; the others reused it.
+        assertEquals(1, lookups.getPhaseLatency(RequestMetrics.Phase.DNS).getCount());
+
+        // Plain HTTP has no handshake to time.
+        assertEquals(0, lookups.getPhaseLatency(RequestMetrics.Phase.TLS).getCount());
+    }
+
+    @Test
+    public void measuresTimeToFirstByte() throws Exception {
+        final RequestMetrics[] last = new RequestMetrics[1];
+        blockstack.setMetricsListener(new MetricsRegistry(new MetricsListener() {
+            @Override
+            public void onRequestFinished(RequestMetrics metrics) {
+                last[0] = metrics;
+            }
+        }));
+        server.setLatency(50, 0);
+
+        assertNotNull(blockstack.getDkimPublicKey("onename.com"));
+
+        RequestMetrics metrics = last[0];
+        assertEquals("getDkimPublicKey", metrics.getOperation());
+        assertEquals(200, metrics.getStatusCode());
+        assertEquals(1, metrics.getAttempts());
+        assertTrue(metrics.isSuccessful());
+        assertTrue(metrics.getDuration(RequestMetrics.Phase.TIME_TO_FIRST_BYTE,
+                TimeUnit.MILLISECONDS) >= 50);
+        assertTrue(metrics.getTotalDuration(TimeUnit.MILLISECONDS) >= 50);
+        assertNull(metrics.getErrorType());
+    }
+
+    @Test
+    public void countsErrorsByType() throws Exception {
+        server.stop();
+
+        assertNull(blockstack.getUnspentOutputs("1abc"));
+        assertNull(blockstack.getUnspentOutputs("1abc"));
+
+        MetricsRegistry.OperationStats stats = registry.getOperationStats("getUnspentOutputs");
+        assertEquals(2, stats.getRequestCount());
+        assertEquals(2, stats.getErrorCount());
+
+        Map<String, Long> errors = stats.getErrorCounts();
+        assertEquals(Long.valueOf(2), errors.get("ConnectException"));
+    }
+
+    @Test
+    public void measuresNothingWithoutAListener() throws Exception {
+        blockstack.setMetricsListener(null);
+
+        assertNotNull(blockstack.lookupUsers(new String[]{"itsProf"}));
+        assertFalse(registry.getOperations().contains("lookupUsers"));
+        assertEquals(MetricsListener.NONE, blockstack.getMetricsListener());
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected about " + expected + " but was " + actual,
+                Math.abs(actual - expected) <= expected / 16 + 1);
+    }
+}
@@ -0,0 +1,198 @@
+package org.blockstack.client;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NameOwnershipIndexTest {
+    private static final Map<String, List<String>> NO_HEADERS = Collections.emptyMap();
+
+    private NameServer server;
+    private Blockstack blockstack;
+    private long clock;
+    private NameOwnershipIndex index;
+
+    @Before
+    public void setUp() {
+        server = new NameServer();
+        server.own("addr1", "alice", "bob");
+        server.own("addr2", "carol");
+        blockstack = new Blockstack("id", "secret", server);
+        index = newIndex(NameOwnershipIndex.DEFAULT_MAX_BYTES);
+        blockstack.setNameIndex(index);
+    }
+
+    @Test
+    public void answersBothDirectionsFromResults() {
+        blockstack.getOwnedNames("addr1");
+        blockstack.lookupUserProfiles(new String[]{"carol"});
+        int requests = server.requests.get();
+
+        assertEquals(new LinkedHashSet<>(Arrays.asList("alice", "bob")), index.getNames("addr1"));
+        assertEquals("addr1", index.getOwner("bob"));
+        assertEquals("addr2", index.getOwner("carol"));
+        // Only carol is known for addr2, so its names are not answered.
+        assertNull(index.getNames("addr2"));
+        assertNull(index.getOwner("dave"));
+        assertEquals(1, index.getNames(Arrays.asList("addr1", "addr2")).size());
+        assertEquals(requests, server.requests.get());
+    }
+
+    @Test
+    public void movesTransferredNames() {
+        blockstack.getOwnedNames("addr1");
+        blockstack.getOwnedNames("addr2");
+
+        server.own("addr1", "alice");
+        server.own("addr2", "carol", "bob");
+        blockstack.getOwnedNames("addr2");
+
+        assertEquals("addr2", index.getOwner("bob"));
+        assertEquals(Collections.singleton("alice"), index.getNames("addr1"));
+        assertEquals(3, index.getNameCount());
+    }
+
+    @Test
+    public void refreshesOnlyStaleEntries() {
+        index.track(Arrays.asList("addr1", "addr2"));
+        assertEquals(2, index.refreshStale());
+        assertEquals(Collections.singleton("carol"), index.getNames("addr2"));
+
+        clock += 1000;
+        blockstack.getOwnedNames("addr1");
+        server.own("addr2", "carol", "dave");
+        int requests = server.requests.get();
+
+        clock += NameOwnershipIndex.DEFAULT_TTL_MILLIS - 500;
+        assertEquals(1, index.refreshStale());
+        assertEquals(requests + 1, server.requests.get());
+        assertEquals("addr2", index.getOwner("dave"));
+        assertEquals(0, index.refreshStale());
+    }
+
+    @Test
+    public void refreshesNamesKnownFromLookups() {
+        blockstack.lookupUserProfiles(new String[]{"alice"});
+        server.own("addr1", "bob");
+        server.own("addr3", "alice");
+
+        clock += NameOwnershipIndex.DEFAULT_TTL_MILLIS;
+        // addr1 from its owned names, then addr3 from the lookup of alice.
+        assertEquals(2, index.refreshStale());
+        assertEquals("addr3", index.getOwner("alice"));
+        assertEquals(Collections.singleton("bob"), index.getNames("addr1"));
+    }
+
+    @Test
+    public void completesTrackedAddressesAlreadyKnownFromLookups() {
+        blockstack.lookupUserProfiles(new String[]{"alice"});
+        assertNull(index.getNames("addr1"));
+
+        index.track(Collections.singletonList("addr1"));
+        assertEquals(1, index.refreshStale());
+
+        assertEquals(new LinkedHashSet<>(Arrays.asList("alice", "bob")), index.getNames("addr1"));
+        assertEquals("addr1", index.getOwner("bob"));
+    }
+
+    @Test
+    public void staysWithinItsMemoryBudget() {
+        index = newIndex(2048);
+        blockstack.setNameIndex(index);
+
+        for (int i = 0; i < 50; i++) {
+            server.own("address" + i, "name" + i + "a", "name" + i + "b");
+            blockstack.getOwnedNames("address" + i);
+        }
+
+        assertTrue(index.getSizeInBytes() <= 2048);
+        assertTrue(index.getEvictionCount() > 0);
+        assertEquals(2 * index.size(), index.getNameCount());
+        assertEquals("address49", index.getOwner("name49a"));
+        assertNull(index.getOwner("name0a"));
+
+        index.clear();
+        assertEquals(0, index.getSizeInBytes());
+    }
+
+    private NameOwnershipIndex newIndex(long maxBytes) {
+        return new NameOwnershipIndex(blockstack, maxBytes,
+                NameOwnershipIndex.DEFAULT_TTL_MILLIS, 10) {
+            @Override
+            long now() {
+                return clock;
+            }
+        };
+    }
+
+    /**
+     * Answers name and user lookups from an in-memory ownership table.
+     */
+    private static class NameServer implements Transport {
+        final Map<String, List<String>> names = new ConcurrentHashMap<>();
+        final AtomicInteger requests = new AtomicInteger();
+
+        void own(String address, String... owned) {
+            names.put(address, Arrays.asList(owned));
+        }
+
+        @Override
+        public Response execute(Request request) throws IOException {
+            requests.incrementAndGet();
+            String url = request.getUrl();
+            StringBuilder json = new StringBuilder("{");
+
+            if (url.endsWith("/names")) {
+                String address = url.substring(url.indexOf("/addresses/") + 11,
+                        url.lastIndexOf('/'));
+                json.append("\"names\": [");
+                List<String> owned = names.get(address);
+
+                for (int i = 0; owned != null && i < owned.size(); i++) {
+                    json.append(i > 0 ? ", \"" : "\"").append(owned.get(i)).append('"');
+                }
+
+                json.append(']');
+            } else {
+                String[] usernames = URLDecoder.decode(
+                        url.substring(url.lastIndexOf('/') + 1), "UTF-8").split(",");
+
+                for (int i = 0; i < usernames.length; i++) {
+                    json.append(i > 0 ? ", \"" : "\"").append(usernames[i]).append("\": ")
+                            .append(user(usernames[i]));
+                }
+            }
+
+            byte[] body = json.append('}').toString().getBytes("UTF-8");
+            return new Response(200, NO_HEADERS, new ByteArrayInputStream(body), null);
+        }
+
+        private String user(String username) {
+            for (Map.Entry<String, List<String>> entry : names.entrySet()) {
+                if (entry.getValue().contains(username)) {
+                    return "{\"profile\": {}, \"owner_address\": \"" + entry.getKey() + "\"}";
+                }
+            }
+
+            return "{\"error\": \"Not found\"}";
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+}
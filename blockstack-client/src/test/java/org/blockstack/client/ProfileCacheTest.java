@@ -0,0 +1,144 @@
+package org.blockstack.client;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class ProfileCacheTest {
+    private static class ManualClockCache extends ProfileCache {
+        long time = 1000;
+
+        ManualClockCache(int maxEntries, long maxBytes) {
+            super(maxEntries, maxBytes, 60000, 5000);
+        }
+
+        @Override
+        long now() {
+            return time;
+        }
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedEntries() {
+        ProfileCache cache = new ManualClockCache(2, Long.MAX_VALUE);
+        cache.put("alice", "{}", false);
+        cache.put("bob", "{}", false);
+        cache.get("alice");
+        cache.put("carol", "{}", false);
+
+        assertNotNull(cache.get("alice"));
+        assertNull(cache.get("bob"));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void boundsCacheByBytes() {
+        ProfileCache cache = new ManualClockCache(100, 1024);
+        StringBuilder profile = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            profile.append('x');
+        }
+
+        for (int i = 0; i < 10; i++) {
+            cache.put("user" + i, profile.toString(), false);
+        }
+
+        assertEquals(2, cache.size());
+        assertEquals(8, cache.getEvictionCount());
+    }
+
+    @Test
+    public void expiresNegativeEntriesSooner() {
+        ManualClockCache cache = new ManualClockCache(10, Long.MAX_VALUE);
+        cache.put("alice", "{\"profile\": {}}", false);
+        cache.put("nobody", "{\"error\": \"Not found\"}", true);
+
+        cache.time += 10000;
+
+        assertNotNull(cache.get("alice"));
+        assertNull(cache.get("nobody"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void repeatLookupsAreServedFromCache() throws Exception {
+        ReplayServer server = new ReplayServer();
+        server.record("*", "/*", 200, "{\"alice\": {\"profile\": {\"name\": \"Alice\"}}, "
+                + "\"nobody\": {\"error\": \"Not found\"}}");
+        server.start();
+
+        try {
+            Blockstack blockstack = new Blockstack("id", "secret",
+                    new HttpURLConnectionTransport(), new Endpoints(server.getBaseUrl()));
+            blockstack.setProfileCache(new ProfileCache());
+
+            String first = blockstack.lookupUsers(new String[] {"alice", "nobody"});
+            String second = blockstack.lookupUsers(new String[] {"nobody", "alice"});
+
+            assertEquals(1, server.getRequestCount());
+            assertEquals("Alice", new JSONObject(second).getJSONObject("alice")
+                    .getJSONObject("profile").getString("name"));
+            assertEquals(new JSONObject(first).length(), new JSONObject(second).length());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void repeatedUsernamesAppearOnce() throws Exception {
+        ReplayServer server = new ReplayServer();
+        server.record("*", "/*", 200, "{\"alice\": {\"profile\": {\"name\": \"Alice\"}}, "
+                + "\"bob\": {\"profile\": {\"name\": \"Bob\"}}}");
+        server.start();
+
+        try {
+            Blockstack blockstack = new Blockstack("id", "secret",
+                    new HttpURLConnectionTransport(), new Endpoints(server.getBaseUrl()));
+            blockstack.setProfileCache(new ProfileCache());
+
+            // Misses first, then cached users.
+            for (int i = 0; i < 2; i++) {
+                String response = blockstack.lookupUsers(new String[] {"alice", " alice", "bob"});
+                assertEquals(2, new JSONObject(response).length());
+            }
+
+            assertEquals(1, server.getRequestCount());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void cachedLookupsMatchTheServerLikeUncachedOnes() throws Exception {
+        ReplayServer server = new ReplayServer();
+        server.record("*", "/*", 200, "{\"alice\": {\"profile\": {\"name\": \"Alice\"}}, "
+                + "\"bob\": {\"profile\": {\"name\": \"Bob\"}}}");
+        server.start();
+
+        try {
+            Blockstack blockstack = new Blockstack("id", "secret",
+                    new HttpURLConnectionTransport(), new Endpoints(server.getBaseUrl()));
+            blockstack.setProfileCache(new ProfileCache());
+
+            // The server keys users in lower case.
+            JSONObject users =
+                    new JSONObject(blockstack.lookupUsers(new String[] {"Alice", "bob"}));
+            assertEquals("Alice", users.getJSONObject("Alice").getJSONObject("profile")
+                    .getString("name"));
+            assertEquals(2, users.length());
+
+            assertEquals(1, blockstack.lookupUserProfiles(new String[] {"bob", "bob "}).size());
+
+            String error = "{\"error\": \"Invalid username\"}";
+            server.record("*", "/*", 200, error);
+            assertEquals(error, blockstack.lookupUsers(new String[] {"carol", "dave"}));
+            assertEquals(error, blockstack.lookupUsers(new String[] {"erin"}));
+        } finally {
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package org.blockstack.client;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ProfileSyncSchedulerTest {
+    private static final Map<String, List<String>> NO_HEADERS = Collections.emptyMap();
+    private static final long MAX_AGE = 1000;
+
+    private ProfileServer server;
+    private Blockstack blockstack;
+    private ProfileSyncScheduler sync;
+    private long clock;
+
+    @Before
+    public void setUp() {
+        server = new ProfileServer();
+        blockstack = new Blockstack("id", "secret", server);
+        blockstack.setProfileCache(new ProfileCache());
+        sync = newScheduler(2, 2);
+        blockstack.setSyncScheduler(sync);
+    }
+
+    @Test
+    public void refreshesTheWorkingSetInBatchesWithinTheBudget() {
+        List<String> usernames = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            usernames.add("user" + i);
+        }
+        sync.follow(usernames);
+
+        assertEquals(4, sync.refreshStale());
+        assertEquals(2, server.lookups.size());
+        assertEquals(2, server.lookups.get(0).size());
+
+        assertEquals(2, sync.refreshStale());
+        assertEquals(3, server.lookups.size());
+        assertEquals(0, sync.refreshStale());
+        assertEquals(6, sync.getRefreshCount());
+
+        // Every followed profile is now answered locally.
+        String json = blockstack.lookupUsers(usernames.toArray(new String[usernames.size()]));
+        assertNotNull(json);
+        assertEquals(3, server.lookups.size());
+
+        clock += MAX_AGE;
+        assertEquals(4, sync.refreshStale());
+    }
+
+    @Test
+    public void refreshesTheStalestAndMostViewedFirst() {
+        sync = newScheduler(1, 1);
+        blockstack.setSyncScheduler(sync);
+        sync.follow(Arrays.asList("old", "viewed", "recent"));
+        for (int i = 0; i < 3; i++) {
+            sync.refreshStale();
+        }
+        server.lookups.clear();
+
+        clock = 2 * MAX_AGE;
+        sync.recordRefresh("viewed");
+        sync.recordRefresh("recent");
+        clock = 3 * MAX_AGE;
+        for (int i = 0; i < 5; i++) {
+            sync.recordAccess("viewed");
+        }
+
+        // "old" is three times as old as "viewed", which was viewed five times since.
+        sync.refreshStale();
+        assertEquals(Collections.singletonList("viewed"), server.lookups.get(0));
+        sync.refreshStale();
+        assertEquals(Collections.singletonList("old"), server.lookups.get(1));
+        sync.refreshStale();
+        assertEquals(Collections.singletonList("recent"), server.lookups.get(2));
+    }
+
+    @Test
+    public void regularLookupsCountAsRefreshes() {
+        sync.follow(Arrays.asList("alice", "bob"));
+        blockstack.lookupUsers(new String[] {"alice"});
+        server.lookups.clear();
+
+        sync.refreshStale();
+
+        assertEquals(Collections.singletonList(Collections.singletonList("bob")), server.lookups);
+    }
+
+    @Test
+    public void honorsTheNetworkPolicyAndStopsOnFailures() {
+        sync.follow(Arrays.asList("alice", "bob", "carol", "dave"));
+        final boolean[] allowed = {false};
+        sync.setNetworkPolicy(new NetworkPolicy() {
+            @Override
+            public boolean allowsBackgroundRequests() {
+                return allowed[0];
+            }
+        });
+
+        assertEquals(0, sync.refreshStale());
+        assertEquals(1, sync.getSkippedRunCount());
+        assertTrue(server.lookups.isEmpty());
+
+        allowed[0] = true;
+        server.failing = true;
+        assertEquals(0, sync.refreshStale());
+        assertEquals(1, sync.getRequestCount());
+
+        server.failing = false;
+        assertEquals(4, sync.refreshStale());
+    }
+
+    @Test
+    public void runsOnABackgroundWorker() throws Exception {
+        final CountDownLatch synced = new CountDownLatch(1);
+        sync = new ProfileSyncScheduler(blockstack) {
+            @Override
+            public int refreshStale() {
+                int refreshed = super.refreshStale();
+                if (refreshed > 0) {
+                    synced.countDown();
+                }
+                return refreshed;
+            }
+        };
+        blockstack.setSyncScheduler(sync);
+        sync.follow(Collections.singletonList("alice"));
+
+        sync.start(1, TimeUnit.HOURS);
+        assertTrue(synced.await(5, TimeUnit.SECONDS));
+        sync.shutdown();
+
+        assertEquals(1, server.lookups.size());
+    }
+
+    private ProfileSyncScheduler newScheduler(int batchSize, int maxRequestsPerRun) {
+        return new ProfileSyncScheduler(blockstack, MAX_AGE, batchSize, maxRequestsPerRun) {
+            @Override
+            long now() {
+                return clock;
+            }
+        };
+    }
+
+    /**
+     * Answers every lookup with an empty profile per user, recording the usernames asked for.
+     */
+    private static class ProfileServer implements Transport {
+        final List<List<String>> lookups = new CopyOnWriteArrayList<>();
+        volatile boolean failing;
+
+        @Override
+        public Response execute(Request request) throws IOException {
+            if (failing) {
+                throw new IOException("Network is unreachable");
+            }
+
+            String url = request.getUrl();
+            List<String> usernames = Arrays.asList(URLDecoder.decode(
+                    url.substring(url.lastIndexOf('/') + 1), "UTF-8").split(","));
+            lookups.add(usernames);
+
+            StringBuilder json = new StringBuilder("{");
+            for (int i = 0; i < usernames.size(); i++) {
+                json.append(i > 0 ? ", \"" : "\"").append(usernames.get(i))
+                        .append("\": {\"profile\": {}}");
+            }
+
+            byte[] body = json.append('}').toString().getBytes("UTF-8");
+            return new Response(200, NO_HEADERS, new ByteArrayInputStream(body), null);
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+}
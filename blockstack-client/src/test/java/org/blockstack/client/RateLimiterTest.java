@@ -0,0 +1,260 @@
+package org.blockstack.client;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RateLimiterTest {
+    private static final Map<String, List<String>> NO_HEADERS = Collections.emptyMap();
+
+    @Test
+    public void sendsABurstThenTheSteadyRate() throws Exception {
+        RateLimiter limiter = new RateLimiter(50, 5);
+        long start = System.nanoTime();
+
+        for (int i = 0; i < 5; i++) {
+            limiter.acquire(Request.Priority.NORMAL);
+        }
+        long burstMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire(Request.Priority.NORMAL);
+        }
+        long totalMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue("burst took " + burstMillis + " ms", burstMillis < 50);
+        // Ten more permits at 50 per second.
+        assertTrue("took " + totalMillis + " ms", totalMillis >= 180);
+    }
+
+    @Test
+    public void higherPriorityRequestsGoFirst() throws Exception {
+        final RateLimiter limiter = new RateLimiter(5, 1);
+        limiter.acquire(Request.Priority.NORMAL);
+
+        final List<Request.Priority> order = new CopyOnWriteArrayList<>();
+        Thread background = waitFor(limiter, Request.Priority.LOW, order);
+        awaitQueueLength(limiter, 1);
+        Thread interactive = waitFor(limiter, Request.Priority.HIGH, order);
+        awaitQueueLength(limiter, 2);
+
+        background.join(5000);
+        interactive.join(5000);
+
+        assertEquals(Arrays.asList(Request.Priority.HIGH, Request.Priority.LOW), order);
+    }
+
+    @Test
+    public void throttlingPausesAndSlowsDownUntilRequestsSucceedAgain() throws Exception {
+        RateLimiter limiter = new RateLimiter(100, 10);
+
+        limiter.onThrottled(200);
+        assertEquals(50, limiter.getPermitsPerSecond(), 0.001);
+        assertEquals(1, limiter.getThrottleCount());
+
+        long start = System.nanoTime();
+        limiter.acquire(Request.Priority.HIGH);
+        long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("waited " + waitedMillis + " ms", waitedMillis >= 150);
+
+        for (int i = 0; i < 100; i++) {
+            limiter.onSuccess();
+        }
+        assertEquals(100, limiter.getPermitsPerSecond(), 0.001);
+    }
+
+    @Test
+    public void retriesThrottledRequestsAfterRetryAfter() throws Exception {
+        ThrottlingServer server = new ThrottlingServer(1);
+        RateLimiter limiter = new RateLimiter(100, 10);
+        RateLimitingTransport transport = new RateLimitingTransport(server, limiter);
+
+        long start = System.nanoTime();
+        Response response = transport.execute(Request.get("https://example.com/v1/users/a"));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(200, response.getStatusCode());
+        assertEquals(2, server.requests.get());
+        assertEquals(1, transport.getThrottledRetryCount());
+        assertEquals(1, limiter.getThrottleCount());
+        assertTrue("took " + elapsedMillis + " ms", elapsedMillis >= 900);
+    }
+
+    @Test
+    public void doesNotRetryThrottledPosts() throws Exception {
+        ThrottlingServer server = new ThrottlingServer(1);
+        RateLimitingTransport transport =
+                new RateLimitingTransport(server, new RateLimiter(100, 10));
+
+        Response response = transport.execute(Request.post("https://example.com/v1/users",
+                new byte[0], "application/json"));
+
+        assertEquals(429, response.getStatusCode());
+        assertEquals(1, server.requests.get());
+    }
+
+    @Test
+    public void leavesUnavailableResponsesToTheRetryLayer() throws Exception {
+        final AtomicInteger requests = new AtomicInteger();
+        Transport unavailable = new Transport() {
+            @Override
+            public Response execute(Request request) {
+                requests.incrementAndGet();
+                Map<String, List<String>> headers =
+                        Collections.singletonMap("Retry-After", Collections.singletonList("0"));
+                return new Response(503, headers, new ByteArrayInputStream(new byte[0]), null);
+            }
+
+            @Override
+            public void shutdown() {
+            }
+        };
+        RateLimiter limiter = new RateLimiter();
+        ResilientTransport transport =
+                new ResilientTransport(new RateLimitingTransport(unavailable, limiter));
+        transport.setRetries(2, 1, 1, TimeUnit.MILLISECONDS);
+
+        try {
+            Response response = transport.execute(Request.get("https://example.com/v1/users/a"));
+            response.close();
+            assertEquals(503, response.getStatusCode());
+        } finally {
+            transport.shutdown();
+        }
+
+        assertEquals(3, requests.get());
+        assertEquals(3, limiter.getThrottleCount());
+    }
+
+    @Test
+    public void parsesRetryAfterSecondsAndDates() {
+        assertEquals(120000, RateLimitingTransport.parseRetryAfter("120", 0));
+        assertEquals(30000, RateLimitingTransport.parseRetryAfter(
+                "Thu, 01 Jan 1970 00:01:00 GMT", 30000));
+        assertEquals(0, RateLimitingTransport.parseRetryAfter(
+                "Thu, 01 Jan 1970 00:01:00 GMT", 90000));
+        assertEquals(-1, RateLimitingTransport.parseRetryAfter("soon", 0));
+        assertEquals(-1, RateLimitingTransport.parseRetryAfter(null, 0));
+    }
+
+    @Test
+    public void doesNotLimitUntilARateIsSetButStillPausesWhenThrottled() throws Exception {
+        RateLimiter limiter = new RateLimiter();
+        long start = System.nanoTime();
+
+        for (int i = 0; i < 1000; i++) {
+            limiter.acquire(Request.Priority.LOW);
+        }
+
+        assertFalse(limiter.isLimited());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500);
+
+        limiter.onThrottled(100);
+        start = System.nanoTime();
+        limiter.acquire(Request.Priority.NORMAL);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 90);
+        assertEquals(Double.POSITIVE_INFINITY, limiter.getPermitsPerSecond(), 0);
+
+        limiter.setRate(10, 2);
+        assertTrue(limiter.isLimited());
+        assertEquals(10, limiter.getPermitsPerSecond(), 0);
+    }
+
+    @After
+    public void tearDown() {
+        RateLimiter.clearCredentials();
+    }
+
+    @Test
+    public void clientsWithTheSameAppIdShareALimiter() {
+        assertSame(RateLimiter.forCredential("shared-app"),
+                new Blockstack("shared-app", "secret").getRateLimiter());
+        assertTrue(RateLimiter.forCredential("shared-app") != RateLimiter.forCredential("other"));
+    }
+
+    @Test
+    public void sharedLimiterIsDroppedWithItsLastClient() {
+        Blockstack first = new Blockstack("closing-app", "secret");
+        Blockstack second = new Blockstack.Builder("closing-app", "secret").build();
+        RateLimiter limiter = first.getRateLimiter();
+        assertSame(limiter, second.getRateLimiter());
+
+        limiter.setRate(10, 1);
+        limiter.onThrottled(60000);
+        first.close();
+        assertSame(limiter, RateLimiter.forCredential("closing-app"));
+
+        second.close();
+        RateLimiter fresh = new Blockstack("closing-app", "secret").getRateLimiter();
+        assertTrue(fresh != limiter);
+        assertFalse(fresh.isLimited());
+        assertEquals(0, fresh.getThrottleCount());
+    }
+
+    private static Thread waitFor(final RateLimiter limiter, final Request.Priority priority,
+                                  final List<Request.Priority> order) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    limiter.acquire(priority);
+                    order.add(priority);
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static void awaitQueueLength(RateLimiter limiter, int length)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (limiter.getQueueLength() < length && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Answers the first requests with a 429 asking to retry after a second, then with 200.
+     */
+    private static class ThrottlingServer implements Transport {
+        final AtomicInteger requests = new AtomicInteger();
+        final int throttled;
+
+        ThrottlingServer(int throttled) {
+            this.throttled = throttled;
+        }
+
+        @Override
+        public Response execute(Request request) throws IOException {
+            if (requests.incrementAndGet() <= throttled) {
+                Map<String, List<String>> headers =
+                        Collections.singletonMap("Retry-After", Collections.singletonList("1"));
+                return new Response(429, headers, new ByteArrayInputStream(new byte[0]), null);
+            }
+
+            return new Response(200, NO_HEADERS, new ByteArrayInputStream(new byte[0]), null);
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package org.blockstack.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ReplayServerTest {
+    private static final String LOOKUP = "{\"alice\": {\"profile\": {\"name\": \"Alice\"}}}";
+    private static final String SEARCH = "{\"results\": [{\"username\": \"alice\"}]}";
+
+    private ReplayServer server;
+    private Blockstack blockstack;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new ReplayServer();
+        server.record("GET", "/v1/users/*", 200, LOOKUP);
+        server.record("GET", "/v1/search?query=alice", 200, SEARCH);
+        server.start();
+
+        blockstack = new Blockstack("replay", "secret", new Endpoints(server.getBaseUrl()));
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void replaysRecordedResponses() {
+        assertEquals(LOOKUP, blockstack.lookupUsers(new String[] {"alice"}));
+        assertEquals(SEARCH, blockstack.searchUsers("alice"));
+        assertNull(blockstack.searchUsers("bob"));
+        assertEquals(1, server.getUnmatchedCount());
+    }
+
+    @Test
+    public void exactMethodsWinOverAnyMethod() {
+        server.record("*", "/v1/*", 200, "{}");
+        server.record("*", "/v1/search?query=alice", 200, "{\"results\": []}");
+
+        assertEquals(LOOKUP, blockstack.lookupUsers(new String[] {"alice"}));
+        assertEquals(SEARCH, blockstack.searchUsers("alice"));
+        assertEquals("{}", blockstack.searchUsers("bob"));
+        assertEquals(0, server.getUnmatchedCount());
+    }
+
+    @Test
+    public void savesAndLoadsRecordings() throws Exception {
+        StringWriter saved = new StringWriter();
+        server.saveRecordings(saved);
+
+        ReplayServer replay = new ReplayServer();
+        replay.loadRecordings(new StringReader(saved.toString()));
+        replay.start();
+
+        try {
+            Blockstack client = new Blockstack("replay", "secret",
+                    new Endpoints(replay.getBaseUrl()));
+            assertEquals(SEARCH, client.searchUsers("alice"));
+        } finally {
+            replay.stop();
+        }
+    }
+
+    @Test
+    public void injectsLatencyAndErrors() {
+        server.setSeed(42);
+        server.setLatency(50, 0);
+        server.setErrorRate(1, 404);
+
+        long start = System.nanoTime();
+        assertNull(blockstack.searchUsers("alice"));
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 50);
+        assertEquals(1, server.getInjectedErrorCount());
+    }
+
+    @Test
+    public void drivesTheClientAtATargetRate() throws Exception {
+        server.setErrorRate(0.1, 404);
+        server.setSeed(7);
+        // Every call must reach the server for the error counts to match.
+        blockstack.setRequestCoalescing(false);
+
+        LoadReport report = new LoadGenerator(4, 200).run(500, TimeUnit.MILLISECONDS,
+                new LoadGenerator.Call() {
+                    @Override
+                    public boolean call() {
+                        return blockstack.searchUsers("alice") != null;
+                    }
+                });
+
+        assertEquals(100, report.getCallCount());
+        assertEquals(server.getInjectedErrorCount(), report.getErrorCount());
+        assertTrue(report.getErrorCount() > 0 && report.getErrorCount() < 30);
+        assertTrue(report.toString(), report.getThroughput() > 100);
+        assertTrue(report.getLatency(99, TimeUnit.MICROSECONDS)
+                >= report.getLatency(50, TimeUnit.MICROSECONDS));
+        assertNotNull(report.toString());
+    }
+}
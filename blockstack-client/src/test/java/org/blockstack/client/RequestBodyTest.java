@@ -0,0 +1,104 @@
+package org.blockstack.client;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class RequestBodyTest {
+    private static final JsonTemplate TEMPLATE = new JsonTemplate()
+            .string("username").string("note").raw("profile");
+
+    @Test
+    public void writesValidJsonOfTheAnnouncedLength() throws Exception {
+        String note = "quote \" backslash \\ newline \n tab \t bell \u0007 "
+                + "caf\u00e9 \u20ac \ud83d\ude00";
+        RequestBody body = TEMPLATE.fill("itsProf", note, "{\"name\": \"Jorge\"}");
+
+        byte[] bytes = write(body);
+        JSONObject json = new JSONObject(new String(bytes, "UTF-8"));
+
+        assertEquals(bytes.length, body.contentLength());
+        assertEquals("itsProf", json.getString("username"));
+        assertEquals(note, json.getString("note"));
+        assertEquals("Jorge", json.getJSONObject("profile").getString("name"));
+        assertEquals("application/json", body.contentType());
+    }
+
+    @Test
+    public void leavesOutNullFieldsAndWritesTheSameBytesAgain() throws Exception {
+        RequestBody body = TEMPLATE.fill("itsProf", null, null);
+
+        assertEquals("{\"username\":\"itsProf\"}", new String(write(body), "UTF-8"));
+        assertArrayEquals(write(body), write(body));
+    }
+
+    @Test
+    public void streamsBodiesWithAFixedLength() throws Exception {
+        final String[] received = new String[3];
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                received[0] = exchange.getRequestHeaders().getFirst("Content-Length");
+                received[1] = exchange.getRequestHeaders().getFirst("Transfer-Encoding");
+                received[2] = new String(readAll(exchange.getRequestBody()), "UTF-8");
+
+                byte[] answer = "{\"status\": \"success\"}".getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, answer.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(answer);
+                out.close();
+            }
+        });
+        server.start();
+
+        try {
+            char[] hex = new char[100000];
+            Arrays.fill(hex, 'a');
+            String signedTransaction = new String(hex);
+            Blockstack blockstack = new Blockstack("id", "secret",
+                    new Endpoints("http://127.0.0.1:" + server.getAddress().getPort() + "/v1"));
+
+            assertEquals("{\"status\": \"success\"}",
+                    blockstack.broadcastTransaction(signedTransaction));
+
+            assertEquals(String.valueOf(received[2].length()), received[0]);
+            assertFalse("chunked".equals(received[1]));
+            assertEquals(signedTransaction, new JSONObject(received[2]).getString("signed_hex"));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static byte[] write(RequestBody body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo(out);
+        return out.toByteArray();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+
+        return out.toByteArray();
+    }
+}
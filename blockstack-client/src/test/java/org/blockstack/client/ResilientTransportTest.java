@@ -0,0 +1,220 @@
+package org.blockstack.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ResilientTransportTest {
+    private static final String URL = "https://api.onename.com/v1/users/itsProf";
+    private static final Map<String, List<String>> NO_HEADERS = Collections.emptyMap();
+
+    private ScriptedTransport scripted;
+    private ResilientTransport transport;
+
+    @Before
+    public void setUp() {
+        scripted = new ScriptedTransport();
+        transport = new ResilientTransport(scripted);
+        transport.setRetries(2, 1, 5, TimeUnit.MILLISECONDS);
+    }
+
+    @After
+    public void tearDown() {
+        transport.shutdown();
+    }
+
+    @Test
+    public void retriesIdempotentRequests() throws Exception {
+        scripted.fail().status(503).status(200);
+
+        Response response = transport.execute(Request.get(URL));
+        response.close();
+
+        assertEquals(200, response.getStatusCode());
+        assertEquals(3, scripted.calls.get());
+        assertEquals(2, transport.getRetryCount());
+    }
+
+    @Test
+    public void returnsLastResponseWhenRetriesRunOut() throws Exception {
+        scripted.status(503).status(503).status(503).status(200);
+
+        Response response = transport.execute(Request.get(URL));
+        response.close();
+
+        assertEquals(503, response.getStatusCode());
+        assertEquals(3, scripted.calls.get());
+    }
+
+    @Test
+    public void neverRetriesPosts() throws Exception {
+        scripted.fail().status(200);
+
+        try {
+            transport.execute(Request.post(URL, new byte[0], "application/json"));
+            fail("Expected the failure to surface");
+        } catch (IOException e) {
+            assertEquals(1, scripted.calls.get());
+        }
+    }
+
+    @Test
+    public void opensCircuitAfterConsecutiveFailures() throws Exception {
+        transport.setRetries(0, 1, 1, TimeUnit.MILLISECONDS);
+        transport.setCircuitBreaker(3, 1, TimeUnit.HOURS);
+        scripted.fail().fail().fail().status(200);
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                transport.execute(Request.get(URL));
+                fail("Expected a failure");
+            } catch (IOException e) {
+                assertTrue(!(e instanceof CircuitOpenException));
+            }
+        }
+
+        try {
+            transport.execute(Request.get(URL));
+            fail("Expected the circuit to be open");
+        } catch (CircuitOpenException e) {
+            assertEquals("api.onename.com", e.getHost());
+        }
+
+        assertEquals(3, scripted.calls.get());
+        assertEquals(CircuitBreaker.State.OPEN,
+                transport.getCircuitBreaker("api.onename.com").getState());
+    }
+
+    @Test
+    public void halfOpenTrialClosesCircuit() throws Exception {
+        transport.setRetries(0, 1, 1, TimeUnit.MILLISECONDS);
+        transport.setCircuitBreaker(1, 50, TimeUnit.MILLISECONDS);
+        scripted.fail().status(200);
+
+        try {
+            transport.execute(Request.get(URL));
+            fail("Expected a failure");
+        } catch (IOException e) {
+            // Opens the circuit.
+        }
+
+        Thread.sleep(80);
+        transport.execute(Request.get(URL)).close();
+
+        assertEquals(CircuitBreaker.State.CLOSED,
+                transport.getCircuitBreaker("api.onename.com").getState());
+    }
+
+    @Test
+    public void hedgesSlowRequests() throws Exception {
+        transport.setHedging(true);
+
+        for (int i = 0; i < 20; i++) {
+            scripted.delay(5);
+        }
+
+        for (int i = 0; i < 20; i++) {
+            transport.execute(Request.get(URL)).close();
+        }
+
+        long hedgeDelay = transport.getHedgeDelayMillis();
+        assertTrue(hedgeDelay >= 0);
+
+        scripted.delay(2000).delay(0);
+
+        long start = System.nanoTime();
+        Response response = transport.execute(Request.get(URL));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        response.close();
+
+        assertEquals(1, transport.getHedgeCount());
+        assertTrue("took " + elapsed + " ms", elapsed < 1000);
+    }
+
+    @Test
+    public void readTimeoutFailsSlowResponses() throws Exception {
+        ReplayServer server = new ReplayServer();
+        server.record("*", "/*", 200, "{}");
+        server.setLatency(1000, 0);
+        server.start();
+
+        HttpURLConnectionTransport http = new HttpURLConnectionTransport();
+        http.setReadTimeout(50, TimeUnit.MILLISECONDS);
+
+        try {
+            http.execute(Request.get(server.getBaseUrl() + "/users/itsProf"));
+            fail("Expected a read timeout");
+        } catch (SocketTimeoutException e) {
+            // Expected.
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Answers each request with the next scripted step: a failure, a status or a delay.
+     */
+    private static class ScriptedTransport implements Transport {
+        final AtomicInteger calls = new AtomicInteger();
+        private final ConcurrentLinkedQueue<long[]> steps = new ConcurrentLinkedQueue<>();
+
+        ScriptedTransport fail() {
+            steps.add(new long[]{-1, 0});
+            return this;
+        }
+
+        ScriptedTransport status(int statusCode) {
+            steps.add(new long[]{statusCode, 0});
+            return this;
+        }
+
+        ScriptedTransport delay(long millis) {
+            steps.add(new long[]{200, millis});
+            return this;
+        }
+
+        @Override
+        public Response execute(Request request) throws IOException {
+            calls.incrementAndGet();
+            long[] step = steps.poll();
+
+            if (step == null) {
+                step = new long[]{200, 0};
+            }
+
+            if (step[1] > 0) {
+                try {
+                    Thread.sleep(step[1]);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+
+            if (step[0] < 0) {
+                throw new IOException("Connection reset");
+            }
+
+            InputStream body = new ByteArrayInputStream("{}".getBytes("UTF-8"));
+            return new Response((int) step[0], NO_HEADERS, body, null);
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package org.blockstack.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SearchEngineTest {
+    private static final String RESULTS = "{\"results\": ["
+            + "{\"username\": \"muneeb\", \"profile\": {\"name\": \"Muneeb Ali\"}},"
+            + "{\"username\": \"muneebali\", \"profile\": {}},"
+            + "{\"username\": \"ryan\", \"profile\": {\"name\": \"Ryan Shea\"}},"
+            + "{\"username\": \"satoshi\","
+            + " \"profile\": {\"twitter\": {\"username\": \"mutweets\"}}}]}";
+
+    private ReplayServer server;
+    private AsyncBlockstack async;
+    private SearchEngine engine;
+    private RecordingListener listener;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new ReplayServer();
+        server.record("*", "/*", 200, RESULTS);
+        server.start();
+        Blockstack blockstack = new Blockstack("id", "secret",
+                new HttpURLConnectionTransport(),
+                new Endpoints(server.getBaseUrl()));
+        async = new AsyncBlockstack(blockstack, 2);
+        listener = new RecordingListener();
+        engine = new SearchEngine(async, listener);
+        engine.setDebounce(50, TimeUnit.MILLISECONDS);
+    }
+
+    @After
+    public void tearDown() {
+        engine.shutdown();
+        async.shutdown();
+        server.stop();
+    }
+
+    @Test
+    public void debouncesFastTyping() throws Exception {
+        listener.expect(1);
+
+        for (String query : new String[]{"m", "mu", "mun", "mune", "munee", "muneeb"}) {
+            engine.onQueryChanged(query);
+        }
+
+        assertTrue(listener.await());
+        assertEquals(1, server.getRequestCount());
+        assertEquals(Collections.singletonList("muneeb"), listener.queries);
+    }
+
+    @Test
+    public void refinesCompleteResultsLocally() throws Exception {
+        listener.expect(1);
+        engine.onQueryChanged("mu");
+        assertTrue(listener.await());
+        assertEquals(4, listener.lastResult.size());
+
+        listener.expect(1);
+        engine.onQueryChanged("muneebal");
+        assertTrue(listener.await());
+
+        assertEquals(1, server.getRequestCount());
+        assertEquals(1, listener.lastResult.size());
+        assertEquals("muneebali", listener.lastResult.getUsers().get(0).getUsername());
+    }
+
+    @Test
+    public void refinesAgainstTwitterHandles() throws Exception {
+        listener.expect(1);
+        engine.onQueryChanged("mu");
+        assertTrue(listener.await());
+
+        listener.expect(1);
+        engine.onQueryChanged("mutw");
+        assertTrue(listener.await());
+
+        assertEquals(1, server.getRequestCount());
+        assertEquals("satoshi", listener.lastResult.getUsers().get(0).getUsername());
+    }
+
+    @Test
+    public void searchesAgainForLongerFieldQueries() throws Exception {
+        listener.expect(1);
+        engine.onQueryChanged("twitter:m");
+        assertTrue(listener.await());
+
+        listener.expect(1);
+        engine.onQueryChanged("twitter:mu");
+        assertTrue(listener.await());
+
+        assertEquals(2, server.getRequestCount());
+        assertEquals(4, listener.lastResult.size());
+    }
+
+    @Test
+    public void searchesAgainWhenResultsWereTruncated() throws Exception {
+        engine.setResultLimit(3);
+
+        listener.expect(1);
+        engine.onQueryChanged("mu");
+        assertTrue(listener.await());
+
+        listener.expect(1);
+        engine.onQueryChanged("mun");
+        assertTrue(listener.await());
+
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void dropsResultsOfStaleQueries() throws Exception {
+        server.setLatency(200, 0);
+
+        listener.expect(1);
+        engine.onQueryChanged("ryan");
+        Thread.sleep(100);
+        engine.onQueryChanged("shea");
+
+        assertTrue(listener.await());
+        Thread.sleep(300);
+
+        assertEquals(2, engine.getRequestCount());
+        assertEquals(Collections.singletonList("shea"), listener.queries);
+    }
+
+    private static class RecordingListener implements SearchEngine.Listener {
+        final List<String> queries = Collections.synchronizedList(new ArrayList<String>());
+        volatile SearchResult lastResult;
+        private volatile CountDownLatch latch;
+
+        void expect(int count) {
+            queries.clear();
+            latch = new CountDownLatch(count);
+        }
+
+        boolean await() throws InterruptedException {
+            return latch.await(5, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public void onResults(String query, SearchResult result) {
+            queries.add(query);
+            lastResult = result;
+            latch.countDown();
+        }
+
+        @Override
+        public void onError(String query, Throwable error) {
+            queries.add("error: " + query);
+            latch.countDown();
+        }
+    }
+}
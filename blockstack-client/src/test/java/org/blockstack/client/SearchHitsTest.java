@@ -0,0 +1,128 @@
+package org.blockstack.client;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SearchHitsTest {
+    private static final Map<String, List<String>> NO_HEADERS = Collections.emptyMap();
+    private static final String SEARCH = Endpoints.SEARCH + "twitter%3A";
+
+    @Test
+    public void streamsHitsAndFollowsCursors() throws Exception {
+        PageServer server = new PageServer();
+        server.pages.put(SEARCH, "{\"next\": \"p2\", \"results\": [{\"username\": \"a\"},"
+                + " {\"username\": \"b\"}]}");
+        server.pages.put(SEARCH + "&cursor=p2", "{\"results\": [{\"username\": \"c\"}],"
+                + " \"next\": \"https://example.com/search?page=3\"}");
+        server.pages.put("https://example.com/search?page=3", "{\"results\": []}");
+        Blockstack blockstack = new Blockstack("id", "secret", server);
+
+        SearchHits hits = blockstack.openSearch("twitter:", 10);
+        assertTrue(server.requests.isEmpty());
+
+        assertEquals(usernames("a", "b", "c"), readAll(hits));
+        assertEquals(3, hits.getCount());
+        assertEquals(3, hits.getPageCount());
+        assertFalse(hits.hasNext());
+    }
+
+    @Test
+    public void stopsAtTheLimitWithoutFetchingMorePages() throws Exception {
+        PageServer server = new PageServer();
+        server.pages.put(SEARCH, "{\"results\": [{\"username\": \"a\"}, {\"username\": \"b\"},"
+                + " {\"username\": \"c\"}], \"next\": \"p2\"}");
+        Blockstack blockstack = new Blockstack("id", "secret", server);
+
+        SearchHits hits = blockstack.openSearch("twitter:", 2);
+
+        assertEquals(usernames("a", "b"), readAll(hits));
+        assertEquals(Collections.singletonList(SEARCH), server.requests);
+    }
+
+    @Test
+    public void reportsErrorsAndClosesTheHits() throws Exception {
+        Blockstack blockstack = new Blockstack("id", "secret", new PageServer());
+        final List<RequestMetrics> measured = new CopyOnWriteArrayList<>();
+        blockstack.setMetricsListener(new MetricsListener() {
+            @Override
+            public void onRequestFinished(RequestMetrics metrics) {
+                measured.add(metrics);
+            }
+        });
+
+        SearchHits hits = blockstack.openSearch("twitter:", 10);
+
+        try {
+            hits.hasNext();
+            fail();
+        } catch (HttpStatusException e) {
+            assertEquals(404, e.getStatusCode());
+        }
+
+        assertFalse(hits.hasNext());
+        assertEquals(1, measured.size());
+        assertEquals(404, measured.get(0).getStatusCode());
+    }
+
+    private static List<String> readAll(SearchHits hits) throws IOException {
+        List<String> usernames = new ArrayList<>();
+
+        try {
+            while (hits.hasNext()) {
+                usernames.add(hits.next().getJson());
+            }
+        } finally {
+            hits.close();
+        }
+
+        return usernames;
+    }
+
+    private static List<String> usernames(String... usernames) {
+        List<String> json = new ArrayList<>();
+
+        for (String username : usernames) {
+            json.add("{\"username\": \"" + username + "\"}");
+        }
+
+        return json;
+    }
+
+    /**
+     * Serves fixed pages by URL and answers anything else with a 404.
+     */
+    private static class PageServer implements Transport {
+        final Map<String, String> pages = new HashMap<>();
+        final List<String> requests = new CopyOnWriteArrayList<>();
+
+        @Override
+        public Response execute(Request request) throws IOException {
+            requests.add(request.getUrl());
+            String page = pages.get(request.getUrl());
+
+            if (page == null) {
+                return new Response(404, NO_HEADERS, new ByteArrayInputStream(new byte[0]), null);
+            }
+
+            return new Response(200, NO_HEADERS,
+                    new ByteArrayInputStream(page.getBytes("UTF-8")), null);
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+}
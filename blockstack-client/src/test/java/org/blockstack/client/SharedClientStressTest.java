@@ -0,0 +1,352 @@
+package org.blockstack.client;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SharedClientStressTest {
+    private static final int THREADS = 32;
+    private static final int CALLS_PER_THREAD = 200;
+    private static final int USERS = 50;
+    private static final String SEARCH = "{\"results\": [{\"username\": \"user0\"}]}";
+
+    private ReplayServer server;
+    private Blockstack blockstack;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new ReplayServer();
+
+        for (int i = 0; i < USERS; i++) {
+            server.record("GET", "/v1/users/user" + i, 200,
+                    "{\"user" + i + "\": {\"profile\": {\"name\": \"User " + i + "\"}}}");
+        }
+
+        server.record("GET", "/v1/search?query=user", 200, SEARCH);
+        server.setLatency(1, 2);
+        server.start();
+
+        blockstack = new Blockstack.Builder("stress", "secret")
+                .endpoints(new Endpoints(server.getBaseUrl()))
+                .profileCache(new ProfileCache())
+                .timeouts(5, 5, TimeUnit.SECONDS)
+                .asyncThreads(2)
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        blockstack.close();
+        server.stop();
+    }
+
+    @Test
+    public void manyThreadsShareOneClient() throws Exception {
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicReference<String> firstFailure = new AtomicReference<>();
+
+        runConcurrently(new Caller() {
+            @Override
+            public void call(int thread, int i) {
+                String username = "user" + ((thread * 7 + i) % USERS);
+                String failure = null;
+
+                switch (i % 3) {
+                    case 0:
+                        String json = blockstack.lookupUsers(new String[] {username});
+                        if (json == null || !json.contains("\"" + username + "\"")) {
+                            failure = "lookupUsers " + username + ": " + json;
+                        }
+                        break;
+                    case 1:
+                        Map<String, User> users =
+                                blockstack.lookupUserProfiles(new String[] {username});
+                        User user = users != null ? users.get(username) : null;
+                        if (user == null || !user.getProfile().getName().endsWith(
+                                username.substring(4))) {
+                            failure = "lookupUserProfiles " + username + ": " + users;
+                        }
+                        break;
+                    default:
+                        if (!SEARCH.equals(blockstack.searchUsers("user"))) {
+                            failure = "searchUsers";
+                        }
+                }
+
+                if (failure != null) {
+                    failures.incrementAndGet();
+                    firstFailure.compareAndSet(null, failure);
+                }
+            }
+        });
+
+        assertEquals(firstFailure.get(), 0, failures.get());
+        // The profile cache and request coalescing keep most calls off the network.
+        assertTrue(String.valueOf(server.getRequestCount()),
+                server.getRequestCount() < THREADS * CALLS_PER_THREAD / 2);
+        assertEquals(0, server.getUnmatchedCount());
+    }
+
+    @Test
+    public void hotPathsDoNotBlockOnLocks() throws Exception {
+        final ProfileCache cache = new ProfileCache();
+        cache.put("user0", "{\"profile\": {}}", false);
+        final RateLimiter unlimited = new RateLimiter();
+        final RateLimiter limited = new RateLimiter(1e9, Integer.MAX_VALUE);
+        final ConnectionPool pool = new ConnectionPool(THREADS, 1000);
+        final LoadBalancingTransport balancer = new LoadBalancingTransport(new Transport() {
+            @Override
+            public Response execute(Request request) {
+                Map<String, List<String>> headers = Collections.emptyMap();
+                return new Response(200, headers, new ByteArrayInputStream(new byte[0]), null);
+            }
+
+            @Override
+            public void shutdown() {
+            }
+        }, Arrays.asList("https://a.example.com/v1", "https://b.example.com/v1",
+                "https://c.example.com/v1"));
+
+        Caller caller = new Caller() {
+            @Override
+            public void call(int thread, int i) throws IOException {
+                unlimited.acquire(Request.Priority.NORMAL);
+                limited.acquire(Request.Priority.NORMAL);
+                limited.onSuccess();
+                pool.acquire("example.com").release();
+                balancer.execute(Request.get("https://a.example.com/v1/users/user0")).close();
+
+                if (cache.get("user0") == null) {
+                    throw new AssertionError("Cache miss");
+                }
+            }
+        };
+
+        // Load and initialize every class first, which does take locks.
+        caller.call(0, 0);
+
+        assertEquals(0, runConcurrently(caller));
+    }
+
+    @Test
+    public void closingUnderLoadFailsCallsWithoutHanging() throws Exception {
+        final CountDownLatch started = new CountDownLatch(THREADS);
+        final AtomicInteger afterClose = new AtomicInteger();
+
+        Thread closer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    started.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                blockstack.close();
+            }
+        });
+        closer.start();
+
+        runConcurrently(new Caller() {
+            @Override
+            public void call(int thread, int i) {
+                if (i == 0) {
+                    started.countDown();
+                }
+
+                boolean closed = blockstack.isClosed();
+
+                if (blockstack.searchUsers("user") == null && closed) {
+                    afterClose.incrementAndGet();
+                }
+            }
+        });
+
+        closer.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(closer.isAlive());
+        assertTrue(blockstack.isClosed());
+        assertTrue(afterClose.get() > 0);
+        assertNull(blockstack.searchUsers("user"));
+        assertNull(blockstack.lookupUserProfiles(new String[] {"user1"}));
+    }
+
+    @Test
+    public void closingWithADiskCacheFailsCallsWithoutThrowing() throws Exception {
+        File directory = File.createTempFile("blockstack", "stress");
+        assertTrue(directory.delete());
+        blockstack.close();
+        blockstack = new Blockstack.Builder("stress", "secret")
+                .endpoints(new Endpoints(server.getBaseUrl()))
+                .diskCache(new DiskProfileCache(directory))
+                .timeouts(5, 5, TimeUnit.SECONDS)
+                .build();
+        final UserHandler ignore = new UserHandler() {
+            @Override
+            public void onUser(String username, JSONObject user) {
+            }
+        };
+
+        try {
+            final CountDownLatch started = new CountDownLatch(THREADS);
+            Thread closer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        started.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+
+                    blockstack.close();
+                }
+            });
+            closer.start();
+
+            // Any exception escaping a call fails the run.
+            runConcurrently(new Caller() {
+                @Override
+                public void call(int thread, int i) {
+                    if (i == 0) {
+                        started.countDown();
+                    }
+
+                    String[] usernames = {"user" + (thread + i) % USERS};
+                    blockstack.lookupUsers(usernames);
+                    blockstack.lookupUsers(usernames, ignore);
+                    blockstack.lookupUserProfiles(usernames);
+                }
+            });
+
+            closer.join(TimeUnit.SECONDS.toMillis(10));
+            assertTrue(blockstack.isClosed());
+            assertNull(blockstack.lookupUsers(new String[] {"user1"}));
+            assertFalse(blockstack.lookupUsers(new String[] {"user1"}, ignore));
+            assertNull(blockstack.lookupUserProfiles(new String[] {"user1"}));
+        } finally {
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void ownsItsAsyncClient() throws Exception {
+        AsyncBlockstack async = blockstack.async();
+        assertSame(async, blockstack.async());
+        assertEquals(SEARCH, async.searchUsers("user").get(5, TimeUnit.SECONDS));
+
+        blockstack.close();
+        blockstack.close();
+
+        try {
+            async.searchUsers("user");
+            fail("The async client was not shut down");
+        } catch (RejectedExecutionException expected) {
+            // Closed with the client.
+        }
+
+        try {
+            blockstack.async();
+            fail("A closed client created an async client");
+        } catch (IllegalStateException expected) {
+            // Closed.
+        }
+    }
+
+    @Test
+    public void builderAppliesItsSettings() {
+        Blockstack built = new Blockstack.Builder("stress", "secret")
+                .endpoints(new Endpoints(server.getBaseUrl()))
+                .requestCoalescing(false)
+                .build();
+
+        try {
+            assertFalse(built.isRequestCoalescing());
+            assertNull(built.getProfileCache());
+            assertNotNull(built.lookupUsers(new String[] {"user3"}));
+        } finally {
+            built.close();
+        }
+
+        assertTrue(built.isClosed());
+        assertNull(built.lookupUsers(new String[] {"user3"}));
+    }
+
+    /**
+     * @return how many times the callers blocked waiting for a monitor held by another thread.
+     */
+    private static long runConcurrently(final Caller caller) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final AtomicLong blocked = new AtomicLong();
+        Thread[] threads = new Thread[THREADS];
+
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+
+                        for (int i = 0; i < CALLS_PER_THREAD; i++) {
+                            caller.call(thread, i);
+                        }
+
+                        blocked.addAndGet(ManagementFactory.getThreadMXBean()
+                                .getThreadInfo(Thread.currentThread().getId()).getBlockedCount());
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    }
+                }
+            }, "stress-" + t);
+            threads[t].start();
+        }
+
+        start.countDown();
+
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(60));
+            assertFalse("A caller is stuck", thread.isAlive());
+        }
+
+        if (error.get() != null) {
+            throw new AssertionError(error.get());
+        }
+
+        return blocked.get();
+    }
+
+    private interface Caller {
+        void call(int thread, int i) throws Exception;
+    }
+}
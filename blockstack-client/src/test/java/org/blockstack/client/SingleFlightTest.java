@@ -0,0 +1,303 @@
+package org.blockstack.client;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SingleFlightTest {
+    private static final Map<String, List<String>> NO_HEADERS = Collections.emptyMap();
+
+    @Test
+    public void identicalConcurrentLookupsShareOneRequest() throws Exception {
+        SlowServer server = new SlowServer(100);
+        final Blockstack blockstack = new Blockstack("id", "secret", server);
+        final List<String> results = new CopyOnWriteArrayList<>();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    results.add(blockstack.getDkimPublicKey("example.com"));
+                }
+            }));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, server.requests.get());
+        assertEquals(8, results.size());
+        for (String result : results) {
+            assertEquals("{\"public_key\": \"key\"}", result);
+        }
+
+        // A typed call to the same URL decodes differently, so it is not shared with the above.
+        assertEquals("key", blockstack.getDkimKey("example.com").getPublicKey());
+        assertEquals(2, server.requests.get());
+    }
+
+    @Test
+    public void sequentialAndDistinctRequestsAreNotCoalesced() {
+        SlowServer server = new SlowServer(0);
+        Blockstack blockstack = new Blockstack("id", "secret", server);
+
+        blockstack.getDkimPublicKey("example.com");
+        blockstack.getDkimPublicKey("example.com");
+        blockstack.getDkimPublicKey("example.org");
+        assertEquals(3, server.requests.get());
+
+        blockstack.setRequestCoalescing(false);
+        assertFalse(blockstack.isRequestCoalescing());
+        blockstack.getDkimPublicKey("example.com");
+        assertEquals(4, server.requests.get());
+    }
+
+    @Test
+    public void failuresReachEveryWaiter() throws Exception {
+        SlowServer server = new SlowServer(100);
+        server.status = 503;
+        final Blockstack blockstack = new Blockstack("id", "secret", server);
+        blockstack.setRequestCoalescing(true);
+        final List<String> results = new CopyOnWriteArrayList<>();
+
+        Thread other = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                results.add(String.valueOf(blockstack.getUnspentOutputList("addr")));
+            }
+        });
+        other.start();
+
+        assertNull(blockstack.getUnspentOutputList("addr"));
+        other.join();
+
+        assertEquals(Collections.singletonList("null"), results);
+        assertEquals(1, server.requests.get());
+    }
+
+    @Test
+    public void sharedListsAreCopiedPerCaller() throws Exception {
+        SlowServer server = new SlowServer(100);
+        final Blockstack blockstack = new Blockstack("id", "secret", server);
+        final List<List<UnspentOutput>> results = new CopyOnWriteArrayList<>();
+
+        Thread other = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                results.add(blockstack.getUnspentOutputList("addr"));
+            }
+        });
+        other.start();
+
+        List<UnspentOutput> outputs = blockstack.getUnspentOutputList("addr");
+        other.join();
+        outputs.clear();
+
+        assertEquals(1, server.requests.get());
+        assertEquals(1, results.get(0).size());
+    }
+
+    @Test
+    public void firstCallerRunsTheCallAndWaitersGiveUpAlone() throws Exception {
+        final SingleFlight flight = new SingleFlight();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Thread> runners = new CopyOnWriteArrayList<>();
+        final Callable<String> call = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                runners.add(Thread.currentThread());
+                started.countDown();
+                release.await();
+                return "done";
+            }
+        };
+
+        final List<Object> results = new CopyOnWriteArrayList<>();
+        List<Thread> callers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Thread caller = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        results.add(flight.execute("key", call));
+                    } catch (IOException e) {
+                        results.add(e);
+                    }
+                }
+            });
+            callers.add(caller);
+            caller.start();
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+        }
+
+        waitForWaiters(callers);
+        Thread leader = runners.get(0);
+        List<Thread> waiters = new ArrayList<>(callers);
+        waiters.remove(leader);
+
+        waiters.get(0).interrupt();
+        waiters.get(0).join();
+        assertTrue(results.get(0) instanceof InterruptedIOException);
+
+        release.countDown();
+        for (Thread caller : callers) {
+            caller.join();
+        }
+
+        assertEquals(Collections.singletonList(leader), runners);
+        assertEquals(Arrays.asList(results.get(0), "done", "done"), results);
+        assertEquals(1, flight.getCallCount());
+        assertEquals(1, flight.getSharedCount());
+
+        // Completed calls are not joined; the next caller starts afresh.
+        assertSame("again", flight.execute("key", new Callable<String>() {
+            @Override
+            public String call() {
+                return "again";
+            }
+        }));
+        assertEquals(2, flight.getCallCount());
+    }
+
+    @Test
+    public void waitersRunTheCallAgainWhenTheFirstCallerIsInterrupted() throws Exception {
+        final SingleFlight flight = new SingleFlight();
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        final Callable<String> call = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                if (calls.incrementAndGet() == 1) {
+                    started.countDown();
+                    Thread.sleep(10000);
+                }
+
+                return "done";
+            }
+        };
+
+        final Object[] results = new Object[2];
+        Thread leader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    results[0] = flight.execute("key", call);
+                } catch (IOException e) {
+                    results[0] = e;
+                }
+            }
+        });
+        leader.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    results[1] = flight.execute("key", call);
+                } catch (IOException e) {
+                    results[1] = e;
+                }
+            }
+        });
+        waiter.start();
+        waitForWaiters(Collections.singletonList(waiter));
+
+        leader.interrupt();
+        leader.join();
+        waiter.join();
+
+        assertTrue(results[0] instanceof IOException);
+        assertEquals("done", results[1]);
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void runtimeErrorsAreRethrownAsThemselves() throws Exception {
+        SingleFlight flight = new SingleFlight();
+
+        try {
+            flight.execute("key", new Callable<String>() {
+                @Override
+                public String call() {
+                    throw new IllegalStateException("broken");
+                }
+            });
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("broken", e.getMessage());
+        }
+    }
+
+    private static void waitForWaiters(List<Thread> waiters) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+
+        for (Thread waiter : waiters) {
+            while (waiter.getState() != Thread.State.WAITING
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+        }
+    }
+
+    /**
+     * Answers every request after a delay, counting the requests that reach it.
+     */
+    private static class SlowServer implements Transport {
+        final AtomicInteger requests = new AtomicInteger();
+        final long delayMillis;
+        volatile int status = 200;
+
+        SlowServer(long delayMillis) {
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public Response execute(Request request) throws IOException {
+            requests.incrementAndGet();
+
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+
+            String body = request.getUrl().endsWith("/unspents")
+                    ? "{\"unspents\": [{\"transaction_hash\": \"tx\", \"output_index\": 0, "
+                            + "\"value\": 1000, \"confirmations\": 6}]}"
+                    : "{\"public_key\": \"key\"}";
+            return new Response(status, NO_HEADERS,
+                    new ByteArrayInputStream(body.getBytes("UTF-8")), null);
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package org.blockstack.client;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Compares the allocation of reading a large lookup response into a <code>String</code> and
+ * re-parsing it with streaming it through {@link UserHandler}. Allocation is counted on the
+ * calling thread, so request coalescing, which would read the body on a pool thread, is off.
+ */
+public class StreamingLookupBenchmarkTest {
+    private static final int USERS = 1000;
+    private static final int ITERATIONS = 2;
+
+    private ReplayServer server;
+    private Blockstack blockstack;
+    private String[] usernames;
+
+    @Before
+    public void setUp() throws Exception {
+        usernames = new String[USERS];
+        StringBuilder body = new StringBuilder("{");
+
+        for (int i = 0; i < USERS; i++) {
+            usernames[i] = "user" + i;
+            body.append(i > 0 ? ",\n" : "").append("\"user").append(i).append("\": {\"profile\": "
+                    + "{\"name\": {\"formatted\": \"User ").append(i).append("\"}, \"avatar\": "
+                    + "{\"url\": \"https://example.com/avatars/").append(i).append(".png\"}, "
+                    + "\"bio\": \"Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed "
+                    + "do eiusmod tempor incididunt ut labore et dolore magna aliqua.\"}, "
+                    + "\"verifications\": [{\"service\": \"twitter\", \"valid\": true}]}");
+        }
+
+        server = new ReplayServer();
+        server.record("*", "/*", 200, body.append("}").toString());
+        server.start();
+        blockstack = new Blockstack("id", "secret",
+                new HttpURLConnectionTransport(),
+                new Endpoints(server.getBaseUrl()));
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void streamingAllocatesLessThanStringParsing() throws Exception {
+        long buffered = measure(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    JSONObject json = new JSONObject(blockstack.lookupUsers(usernames));
+                    int count = 0;
+
+                    for (Iterator<String> keys = json.keys(); keys.hasNext(); ) {
+                        json.getJSONObject(keys.next()).toString();
+                        count++;
+                    }
+
+                    assertEquals(USERS, count);
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+
+        long streamed = measure(new Runnable() {
+            @Override
+            public void run() {
+                final AtomicInteger count = new AtomicInteger();
+
+                blockstack.lookupUsers(usernames, new UserHandler() {
+                    @Override
+                    public void onUser(String username, JSONObject user) {
+                        count.incrementAndGet();
+                    }
+                });
+
+                assertEquals(USERS, count.get());
+            }
+        });
+
+        assumeTrue(buffered >= 0 && streamed >= 0);
+        assertTrue(streamed + " >= " + buffered, streamed < buffered);
+    }
+
+    /**
+     * @return the bytes a run allocates on this thread, or -1 if the JVM cannot tell.
+     */
+    private static long measure(Runnable run) {
+        run.run();
+
+        long allocated = 0;
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            long before = allocatedBytes();
+            run.run();
+            long after = allocatedBytes();
+
+            if (before < 0 || after < 0) {
+                return -1;
+            }
+
+            allocated += after - before;
+        }
+
+        return allocated / ITERATIONS;
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+
+            if (hotspot.isThreadAllocatedMemorySupported()
+                    && hotspot.isThreadAllocatedMemoryEnabled()) {
+                return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+
+        return -1;
+    }
+}
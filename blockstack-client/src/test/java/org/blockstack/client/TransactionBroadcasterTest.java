@@ -0,0 +1,325 @@
+package org.blockstack.client;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TransactionBroadcasterTest {
+    private static final Map<String, List<String>> NO_HEADERS = Collections.emptyMap();
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("blockstack", "outbox");
+        assertTrue(directory.delete());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+
+        directory.delete();
+    }
+
+    @Test
+    public void hashesTransactionsLikeTheNetwork() {
+        assertEquals("9a538906e6466ebd2617d321f71bc94e56056ce213d366773699e28158e00614",
+                TransactionBroadcaster.transactionHash("00"));
+        assertEquals(TransactionBroadcaster.transactionHash("0A0b"),
+                TransactionBroadcaster.transactionHash(" 0a0B "));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesMalformedTransactions() {
+        TransactionBroadcaster.transactionHash("0g");
+    }
+
+    @Test
+    public void sendsABurstConcurrently() throws Exception {
+        Node node = new Node(20);
+        TransactionBroadcaster broadcaster = open(node, 4);
+        Outcomes outcomes = new Outcomes(10);
+        broadcaster.setListener(outcomes);
+
+        List<String> transactions = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            transactions.add(String.format("%04x", i));
+        }
+
+        List<String> hashes = broadcaster.broadcastAll(transactions);
+
+        assertTrue(outcomes.await());
+        assertEquals(10, outcomes.accepted.size());
+        assertTrue(outcomes.accepted.containsAll(hashes));
+        assertEquals(0, broadcaster.getPendingCount());
+        assertEquals(TransactionBroadcaster.Status.ACCEPTED, broadcaster.getStatus(hashes.get(3)));
+        assertTrue(node.maxInFlight.get() > 1);
+        assertTrue(node.maxInFlight.get() <= 4);
+
+        broadcaster.close();
+    }
+
+    @Test
+    public void retriesTransientFailuresAndRejectsRefusedTransactions() throws Exception {
+        Node node = new Node(0);
+        node.script("aa", 503, 503, 200);
+        node.script("bb", 400);
+        TransactionBroadcaster broadcaster = open(node, 2);
+        Outcomes outcomes = new Outcomes(2);
+        broadcaster.setListener(outcomes);
+
+        String retried = broadcaster.broadcast("aa");
+        String refused = broadcaster.broadcast("bb");
+
+        assertTrue(outcomes.await());
+        assertEquals(Collections.singletonList(retried), outcomes.accepted);
+        assertEquals(Collections.singletonList(refused), outcomes.rejected);
+        assertEquals(Arrays.asList(1, 2), outcomes.retries);
+        assertEquals(TransactionBroadcaster.Status.REJECTED, broadcaster.getStatus(refused));
+        assertEquals(4, node.requests.get());
+
+        broadcaster.close();
+    }
+
+    @Test
+    public void keepsTransactionsPendingOnAuthAndRoutingErrors() throws Exception {
+        Node node = new Node(0);
+        node.script("ab", 401, 403, 404, 200);
+        TransactionBroadcaster broadcaster = open(node, 1);
+        Outcomes outcomes = new Outcomes(1);
+        broadcaster.setListener(outcomes);
+
+        String hash = broadcaster.broadcast("ab");
+
+        assertTrue(outcomes.await());
+        assertEquals(Collections.singletonList(hash), outcomes.accepted);
+        assertTrue(outcomes.rejected.isEmpty());
+        assertEquals(Arrays.asList(1, 2, 3), outcomes.retries);
+        assertEquals(4, node.requests.get());
+
+        broadcaster.close();
+    }
+
+    @Test
+    public void countsAlreadyKnownTransactionsAsAccepted() throws Exception {
+        Node node = new Node(0);
+        node.known = true;
+        TransactionBroadcaster broadcaster = open(node, 1);
+        Outcomes outcomes = new Outcomes(1);
+        broadcaster.setListener(outcomes);
+
+        String hash = broadcaster.broadcast("cc");
+
+        assertTrue(outcomes.await());
+        assertEquals(Collections.singletonList(hash), outcomes.accepted);
+
+        broadcaster.close();
+    }
+
+    @Test
+    public void queuesATransactionOnce() throws Exception {
+        Node node = new Node(0);
+        node.script("dd", 503, 503, 503, 503, 503, 503, 503, 503, 503, 503);
+        TransactionBroadcaster broadcaster = open(node, 2);
+
+        String first = broadcaster.broadcast("dd");
+        String second = broadcaster.broadcastAll(Arrays.asList("DD", "dd")).get(1);
+
+        assertEquals(first, second);
+        assertEquals(1, broadcaster.getPendingCount());
+        assertEquals(TransactionBroadcaster.Status.PENDING, broadcaster.getStatus(first));
+        assertNull(broadcaster.getStatus("unknown"));
+
+        broadcaster.close();
+    }
+
+    @Test
+    public void resendsPendingTransactionsAfterReopening() throws Exception {
+        Node down = new Node(0);
+        down.failing = true;
+        TransactionBroadcaster broadcaster = open(down, 1);
+        String hash = broadcaster.broadcast("ee");
+        broadcaster.close();
+
+        // A record torn by a crash mid-write.
+        RandomAccessFile log = new RandomAccessFile(new File(directory, "outbox.log"), "rw");
+        log.seek(log.length());
+        log.write(new byte[] {0, 0, 0, 40, 1, 2, 3});
+        log.close();
+
+        Node up = new Node(0);
+        Outcomes outcomes = new Outcomes(1);
+        broadcaster = open(up, 1);
+        broadcaster.setListener(outcomes);
+
+        assertTrue(outcomes.await());
+        assertEquals(Collections.singletonList(hash), outcomes.accepted);
+        assertEquals(Collections.singletonList("ee"), up.sent);
+        broadcaster.close();
+
+        broadcaster = open(up, 1);
+        assertEquals(0, broadcaster.getPendingCount());
+        broadcaster.close();
+    }
+
+    @Test
+    public void compactsTheOutbox() throws Exception {
+        TransactionOutbox outbox = new TransactionOutbox(directory);
+        StringBuilder transaction = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            transaction.append("00");
+        }
+
+        for (int i = 0; i < 100; i++) {
+            outbox.add(Collections.singletonMap("tx" + i, transaction.toString()));
+        }
+
+        for (int i = 0; i < 99; i++) {
+            outbox.remove("tx" + i);
+        }
+
+        assertTrue(outbox.getLogSize() < 64 * 1024);
+        outbox.close();
+
+        outbox = new TransactionOutbox(directory);
+        assertEquals(Collections.singleton("tx99"), outbox.getPending().keySet());
+        outbox.close();
+    }
+
+    private TransactionBroadcaster open(Node node, int parallelism) throws IOException {
+        return new TransactionBroadcaster(new Blockstack("id", "secret", node), directory,
+                parallelism, 1, 5);
+    }
+
+    private static class Outcomes implements TransactionBroadcaster.Listener {
+        final List<String> accepted = new CopyOnWriteArrayList<>();
+        final List<String> rejected = new CopyOnWriteArrayList<>();
+        final List<Integer> retries = new CopyOnWriteArrayList<>();
+        final CountDownLatch done;
+
+        Outcomes(int count) {
+            done = new CountDownLatch(count);
+        }
+
+        boolean await() throws InterruptedException {
+            return done.await(5, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public void onAccepted(String transactionHash, BroadcastResult result) {
+            accepted.add(transactionHash);
+            done.countDown();
+        }
+
+        @Override
+        public void onRejected(String transactionHash, String reason) {
+            rejected.add(transactionHash);
+            done.countDown();
+        }
+
+        @Override
+        public void onRetrying(String transactionHash, int attempt, Throwable error) {
+            retries.add(attempt);
+        }
+    }
+
+    /**
+     * Answers broadcasts with scripted statuses per transaction, 200 once a script runs out.
+     */
+    private static class Node implements Transport {
+        final Map<String, List<Integer>> scripts = new ConcurrentHashMap<>();
+        final List<String> sent = new CopyOnWriteArrayList<>();
+        final AtomicInteger requests = new AtomicInteger();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final long delayMillis;
+        volatile boolean failing;
+        volatile boolean known;
+
+        Node(long delayMillis) {
+            this.delayMillis = delayMillis;
+        }
+
+        void script(String transaction, Integer... statuses) {
+            scripts.put(transaction, new CopyOnWriteArrayList<>(statuses));
+        }
+
+        @Override
+        public Response execute(Request request) throws IOException {
+            requests.incrementAndGet();
+
+            if (failing) {
+                throw new IOException("Connection refused");
+            }
+
+            String transaction;
+            try {
+                transaction = new JSONObject(new String(request.getBody(), "UTF-8"))
+                        .getString("signed_hex");
+            } catch (org.json.JSONException e) {
+                throw new IOException(e);
+            }
+
+            int now = inFlight.incrementAndGet();
+            int max;
+            while (now > (max = maxInFlight.get()) && !maxInFlight.compareAndSet(max, now)) {
+                // Retry against the new maximum.
+            }
+
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+
+            int status = 200;
+            List<Integer> script = scripts.get(transaction);
+            if (script != null && !script.isEmpty()) {
+                status = script.remove(0);
+            }
+
+            String body = status != 200 ? "" : known
+                    ? "{\"error\": \"transaction already in block chain\"}"
+                    : "{\"transaction_hash\": \"" + transaction + "\"}";
+
+            if (status == 200) {
+                sent.add(transaction);
+            }
+
+            return new Response(status, NO_HEADERS,
+                    new ByteArrayInputStream(body.getBytes("UTF-8")), null);
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+}
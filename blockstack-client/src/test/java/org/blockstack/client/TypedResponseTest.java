@@ -0,0 +1,113 @@
+package org.blockstack.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TypedResponseTest {
+    private static final String LOOKUP = "{"
+            + "\"itsProf\": {\"owner_address\": \"1abc\", \"profile\": {"
+            + "\"name\": {\"formatted\": \"Jorge Tapia\"}, \"bio\": \"iOS dev\","
+            + "\"avatar\": {\"url\": \"https://example.com/a.png\"}}, \"verifications\": []},"
+            + "\"ghost\": {\"error\": \"Not found\"}}";
+
+    private ReplayServer server;
+    private Blockstack blockstack;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new ReplayServer();
+        server.record("*", "/*", 200, LOOKUP);
+        server.start();
+        blockstack = new Blockstack("id", "secret",
+                new HttpURLConnectionTransport(),
+                new Endpoints(server.getBaseUrl()));
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void lookupDecodesUsersLazily() throws Exception {
+        Map<String, User> users = blockstack.lookupUserProfiles(new String[]{"itsProf", "ghost"});
+
+        assertEquals(2, users.size());
+
+        User user = users.get("itsProf");
+        assertTrue(user.isFound());
+        assertEquals("1abc", user.getOwnerAddress());
+
+        Profile profile = user.getProfile();
+        assertEquals("Jorge Tapia", profile.getName());
+        assertEquals("iOS dev", profile.getBio());
+        assertEquals("https://example.com/a.png", profile.getAvatarUrl());
+        assertNull(profile.getWebsite());
+
+        User ghost = users.get("ghost");
+        assertFalse(ghost.isFound());
+        assertEquals("Not found", ghost.getError());
+    }
+
+    @Test
+    public void lookupStoresRawJsonInCache() throws Exception {
+        ProfileCache cache = new ProfileCache();
+        blockstack.setProfileCache(cache);
+
+        blockstack.lookupUserProfiles(new String[]{"itsProf"});
+        Map<String, User> users = blockstack.lookupUserProfiles(new String[]{"itsProf"});
+
+        assertEquals(1, server.getRequestCount());
+        assertEquals("1abc", users.get("itsProf").getOwnerAddress());
+    }
+
+    @Test
+    public void searchReadsUsernamesFromResults() throws Exception {
+        server.record("*", "/*", 200, "{\"results\": [{\"username\": \"itsProf\", \"profile\": {}},"
+                + "{\"username\": \"muneeb\", \"profile\": {\"name\": \"Muneeb\"}}]}");
+
+        SearchResult result = blockstack.searchUserProfiles("prof");
+
+        assertEquals(2, result.size());
+        assertEquals("itsProf", result.getUsers().get(0).getUsername());
+        assertEquals("Muneeb", result.getUsers().get(1).getProfile().getName());
+    }
+
+    @Test
+    public void decodesAddressAndDomainResponses() throws Exception {
+        server.record("*", "/*", 200, "{\"unspents\": [{\"transaction_hash\": \"ab12\","
+                + "\"output_index\": 1, \"value\": 5000, \"script_hex\": \"76a9\","
+                + "\"confirmations\": 7}]}");
+        List<UnspentOutput> outputs = blockstack.getUnspentOutputList("1abc");
+        assertEquals(1, outputs.size());
+        assertEquals("ab12", outputs.get(0).getTransactionHash());
+        assertEquals(5000L, outputs.get(0).getValue());
+        assertEquals(7L, outputs.get(0).getConfirmations());
+
+        server.record("*", "/*", 200, "{\"names\": [\"itsprof.id\", \"jorge.id\"]}");
+        OwnedNames names = blockstack.getOwnedNames("1abc");
+        assertEquals("1abc", names.getAddress());
+        assertEquals(2, names.getNames().size());
+
+        server.record("*", "/*", 200, "{\"public_key\": \"MIGf\", \"key_type\": \"rsa\"}");
+        DkimKey key = blockstack.getDkimKey("onename.com");
+        assertEquals("MIGf", key.getPublicKey());
+        assertEquals("rsa", key.getKeyType());
+
+        server.record("*", "/*", 200, "{\"transaction_hash\": \"cd34\"}");
+        BroadcastResult result = blockstack.broadcastSignedTransaction("0100");
+        assertNotNull(result);
+        assertTrue(result.isSuccessful());
+        assertEquals("cd34", result.getTransactionHash());
+    }
+}
@@ -0,0 +1,158 @@
+package org.blockstack.client;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UnspentOutputFetcherTest {
+    private static final Map<String, List<String>> NO_HEADERS = Collections.emptyMap();
+
+    @Test
+    public void fetchesAddressesInParallelAndAggregatesThem() throws Exception {
+        WalletServer server = new WalletServer(20);
+        UnspentOutputFetcher fetcher =
+                new UnspentOutputFetcher(new Blockstack("id", "secret", server), 4);
+
+        List<String> addresses = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            addresses.add("addr" + i);
+        }
+
+        final List<String> streamed = new CopyOnWriteArrayList<>();
+        long start = System.nanoTime();
+        UnspentOutputSet set = fetcher.fetch(addresses, new UnspentOutputFetcher.Listener() {
+            @Override
+            public void onAddressFetched(String address, List<UnspentOutput> outputs) {
+                streamed.add(address);
+            }
+
+            @Override
+            public void onAddressFailed(String address, Throwable error) {
+            }
+        }).get(10, TimeUnit.SECONDS);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(set.isComplete());
+        assertEquals(40, streamed.size());
+        assertEquals(addresses, new ArrayList<>(set.getAddresses()));
+        assertEquals(80, set.size());
+        assertEquals(40 * (1000 + 2000), set.getTotalValue());
+        assertEquals(40 * 1000, set.getConfirmedValue(1));
+        assertEquals(3000, set.getTotalValue("addr7"));
+
+        assertEquals(4, server.maxInFlight.get());
+        // 40 addresses at 20 ms, 4 at a time, instead of 800 ms one by one.
+        assertTrue("took " + elapsedMillis + " ms", elapsedMillis < 600);
+
+        fetcher.shutdown();
+    }
+
+    @Test
+    public void reportsFailedAddressesWithoutFailingTheFetch() throws Exception {
+        WalletServer server = new WalletServer(0);
+        server.failing = "addr1";
+        UnspentOutputFetcher fetcher =
+                new UnspentOutputFetcher(new Blockstack("id", "secret", server), 2);
+
+        final List<String> failed = new CopyOnWriteArrayList<>();
+        UnspentOutputSet set = fetcher.fetch(Arrays.asList("addr0", "addr1", "addr0 ", "addr2"),
+                new UnspentOutputFetcher.Listener() {
+                    @Override
+                    public void onAddressFetched(String address, List<UnspentOutput> outputs) {
+                    }
+
+                    @Override
+                    public void onAddressFailed(String address, Throwable error) {
+                        failed.add(address);
+                    }
+                }).get(10, TimeUnit.SECONDS);
+
+        assertFalse(set.isComplete());
+        assertEquals(Collections.singletonList("addr1"), failed);
+        assertEquals(Collections.singleton("addr1"), set.getFailures().keySet());
+        assertEquals(Arrays.asList("addr0", "addr2"), new ArrayList<>(set.getAddresses()));
+        assertEquals(3, server.requests.get());
+        assertTrue(set.getOutputs("addr1").isEmpty());
+
+        fetcher.shutdown();
+    }
+
+    @Test
+    public void completesAnEmptyFetch() throws Exception {
+        UnspentOutputFetcher fetcher =
+                new UnspentOutputFetcher(new Blockstack("id", "secret", new WalletServer(0)));
+
+        UnspentOutputSet set = fetcher.fetch(Collections.<String>emptyList(), null).get();
+
+        assertEquals(0, set.size());
+        assertTrue(set.isComplete());
+
+        fetcher.shutdown();
+    }
+
+    /**
+     * Answers every address with one confirmed and one unconfirmed output, tracking how many
+     * requests are in flight at once.
+     */
+    private static class WalletServer implements Transport {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final AtomicInteger requests = new AtomicInteger();
+        final long delayMillis;
+        volatile String failing;
+
+        WalletServer(long delayMillis) {
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public Response execute(Request request) throws IOException {
+            String url = request.getUrl();
+            String address = url.substring(url.indexOf("/addresses/") + 11, url.lastIndexOf('/'));
+            requests.incrementAndGet();
+
+            int now = inFlight.incrementAndGet();
+            int max;
+            while (now > (max = maxInFlight.get()) && !maxInFlight.compareAndSet(max, now)) {
+                // Retry against the new maximum.
+            }
+
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+
+            if (address.equals(failing)) {
+                return new Response(503, NO_HEADERS, new ByteArrayInputStream(new byte[0]), null);
+            }
+
+            String body = "{\"unspents\": ["
+                    + "{\"transaction_hash\": \"" + address + "-a\", \"output_index\": 0, "
+                    + "\"value\": 1000, \"confirmations\": 6}, "
+                    + "{\"transaction_hash\": \"" + address + "-b\", \"output_index\": 1, "
+                    + "\"value\": 2000, \"confirmations\": 0}]}";
+            return new Response(200, NO_HEADERS, new ByteArrayInputStream(body.getBytes("UTF-8")),
+                    null);
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+}